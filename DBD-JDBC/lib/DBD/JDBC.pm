@@ -61,7 +61,14 @@
         if (!$methods_installed++) {
             DBD::JDBC::db->install_method('jdbc_func', {});
             DBD::JDBC::st->install_method('jdbc_func', {});
+            DBD::JDBC::st->install_method('jdbc_lob_read', {});
+            DBD::JDBC::st->install_method('jdbc_lob_write', {});
+            DBD::JDBC::st->install_method('jdbc_fetch_absolute', {});
+            DBD::JDBC::st->install_method('jdbc_fetch_relative', {});
+            DBD::JDBC::st->install_method('jdbc_generated_keys', {});
             DBD::JDBC::db->install_method('jdbc_disconnect', {});
+            DBD::JDBC::db->install_method('jdbc_cache_invalidate', {});
+            DBD::JDBC::db->install_method('jdbc_metadata_flush', {});
         }
         $drh;
     }
@@ -426,6 +433,11 @@
             $keyTypeCode = 'INTEGER';
             $keyList = $params->{'jdbc_columnindexes'}; 
         }
+        my @options;
+        foreach my $option ('jdbc_scrollable', 'jdbc_callable') {
+            push @options, $option => 1 if $params && $params->{$option};
+        }
+        @options = (HASH => [STRING => [@options]]) if @options;
 
         my ($statement_handle);
         return undef unless
@@ -433,7 +445,8 @@
                           $dbh->FETCH('jdbc_socket'), $dbh->FETCH('jdbc_ber'),
                           [PREPARE_REQ => [STRING => $statement, 
                                            ($keyType?'STRING':'NULL') => $keyType, 
-                                           $keyTypeCode => [@$keyList] ] ],
+                                           $keyTypeCode => [@$keyList],
+                                           @options ] ],
                           [PREPARE_RESP => \$statement_handle]);
         
         my $param_count = _count_params($statement); 
@@ -463,6 +476,15 @@
         $sth->STORE('ChopBlanks' => $dbh->FETCH('ChopBlanks') ? 1 : 0);
         $sth->STORE('jdbc_longreadall' => 
             $dbh->FETCH('jdbc_longreadall') ? 1 : 0);
+        my $lob_threshold = $dbh->FETCH('jdbc_lobthreshold');
+        $sth->STORE('jdbc_lobthreshold' => $lob_threshold) 
+            if $lob_threshold;
+        foreach my $attr ('jdbc_fetchsize', 'jdbc_fetchbytes', 'jdbc_spool',
+                          'jdbc_cache', 'jdbc_query_timeout', 
+                          'jdbc_max_rows', 'jdbc_max_field_size') {
+            my $value = $dbh->FETCH($attr);
+            $sth->STORE($attr => $value) if $value;
+        }
         $sth;
     }
 
@@ -543,6 +565,22 @@
         disconnect($dbh);
     }
 
+    # Removes results from the server's query cache, which is shared
+    # by all connections: those of statements containing $match
+    # (ignoring case), or all of them if $match is undefined. Returns
+    # the number of results removed.
+    sub jdbc_cache_invalidate {
+        my ($dbh, $match) = @_;
+        my ($count);
+        return undef unless
+            _send_request($dbh,
+                          $dbh->FETCH('jdbc_socket'), $dbh->FETCH('jdbc_ber'),
+                          [CACHE_INVALIDATE_REQ => 
+                               defined $match ? $match : ''],
+                          [CACHE_INVALIDATE_RESP => \$count]);
+        return $count;
+    }
+
     # This is the func implementation. It expects the method name
     # to be a valid java.sql.Connection method name. The
     # parameter list may be empty if the method takes no
@@ -628,16 +666,124 @@
     }
 
 
-    # This method is not implemented. 
-    # Implementation notes: call
-    # DatabaseMetaData.getTables(). Use JDBC's default values
-    # (null, "", etc) for the catalog, schema, tablenamepattern,
-    # and types arguments. Note that this returns a statement
-    # handle, so the server will have to be able to deal with
-    # that.
-
+    # The meta data methods each send a single request, which the
+    # server answers from DatabaseMetaData or from its meta data
+    # cache. The rows are returned through a DBD::Sponge statement
+    # handle. The column names are JDBC's, which match DBI's (and
+    # ODBC's, for foreign_key_info).
+    #
+    # JDBC: DatabaseMetaData.getTables, getCatalogs, getSchemas,
+    # getTableTypes
     sub table_info {
-        undef;
+        my ($dbh, $catalog, $schema, $table, $type) = @_;
+        my @columns = ('TABLE_CAT', 'TABLE_SCHEM', 'TABLE_NAME', 
+                       'TABLE_TYPE', 'REMARKS');
+        my $empty = sub { defined $_[0] and $_[0] eq '' };
+
+        # The special cases listed in the DBI specification.
+        if (defined $catalog and $catalog eq '%' 
+            and &$empty($schema) and &$empty($table)) {
+            return _meta_data($dbh, 'table_info', ['catalogs'], \@columns);
+        }
+        if (defined $schema and $schema eq '%' 
+            and &$empty($catalog) and &$empty($table)) {
+            return _meta_data($dbh, 'table_info', ['schemas'], \@columns);
+        }
+        if (defined $type and $type eq '%' and &$empty($catalog)
+            and &$empty($schema) and &$empty($table)) {
+            return _meta_data($dbh, 'table_info', ['table_types'], 
+                              \@columns);
+        }
+
+        # The types may be quoted, as in "'TABLE','VIEW'".
+        if (defined $type and length $type) {
+            $type = join ',', map { s/^\s*'?//; s/'?\s*$//; $_ } 
+                split /,/, $type;
+        }
+        else {
+            $type = undef;
+        }
+        return _meta_data($dbh, 'table_info', 
+                          ['tables', $catalog, $schema, $table, $type]);
+    }
+
+    # JDBC: DatabaseMetaData.getColumns
+    sub column_info {
+        my ($dbh, $catalog, $schema, $table, $column) = @_;
+        return _meta_data($dbh, 'column_info', 
+                          ['columns', $catalog, $schema, $table, $column]);
+    }
+
+    # JDBC: DatabaseMetaData.getPrimaryKeys
+    sub primary_key_info {
+        my ($dbh, $catalog, $schema, $table) = @_;
+        return _meta_data($dbh, 'primary_key_info', 
+                          ['primary_keys', $catalog, $schema, $table]);
+    }
+
+    # JDBC: DatabaseMetaData.getCrossReference, getImportedKeys, 
+    # getExportedKeys
+    sub foreign_key_info {
+        my ($dbh, @tables) = @_;
+        return _meta_data($dbh, 'foreign_key_info', 
+                          ['foreign_keys', @tables[0 .. 5]]);
+    }
+
+    # Removes entries from the server's meta data cache, which is
+    # shared by all connections: those that may describe $table,
+    # or all of them if $table is undefined. Returns the number of
+    # entries removed.
+    sub jdbc_metadata_flush {
+        my ($dbh, $table) = @_;
+        my ($count);
+        return undef unless
+            _send_request($dbh,
+                          $dbh->FETCH('jdbc_socket'), $dbh->FETCH('jdbc_ber'),
+                          [META_DATA_FLUSH_REQ => 
+                               defined $table ? $table : ''],
+                          [META_DATA_FLUSH_RESP => \$count]);
+        return $count;
+    }
+
+    # Sends a meta data request, a list of the kind of meta data and
+    # its arguments, and returns the result as a DBD::Sponge
+    # statement handle. If a list of column names is given, the
+    # result has those columns, matched to the server's by name.
+    sub _meta_data {
+        my ($dbh, $statement, $request, $columns) = @_;
+        my (@values);
+        return undef unless
+            _send_request($dbh,
+                          $dbh->FETCH('jdbc_socket'), $dbh->FETCH('jdbc_ber'),
+                          [META_DATA_REQ => 
+                           [map { defined $_ ? (STRING => $_) : (NULL => 0) }
+                            @$request]],
+                          [META_DATA_RESP => \@values]);
+
+        my $count = shift @values;
+        my @names = splice(@values, 0, $count);
+        my @rows;
+        push @rows, [splice(@values, 0, $count)] while @values;
+        if ($columns) {
+            my %index;
+            @index{@names} = (0 .. $#names);
+            # getSchemas calls the catalog column TABLE_CATALOG.
+            $index{'TABLE_CAT'} = $index{'TABLE_CATALOG'}
+                unless exists $index{'TABLE_CAT'};
+            my @index = @index{@$columns};
+            foreach my $row (@rows) {
+                $row = [map { defined $_ ? $row->[$_] : undef } @index];
+            }
+            @names = @$columns;
+        }
+
+        my $sponge = DBI->connect('dbi:Sponge:', '', '', 
+                                  { RaiseError => 0, PrintError => 0 })
+            or return $dbh->set_err($DBI::err, $DBI::errstr);
+        my $sth = $sponge->prepare($statement, 
+                                   { rows => \@rows, NAME => \@names })
+            or return $dbh->set_err($sponge->err, $sponge->errstr);
+        return $sth;
     }
 
     # This method is not implemented.  
@@ -859,6 +1005,22 @@
     }
 
 
+    # This binds an OUT or INOUT parameter of a statement prepared
+    # as a call, either in the JDBC escape syntax ({call ...}) or
+    # with the jdbc_callable prepare attribute. The variable's value
+    # when execute is called is sent as the IN value; an undefined
+    # value makes it an OUT-only parameter. The variable is set to
+    # the OUT value by each execute. $maxlen is ignored.
+    sub bind_param_inout {
+        my ($sth, $param, $value_ref, $maxlen, $attr) = @_;
+        return $sth->set_err(
+            DBD::JDBC::ErrorMessages::bad_inout_ref($param))
+            unless ref $value_ref eq 'SCALAR';
+        $sth->{'jdbc_params_inout'}->{$param} = $value_ref;
+        return $sth->bind_param($param, $$value_ref, $attr);
+    }
+
+
     # This method sends the parameters, if any, to the server and
     # causes the server to execute the previously prepared
     # statement.
@@ -868,6 +1030,13 @@
         my ($sth, @values) = @_;
         my $debug = $sth->trace();
 
+        # Read the current values of any INOUT parameters.
+        my $inout = $sth->{'jdbc_params_inout'} || {};
+        my @outs = sort { $a <=> $b } keys %$inout;
+        foreach my $param (@outs) {
+            $sth->{'jdbc_params'}->{$param} = ${ $inout->{$param} };
+        }
+
         # Set parameter values, if provided. For now, I'm
         # assuming that it's ok for bind_param to have been
         # called for parameter indexes larger than the highest
@@ -895,20 +1064,25 @@
                $sth->{'jdbc_params_types'}->{$i} || $DBD::JDBC::Types{VARCHAR};
         }
 
-        my ($rowcount, $columncount);
+        my ($rowcount, $columncount, @out_values);
         return undef unless
             _send_request($sth,
                           $sth->FETCH('jdbc_socket'), $sth->FETCH('jdbc_ber'),
                           [EXECUTE_REQ => [$sth->FETCH('jdbc_handle'),
                                            $paramcount,
-                                           \@encodelist]],
+                                           \@encodelist,
+                                           \@outs]],
                           [EXECUTE_RESP => 
                            [OPTIONAL => [EXECUTE_ROWS_RESP => \$rowcount],
                             OPTIONAL => 
-                            [EXECUTE_RESULTSET_RESP => \$columncount]]]);
+                            [EXECUTE_RESULTSET_RESP => \$columncount],
+                            OPTIONAL => [OUT_PARAMS => \@out_values]]]);
         
         return $sth->set_err(DBD::JDBC::ErrorMessages::bad_execute())
             unless ((defined $rowcount) xor (defined $columncount));
+        for (my $k = 0; $k < @outs; $k++) {
+            ${ $inout->{$outs[$k]} } = $out_values[$k];
+        }
         if (defined $rowcount) {
             $sth->STORE('Active' => 0);
             $sth->STORE('NUM_OF_FIELDS', 0); 
@@ -925,6 +1099,66 @@
     }
 
 
+    # This executes the statement once for each tuple returned by
+    # $fetch_tuple_sub, which is how DBI implements execute_array,
+    # sending all the tuples to the server in a single request to be
+    # run as a JDBC batch. Statements with INOUT parameters use DBI's
+    # default implementation, which calls execute for each tuple.
+    #
+    # JDBC: PreparedStatement.addBatch, Statement.executeBatch
+    sub execute_for_fetch {
+        my ($sth, $fetch_tuple_sub, $tuple_status) = @_;
+        return $sth->SUPER::execute_for_fetch($fetch_tuple_sub, 
+                                              $tuple_status)
+            if %{ $sth->{'jdbc_params_inout'} || {} };
+
+        my (@tuples, $tuple);
+        my $paramcount = 0;
+        while ($tuple = &$fetch_tuple_sub()) {
+            push @tuples, [@$tuple];
+            $paramcount = @$tuple if @$tuple > $paramcount;
+        }
+
+        # encodelist is a list of alternating parameter values/types,
+        # for each tuple in turn.
+        my (@encodelist, $i);
+        foreach $tuple (@tuples) {
+            for ($i = 1; $i <= $paramcount; $i++) {
+                push @encodelist, $tuple->[$i - 1];
+                push @encodelist, $sth->{'jdbc_params_types'}->{$i} 
+                    || $DBD::JDBC::Types{VARCHAR};
+            }
+        }
+
+        my (@counts);
+        unless (_send_request($sth,
+                              $sth->FETCH('jdbc_socket'), 
+                              $sth->FETCH('jdbc_ber'),
+                              [EXECUTE_BATCH_REQ => 
+                               [$sth->FETCH('jdbc_handle'), $paramcount,
+                                scalar(@tuples), \@encodelist]],
+                              [EXECUTE_BATCH_RESP => \@counts])) {
+            # The batch failed as a whole.
+            @$tuple_status = map { [$sth->err, $sth->errstr, $sth->state] }
+                @tuples if $tuple_status;
+            return undef;
+        }
+
+        # A negative count means the driver didn't report the number
+        # of rows affected.
+        my $rows = 0;
+        foreach my $count (@counts) {
+            $count = -1 if $count < 0;
+            $rows = ($count < 0 or $rows < 0) ? -1 : $rows + $count;
+        }
+        @$tuple_status = @counts if $tuple_status;
+        $sth->STORE('Active' => 0);
+        $sth->{'jdbc_rowcount'} = $rows;
+        my $executed = @tuples ? scalar(@tuples) : "0E0";
+        return wantarray ? ($executed, $rows) : $executed;
+    }
+
+
     sub fetch {
         my ($sth) = @_;
         my $debug = $sth->trace();
@@ -1016,6 +1250,212 @@
     }
 
 
+    # These move the cursor of a statement prepared with
+    # jdbc_scrollable and return the row at the new position, as
+    # fetch does, or undef if the position is before the first row
+    # or after the last. Rows are numbered from 1; negative row
+    # numbers count back from the last row. Later calls to fetch
+    # continue from the new position. For example,
+    #  my $row = $sth->jdbc_fetch_absolute(($page - 1) * $size + 1);
+    #  $row = $sth->jdbc_fetch_relative(-1);
+    sub jdbc_fetch_absolute {
+        my ($sth, $row) = @_;
+        return _fetch_scroll($sth, 1, $row);
+    }
+
+    sub jdbc_fetch_relative {
+        my ($sth, $rows) = @_;
+        return _fetch_scroll($sth, 2, $rows);
+    }
+
+    sub _fetch_scroll {
+        my ($sth, $orientation, $row) = @_;
+        my @row;
+
+        return undef 
+            unless _send_request($sth,
+                                 $sth->FETCH('jdbc_socket'), $sth->FETCH('jdbc_ber'), 
+                                 [FETCH_SCROLL_REQ => 
+                                  [INTEGER => $sth->FETCH('jdbc_handle'),
+                                   INTEGER => $orientation,
+                                   INTEGER => $row]],
+                                 [FETCH_RESP => \@row]);
+        if (shift @row) {  # row contains data
+            $sth->{'jdbc_rowcount'}++;
+            return $sth->_set_fbav(\@row); 
+        }
+        return undef;
+    }
+
+
+    # This moves to the statement's next result, for statements
+    # such as stored procedure calls that return several result
+    # sets or row counts. It returns true if there is another
+    # result and false if there isn't. If the result is a result
+    # set, NUM_OF_FIELDS and the column attributes describe it and
+    # fetch reads its rows; otherwise NUM_OF_FIELDS is 0 and rows
+    # returns the row count. For example,
+    #  $sth->execute();
+    #  do {
+    #      if ($sth->{NUM_OF_FIELDS}) { ... fetch rows ... }
+    #      else { print $sth->rows(), " rows affected\n"; }
+    #  } while ($sth->more_results);
+    sub more_results {
+        my ($sth) = @_;
+        my ($rowcount, $columncount);
+        return undef unless
+            _send_request($sth,
+                          $sth->FETCH('jdbc_socket'), $sth->FETCH('jdbc_ber'),
+                          [MORE_RESULTS_REQ => $sth->FETCH('jdbc_handle')],
+                          [EXECUTE_RESP => 
+                           [OPTIONAL => [EXECUTE_ROWS_RESP => \$rowcount],
+                            OPTIONAL => 
+                            [EXECUTE_RESULTSET_RESP => \$columncount]]]);
+        return $sth->set_err(DBD::JDBC::ErrorMessages::bad_execute())
+            unless ((defined $rowcount) xor (defined $columncount));
+
+        # The cached column attributes describe the previous result.
+        delete @{$sth}{qw(jdbc_NAME jdbc_TYPE jdbc_PRECISION jdbc_SCALE
+                          jdbc_NULLABLE jdbc_CursorName)};
+        if (defined $columncount) {
+            $sth->STORE('NUM_OF_FIELDS', $columncount);
+            $sth->{'jdbc_rowcount'} = 0;
+            $sth->STORE('Active' => 1);
+            return 1;
+        }
+        $sth->STORE('Active' => 0);
+        $sth->STORE('NUM_OF_FIELDS', 0);
+        return 0 if $rowcount < 0;   # no more results
+        $sth->{'jdbc_rowcount'} = $rowcount;
+        return 1;
+    }
+
+
+    # This reads part of a BLOB or CLOB value using a locator
+    # returned by fetch when jdbc_lobthreshold is set. The offset
+    # is 1-based, and the offset and length count bytes for a BLOB
+    # and characters for a CLOB. An empty string is returned when
+    # the offset is past the end of the value. For example,
+    #  for (my $offset = 1; $offset <= $lob->length; $offset += 65536) {
+    #      print $sth->jdbc_lob_read($lob, $offset, 65536);
+    #  }
+    # Locators are valid until the statement is executed again.
+    sub jdbc_lob_read {
+        my ($sth, $locator, $offset, $length) = @_;
+
+        my $data;
+        return undef unless
+            _send_request($sth,
+                          $sth->FETCH('jdbc_socket'), $sth->FETCH('jdbc_ber'),
+                          [LOB_READ_REQ => 
+                           [INTEGER => $sth->FETCH('jdbc_handle'),
+                            INTEGER => $locator->{'handle'},
+                            INTEGER => $offset,
+                            INTEGER => $length]],
+                          [LOB_READ_RESP => \$data]);
+        return $data;
+    }
+
+
+    # This returns all the keys generated by the last execution of
+    # the statement, including an execute_array, as a reference to
+    # an array with a hash reference for each row, mapping the key
+    # column names to their values. The array is empty if the driver
+    # returned no keys. For example,
+    #  $sth->execute_array({}, \@names);
+    #  my @ids = map { $_->{ID} } @{ $sth->jdbc_generated_keys() };
+    sub jdbc_generated_keys {
+        my ($sth) = @_;
+        my @values;
+
+        return undef 
+            unless _send_request($sth,
+                                 $sth->FETCH('jdbc_socket'), 
+                                 $sth->FETCH('jdbc_ber'), 
+                                 [GENERATED_KEYS_REQ => 
+                                  $sth->FETCH('jdbc_handle')],
+                                 [GENERATED_KEYS_RESP => \@values]);
+        my @keys;
+        return \@keys unless @values;
+        my $count = shift @values;
+        my @names = splice(@values, 0, $count);
+        while (@values) {
+            my %row;
+            @row{@names} = splice(@values, 0, $count);
+            push @keys, \%row;
+        }
+        return \@keys;
+    }
+
+
+    # This uploads a BLOB or CLOB parameter value in pieces, so
+    # that a large value doesn't have to be sent in one execute
+    # request. The value may be a string or a filehandle, which is
+    # read to its end. The type is a DBI type constant, or a hash
+    # reference, as for bind_param; the default is SQL_BLOB. A
+    # CLOB value must already be in the connection's character
+    # set. For example,
+    #  open my $fh, '<', $file or die $!;
+    #  binmode $fh;
+    #  $sth->jdbc_lob_write(2, $fh, SQL_BLOB);
+    #  $sth->execute(1, undef);
+    # The value is used by the next execute only.
+    sub jdbc_lob_write {
+        my ($sth, $param, $source, $attr, $chunk_size) = @_;
+        my ($type) = (ref $attr) ? $attr->{'TYPE'} : $attr;
+        $type = _jdbc_type($type || SQL_BLOB);
+        $chunk_size ||= 262144;
+        my ($socket, $ber) = ($sth->FETCH('jdbc_socket'),
+                              $sth->FETCH('jdbc_ber'));
+        my $handle = $sth->FETCH('jdbc_handle');
+
+        my $resp;
+        return undef unless
+            _send_request($sth, $socket, $ber,
+                          [LOB_WRITE_BEGIN_REQ => [INTEGER => $handle,
+                                                   INTEGER => $param,
+                                                   INTEGER => $type]],
+                          [LOB_WRITE_BEGIN_RESP => \$resp]);
+
+        my $is_handle = ref $source && ref $source ne 'SCALAR';
+        $source = $$source if ref $source eq 'SCALAR';
+        my $offset = 0;
+        while (1) {
+            my $chunk;
+            if ($is_handle) {
+                my $count = read($source, $chunk, $chunk_size);
+                return $sth->set_err(
+                    DBD::JDBC::ErrorMessages::lob_write_error($!))
+                    unless defined $count;
+                last unless $count;
+            }
+            else {
+                last if $offset >= length $source;
+                $chunk = substr($source, $offset, $chunk_size);
+                $offset += $chunk_size;
+            }
+            return undef unless
+                _send_request($sth, $socket, $ber,
+                              [LOB_WRITE_CHUNK_REQ => [INTEGER => $handle,
+                                                       INTEGER => $param,
+                                                       STRING => $chunk]],
+                              [LOB_WRITE_CHUNK_RESP => \$resp]);
+        }
+
+        return undef unless
+            _send_request($sth, $socket, $ber,
+                          [LOB_WRITE_END_REQ => [INTEGER => $handle,
+                                                 INTEGER => $param]],
+                          [LOB_WRITE_END_RESP => \$resp]);
+
+        # Send a placeholder for the parameter, so that it's counted
+        # by execute.
+        $sth->{'jdbc_params'}->{$param} = undef;
+        $sth->{'jdbc_params_types'}->{$param} = $type;
+        1;
+    }
+
+
     # Added in DBI 1.42. Not currently implemented here.
     sub parse_trace_flag {
         my ($flag) = shift;
@@ -1029,11 +1469,22 @@
         if ($attr =~ /^jdbc_/) {
             $sth->{$attr} = $value;
             my $ok = 1; 
-            if ($attr eq 'jdbc_longreadall') {
+            if ($attr eq 'jdbc_longreadall' or $attr eq 'jdbc_spool') {
                 $value = ($value ? 1 : 0);  # Canonicalize for server.
                 $sth->{$attr} = $value;
                 $ok = _set_attr($sth, $attr, $value);
             }
+            elsif ($attr eq 'jdbc_lobthreshold' or 
+                   $attr eq 'jdbc_fetchsize' or
+                   $attr eq 'jdbc_fetchbytes' or
+                   $attr eq 'jdbc_cache' or
+                   $attr eq 'jdbc_query_timeout' or
+                   $attr eq 'jdbc_max_rows' or
+                   $attr eq 'jdbc_max_field_size') {
+                $value = int($value || 0);  # Canonicalize for server.
+                $sth->{$attr} = $value;
+                $ok = _set_attr($sth, $attr, $value);
+            }
             ## TODO: how should we report an error in storing on the server?
             return; 
         }
@@ -1347,6 +1798,40 @@
     sub JDBC_GET_GENERATED_KEYS_REQ()          { 0x21 }
     sub JDBC_GET_GENERATED_KEYS_RESP()         { 0x21 + 1000 }
 
+    sub JDBC_LOB_READ_REQ()                    { 0x22 }
+    sub JDBC_LOB_READ_RESP()                   { 0x22 + 1000 }
+    sub JDBC_LOB_LOCATOR()                     { 0x23 }
+
+    sub JDBC_LOB_WRITE_BEGIN_REQ()             { 0x24 }
+    sub JDBC_LOB_WRITE_BEGIN_RESP()            { 0x24 + 1000 }
+
+    sub JDBC_LOB_WRITE_CHUNK_REQ()             { 0x25 }
+    sub JDBC_LOB_WRITE_CHUNK_RESP()            { 0x25 + 1000 }
+
+    sub JDBC_LOB_WRITE_END_REQ()               { 0x26 }
+    sub JDBC_LOB_WRITE_END_RESP()              { 0x26 + 1000 }
+
+    sub JDBC_FETCH_SCROLL_REQ()                { 0x27 }
+
+    sub JDBC_MORE_RESULTS_REQ()                { 0x28 }
+
+    sub JDBC_OUT_PARAMS()                      { 0x29 }
+
+    sub JDBC_CACHE_INVALIDATE_REQ()            { 0x2A }
+    sub JDBC_CACHE_INVALIDATE_RESP()           { 0x2A + 1000 }
+
+    sub JDBC_EXECUTE_BATCH_REQ()               { 0x2B }
+    sub JDBC_EXECUTE_BATCH_RESP()              { 0x2B + 1000 }
+
+    sub JDBC_GENERATED_KEYS_REQ()              { 0x2C }
+    sub JDBC_GENERATED_KEYS_RESP()             { 0x2C + 1000 }
+
+    sub JDBC_META_DATA_REQ()                   { 0x2D }
+    sub JDBC_META_DATA_RESP()                  { 0x2D + 1000 }
+
+    sub JDBC_META_DATA_FLUSH_REQ()             { 0x2E }
+    sub JDBC_META_DATA_FLUSH_RESP()            { 0x2E + 1000 }
+
     # Define name/type/tag triplets.
 
     DBD::JDBC::BER->define(
@@ -1468,6 +1953,60 @@
  [STATEMENT_FUNC_RESP => 'MYSEQUENCE',
   ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_STATEMENT_FUNC_RESP())],
 
+ [LOB_READ_REQ => $SEQUENCE,  
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_LOB_READ_REQ())],
+ [LOB_READ_RESP => $STRING,
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_LOB_READ_RESP())],
+ [LOB_LOCATOR => $SEQUENCE,
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_LOB_LOCATOR())],
+
+ [LOB_WRITE_BEGIN_REQ => $SEQUENCE,  
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_LOB_WRITE_BEGIN_REQ())],
+ [LOB_WRITE_BEGIN_RESP => $NULL,
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_LOB_WRITE_BEGIN_RESP())],
+ [LOB_WRITE_CHUNK_REQ => $SEQUENCE,  
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_LOB_WRITE_CHUNK_REQ())],
+ [LOB_WRITE_CHUNK_RESP => $NULL,
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_LOB_WRITE_CHUNK_RESP())],
+ [LOB_WRITE_END_REQ => $SEQUENCE,  
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_LOB_WRITE_END_REQ())],
+ [LOB_WRITE_END_RESP => $NULL,
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_LOB_WRITE_END_RESP())],
+
+ [FETCH_SCROLL_REQ => $SEQUENCE,  
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_FETCH_SCROLL_REQ())],
+
+ [MORE_RESULTS_REQ => $INTEGER,  
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_MORE_RESULTS_REQ())],
+
+ [OUT_PARAMS => 'MYSEQUENCE',
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_OUT_PARAMS())],
+
+ [CACHE_INVALIDATE_REQ => $STRING,  
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_CACHE_INVALIDATE_REQ())],
+ [CACHE_INVALIDATE_RESP => $INTEGER,
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_CACHE_INVALIDATE_RESP())],
+
+ [EXECUTE_BATCH_REQ => $SEQUENCE,  
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_EXECUTE_BATCH_REQ())],
+ [EXECUTE_BATCH_RESP => 'MYSEQUENCE',
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_EXECUTE_BATCH_RESP())],
+
+ [GENERATED_KEYS_REQ => $INTEGER,  
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_GENERATED_KEYS_REQ())],
+ [GENERATED_KEYS_RESP => 'MYSEQUENCE',
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_GENERATED_KEYS_RESP())],
+
+ [META_DATA_REQ => $SEQUENCE,  
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_META_DATA_REQ())],
+ [META_DATA_RESP => 'MYSEQUENCE',
+  ber_tag(BER_APPLICATION | BER_CONSTRUCTOR, JDBC_META_DATA_RESP())],
+
+ [META_DATA_FLUSH_REQ => $STRING,  
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_META_DATA_FLUSH_REQ())],
+ [META_DATA_FLUSH_RESP => $INTEGER,
+  ber_tag(BER_APPLICATION | BER_PRIMITIVE, JDBC_META_DATA_FLUSH_RESP())],
+
  );
 
 }
@@ -1525,7 +2064,7 @@
     # Modified from Convert::BER::SEQUENCE;
     sub pack_array {
         my ($self, $ber, $arg) = @_;  # $arg is an array ref
-        my ($handle, $param_count, $param_list) = @$arg;
+        my ($handle, $param_count, $param_list, $out_list) = @$arg;
         
         # Convert::BER::_encode should have packed the tag value already.
         # Build up the message body using a new BER object.
@@ -1534,6 +2073,44 @@
         
         $ber2->_encode([INTEGER => $param_count]);  # parameter count
         
+        my $i = 0;
+        while ($i < scalar(@$param_list)) {
+            my ($value, $type) = ($param_list->[$i], $param_list->[$i+1]);
+            $i += 2;
+            
+            # Parameters may be null, but a type will always be specified.
+            defined $value 
+                ? $ber2->_encode([STRING => $value]) 
+                    : $ber2->_encode([NULL => 0]);
+            $ber2->_encode([INTEGER => $type]);
+        }
+
+        # The indexes of any OUT parameters follow the parameters.
+        foreach my $out (@{ $out_list || [] }) {
+            $ber2->_encode([INTEGER => $out]);
+        }
+        
+        $ber->pack_length(CORE::length($ber2->[ Convert::BER::_BUFFER() ]));
+        $ber->[ Convert::BER::_BUFFER() ] .= $ber2->[ Convert::BER::_BUFFER() ];
+        1;
+    }
+}
+
+{
+    package DBD::JDBC::BER::EXECUTE_BATCH_REQ;
+
+    # Modified from Convert::BER::SEQUENCE;
+    sub pack_array {
+        my ($self, $ber, $arg) = @_;  # $arg is an array ref
+        my ($handle, $param_count, $tuple_count, $param_list) = @$arg;
+        
+        # Convert::BER::_encode should have packed the tag value already.
+        # Build up the message body using a new BER object.
+        my $ber2 = $ber->new;
+        $ber2->_encode([INTEGER => $handle]);  # handle
+        $ber2->_encode([INTEGER => $param_count]);  # parameter count
+        $ber2->_encode([INTEGER => $tuple_count]);  # parameter set count
+        
         my $i = 0;
         while ($i < scalar(@$param_list)) {
             my ($value, $type) = ($param_list->[$i], $param_list->[$i+1]);
@@ -1576,6 +2153,14 @@
                     $ber2->decode(STRING => \$field);
                     push @$arg, $field;
                 }
+                elsif ($tag == $ber2->LOB_LOCATOR()) {
+                    my ($handle, $length, $type);
+                    $ber2->decode(LOB_LOCATOR => [INTEGER => \$handle,
+                                                  INTEGER => \$length,
+                                                  INTEGER => \$type]);
+                    push @$arg, DBD::JDBC::LobLocator->_new($handle, 
+                                                            $length, $type);
+                }
                 $i++;    # Used periodically in debugging.
             }
         }
@@ -1684,6 +2269,32 @@
 
 
 
+# A locator for a BLOB or CLOB value, returned by fetch in place of
+# the value when the value is longer than jdbc_lobthreshold. Pass
+# it to $sth->jdbc_lob_read to read the value.
+{
+    package DBD::JDBC::LobLocator;
+
+    sub _new {
+        my ($class, $handle, $length, $type) = @_;
+        return bless { 'handle' => $handle, 
+                       'length' => $length, 
+                       'type' => ($type == 2005 ? 'CLOB' : 'BLOB') }, $class;
+    }
+
+    # The length of the value, in bytes for a BLOB or characters
+    # for a CLOB.
+    sub length { 
+        return $_[0]->{'length'}; 
+    }
+
+    # Either 'BLOB' or 'CLOB'.
+    sub type { 
+        return $_[0]->{'type'}; 
+    }
+}
+
+
 ## ====================
 
 package DBD::JDBC::ErrorMessages;
@@ -1734,5 +2345,14 @@ sub bad_func_method($) {
     return (106, "Invalid func method name: $_[0]", $sql_state);
 }
 
+sub lob_write_error($) {
+    return (107, "Failed to read LOB value to upload: $_[0]", $sql_state);
+}
+
+sub bad_inout_ref($) {
+    return (108, "bind_param_inout requires a scalar reference " .
+            "for parameter $_[0]", $sql_state);
+}
+
 1;
 
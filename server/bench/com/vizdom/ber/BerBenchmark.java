@@ -0,0 +1,247 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for encoding and decoding the basic BER types.
+ * Run them with <code>ant bench</code>; the allocation figures come
+ * from the <code>gc</code> profiler (<code>gc.alloc.rate.norm</code>
+ * is bytes allocated per operation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BerBenchmark
+{
+    /** The size of the large OCTET STRING. */
+    private static final int sLARGE_SIZE = 1024 * 1024;
+
+    /** The module used for decoding. */
+    private BerModule mModule;
+
+    /** The output buffer, reused by the encoding benchmarks. */
+    private ByteArrayOutputStream mOut;
+
+    /** A short string. */
+    private String mShortString;
+
+    /** The contents of the large OCTET STRING. */
+    private byte[] mLargeBytes;
+
+    /** A nested sequence, similar in shape to a small result set. */
+    private BerSequence mSequence;
+
+    /** The encoded INTEGER. */
+    private byte[] mIntegerEncoding;
+
+    /** The encoded short OCTET STRING. */
+    private byte[] mShortEncoding;
+
+    /** The encoded large OCTET STRING. */
+    private byte[] mLargeEncoding;
+
+    /** The encoded nested sequence. */
+    private byte[] mSequenceEncoding;
+
+
+    /**
+     * Returns the encoding of a BER object.
+     *
+     * @param anObject a BER object
+     * @return the encoding
+     * @exception IOException if an I/O error occurs
+     */
+    private static byte[] gEncode(BerObject anObject) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        anObject.writeTo(out);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Creates the test data.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        mModule = new BerModule();
+        mModule.setCharacterEncoding("ISO8859_1");
+        mOut = new ByteArrayOutputStream(sLARGE_SIZE + 16);
+
+        mShortString = "The quick brown fox";
+        mLargeBytes = new byte[sLARGE_SIZE];
+        for (int i = 0; i < mLargeBytes.length; i++)
+            mLargeBytes[i] = (byte) ('a' + i % 26);
+
+        BerObject[] rows = new BerObject[20];
+        for (int i = 0; i < rows.length; i++)
+        {
+            rows[i] = new BerSequence(new BerObject[] {
+                new BerInteger(i), 
+                new BerOctetString("row " + i, "ISO8859_1"),
+                BerModule.NULL,
+                new BerOctetString("2008-11-05 12:30:00", "ISO8859_1") });
+        }
+        mSequence = new BerSequence(rows);
+
+        mIntegerEncoding = gEncode(new BerInteger(123456));
+        mShortEncoding = gEncode(new BerOctetString(mShortString, "ISO8859_1"));
+        mLargeEncoding = gEncode(new BerOctetString(mLargeBytes));
+        mSequenceEncoding = gEncode(mSequence);
+    }
+
+
+    /**
+     * Encodes an INTEGER.
+     *
+     * @return the number of bytes written
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public int encodeInteger() throws IOException
+    {
+        mOut.reset();
+        new BerInteger(123456).writeTo(mOut);
+        return mOut.size();
+    }
+
+
+    /**
+     * Decodes an INTEGER.
+     *
+     * @return the decoded object
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public BerObject decodeInteger() throws IOException
+    {
+        return mModule.readFrom(new ByteArrayInputStream(mIntegerEncoding));
+    }
+
+
+    /**
+     * Encodes a short OCTET STRING, including the character encoding.
+     *
+     * @return the number of bytes written
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public int encodeShortOctetString() throws IOException
+    {
+        mOut.reset();
+        new BerOctetString(mShortString, "ISO8859_1").writeTo(mOut);
+        return mOut.size();
+    }
+
+
+    /**
+     * Decodes a short OCTET STRING, including the character decoding.
+     *
+     * @return the decoded string
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public String decodeShortOctetString() throws IOException
+    {
+        return mModule.readFrom(
+            new ByteArrayInputStream(mShortEncoding)).toString();
+    }
+
+
+    /**
+     * Encodes a 1 MB OCTET STRING.
+     *
+     * @return the number of bytes written
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public int encodeLargeOctetString() throws IOException
+    {
+        mOut.reset();
+        new BerOctetString(mLargeBytes).writeTo(mOut);
+        return mOut.size();
+    }
+
+
+    /**
+     * Decodes a 1 MB OCTET STRING.
+     *
+     * @return the decoded object
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public BerObject decodeLargeOctetString() throws IOException
+    {
+        return mModule.readFrom(new ByteArrayInputStream(mLargeEncoding));
+    }
+
+
+    /**
+     * Encodes a nested SEQUENCE. A new sequence is built each time,
+     * since sequences cache their encoded contents.
+     *
+     * @return the number of bytes written
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public int encodeNestedSequence() throws IOException
+    {
+        BerObject[] rows = mSequence.toArray();
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = new BerSequence(((BerSequence) rows[i]).toArray());
+        mOut.reset();
+        new BerSequence(rows).writeTo(mOut);
+        return mOut.size();
+    }
+
+
+    /**
+     * Decodes a nested SEQUENCE.
+     *
+     * @return the decoded object
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public BerObject decodeNestedSequence() throws IOException
+    {
+        return mModule.readFrom(new ByteArrayInputStream(mSequenceEncoding));
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the server's fetch loop and func calls, using a
+ * fake JDBC driver whose result set returns the same row forever. 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FetchBenchmark
+{
+    /** A sequence with a given identifier, for encoding requests. */
+    private static class SequenceEncoder extends BerSequence
+    {
+        private final BerIdentifier mIdentifier;
+
+        SequenceEncoder(BerIdentifier anIdentifier, BerObject[] aSequence)
+        {
+            super(aSequence);
+            mIdentifier = anIdentifier;
+        }
+
+        public BerIdentifier getIdentifier()
+        {
+            return mIdentifier;
+        }
+    }
+
+
+    /** An integer with a given identifier, for encoding requests. */
+    private static class IntegerEncoder extends BerInteger
+    {
+        private final BerIdentifier mIdentifier;
+
+        IntegerEncoder(BerIdentifier anIdentifier, int aValue)
+        {
+            super(aValue);
+            mIdentifier = anIdentifier;
+        }
+
+        public BerIdentifier getIdentifier()
+        {
+            return mIdentifier;
+        }
+    }
+
+
+    /** 
+     * Implements the few JDBC methods the fetch loop uses, for a 
+     * result set with one row that is returned forever.
+     */
+    private static class FakeDriver implements InvocationHandler
+    {
+        /** The column types. */
+        private static final int[] sTYPES = { Types.INTEGER, 
+            Types.VARCHAR, Types.CHAR, Types.DECIMAL, Types.TIMESTAMP, 
+            Types.VARCHAR, Types.BIGINT, Types.VARCHAR };
+
+        /** The column values. */
+        private static final String[] sVALUES = { "1729", 
+            "ACME Widgets, Inc.", "Y   ", "42.50", "2008-11-05 12:30:00.0",
+            "Springfield", "9223372036854775807", "3.141592653589793" };
+
+        /** The number of columns. */
+        private static final int sCOLUMNS = 16;
+
+        private final ResultSetMetaData mMetaData = (ResultSetMetaData) 
+            gProxy(ResultSetMetaData.class, this);
+        private final ResultSet mResultSet = (ResultSet) 
+            gProxy(ResultSet.class, this);
+        private final PreparedStatement mStatement = (PreparedStatement)
+            gProxy(PreparedStatement.class, this);
+        private final java.sql.Connection mConnection = (java.sql.Connection)
+            gProxy(java.sql.Connection.class, this);
+
+        public Object invoke(Object aProxy, Method aMethod, Object[] args)
+            throws SQLException
+        {
+            String name = aMethod.getName();
+            if (name.equals("getString"))
+                return sVALUES[(((Integer) args[0]).intValue() - 1) % 8];
+            if (name.equals("next") || name.equals("execute"))
+                return Boolean.TRUE;
+            if (name.equals("getColumnType"))
+                return new Integer(sTYPES[(((Integer) args[0]) - 1) % 8]);
+            if (name.equals("getColumnCount"))
+                return new Integer(sCOLUMNS);
+            if (name.equals("getColumnName"))
+                return "C" + args[0];
+            if (name.equals("getMetaData"))
+                return mMetaData;
+            if (name.equals("getResultSet"))
+                return mResultSet;
+            if (name.equals("prepareStatement"))
+                return mStatement;
+            if (name.equals("close"))
+                return null;
+            throw new SQLException("Not supported: " + name);
+        }
+
+        private static Object gProxy(Class<?> anInterface, 
+            InvocationHandler aHandler)
+        {
+            return Proxy.newProxyInstance(FetchBenchmark.class.getClassLoader(),
+                new Class<?>[] { anInterface }, aHandler);
+        }
+    }
+
+
+    /** This connection's module. */
+    private BerDbdModule mModule;
+
+    /** The server connection, using the fake driver. */
+    private Connection mConnection;
+
+    /** A fetch request for the prepared statement. */
+    private FetchRequest mFetchRequest;
+
+    /** A func request calling ResultSet.getString on the statement. */
+    private StatementFuncRequest mFuncRequest;
+
+
+    /**
+     * Decodes a request.
+     *
+     * @param aRequest the request to encode and decode
+     * @return the decoded request
+     * @exception IOException if an I/O error occurs
+     */
+    private BerObject mDecode(BerObject aRequest) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        aRequest.writeTo(out);
+        return mModule.readFrom(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+
+    /**
+     * Prepares and executes a statement, as a client would.
+     *
+     * @exception IOException if an I/O error occurs
+     * @exception SQLException if a request fails
+     */
+    @Setup
+    public void setUp() throws IOException, SQLException
+    {
+        mModule = (BerDbdModule) BerDbdModule.gBerModule.clone();
+        mModule.setCharacterEncoding("ISO8859_1");
+        Socket socket = new Socket() {
+                public InputStream getInputStream()
+                {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+
+                public OutputStream getOutputStream()
+                {
+                    return new ByteArrayOutputStream();
+                }
+            };
+        mConnection = new Connection(socket, mModule, 
+            new FakeDriver().mConnection);
+
+        PrepareResponse prepared = (PrepareResponse) 
+            mConnection.handleRequest((PrepareRequest) mDecode(
+            new SequenceEncoder(PrepareRequest.gIDENTIFIER, new BerObject[] {
+                new BerOctetString("SELECT * FROM T", "ISO8859_1") })));
+        int handle = ((BerInteger) prepared).intValue();
+
+        String[][] properties = { { "LongReadLen", "80" }, 
+            { "LongTruncOk", "0" }, { "ChopBlanks", "1" },
+            { "jdbc_longreadall", "0" } };
+        for (int i = 0; i < properties.length; i++)
+        {
+            mConnection.handleRequest((SetStatementPropertyRequest) mDecode(
+                new SequenceEncoder(SetStatementPropertyRequest.gIDENTIFIER,
+                new BerObject[] { new BerInteger(handle), 
+                    new BerOctetString(properties[i][0], "ISO8859_1"),
+                    new BerOctetString(properties[i][1], "ISO8859_1") })));
+        }
+        mConnection.handleRequest((ExecuteRequest) mDecode(
+            new SequenceEncoder(ExecuteRequest.gIDENTIFIER, new BerObject[] {
+                new BerInteger(handle), new BerInteger(0) })));
+
+        mFetchRequest = (FetchRequest) mDecode(
+            new IntegerEncoder(FetchRequest.gIDENTIFIER, handle));
+        mFuncRequest = (StatementFuncRequest) mDecode(
+            new SequenceEncoder(StatementFuncRequest.gIDENTIFIER, 
+            new BerObject[] { new BerInteger(handle), 
+                new BerOctetString("ResultSet.getString", "ISO8859_1"),
+                new BerOctetString("2", "ISO8859_1"), 
+                new BerInteger(Types.INTEGER) }));
+    }
+
+
+    /**
+     * Fetches a row and builds its response.
+     *
+     * @return the response
+     * @exception SQLException if the fetch fails
+     */
+    @Benchmark
+    public BerObject fetchRow() throws SQLException
+    {
+        BerObject response = mConnection.handleRequest(mFetchRequest);
+        mModule.getCharacterCodec().reset();
+        return response;
+    }
+
+
+    /**
+     * Calls a ResultSet method through the func interface, as 
+     * <code>$sth->jdbc_func</code> does.
+     *
+     * @return the response
+     * @exception SQLException if the call fails
+     */
+    @Benchmark
+    public BerObject statementFunc() throws SQLException
+    {
+        return mConnection.handleRequest(mFuncRequest);
+    }
+}
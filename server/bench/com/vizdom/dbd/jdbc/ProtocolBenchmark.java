@@ -0,0 +1,318 @@
+/*
+ * Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the packets that dominate typical traffic: 
+ * encoding fetch responses and decoding execute requests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark
+{
+    /** A sequence with the identifier of an execute request. */
+    private static class ExecuteRequestEncoder extends BerSequence
+    {
+        ExecuteRequestEncoder(BerObject[] aSequence)
+        {
+            super(aSequence);
+        }
+
+        public BerIdentifier getIdentifier()
+        {
+            return ExecuteRequest.gIDENTIFIER;
+        }
+    }
+
+
+    /** An endless stream that repeats the same bytes. */
+    private static class RepeatingInputStream extends java.io.InputStream
+    {
+        private final byte[] mBytes;
+        private int mPosition;
+
+        RepeatingInputStream(byte[] aBytes)
+        {
+            mBytes = aBytes;
+        }
+
+        public int read()
+        {
+            int b = mBytes[mPosition++] & 0xFF;
+            if (mPosition == mBytes.length)
+                mPosition = 0;
+            return b;
+        }
+
+        public int read(byte[] aBuffer, int anOffset, int aLength)
+        {
+            int count = Math.min(aLength, mBytes.length - mPosition);
+            System.arraycopy(mBytes, mPosition, aBuffer, anOffset, count);
+            mPosition += count;
+            if (mPosition == mBytes.length)
+                mPosition = 0;
+            return count;
+        }
+    }
+
+
+    /** 
+     * A wide row of text columns, as fetched from a result set, for
+     * each of the common client encodings. 
+     */
+    @State(Scope.Thread)
+    public static class TextRow
+    {
+        /** The character encoding used by the client. */
+        @Param({ "ASCII", "ISO8859_1", "UTF-8" })
+        public String mEncoding;
+
+        /** This connection's module. */
+        BerDbdModule mModule;
+
+        /** The VARCHAR column values. */
+        String[] mColumns;
+
+        /** A LONGVARCHAR column value, as read from its character stream. */
+        char[] mLongColumn;
+
+        @Setup
+        public void setUp() throws IOException
+        {
+            mModule = (BerDbdModule) BerDbdModule.gBerModule.clone();
+            mModule.setCharacterEncoding(mEncoding);
+            mColumns = new String[16];
+            for (int i = 0; i < mColumns.length; i++)
+            {
+                mColumns[i] = "Column " + i + 
+                    ": Stra\u00dfe 12, M\u00fcnchen, Deutschland";
+            }
+            mLongColumn = new char[4000];
+            for (int i = 0; i < mLongColumn.length; i++)
+                mLongColumn[i] = (i % 64 == 63) ? '\n' : (char) ('a' + i % 26);
+        }
+    }
+
+
+    /** The character encoding used by the client. */
+    private static final String sENCODING = "ISO8859_1";
+
+    /** This connection's module. */
+    private BerDbdModule mModule;
+
+    /** The output buffer, reused by the encoding benchmarks. */
+    private ByteArrayOutputStream mOut;
+
+    /** A typical row: numbers, text, dates, a null, and a small LOB. */
+    private Object[] mRow;
+
+    /** An encoded execute request with several parameters. */
+    private byte[] mExecuteEncoding;
+
+    /** A socket-like stream of execute requests, read a byte at a time. */
+    private java.io.BufferedInputStream mBufferedIn;
+
+    /** A socket-like stream of execute requests, read a frame at a time. */
+    private BerFrameReader mFrameReader;
+
+
+    /**
+     * Creates the test data.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        mModule = (BerDbdModule) BerDbdModule.gBerModule.clone();
+        mModule.setCharacterEncoding(sENCODING);
+        mOut = new ByteArrayOutputStream(8192);
+
+        byte[] lob = new byte[512];
+        for (int i = 0; i < lob.length; i++)
+            lob[i] = (byte) i;
+        mRow = new Object[] { "1729", "ACME Widgets, Inc.", "42.50", 
+            "2008-11-05 12:30:00.0", null, "Y", "9223372036854775807",
+            "Springfield", "3.141592653589793", lob };
+
+        BerObject[] request = { new BerInteger(7), new BerInteger(5),
+            new BerOctetString("1729", sENCODING), 
+            new BerInteger(java.sql.Types.INTEGER),
+            new BerOctetString("ACME Widgets, Inc.", sENCODING), 
+            new BerInteger(java.sql.Types.VARCHAR),
+            new BerOctetString("42.50", sENCODING), 
+            new BerInteger(java.sql.Types.DECIMAL),
+            BerModule.NULL, new BerInteger(java.sql.Types.DATE),
+            new BerOctetString("2008-11-05 12:30:00", sENCODING), 
+            new BerInteger(java.sql.Types.TIMESTAMP) };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ExecuteRequestEncoder(request).writeTo(out);
+        mExecuteEncoding = out.toByteArray();
+
+        mBufferedIn = new java.io.BufferedInputStream(
+            new RepeatingInputStream(mExecuteEncoding));
+        mFrameReader = new BerFrameReader(new java.io.BufferedInputStream(
+            new RepeatingInputStream(mExecuteEncoding)), mModule, 65536);
+    }
+
+
+    /**
+     * Encodes a fetch response for one row.
+     *
+     * @return the number of bytes written
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public int encodeFetchResponse() throws IOException
+    {
+        mOut.reset();
+        new FetchResponse(true, mRow, mModule.getCharacterCodec())
+            .writeTo(mOut);
+        mModule.getCharacterCodec().reset();
+        return mOut.size();
+    }
+
+
+    /**
+     * Decodes an execute request and its parameter values.
+     *
+     * @return the number of parameters
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public int decodeExecuteRequest() throws IOException
+    {
+        ExecuteRequest request = (ExecuteRequest) mModule.readFrom(
+            new ByteArrayInputStream(mExecuteEncoding));
+        Parameter[] parameters = request.getParameters();
+        int count = 0;
+        for (int i = 0; i < parameters.length; i++)
+        {
+            if (parameters[i].value != null)
+                count += parameters[i].value.toString().length();
+        }
+        return count;
+    }
+
+
+    /**
+     * Decodes an execute request and converts its numeric parameter
+     * values, as the server does before binding them.
+     *
+     * @return a value depending on the parameters
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public double bindNumericParameters() throws IOException
+    {
+        ExecuteRequest request = (ExecuteRequest) mModule.readFrom(
+            new ByteArrayInputStream(mExecuteEncoding));
+        Parameter[] parameters = request.getParameters();
+        boolean asciiNumbers = 
+            mModule.getCharacterCodec().encodesNumbersAsAscii();
+        double sum = 0;
+        for (int i = 0; i < parameters.length; i++)
+        {
+            switch (parameters[i].type)
+            {
+            case java.sql.Types.INTEGER:
+                sum += parameters[i].intValue(asciiNumbers);
+                break;
+            case java.sql.Types.DECIMAL:
+                sum += parameters[i].bigDecimalValue(asciiNumbers).scale();
+                break;
+            default:
+                break;
+            }
+        }
+        return sum;
+    }
+
+
+    /**
+     * Reads execute requests from a buffered stream, decoding directly
+     * from the stream.
+     *
+     * @return the decoded request
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public BerObject readExecuteRequestFromStream() throws IOException
+    {
+        return mModule.readFrom(mBufferedIn);
+    }
+
+
+    /**
+     * Reads execute requests from a buffered stream a frame at a time,
+     * as the server does.
+     *
+     * @return the decoded request
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public BerObject readExecuteRequestFrame() throws IOException
+    {
+        return mFrameReader.readFrame();
+    }
+
+
+    /**
+     * Encodes a fetch response for a row of text columns.
+     *
+     * @param aRow the row data
+     * @return the number of bytes written
+     * @exception IOException if an I/O error occurs
+     */
+    @Benchmark
+    public int encodeTextFetchResponse(TextRow aRow) throws IOException
+    {
+        Object[] row = new Object[aRow.mColumns.length + 1];
+        System.arraycopy(aRow.mColumns, 0, row, 0, aRow.mColumns.length);
+        row[aRow.mColumns.length] = aRow.mLongColumn;
+
+        mOut.reset();
+        new FetchResponse(true, row, aRow.mModule.getCharacterCodec())
+            .writeTo(mOut);
+        aRow.mModule.getCharacterCodec().reset();
+        return mOut.size();
+    }
+}
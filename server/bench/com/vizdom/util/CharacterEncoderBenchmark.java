@@ -0,0 +1,99 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+package com.vizdom.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the custom single-byte encodings, converting
+ * a column-sized text value in each direction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharacterEncoderBenchmark
+{
+    /** The custom encoding. */
+    @Param({ "HP_Roman8", "DEC_MCS" })
+    public String mEncoding;
+
+    /** About 1 KB of mostly Latin-1 text, with a few wider characters. */
+    private String mText;
+
+    /** The encoded text. */
+    private byte[] mBytes;
+
+
+    /**
+     * Creates the test data.
+     *
+     * @exception UnsupportedEncodingException never
+     */
+    @Setup
+    public void setUp() throws UnsupportedEncodingException
+    {
+        StringBuffer buffer = new StringBuffer();
+        while (buffer.length() < 1024)
+            buffer.append("Stra\u00dfe 12, M\u00fcnchen \u0152uvre \u2014 ");
+        mText = buffer.toString();
+        mBytes = CharacterEncoder.toByteArray(mText, mEncoding);
+    }
+
+
+    /**
+     * Encodes the text.
+     *
+     * @return the encoded text
+     * @exception UnsupportedEncodingException never
+     */
+    @Benchmark
+    public byte[] encode() throws UnsupportedEncodingException
+    {
+        return CharacterEncoder.toByteArray(mText, mEncoding);
+    }
+
+
+    /**
+     * Decodes the text.
+     *
+     * @return the decoded text
+     * @exception UnsupportedEncodingException never
+     */
+    @Benchmark
+    public String decode() throws UnsupportedEncodingException
+    {
+        return CharacterEncoder.toString(mBytes, mEncoding);
+    }
+}
@@ -27,12 +27,12 @@ import java.io.OutputStream;
 import com.vizdom.util.Debug;
 
 /**
- * A BER BOOLEAN.
+ * A BER BOOLEAN. TRUE is encoded as 0xFF, which satisfies the DER,
+ * and any non-zero octet is decoded as TRUE.
  *
  * @author: John Lacey
  * @version: $Revision: 1.11 $
  */
-/* TODO: It would be nice to encode booleans according to the DER. */
 public class BerBoolean extends BerObject
 {
     /** The BOOLEAN identifier, [UNIVERSAL 1]. */
@@ -90,7 +90,7 @@ public class BerBoolean extends BerObject
      */
     protected final void mWriteContents(OutputStream anOut) throws IOException
     {
-        anOut.write(mValue ? 1 : 0);
+        anOut.write(mValue ? 0xFF : 0);
     }
 
 
@@ -108,10 +108,12 @@ public class BerBoolean extends BerObject
     protected void mReadContents(InputStream anIn, BerModule aModule,
         BerIdentifier anIdentifier, int aLength) throws IOException
     {
-        // FIXME: The tests never execute this assertion.
         if (Debug.ASSERT && getClass() == BerBoolean.class)
             Debug.assertTrue(anIdentifier == gIDENTIFIER); // [sic; not equals]
 
+        if (aLength != 1)
+            throw new IOException("Invalid BER BOOLEAN length: " + aLength);
+
         // Read the byte.
         int octet = anIn.read();
         if (octet == -1)
@@ -0,0 +1,124 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.InputStream;
+
+/**
+ * An unsynchronized input stream over a region of a byte array. Unlike
+ * <code>java.io.ByteArrayInputStream</code>, the stream can be pointed
+ * at new data, so one instance can be reused for every frame read
+ * from a connection.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+final class BerByteArrayInputStream extends InputStream
+{
+    /** The byte array being read. */
+    private byte[] mBuffer;
+
+    /** The index of the next byte to read. */
+    private int mPosition;
+
+    /** The index one past the last byte to read. */
+    private int mLimit;
+
+
+    /** Constructs an empty stream. */
+    BerByteArrayInputStream()
+    {
+        mBuffer = new byte[0];
+    }
+
+
+    /**
+     * Points this stream at a region of a byte array.
+     *
+     * @param aBuffer a byte array
+     * @param anOffset the index of the first byte to read
+     * @param aLength the number of bytes to read
+     */
+    void reset(byte[] aBuffer, int anOffset, int aLength)
+    {
+        mBuffer = aBuffer;
+        mPosition = anOffset;
+        mLimit = anOffset + aLength;
+    }
+
+
+    /**
+     * Reads a single byte.
+     *
+     * @return the byte read, or -1 if the end of the region is reached
+     */
+    public int read()
+    {
+        return (mPosition < mLimit) ? (mBuffer[mPosition++] & 0xFF) : -1;
+    }
+
+
+    /**
+     * Reads bytes into <code>aBuffer</code>, starting at 
+     * <code>anOffset</code> and reading up to 
+     * <code>aLength</code> bytes.
+     *
+     * @param aBuffer a byte array into which to read the data
+     * @param anOffset the index in the buffer at which to begin 
+     *      storing the read bytes
+     * @param aLength the maximum number of bytes to read
+     * @return the number of bytes read, or -1 if the end of the 
+     *      region is reached
+     */
+    public int read(byte[] aBuffer, int anOffset, int aLength)
+    {
+        if (mPosition >= mLimit)
+            return (aLength == 0) ? 0 : -1;
+        int count = Math.min(aLength, mLimit - mPosition);
+        System.arraycopy(mBuffer, mPosition, aBuffer, anOffset, count);
+        mPosition += count;
+        return count;
+    }
+
+
+    /**
+     * Skips over bytes in the region.
+     *
+     * @param aCount the number of bytes to skip
+     * @return the number of bytes skipped
+     */
+    public long skip(long aCount)
+    {
+        long count = Math.max(0, Math.min(aCount, mLimit - mPosition));
+        mPosition += (int) count;
+        return count;
+    }
+
+
+    /**
+     * Returns the number of bytes remaining in the region.
+     *
+     * @return the number of bytes remaining
+     */
+    public int available()
+    {
+        return mLimit - mPosition;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.IOException;
+
+/**
+ * A BER DATE, a calendar date encoded in eight octets as YYYYMMDD.
+ * There is no time zone; the date means the same day everywhere,
+ * like an SQL DATE.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public class BerDate extends BerTimeString
+{
+    /** The DATE identifier, [UNIVERSAL 31]. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.PRIMITIVE, BerTypes.DATE);
+
+    /** The year. */
+    private int mYear;
+
+    /** The month, 1 - 12. */
+    private int mMonth;
+
+    /** The day of the month, 1 - 31. */
+    private int mDay;
+
+
+    /** The decoding constructor. */
+    protected BerDate()
+    {
+    }
+
+
+    /** 
+     * The encoding constructor. 
+     * 
+     * @param aYear the year, 0 - 9999
+     * @param aMonth the month, 1 - 12
+     * @param aDay the day of the month, 1 - 31
+     * @throws IllegalArgumentException if a value is out of range
+     */
+    public BerDate(int aYear, int aMonth, int aDay)
+    {
+        if (aYear < 0 || aYear > 9999 || aMonth < 1 || aMonth > 12 ||
+            aDay < 1 || aDay > 31)
+        {
+            throw new IllegalArgumentException("Invalid date: " + aYear + 
+                "-" + aMonth + "-" + aDay);
+        }
+        mYear = aYear;
+        mMonth = aMonth;
+        mDay = aDay;
+    }
+
+
+    /**
+     * Returns the BER identifier for BER DATE, [UNIVERSAL 31].
+     * 
+     * @return the BER identifier for BER DATE, [UNIVERSAL 31]
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+
+    /**
+     * Returns the encoded string for the value of this object.
+     *
+     * @return the encoded string
+     */
+    protected String mFormat()
+    {
+        StringBuffer buffer = new StringBuffer(8);
+        gAppendField(buffer, mYear, 4);
+        gAppendField(buffer, mMonth, 2);
+        gAppendField(buffer, mDay, 2);
+        return buffer.toString();
+    }
+
+
+    /**
+     * Sets the value of this object from the encoded string.
+     *
+     * @param aString the encoded string
+     * @exception IOException if the string is not a valid encoding
+     */
+    protected void mParse(String aString) throws IOException
+    {
+        if (aString.length() != 8)
+            throw new IOException("Invalid BER DATE value: " + aString);
+        mYear = gParseField(aString, 0, 4, 0, 9999);
+        mMonth = gParseField(aString, 4, 2, 1, 12);
+        mDay = gParseField(aString, 6, 2, 1, 31);
+    }
+
+
+    /**
+     * Returns the year.
+     *
+     * @return the year
+     */
+    public int getYear()
+    {
+        return mYear;
+    }
+
+
+    /**
+     * Returns the month, 1 - 12.
+     *
+     * @return the month
+     */
+    public int getMonth()
+    {
+        return mMonth;
+    }
+
+
+    /**
+     * Returns the day of the month, 1 - 31.
+     *
+     * @return the day of the month
+     */
+    public int getDay()
+    {
+        return mDay;
+    }
+
+
+    /**
+     * Returns the date in the format YYYY-MM-DD, which is also the
+     * format of <code>java.sql.Date.toString</code>.
+     * 
+     * @return a string representation of the date
+     */
+    public String toString()
+    {
+        StringBuffer buffer = new StringBuffer(10);
+        gAppendField(buffer, mYear, 4);
+        buffer.append('-');
+        gAppendField(buffer, mMonth, 2);
+        buffer.append('-');
+        gAppendField(buffer, mDay, 2);
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright 1999-2005 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+
+package com.vizdom.ber;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import com.vizdom.util.CharacterCodec;
+
+/**
+ * A BER OCTET STRING whose contents are a string encoded into the
+ * buffer of a <code>CharacterCodec</code>. Unlike 
+ * <code>new BerOctetString(s, enc)</code>, this does not look up the
+ * encoding or allocate a byte array for the string. The encoding is
+ * only valid until the codec is reset, so the object should be 
+ * written before that happens.
+ * <p>
+ * This class is only used for encoding. An OCTET STRING is decoded
+ * as a <code>BerOctetString</code>.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public class BerEncodedString extends BerObject
+{
+    /** The codec holding the encoded string. */
+    private final CharacterCodec mCodec;
+
+    /** The offset of the encoded string in the codec's buffer. */
+    private final int mOffset;
+
+    /** The length of the encoded string. */
+    private final int mLength;
+
+    /** The string, created on demand from <code>mCharacters</code>. */
+    private String mString;
+
+    /** The characters, if this object was created from an array. */
+    private char[] mCharacters;
+
+
+    /**
+     * Constructor. Encodes the string into the codec's buffer.
+     *
+     * @param aString a string
+     * @param aCodec a character codec
+     */
+    public BerEncodedString(String aString, CharacterCodec aCodec)
+    {
+        mCodec = aCodec;
+        mOffset = aCodec.encode(aString);
+        mLength = aCodec.size() - mOffset;
+        mString = aString;
+    }
+
+
+    /**
+     * Constructor. Encodes the characters into the codec's buffer.
+     * The array should not be changed while this object is in use.
+     *
+     * @param aCharacterArray a character array
+     * @param aCodec a character codec
+     */
+    public BerEncodedString(char[] aCharacterArray, CharacterCodec aCodec)
+    {
+        mCodec = aCodec;
+        mOffset = aCodec.encode(aCharacterArray, 0, aCharacterArray.length);
+        mLength = aCodec.size() - mOffset;
+        mCharacters = aCharacterArray;
+    }
+
+
+    /**
+     * Returns the BER identifier for BER OCTET STRING, [UNIVERSAL 4].
+     * 
+     * @return the BER identifier for BER OCTET STRING, [UNIVERSAL 4]
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return BerOctetString.gIDENTIFIER;
+    }
+
+
+    /**
+     * Returns the size of the encoded contents, in bytes.
+     * 
+     * @return the size of the encoded contents, in bytes
+     */
+    protected final int mGetLength()
+    {
+        return mLength;
+    }
+
+
+    /** 
+     * Writes the encoded contents to the output stream.
+     * 
+     * @param anOut an output stream
+     * @exception IOException if an I/O error occurs
+     */
+    protected final void mWriteContents(OutputStream anOut) throws IOException
+    {
+        anOut.write(mCodec.getBuffer(), mOffset, mLength);
+    }
+
+
+    /** 
+     * Throws an exception, since this class is not used for decoding.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     * @exception IOException always
+     */
+    protected void mReadContents(InputStream anIn, BerModule aModule,
+        BerIdentifier anIdentifier, int aLength) throws IOException
+    {
+        throw new IOException(
+            "Encoded strings are decoded as BerOctetString: " + 
+            anIdentifier);
+    }
+
+
+    /**
+     * Returns the string.
+     * 
+     * @return the string
+     */
+    public synchronized String toString()
+    {
+        if (mString == null)
+        {
+            mString = new String(mCharacters);
+            mCharacters = null;
+        }
+        return mString;
+    }
+}
@@ -34,6 +34,23 @@ public class BerEnumerated extends BerInteger
         new BerIdentifier(BerTypes.PRIMITIVE, BerTypes.ENUMERATED);
 
 
+    /** The decoding constructor. */
+    protected BerEnumerated()
+    {
+    }
+
+
+    /** 
+     * The encoding constructor. 
+     * 
+     * @param aValue an int value
+     */
+    public BerEnumerated(int aValue)
+    {
+        super(aValue);
+    }
+
+
     /**
      * Returns the BER identifier for BER ENUMERATED, [UNIVERSAL 10].
      * 
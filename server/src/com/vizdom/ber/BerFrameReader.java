@@ -0,0 +1,227 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.IOException;
+
+/**
+ * Reads top-level BER objects ("frames") from a stream. Only the outer
+ * identifier and length are parsed from the stream; the whole encoding
+ * is then read in bulk into a buffer and decoded from memory, which
+ * avoids pulling every byte through the underlying stream one at a
+ * time. The buffer is reused from frame to frame.
+ * <p>
+ * Frames must use the definite-length form, and a frame longer than
+ * the maximum frame size is rejected before anything is allocated for
+ * it. After such an error the stream is no longer positioned on a
+ * frame boundary.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public class BerFrameReader
+{
+    /** The initial size of the frame buffer. */
+    private static final int gINITIAL_BUFFER_SIZE = 8192;
+
+    /** 
+     * The largest buffer that is kept between frames. Larger frames
+     * get a buffer of their own, so that one large request doesn't
+     * pin that much memory for the life of the connection.
+     */
+    private static final int gMAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /** The most identifier octets accepted (a 32-bit tag number). */
+    private static final int gMAX_IDENTIFIER_LENGTH = 6;
+
+    /** The stream being read. */
+    private final InputStream mIn;
+
+    /** The module used to decode the frames. */
+    private final BerModule mModule;
+
+    /** The largest frame accepted, including the identifier and length. */
+    private final int mMaxFrameSize;
+
+    /** The buffer for the identifier and length octets. */
+    private final byte[] mHeader = new byte[gMAX_IDENTIFIER_LENGTH + 5];
+
+    /** The frame buffer. */
+    private byte[] mBuffer = new byte[gINITIAL_BUFFER_SIZE];
+
+    /** The stream used to decode a frame from the buffer. */
+    private final BerByteArrayInputStream mFrameIn = 
+        new BerByteArrayInputStream();
+
+
+    /**
+     * Constructor.
+     *
+     * @param anIn the stream to read frames from
+     * @param aModule the module used to decode the frames
+     * @param aMaxFrameSize the largest frame accepted, in bytes
+     * @throws IllegalArgumentException if the maximum frame size is
+     *     not positive
+     */
+    public BerFrameReader(InputStream anIn, BerModule aModule, 
+        int aMaxFrameSize)
+    {
+        if (aMaxFrameSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "Invalid maximum frame size: " + aMaxFrameSize);
+        }
+        mIn = anIn;
+        mModule = aModule;
+        mMaxFrameSize = aMaxFrameSize;
+    }
+
+
+    /**
+     * Returns the largest frame accepted, in bytes.
+     *
+     * @return the largest frame accepted, in bytes
+     */
+    public int getMaxFrameSize()
+    {
+        return mMaxFrameSize;
+    }
+
+
+    /**
+     * Reads a single octet of the frame header.
+     *
+     * @return the octet
+     * @exception IOException if an I/O error occurs, or 
+     *     <code>EOFException</code> at the end of the stream
+     */
+    private int mReadHeaderOctet() throws IOException
+    {
+        int octet = mIn.read();
+        if (octet == -1)
+            throw new EOFException();
+        return octet;
+    }
+
+
+    /**
+     * Reads and decodes the next frame.
+     *
+     * @return the decoded object, or <code>null</code> if the stream
+     *     is at EOF on a frame boundary
+     * @exception IOException if an I/O error occurs, the frame is too
+     *     large or uses the indefinite-length form, or the frame's
+     *     contents don't match its length
+     */
+    public BerObject readFrame() throws IOException
+    {
+        byte[] header = mHeader;
+        int headerLength = 0;
+
+        // Copy the identifier octets.
+        int octet = mIn.read();
+        if (octet == -1)
+            return null;
+        header[headerLength++] = (byte) octet;
+        if ((octet & 0x1F) == 0x1F)
+        {
+            do
+            {
+                if (headerLength == gMAX_IDENTIFIER_LENGTH)
+                    throw new IOException("BER identifier too long");
+                octet = mReadHeaderOctet();
+                header[headerLength++] = (byte) octet;
+            }
+            while ((octet & 0x80) == 0x80);
+        }
+
+        // Copy and decode the length octets.
+        octet = mReadHeaderOctet();
+        header[headerLength++] = (byte) octet;
+        long length;
+        if (octet <= 127)
+            length = octet;
+        else if (octet == 0x80)
+        {
+            throw new IOException(
+                "Indefinite-length frames are not supported");
+        }
+        else
+        {
+            int count = octet & 0x7F;
+            if (count > 4)
+                throw new IOException("BER length too long: " + count);
+            length = 0;
+            for (int i = 0; i < count; i++)
+            {
+                octet = mReadHeaderOctet();
+                header[headerLength++] = (byte) octet;
+                length = (length << 8) | octet;
+            }
+        }
+
+        long frameSize = headerLength + length;
+        if (frameSize > mMaxFrameSize)
+        {
+            throw new IOException("Frame of " + frameSize + 
+                " bytes exceeds the maximum frame size of " + mMaxFrameSize);
+        }
+
+        // Read the whole frame into the buffer.
+        int size = (int) frameSize;
+        byte[] buffer = mBuffer;
+        if (size > buffer.length)
+        {
+            int newLength = Math.min(
+                Math.max(buffer.length * 2, size), mMaxFrameSize);
+            buffer = new byte[newLength];
+            if (newLength <= gMAX_RETAINED_BUFFER_SIZE)
+                mBuffer = buffer;
+        }
+        System.arraycopy(header, 0, buffer, 0, headerLength);
+        int count;
+        for (int offset = headerLength; offset < size; offset += count)
+        {
+            count = mIn.read(buffer, offset, size - offset);
+            if (count == -1)
+                throw new EOFException();
+        }
+
+        // Decode the frame from memory.
+        mFrameIn.reset(buffer, 0, size);
+        try
+        {
+            BerObject bero = mModule.readFrom(mFrameIn);
+            if (mFrameIn.available() != 0)
+            {
+                throw new IOException("Frame contents are shorter than " +
+                    "the frame length");
+            }
+            return bero;
+        }
+        finally
+        {
+            // Don't hold on to a buffer that wasn't retained.
+            mFrameIn.reset(mBuffer, 0, 0);
+        }
+    }
+}
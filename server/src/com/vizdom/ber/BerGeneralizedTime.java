@@ -0,0 +1,305 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * A BER GeneralizedTime, a point in time with up to nanosecond
+ * precision. Values are encoded in UTC as YYYYMMDDHHMMSS, followed by
+ * a fraction of a second (if it is not zero) and Z, for example
+ * <code>20081105123000.25Z</code>. Decoding also accepts a time
+ * zone offset or local time, and omitted minutes and seconds.
+ * <p>
+ * The value is represented as a time in milliseconds and a separate
+ * fraction of a second in nanoseconds, like <code>java.sql.Timestamp</code>.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public class BerGeneralizedTime extends BerTimeString
+{
+    /** The GeneralizedTime identifier, [UNIVERSAL 24]. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.PRIMITIVE, BerTypes.GeneralizedTime);
+
+    /** The UTC time zone. */
+    private static final TimeZone gUTC = TimeZone.getTimeZone("GMT");
+
+    /** The time, in milliseconds since the epoch. */
+    private long mTime;
+
+    /** The fraction of a second, in nanoseconds. */
+    private int mNanos;
+
+
+    /** The decoding constructor. */
+    protected BerGeneralizedTime()
+    {
+    }
+
+
+    /** 
+     * The encoding constructor. 
+     * 
+     * @param aTime the time, in milliseconds since the epoch
+     * @param aNanos the fraction of a second, in nanoseconds. The
+     *     milliseconds in <code>aTime</code> are ignored.
+     * @throws IllegalArgumentException if <code>aNanos</code> is 
+     *     out of range, or the year is before 1 or after 9999
+     */
+    public BerGeneralizedTime(long aTime, int aNanos)
+    {
+        if (aNanos < 0 || aNanos > 999999999)
+            throw new IllegalArgumentException("Invalid nanos: " + aNanos);
+
+        Calendar calendar = gNewCalendar(gUTC);
+        calendar.setTimeInMillis(aTime);
+        int year = calendar.get(Calendar.YEAR);
+        if (calendar.get(Calendar.ERA) != GregorianCalendar.AD || 
+            year > 9999)
+        {
+            throw new IllegalArgumentException("Invalid time: " + aTime);
+        }
+
+        mTime = gFloorSeconds(aTime) + aNanos / 1000000;
+        mNanos = aNanos;
+    }
+
+
+    /** 
+     * The encoding constructor, with millisecond precision.
+     * 
+     * @param aTime the time, in milliseconds since the epoch
+     * @throws IllegalArgumentException if the year is before 1 or 
+     *     after 9999
+     */
+    public BerGeneralizedTime(long aTime)
+    {
+        this(aTime, (int) (aTime - gFloorSeconds(aTime)) * 1000000);
+    }
+
+
+    /**
+     * Returns a new proleptic Gregorian calendar in the given time zone.
+     *
+     * @param aTimeZone a time zone
+     * @return a new calendar
+     */
+    private static Calendar gNewCalendar(TimeZone aTimeZone)
+    {
+        GregorianCalendar calendar = new GregorianCalendar(aTimeZone);
+        calendar.setGregorianChange(new java.util.Date(Long.MIN_VALUE));
+        calendar.setLenient(false);
+        return calendar;
+    }
+
+
+    /**
+     * Rounds a time in milliseconds down to a whole second.
+     *
+     * @param aTime the time, in milliseconds since the epoch
+     * @return the time at the start of that second
+     */
+    private static long gFloorSeconds(long aTime)
+    {
+        long remainder = aTime % 1000;
+        return (remainder < 0) ? aTime - remainder - 1000 : aTime - remainder;
+    }
+
+
+    /**
+     * Returns the BER identifier for BER GeneralizedTime, [UNIVERSAL 24].
+     * 
+     * @return the BER identifier for BER GeneralizedTime, [UNIVERSAL 24]
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+
+    /**
+     * Returns the encoded string for the value of this object.
+     *
+     * @return the encoded string
+     */
+    protected String mFormat()
+    {
+        Calendar calendar = gNewCalendar(gUTC);
+        calendar.setTimeInMillis(mTime);
+
+        StringBuffer buffer = new StringBuffer(25);
+        gAppendField(buffer, calendar.get(Calendar.YEAR), 4);
+        gAppendField(buffer, calendar.get(Calendar.MONTH) + 1, 2);
+        gAppendField(buffer, calendar.get(Calendar.DAY_OF_MONTH), 2);
+        gAppendField(buffer, calendar.get(Calendar.HOUR_OF_DAY), 2);
+        gAppendField(buffer, calendar.get(Calendar.MINUTE), 2);
+        gAppendField(buffer, calendar.get(Calendar.SECOND), 2);
+        if (mNanos != 0)
+        {
+            // Write the fraction without trailing zeros.
+            int nanos = mNanos;
+            int width = 9;
+            while (nanos % 10 == 0)
+            {
+                nanos /= 10;
+                --width;
+            }
+            buffer.append('.');
+            gAppendField(buffer, nanos, width);
+        }
+        buffer.append('Z');
+        return buffer.toString();
+    }
+
+
+    /**
+     * Sets the value of this object from the encoded string.
+     *
+     * @param aString the encoded string
+     * @exception IOException if the string is not a valid encoding
+     */
+    protected void mParse(String aString) throws IOException
+    {
+        int year = gParseField(aString, 0, 4, 0, 9999);
+        int month = gParseField(aString, 4, 2, 1, 12);
+        int day = gParseField(aString, 6, 2, 1, 31);
+        int hour = gParseField(aString, 8, 2, 0, 23);
+        int minute = 0;
+        int second = 0;
+        int nanos = 0;
+        int index = 10;
+        int length = aString.length();
+
+        // The minutes and seconds are optional.
+        if (index < length && Character.isDigit(aString.charAt(index)))
+        {
+            minute = gParseField(aString, index, 2, 0, 59);
+            index += 2;
+            if (index < length && Character.isDigit(aString.charAt(index)))
+            {
+                second = gParseField(aString, index, 2, 0, 60);
+                index += 2;
+
+                // So is the fraction of a second. We don't support
+                // fractions of hours or minutes.
+                if (index < length && (aString.charAt(index) == '.' ||
+                    aString.charAt(index) == ','))
+                {
+                    int start = ++index;
+                    while (index < length && 
+                        Character.isDigit(aString.charAt(index)))
+                    {
+                        ++index;
+                    }
+                    int width = index - start;
+                    if (width == 0)
+                    {
+                        throw new IOException(
+                            "Invalid BER GeneralizedTime value: " + aString);
+                    }
+                    if (width > 9)
+                        width = 9;
+                    nanos = gParseField(aString, start, width, 0, 999999999);
+                    for (int i = width; i < 9; i++)
+                        nanos *= 10;
+                }
+            }
+        }
+
+        // The time zone is either Z, an offset, or omitted for local time.
+        TimeZone timeZone;
+        if (index == length)
+            timeZone = TimeZone.getDefault();
+        else if (aString.charAt(index) == 'Z' && index + 1 == length)
+            timeZone = gUTC;
+        else if ((aString.charAt(index) == '+' || 
+            aString.charAt(index) == '-') && 
+            (index + 3 == length || index + 5 == length))
+        {
+            int offset = gParseField(aString, index + 1, 2, 0, 23) * 60;
+            if (index + 5 == length)
+                offset += gParseField(aString, index + 3, 2, 0, 59);
+            if (aString.charAt(index) == '-')
+                offset = -offset;
+            timeZone = new java.util.SimpleTimeZone(offset * 60000, "");
+        }
+        else
+        {
+            throw new IOException(
+                "Invalid BER GeneralizedTime value: " + aString);
+        }
+
+        Calendar calendar = gNewCalendar(timeZone);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, 
+            Math.min(second, 59));
+        try
+        {
+            // Leap seconds are folded into the following second.
+            mTime = calendar.getTimeInMillis() + (second == 60 ? 1000 : 0) +
+                nanos / 1000000;
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException(
+                "Invalid BER GeneralizedTime value: " + aString);
+        }
+        mNanos = nanos;
+    }
+
+
+    /**
+     * Returns the time, in milliseconds since the epoch.
+     *
+     * @return the time, in milliseconds since the epoch
+     */
+    public long getTime()
+    {
+        return mTime;
+    }
+
+
+    /**
+     * Returns the fraction of a second, in nanoseconds.
+     *
+     * @return the fraction of a second, in nanoseconds
+     */
+    public int getNanos()
+    {
+        return mNanos;
+    }
+
+
+    /**
+     * Returns the encoded string, for example 
+     * <code>20081105123000.25Z</code>.
+     * 
+     * @return a string representation of the time
+     */
+    public String toString()
+    {
+        return mFormat();
+    }
+}
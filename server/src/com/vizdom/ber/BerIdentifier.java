@@ -93,6 +93,9 @@ public class BerIdentifier
             case BerTypes.END_OF_CONTENTS:
                 return BerModule.gEND_OF_CONTENTS_IDENTIFIER;
 
+            case BerTypes.BOOLEAN:
+                return BerBoolean.gIDENTIFIER;
+
             case BerTypes.INTEGER:
                 return BerInteger.gIDENTIFIER;
 
@@ -102,11 +105,27 @@ public class BerIdentifier
             case BerTypes.NULL:
                 return BerNull.gIDENTIFIER;
             
+            case BerTypes.REAL:
+                return BerReal.gIDENTIFIER;
+
+            case BerTypes.ENUMERATED:
+                return BerEnumerated.gIDENTIFIER;
+
             case BerTypes.SEQUENCE:
                 return BerSequence.gIDENTIFIER;
 
+            case BerTypes.GeneralizedTime:
+                return BerGeneralizedTime.gIDENTIFIER;
+
+            case BerTypes.DATE:
+                return BerDate.gIDENTIFIER;
+
+            case BerTypes.TIME_OF_DAY:
+                return BerTimeOfDay.gIDENTIFIER;
+
             default:
-                throw new UnreachableCodeException(tagNumber);
+                // Let BerModule.readFrom report the unimplemented type.
+                return new BerIdentifier(form, tagNumber);
             }
         }
         else
@@ -179,7 +198,7 @@ public class BerIdentifier
         mTagClass = BerTypes.UNIVERSAL;
         mForm = aForm;
         mTagNumber = aTagNumber;
-        mEncodedOctets = BerTypes.UNIVERSAL | aForm | aTagNumber;
+        mEncodedOctets = mEncodeOctets();
     }
 
 
@@ -28,23 +28,18 @@ import com.vizdom.util.Debug;
 
 /**
  * A BER INTEGER. BER does not restrict the size of integers,
- * but this implementation restricts them to 32 bits.
+ * but this implementation restricts them to 32 bits. Larger values
+ * are handled by <code>BerLong</code>.
  *
  * @author: John Lacey
  * @version: $Revision: 1.15 $
  */
 /*
- * There is no reason why integers couldn't be extended to 64 bits.
- * The only real issue is performance. Ideally, separate classes
- * could be introduced for handling larger integers as longs and even
- * BigIntegers. 
- * 
- * Both encoding and decoding are straightforward. Encoding is trivial. 
- * Decoding would involve some work to decide which class to instantiate. 
- * The encoded length, however, is sufficient, since integers are required
- * by the BER to be encoded in the fewest number of octets. The set of 
- * BER INTEGER values that are encoded in four or fewer bytes is the same
- * as the set of values representable as a 32-bit signed integer.
+ * BerModule decides which class to instantiate from the encoded length,
+ * since integers are required by the BER to be encoded in the fewest
+ * number of octets. The set of BER INTEGER values that are encoded in
+ * four or fewer bytes is the same as the set of values representable
+ * as a 32-bit signed integer. Longer encodings are decoded as BerLong.
  */
 public class BerInteger extends BerObject
 {
@@ -198,6 +193,17 @@ public class BerInteger extends BerObject
     }
 
 
+    /**
+     * Gets the value of this encoded BER object as a <code>long</code>
+     *
+     * @return the integer value
+     */
+    public long longValue()
+    {
+        return mValue;
+    }
+
+
     /**
      * Returns a string representation of the integer value.
      * 
@@ -0,0 +1,161 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A BER INTEGER with a 64-bit value. <code>BerModule</code> decodes
+ * INTEGER values encoded in five to eight octets as instances of this
+ * class; values that fit in four octets are still decoded as
+ * <code>BerInteger</code>, since the BER requires integers to be
+ * encoded in the fewest number of octets.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public class BerLong extends BerObject
+{
+    /** The underlying long value of this BER INTEGER. */
+    private long mValue;
+
+
+    /** The decoding constructor. */
+    protected BerLong()
+    {
+    }
+
+
+    /** 
+     * The encoding constructor. 
+     * 
+     * @param aValue a long value
+     */
+    public BerLong(long aValue)
+    {
+        mValue = aValue;
+    }
+
+
+    /**
+     * Returns the BER identifier for BER INTEGER, [UNIVERSAL 2].
+     * 
+     * @return the BER identifier for BER INTEGER, [UNIVERSAL 2]
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return BerInteger.gIDENTIFIER;
+    }
+
+
+    /**
+     * Returns the size of the encoded contents, in bytes.
+     * 
+     * @return the size of the encoded contents, in bytes
+     */
+    protected final int mGetLength()
+    {
+        // Count the octets needed for the magnitude, plus one if the
+        // high bit of the last octet doesn't match the sign.
+        int count = 1;
+        for (long n = mValue; n < -128 || n > 127; n >>= 8)
+            ++count;
+        return count;
+    }
+
+
+    /** 
+     * Writes the encoded contents to the output stream.
+     * 
+     * @param anOut an output stream
+     * @exception IOException if an I/O error occurs
+     */
+    protected final void mWriteContents(OutputStream anOut) throws IOException
+    {
+        for (int i = (mGetLength() - 1) * 8; i >= 0; i -= 8)
+            anOut.write((int) (mValue >> i) & 0xFF);
+    }
+
+
+    /** 
+     * Reads the encoded contents from the input stream.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     *
+     * @exception IOException if an I/O error occurs. In particular,
+     *     an <code>EOFException</code> may be thrown if the end of
+     *     stream is reached before the contents have been fully read
+     */
+    protected void mReadContents(InputStream anIn, BerModule aModule,
+        BerIdentifier anIdentifier, int aLength) throws IOException
+    {
+        if (aLength < 1 || aLength > 8)
+            throw new IOException("Invalid BER INTEGER length: " + aLength);
+
+        // Read the first byte.
+        int octet = anIn.read();
+        if (octet == -1)
+            throw new EOFException();
+
+        // Sign-extend the first byte.
+        long n = (byte) octet;
+
+        // Read the remaining bytes.
+        for (int i = 1; i < aLength; i++)
+        {
+            octet = anIn.read();
+            if (octet == -1)
+                throw new EOFException();
+
+            n <<= 8;
+            n |= octet;
+        }
+
+        mValue = n;
+    }
+
+
+    /**
+     * Gets the value of this encoded BER object as a <code>long</code>
+     *
+     * @return the long value
+     */
+    public long longValue()
+    {
+        return mValue;
+    }
+
+
+    /**
+     * Returns a string representation of the integer value.
+     * 
+     * @return a string representation of the integer value
+     */
+    public String toString()
+    {
+        return String.valueOf(mValue);
+    }
+}
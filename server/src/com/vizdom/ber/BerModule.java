@@ -28,8 +28,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import com.vizdom.util.CharacterEncoder;
+import com.vizdom.util.CharacterCodec;
 import com.vizdom.util.Debug;
+import com.vizdom.util.UnreachableCodeException;
 
 /**
  * A BER module is a collection of types. All modules implicitly contain 
@@ -86,6 +87,18 @@ public class BerModule
     /** The character encoding in use for BER OCTET STRING values. */
     private String mCharacterEncoding;
 
+    /** The codec for <code>mCharacterEncoding</code>. */
+    private CharacterCodec mCharacterCodec;
+
+    /** The strings used to seed each new string cache. */
+    private List<String> mCommonStrings = new ArrayList<String>();
+
+    /** 
+     * The cache of decoded strings, created on demand. This is 
+     * specific to a module instance and its character encoding.
+     */
+    private BerStringCache mStringCache;
+
 
     /** Constructor. */
     public BerModule()
@@ -134,6 +147,77 @@ public class BerModule
     }
 
 
+    /**
+     * Registers a string that is expected to be decoded often, such as
+     * a property name. Canonical instances returned by the string cache
+     * for these strings will be the given instance.
+     *
+     * @param aString a string
+     * @throws NullPointerException if the string is <code>null</code>
+     */
+    public void registerCommonString(String aString)
+    {
+        if (aString == null)
+            throw new NullPointerException();
+        mCommonStrings.add(aString);
+        mStringCache = null;
+    }
+
+
+    /**
+     * Returns the cache of decoded strings for this module. Modules
+     * copied with <code>clone</code> do not share a cache.
+     *
+     * @return the string cache
+     */
+    public BerStringCache getStringCache()
+    {
+        if (mStringCache == null)
+        {
+            BerStringCache cache = new BerStringCache();
+            if (mCharacterCodec != null)
+            {
+                for (int i = 0; i < mCommonStrings.size(); i++)
+                {
+                    String s = mCommonStrings.get(i);
+                    cache.put(s, mCharacterCodec.toByteArray(s));
+                }
+            }
+            mStringCache = cache;
+        }
+        return mStringCache;
+    }
+
+
+    /**
+     * Creates a copy of this module that shares the registered types
+     * but not the string cache or character codec.
+     *
+     * @return a copy of this module
+     * @exception CloneNotSupportedException if the subclass does not
+     *     implement <code>Cloneable</code>
+     */
+    protected Object clone() throws CloneNotSupportedException
+    {
+        BerModule module = (BerModule) super.clone();
+        module.mStringCache = null;
+        if (mCharacterCodec != null)
+        {
+            try
+            {
+                module.mCharacterCodec = 
+                    new CharacterCodec(mCharacterEncoding);
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                // setCharacterEncoding checked the encoding.
+                throw new UnreachableCodeException(e);
+            }
+        }
+        return module;
+    }
+
+
     /**
      * Sets the character encoding for BER OCTET STRING values.
      * 
@@ -144,9 +228,13 @@ public class BerModule
     public void setCharacterEncoding(String encoding)
         throws UnsupportedEncodingException
     {
-        // Make sure the character encoding is supported by this JVM.
-        CharacterEncoder.toByteArray("hello", encoding);
+        // Resolve the character encoding once, which also makes sure
+        // it is supported by this JVM.
+        mCharacterCodec = new CharacterCodec(encoding);
         mCharacterEncoding = encoding;
+
+        // The cached strings were decoded with the old encoding.
+        mStringCache = null;
     }
 
 
@@ -166,6 +254,22 @@ public class BerModule
     }
 
 
+    /**
+     * Gets the codec for the character encoding for BER OCTET STRING
+     * values. Each module copy has its own codec, which is replaced
+     * when the character encoding is changed.
+     * 
+     * @return a character codec
+     */
+    public CharacterCodec getCharacterCodec()
+    {
+        if (Debug.ASSERT)
+            Debug.assertTrue(mCharacterCodec != null);
+
+        return mCharacterCodec;
+    }
+
+
     /**
      * Returns a new BER object decoded from the input stream.
      * 
@@ -183,8 +287,15 @@ public class BerModule
         if (identifier == null)
             return null;
 
-        // Read the length.
+        // Read the length. Only constructed encodings may use the
+        // indefinite form.
         int length = BerObject.gReadLength(anIn);
+        if (length == BerObject.INDEFINITE_LENGTH &&
+            identifier.getForm() != BerTypes.CONSTRUCTED)
+        {
+            throw new IOException(
+                "Indefinite length on a primitive encoding: " + identifier);
+        }
         
         // Decide which BerObject to instantiate from the contents.
         // First, try the universal types.
@@ -193,12 +304,27 @@ public class BerModule
             BerObject o;
             switch (identifier.getTagNumber())
             {
+            case BerTypes.END_OF_CONTENTS:
+                // Return the end-of-contents marker, which terminates
+                // the contents of an indefinite-length encoding.
+                if (length != 0)
+                {
+                    throw new IOException(
+                        "Invalid end-of-contents length: " + length);
+                }
+                return END_OF_CONTENTS;
+
             case BerTypes.BOOLEAN:
                 o = new BerBoolean();
                 break;
 
             case BerTypes.INTEGER:
-                o = new BerInteger();
+                // BER integers are encoded in the fewest octets, so
+                // the length tells us whether the value fits in an int.
+                if (length > 4)
+                    o = new BerLong();
+                else
+                    o = new BerInteger();
                 break;
 
             case BerTypes.OCTET_STRING:
@@ -210,6 +336,10 @@ public class BerModule
                 o = NULL;
                 break;
 
+            case BerTypes.REAL:
+                o = new BerReal();
+                break;
+
             case BerTypes.ENUMERATED:
                 o = new BerEnumerated();
                 break;
@@ -218,6 +348,18 @@ public class BerModule
                 o = new BerSequence();
                 break;
 
+            case BerTypes.GeneralizedTime:
+                o = new BerGeneralizedTime();
+                break;
+
+            case BerTypes.DATE:
+                o = new BerDate();
+                break;
+
+            case BerTypes.TIME_OF_DAY:
+                o = new BerTimeOfDay();
+                break;
+
             default:
                 // ??? BerException?
                 throw new IOException(
@@ -39,11 +39,22 @@ import java.io.IOException;
  */
 public abstract class BerObject
 {
+    /**
+     * The length returned by <code>mGetLength</code> and passed to
+     * <code>mReadContents</code> for an indefinite-length encoding.
+     * The contents of such an encoding are terminated by
+     * <code>BerModule.END_OF_CONTENTS</code> rather than preceded by
+     * their length. Only constructed encodings may use the indefinite
+     * form.
+     */
+    public static final int INDEFINITE_LENGTH = -1;
+
+
     /**
      * Reads the encoded length from the input stream.
      * 
      * @param anIn an input stream
-     * @return the decoded length
+     * @return the decoded length, or <code>INDEFINITE_LENGTH</code>
      * @exception IOException if an I/O error occurs. In particular,
      *     an <code>EOFException</code> may be thrown if the end of
      *     stream is reached before the length has been fully read
@@ -56,9 +67,13 @@ public abstract class BerObject
 
         if (octet <= 127)
             return octet;
+        else if (octet == 0x80)
+            return INDEFINITE_LENGTH;
         else
         {
             int count = (octet & 0x7F);
+            if (count > 4)
+                throw new IOException("BER length too long: " + count);
             int length = 0;
             for (int i = 0; i < count; i++)
             {
@@ -68,6 +83,8 @@ public abstract class BerObject
 
                 length = (length << 8) | octet;
             }
+            if (length < 0)
+                throw new IOException("BER length too long: " + length);
             return length;
         }
     }
@@ -121,21 +138,45 @@ public abstract class BerObject
     public final void writeTo(java.io.OutputStream anOut)
         throws IOException
     {
+        BerIdentifier identifier = getIdentifier();
+        int length = mGetLength();
+
         // Write the identifier.
-        getIdentifier().mWrite(anOut);
+        identifier.mWrite(anOut);
 
-        // Write the length.
-        gWriteLength(mGetLength(), anOut);
+        if (length == INDEFINITE_LENGTH)
+        {
+            if (identifier.getForm() != BerTypes.CONSTRUCTED)
+            {
+                throw new IllegalStateException(
+                    "Indefinite length on a primitive encoding: " + 
+                    identifier);
+            }
+
+            // Write the indefinite length, the contents, and the
+            // end-of-contents marker.
+            anOut.write(0x80);
+            mWriteContents(anOut);
+            BerModule.END_OF_CONTENTS.writeTo(anOut);
+        }
+        else
+        {
+            // Write the length.
+            gWriteLength(length, anOut);
         
-        // Write the contents.
-        mWriteContents(anOut);
+            // Write the contents.
+            mWriteContents(anOut);
+        }
     }
 
 
     /**
-     * Returns the size of the encoded contents, in bytes.
+     * Returns the size of the encoded contents, in bytes. Constructed
+     * types may return <code>INDEFINITE_LENGTH</code> to have their
+     * contents written without computing the size first.
      * 
-     * @return the size of the encoded contents, in bytes
+     * @return the size of the encoded contents, in bytes, or
+     *     <code>INDEFINITE_LENGTH</code>
      */
     protected abstract int mGetLength();
 
@@ -156,7 +197,9 @@ public abstract class BerObject
      * @param anIn an input stream
      * @param aModule a BER module for reading constructed encodings
      * @param anIdentifier the BER identifier of the encoded object
-     * @param aLength the length in bytes of the encoded contents
+     * @param aLength the length in bytes of the encoded contents, or
+     *     <code>INDEFINITE_LENGTH</code> for a constructed encoding
+     *     terminated by <code>BerModule.END_OF_CONTENTS</code>
      * 
      * @exception IOException if an I/O error occurs. In particular,
      *     an <code>EOFException</code> may be thrown if the end of
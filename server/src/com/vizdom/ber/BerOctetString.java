@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import com.vizdom.util.CharacterCodec;
 import com.vizdom.util.CharacterEncoder;
 import com.vizdom.util.Debug;
 import com.vizdom.util.UnreachableCodeException;
@@ -57,6 +58,12 @@ public class BerOctetString extends BerObject
      * platform default encoding will be used.
      */
     private String mCharacterEncoding;
+
+    /**
+     * The codec of the module this string was decoded with, which is
+     * used in place of <code>mCharacterEncoding</code> if it is set.
+     */
+    private CharacterCodec mCharacterCodec;
     
 
     /** The decoding constructor. */
@@ -186,6 +193,7 @@ public class BerOctetString extends BerObject
         }
 
         mCharacterEncoding = aModule.getCharacterEncoding();
+        mCharacterCodec = aModule.getCharacterCodec();
         mString = null;
     }
 
@@ -202,6 +210,19 @@ public class BerOctetString extends BerObject
     }
 
 
+    /**
+     * Sets the string value of this object. This is used by
+     * <code>BerStringCache</code> to substitute a canonical instance
+     * for a string with the same bytes.
+     *
+     * @param aString the string value of <code>mByteArray</code>
+     */
+    synchronized void mSetString(String aString)
+    {
+        mString = aString;
+    }
+
+
     /**
      * Returns a string representation of the object.
      * 
@@ -217,6 +238,11 @@ public class BerOctetString extends BerObject
         {
             if (mByteArray.length == 0)
                 mString = "";
+            else if (mCharacterCodec != null)
+            {
+                mString = mCharacterCodec.toString(mByteArray, 0, 
+                    mByteArray.length);
+            }
             else if (mCharacterEncoding == null)
                 mString = new String(mByteArray);
             else
@@ -0,0 +1,369 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import com.vizdom.util.Debug;
+
+/**
+ * A BER REAL, holding an IEEE 754 double. Values are encoded in the
+ * binary form with base 2, a zero scaling factor, and an odd mantissa,
+ * which is also the DER encoding. Decoding accepts the binary form in
+ * bases 2, 8 and 16, the decimal (ISO 6093) forms, and the special
+ * real values.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public class BerReal extends BerObject
+{
+    /** The REAL identifier, [UNIVERSAL 9]. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.PRIMITIVE, BerTypes.REAL);
+
+    /** The contents octet for PLUS-INFINITY. */
+    private static final int gPLUS_INFINITY = 0x40;
+
+    /** The contents octet for MINUS-INFINITY. */
+    private static final int gMINUS_INFINITY = 0x41;
+
+    /** The contents octet for NOT-A-NUMBER. */
+    private static final int gNOT_A_NUMBER = 0x42;
+
+    /** The contents octet for minus zero. */
+    private static final int gMINUS_ZERO = 0x43;
+
+    /** The underlying double value of this BER REAL. */
+    private double mValue;
+
+
+    /** The decoding constructor. */
+    protected BerReal()
+    {
+    }
+
+
+    /** 
+     * The encoding constructor. 
+     * 
+     * @param aValue a double value
+     */
+    public BerReal(double aValue)
+    {
+        mValue = aValue;
+    }
+
+
+    /**
+     * Returns the BER identifier for BER REAL, [UNIVERSAL 9].
+     * 
+     * @return the BER identifier for BER REAL, [UNIVERSAL 9]
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+
+    /**
+     * Returns the number of octets needed to encode the given value
+     * as a two's complement integer.
+     *
+     * @param aValue an integer value
+     * @return the number of octets in the minimal encoding
+     */
+    private static int gSignedLength(long aValue)
+    {
+        int count = 1;
+        for (long n = aValue; n < -128 || n > 127; n >>= 8)
+            ++count;
+        return count;
+    }
+
+
+    /**
+     * Returns the number of octets needed to encode the given value
+     * as an unsigned integer.
+     *
+     * @param aValue a non-negative integer value
+     * @return the number of octets in the minimal encoding
+     */
+    private static int gUnsignedLength(long aValue)
+    {
+        int count = 1;
+        for (long n = aValue >>> 8; n != 0; n >>>= 8)
+            ++count;
+        return count;
+    }
+
+
+    /**
+     * Returns the odd mantissa of this value, in the low bits of
+     * a long.
+     *
+     * @return the mantissa
+     */
+    private long mGetMantissa()
+    {
+        long bits = Double.doubleToLongBits(mValue);
+        long mantissa = bits & 0x000FFFFFFFFFFFFFL;
+        if ((bits & 0x7FF0000000000000L) != 0)
+            mantissa |= 0x0010000000000000L;
+        return mantissa >>> Long.numberOfTrailingZeros(mantissa);
+    }
+
+
+    /**
+     * Returns the base 2 exponent of this value to go with the
+     * odd mantissa.
+     *
+     * @return the exponent
+     */
+    private int mGetExponent()
+    {
+        long bits = Double.doubleToLongBits(mValue);
+        int biasedExponent = (int) ((bits >> 52) & 0x7FF);
+        long mantissa = bits & 0x000FFFFFFFFFFFFFL;
+        if (biasedExponent == 0)
+            biasedExponent = 1;
+        else
+            mantissa |= 0x0010000000000000L;
+        return biasedExponent - 1075 + Long.numberOfTrailingZeros(mantissa);
+    }
+
+
+    /**
+     * Returns the size of the encoded contents, in bytes.
+     * 
+     * @return the size of the encoded contents, in bytes
+     */
+    protected final int mGetLength()
+    {
+        if (mValue == 0.0 && Double.doubleToRawLongBits(mValue) == 0)
+            return 0;
+        else if (Double.isNaN(mValue) || Double.isInfinite(mValue) || 
+            mValue == 0.0)
+        {
+            return 1;
+        }
+        else
+        {
+            // The exponent of a double always fits in two octets.
+            return 1 + gSignedLength(mGetExponent()) + 
+                gUnsignedLength(mGetMantissa());
+        }
+    }
+
+
+    /** 
+     * Writes the encoded contents to the output stream.
+     * 
+     * @param anOut an output stream
+     * @exception IOException if an I/O error occurs
+     */
+    protected final void mWriteContents(OutputStream anOut) throws IOException
+    {
+        if (Double.isNaN(mValue))
+            anOut.write(gNOT_A_NUMBER);
+        else if (Double.isInfinite(mValue))
+            anOut.write(mValue > 0 ? gPLUS_INFINITY : gMINUS_INFINITY);
+        else if (mValue == 0.0)
+        {
+            // Positive zero has no contents octets.
+            if (Double.doubleToRawLongBits(mValue) != 0)
+                anOut.write(gMINUS_ZERO);
+        }
+        else
+        {
+            int exponent = mGetExponent();
+            long mantissa = mGetMantissa();
+            int exponentLength = gSignedLength(exponent);
+
+            // Binary encoding, sign, base 2, F = 0, and the exponent
+            // length (the one and two octet forms are 0 and 1).
+            int octet = 0x80 | (exponentLength - 1);
+            if (mValue < 0)
+                octet |= 0x40;
+            anOut.write(octet);
+
+            for (int i = (exponentLength - 1) * 8; i >= 0; i -= 8)
+                anOut.write((exponent >> i) & 0xFF);
+            for (int i = (gUnsignedLength(mantissa) - 1) * 8; i >= 0; i -= 8)
+                anOut.write((int) (mantissa >>> i) & 0xFF);
+        }
+    }
+
+
+    /** 
+     * Reads the encoded contents from the input stream.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     *
+     * @exception IOException if an I/O error occurs. In particular,
+     *     an <code>EOFException</code> may be thrown if the end of
+     *     stream is reached before the contents have been fully read
+     */
+    protected void mReadContents(InputStream anIn, BerModule aModule,
+        BerIdentifier anIdentifier, int aLength) throws IOException
+    {
+        if (Debug.ASSERT && getClass() == BerReal.class)
+            Debug.assertTrue(anIdentifier == gIDENTIFIER); // [sic; not equals]
+
+        if (aLength == 0)
+        {
+            mValue = 0.0;
+            return;
+        }
+
+        byte[] contents = new byte[aLength];
+        for (int count = 0; count < aLength; )
+        {
+            int n = anIn.read(contents, count, aLength - count);
+            if (n == -1)
+                throw new EOFException();
+            count += n;
+        }
+
+        int octet = contents[0] & 0xFF;
+        if ((octet & 0x80) != 0)
+            mValue = gDecodeBinary(contents);
+        else if ((octet & 0x40) != 0)
+        {
+            if (aLength != 1)
+                throw new IOException("Invalid BER REAL special value");
+            switch (octet)
+            {
+            case gPLUS_INFINITY: mValue = Double.POSITIVE_INFINITY; break;
+            case gMINUS_INFINITY: mValue = Double.NEGATIVE_INFINITY; break;
+            case gNOT_A_NUMBER: mValue = Double.NaN; break;
+            case gMINUS_ZERO: mValue = -0.0; break;
+            default:
+                throw new IOException(
+                    "Unknown BER REAL special value: " + octet);
+            }
+        }
+        else
+        {
+            // Decimal encoding; NR1, NR2 and NR3 are all accepted by
+            // parseDouble once a decimal comma is replaced.
+            String number = new String(contents, 1, aLength - 1, 
+                "ISO-8859-1").trim().replace(',', '.');
+            try
+            {
+                mValue = Double.parseDouble(number);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("Invalid BER REAL decimal value: " +
+                    number);
+            }
+        }
+    }
+
+
+    /**
+     * Decodes the binary form of a REAL.
+     *
+     * @param aContents the contents octets
+     * @return the decoded value
+     * @exception IOException if the encoding is invalid or too large
+     */
+    private static double gDecodeBinary(byte[] aContents) throws IOException
+    {
+        int octet = aContents[0] & 0xFF;
+        int baseShift;
+        switch ((octet >> 4) & 0x03)
+        {
+        case 0: baseShift = 1; break;
+        case 1: baseShift = 3; break;
+        case 2: baseShift = 4; break;
+        default:
+            throw new IOException("Reserved BER REAL base");
+        }
+        int scale = (octet >> 2) & 0x03;
+
+        // Find the exponent octets.
+        int index = 1;
+        int exponentLength = (octet & 0x03) + 1;
+        if (exponentLength == 4)
+        {
+            if (aContents.length < 2)
+                throw new IOException("Truncated BER REAL exponent");
+            exponentLength = aContents[index++] & 0xFF;
+        }
+        if (exponentLength > 4 || index + exponentLength > aContents.length)
+            throw new IOException("Invalid BER REAL exponent length");
+
+        int exponent = aContents[index++];
+        for (int i = 1; i < exponentLength; i++)
+            exponent = (exponent << 8) | (aContents[index++] & 0xFF);
+
+        // The mantissa is the rest, as an unsigned integer. Skip
+        // leading zero octets before deciding whether it fits.
+        while (index < aContents.length && aContents[index] == 0)
+            ++index;
+        if (aContents.length - index > 8)
+            throw new IOException("BER REAL mantissa too long");
+        long mantissa = 0;
+        for (; index < aContents.length; index++)
+            mantissa = (mantissa << 8) | (aContents[index] & 0xFF);
+
+        double value = (mantissa >= 0) ? (double) mantissa :
+            (double) (mantissa >>> 1) * 2.0;
+        long scaleFactor = (long) exponent * baseShift + scale;
+        if (mantissa == 0)
+            value = 0.0;
+        else if (scaleFactor > 4096)
+            value = Double.POSITIVE_INFINITY;
+        else if (scaleFactor < -4096)
+            value = 0.0;
+        else
+            value = Math.scalb(value, (int) scaleFactor);
+        return ((octet & 0x40) != 0) ? -value : value;
+    }
+
+
+    /**
+     * Gets the value of this encoded BER object as a <code>double</code>
+     *
+     * @return the double value
+     */
+    public double doubleValue()
+    {
+        return mValue;
+    }
+
+
+    /**
+     * Returns a string representation of the double value.
+     * 
+     * @return a string representation of the double value
+     */
+    public String toString()
+    {
+        return String.valueOf(mValue);
+    }
+}
@@ -140,7 +140,8 @@ public class BerSequence extends BerObject
      * @param anIn an input stream
      * @param aModule a BER module for reading constructed encodings
      * @param anIdentifier the BER identifier of the encoded object
-     * @param aLength the length in bytes of the encoded contents
+     * @param aLength the length in bytes of the encoded contents, or
+     *     <code>INDEFINITE_LENGTH</code>
      *
      * @exception IOException if an I/O error occurs. In particular,
      *     an <code>EOFException</code> may be thrown if the end of
@@ -152,26 +153,50 @@ public class BerSequence extends BerObject
         if (Debug.ASSERT && getClass() == BerSequence.class)
             Debug.assertTrue(anIdentifier == gIDENTIFIER); // [sic; not equals]
 
-        // Construct a governed stream that only reads aLength bytes.
-        BerContentsInputStream inContents = 
-            new BerContentsInputStream(anIn, aLength);
-
         // We don't know how many elements are in the sequence.
         Vector<BerObject> beroV = new Vector<BerObject>();
 
-        // readFrom will return null if the end of the stream is reached
-        // on an object boundary.
-        while (true)
+        if (aLength == INDEFINITE_LENGTH)
         {
-            BerObject bero = aModule.readFrom(inContents);
-            if (bero == null)
-                break;
-            beroV.addElement(bero);
+            // Read elements until the end-of-contents marker. Hitting
+            // the end of the stream first is an error, even on an
+            // object boundary.
+            while (true)
+            {
+                BerObject bero = aModule.readFrom(anIn);
+                if (bero == null)
+                    throw new EOFException();
+                if (bero == BerModule.END_OF_CONTENTS)
+                    break;
+                beroV.addElement(bero);
+            }
         }
+        else
+        {
+            // Construct a governed stream that only reads aLength bytes.
+            BerContentsInputStream inContents = 
+                new BerContentsInputStream(anIn, aLength);
 
-        // Make sure we read as many bytes as we were supposed to.
-        if (inContents.getCount() != aLength)
-            throw new EOFException();
+            // readFrom will return null if the end of the stream is 
+            // reached on an object boundary.
+            while (true)
+            {
+                BerObject bero = aModule.readFrom(inContents);
+                if (bero == null)
+                    break;
+                if (bero == BerModule.END_OF_CONTENTS)
+                {
+                    throw new IOException(
+                        "Unexpected end-of-contents in a definite-length " +
+                        "encoding");
+                }
+                beroV.addElement(bero);
+            }
+
+            // Make sure we read as many bytes as we were supposed to.
+            if (inContents.getCount() != aLength)
+                throw new EOFException();
+        }
 
         // Copy the vector into our array field.
         mSequence = new BerObject[beroV.size()];
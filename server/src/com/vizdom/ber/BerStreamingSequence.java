@@ -0,0 +1,182 @@
+/*
+ *  Copyright 1999-2005 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Enumeration;
+
+/**
+ * A BER sequence written with the indefinite-length form. The elements
+ * are written as they are produced, followed by the end-of-contents
+ * marker, so the sequence never has to be fully materialized in memory
+ * and the first element can be sent before the last one exists.
+ * <p>
+ * This class is only used for encoding. An indefinite-length SEQUENCE
+ * is decoded as an ordinary <code>BerSequence</code>. The elements
+ * can only be written once.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public class BerStreamingSequence extends BerObject
+{
+    /** The identifier of this sequence. */
+    private final BerIdentifier mIdentifier;
+
+    /** The source of the elements, or <code>null</code>. */
+    private final Enumeration<? extends BerObject> mElements;
+
+    /** Whether the elements have already been written. */
+    private boolean mIsWritten;
+
+
+    /**
+     * Constructs a BER SEQUENCE, [UNIVERSAL 16], whose elements are
+     * taken from the given enumeration when the sequence is written.
+     *
+     * @param anElements an enumeration of BerObjects
+     */
+    public BerStreamingSequence(Enumeration<? extends BerObject> anElements)
+    {
+        this(BerSequence.gIDENTIFIER, anElements);
+    }
+
+
+    /**
+     * Constructs a streaming sequence with the given identifier.
+     * Subclasses that produce their elements by overriding
+     * <code>mNextElement</code> may pass a <code>null</code>
+     * enumeration.
+     *
+     * @param anIdentifier a constructed BER identifier
+     * @param anElements an enumeration of BerObjects, or <code>null</code>
+     * @throws IllegalArgumentException if the identifier is primitive
+     */
+    protected BerStreamingSequence(BerIdentifier anIdentifier,
+        Enumeration<? extends BerObject> anElements)
+    {
+        if (anIdentifier.getForm() != BerTypes.CONSTRUCTED)
+        {
+            throw new IllegalArgumentException(
+                "Indefinite length on a primitive encoding: " + anIdentifier);
+        }
+        mIdentifier = anIdentifier;
+        mElements = anElements;
+    }
+
+
+    /**
+     * Returns the identifier for this sequence.
+     * 
+     * @return the identifier for this sequence
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return mIdentifier;
+    }
+
+
+    /**
+     * Returns the next element to write, or <code>null</code> if
+     * there are no more elements. This implementation takes the
+     * elements from the enumeration given to the constructor.
+     *
+     * @return the next element, or <code>null</code>
+     * @exception IOException if the element cannot be produced
+     */
+    protected BerObject mNextElement() throws IOException
+    {
+        if (mElements != null && mElements.hasMoreElements())
+            return mElements.nextElement();
+        else
+            return null;
+    }
+
+
+    /**
+     * Returns <code>INDEFINITE_LENGTH</code>.
+     * 
+     * @return <code>INDEFINITE_LENGTH</code>
+     */
+    protected final int mGetLength()
+    {
+        return INDEFINITE_LENGTH;
+    }
+
+
+    /** 
+     * Writes each element to the output stream as it is produced.
+     * 
+     * @param anOut an output stream
+     * @exception IOException if an I/O error occurs
+     * @throws IllegalStateException if the sequence has already
+     *     been written
+     */
+    protected final void mWriteContents(OutputStream anOut) 
+        throws IOException
+    {
+        synchronized (this)
+        {
+            if (mIsWritten)
+            {
+                throw new IllegalStateException(
+                    "A streaming sequence can only be written once");
+            }
+            mIsWritten = true;
+        }
+
+        BerObject bero;
+        while ((bero = mNextElement()) != null)
+            bero.writeTo(anOut);
+    }
+
+
+    /** 
+     * Streaming sequences cannot be decoded.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     *
+     * @exception IOException always
+     */
+    protected void mReadContents(InputStream anIn, BerModule aModule,
+        BerIdentifier anIdentifier, int aLength) throws IOException
+    {
+        throw new IOException(
+            "Streaming sequences are decoded as BerSequence: " + 
+            anIdentifier);
+    }
+
+
+    /**
+     * Returns a string representation of this BER sequence. The
+     * elements are not included, since they may not exist yet.
+     *
+     * @return a string representation of this BER sequence
+     */
+    public String toString()
+    {
+        return "[...]";
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+/**
+ * A small, bounded cache of decoded OCTET STRING values, keyed by
+ * their encoded bytes. Protocol strings such as property and method
+ * names repeat constantly, so decoding them to the same canonical
+ * <code>String</code> instance avoids both the character decoding and
+ * the garbage, and lets callers rely on the cached hash code.
+ * <p>
+ * The cache is direct-mapped: each key hashes to a single slot, and a
+ * new entry simply replaces whatever was there. It is not synchronized;
+ * each <code>BerModule</code> clone gets its own cache, and a module
+ * is used by only one connection at a time.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public final class BerStringCache
+{
+    /** The number of slots; must be a power of two. */
+    private static final int gSIZE = 128;
+
+    /** The longest encoded string that will be cached, in bytes. */
+    private static final int gMAX_LENGTH = 64;
+
+    /** The encoded bytes of the cached strings. */
+    private final byte[][] mKeys = new byte[gSIZE][];
+
+    /** The cached strings. */
+    private final String[] mValues = new String[gSIZE];
+
+
+    /** Constructor. */
+    BerStringCache()
+    {
+    }
+
+
+    /**
+     * Returns the slot for the given bytes.
+     *
+     * @param aByteArray the encoded bytes
+     * @return the slot index
+     */
+    private static int gSlot(byte[] aByteArray)
+    {
+        int hash = 0;
+        for (int i = 0; i < aByteArray.length; i++)
+            hash = 31 * hash + aByteArray[i];
+        hash ^= (hash >>> 16);
+        return hash & (gSIZE - 1);
+    }
+
+
+    /**
+     * Adds a string to the cache. This is used to seed the cache with
+     * strings known to be common, so that the canonical instances are
+     * the caller's own (usually literal) strings.
+     *
+     * @param aString a string
+     * @param aByteArray the encoded bytes of the string
+     */
+    void put(String aString, byte[] aByteArray)
+    {
+        if (aByteArray.length <= gMAX_LENGTH)
+        {
+            int slot = gSlot(aByteArray);
+            mKeys[slot] = aByteArray;
+            mValues[slot] = aString;
+        }
+    }
+
+
+    /**
+     * Returns the canonical string value of the given OCTET STRING,
+     * which also becomes the value returned by its 
+     * <code>toString</code> method. Strings too long to cache are
+     * decoded as usual.
+     *
+     * @param anOctetString an OCTET STRING
+     * @return the canonical string value
+     */
+    public String intern(BerOctetString anOctetString)
+    {
+        byte[] bytes = anOctetString.toByteArray();
+        if (bytes.length > gMAX_LENGTH)
+            return anOctetString.toString();
+
+        int slot = gSlot(bytes);
+        byte[] key = mKeys[slot];
+        if (key != null && java.util.Arrays.equals(key, bytes))
+        {
+            String value = mValues[slot];
+            anOctetString.mSetString(value);
+            return value;
+        }
+
+        String value = anOctetString.toString();
+        mKeys[slot] = (byte[]) bytes.clone();
+        mValues[slot] = value;
+        return value;
+    }
+}
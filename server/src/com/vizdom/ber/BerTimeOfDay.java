@@ -0,0 +1,166 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.IOException;
+
+/**
+ * A BER TIME-OF-DAY, a time of day encoded in six octets as HHMMSS.
+ * There is no time zone, like an SQL TIME.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+public class BerTimeOfDay extends BerTimeString
+{
+    /** The TIME-OF-DAY identifier, [UNIVERSAL 32]. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.PRIMITIVE, BerTypes.TIME_OF_DAY);
+
+    /** The hour, 0 - 23. */
+    private int mHour;
+
+    /** The minute, 0 - 59. */
+    private int mMinute;
+
+    /** The second, 0 - 60 (allowing for a leap second). */
+    private int mSecond;
+
+
+    /** The decoding constructor. */
+    protected BerTimeOfDay()
+    {
+    }
+
+
+    /** 
+     * The encoding constructor. 
+     * 
+     * @param anHour the hour, 0 - 23
+     * @param aMinute the minute, 0 - 59
+     * @param aSecond the second, 0 - 60
+     * @throws IllegalArgumentException if a value is out of range
+     */
+    public BerTimeOfDay(int anHour, int aMinute, int aSecond)
+    {
+        if (anHour < 0 || anHour > 23 || aMinute < 0 || aMinute > 59 ||
+            aSecond < 0 || aSecond > 60)
+        {
+            throw new IllegalArgumentException("Invalid time of day: " + 
+                anHour + ":" + aMinute + ":" + aSecond);
+        }
+        mHour = anHour;
+        mMinute = aMinute;
+        mSecond = aSecond;
+    }
+
+
+    /**
+     * Returns the BER identifier for BER TIME-OF-DAY, [UNIVERSAL 32].
+     * 
+     * @return the BER identifier for BER TIME-OF-DAY, [UNIVERSAL 32]
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+
+    /**
+     * Returns the encoded string for the value of this object.
+     *
+     * @return the encoded string
+     */
+    protected String mFormat()
+    {
+        StringBuffer buffer = new StringBuffer(6);
+        gAppendField(buffer, mHour, 2);
+        gAppendField(buffer, mMinute, 2);
+        gAppendField(buffer, mSecond, 2);
+        return buffer.toString();
+    }
+
+
+    /**
+     * Sets the value of this object from the encoded string.
+     *
+     * @param aString the encoded string
+     * @exception IOException if the string is not a valid encoding
+     */
+    protected void mParse(String aString) throws IOException
+    {
+        if (aString.length() != 6)
+            throw new IOException("Invalid BER TIME-OF-DAY value: " + aString);
+        mHour = gParseField(aString, 0, 2, 0, 23);
+        mMinute = gParseField(aString, 2, 2, 0, 59);
+        mSecond = gParseField(aString, 4, 2, 0, 60);
+    }
+
+
+    /**
+     * Returns the hour, 0 - 23.
+     *
+     * @return the hour
+     */
+    public int getHour()
+    {
+        return mHour;
+    }
+
+
+    /**
+     * Returns the minute, 0 - 59.
+     *
+     * @return the minute
+     */
+    public int getMinute()
+    {
+        return mMinute;
+    }
+
+
+    /**
+     * Returns the second, 0 - 60.
+     *
+     * @return the second
+     */
+    public int getSecond()
+    {
+        return mSecond;
+    }
+
+
+    /**
+     * Returns the time in the format HH:MM:SS, which is also the
+     * format of <code>java.sql.Time.toString</code>.
+     * 
+     * @return a string representation of the time
+     */
+    public String toString()
+    {
+        StringBuffer buffer = new StringBuffer(8);
+        gAppendField(buffer, mHour, 2);
+        buffer.append(':');
+        gAppendField(buffer, mMinute, 2);
+        buffer.append(':');
+        gAppendField(buffer, mSecond, 2);
+        return buffer.toString();
+    }
+}
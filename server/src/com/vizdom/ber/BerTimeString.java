@@ -0,0 +1,181 @@
+/*
+ *  Copyright 1999-2001 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details.
+ */
+package com.vizdom.ber;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import com.vizdom.util.UnreachableCodeException;
+
+/**
+ * The base class for the time types, which are encoded as strings of
+ * ASCII digits and punctuation. Subclasses convert between their
+ * values and the encoded strings.
+ *
+ * @author: John Lacey
+ * @version: $Revision: 1.1 $
+ */
+abstract class BerTimeString extends BerObject
+{
+    /** The cached encoded contents. */
+    private byte[] mContents;
+
+
+    /**
+     * Returns the encoded string for the value of this object.
+     *
+     * @return the encoded string
+     */
+    protected abstract String mFormat();
+
+
+    /**
+     * Sets the value of this object from the encoded string.
+     *
+     * @param aString the encoded string
+     * @exception IOException if the string is not a valid encoding
+     */
+    protected abstract void mParse(String aString) throws IOException;
+
+
+    /**
+     * Returns the encoded contents, encoding them if necessary.
+     *
+     * @return the encoded contents
+     */
+    private byte[] mGetContents()
+    {
+        if (mContents == null)
+        {
+            try
+            {
+                mContents = mFormat().getBytes("US-ASCII");
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                // Every JVM supports US-ASCII.
+                throw new UnreachableCodeException(e);
+            }
+        }
+        return mContents;
+    }
+
+
+    /**
+     * Returns the size of the encoded contents, in bytes.
+     * 
+     * @return the size of the encoded contents, in bytes
+     */
+    protected final int mGetLength()
+    {
+        return mGetContents().length;
+    }
+
+
+    /** 
+     * Writes the encoded contents to the output stream.
+     * 
+     * @param anOut an output stream
+     * @exception IOException if an I/O error occurs
+     */
+    protected final void mWriteContents(OutputStream anOut) throws IOException
+    {
+        anOut.write(mGetContents());
+    }
+
+
+    /** 
+     * Reads the encoded contents from the input stream.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     *
+     * @exception IOException if an I/O error occurs. In particular,
+     *     an <code>EOFException</code> may be thrown if the end of
+     *     stream is reached before the contents have been fully read
+     */
+    protected void mReadContents(InputStream anIn, BerModule aModule,
+        BerIdentifier anIdentifier, int aLength) throws IOException
+    {
+        byte[] contents = new byte[aLength];
+        for (int count = 0; count < aLength; )
+        {
+            int n = anIn.read(contents, count, aLength - count);
+            if (n == -1)
+                throw new EOFException();
+            count += n;
+        }
+        mParse(new String(contents, "US-ASCII"));
+        mContents = contents;
+    }
+
+
+    /**
+     * Parses a fixed-width field of decimal digits.
+     *
+     * @param aString the encoded string
+     * @param anOffset the offset of the field
+     * @param aWidth the number of digits in the field
+     * @param aMinimum the minimum valid value
+     * @param aMaximum the maximum valid value
+     * @return the value of the field
+     * @exception IOException if the field is missing, contains a 
+     *     non-digit, or is out of range
+     */
+    static int gParseField(String aString, int anOffset, int aWidth,
+        int aMinimum, int aMaximum) throws IOException
+    {
+        if (anOffset + aWidth > aString.length())
+            throw new IOException("Truncated BER time value: " + aString);
+
+        int value = 0;
+        for (int i = anOffset; i < anOffset + aWidth; i++)
+        {
+            char c = aString.charAt(i);
+            if (c < '0' || c > '9')
+                throw new IOException("Invalid BER time value: " + aString);
+            value = value * 10 + (c - '0');
+        }
+        if (value < aMinimum || value > aMaximum)
+            throw new IOException("Invalid BER time value: " + aString);
+        return value;
+    }
+
+
+    /**
+     * Appends a value to a buffer as a fixed-width field of decimal
+     * digits, with leading zeros.
+     *
+     * @param aBuffer a string buffer
+     * @param aValue a non-negative value
+     * @param aWidth the number of digits in the field
+     */
+    static void gAppendField(StringBuffer aBuffer, int aValue, int aWidth)
+    {
+        String digits = String.valueOf(aValue);
+        for (int i = digits.length(); i < aWidth; i++)
+            aBuffer.append('0');
+        aBuffer.append(digits);
+    }
+}
@@ -53,7 +53,7 @@ public interface BerTypes
     /** BER end-of-contents marker. */
     int END_OF_CONTENTS = 0;
 
-    /** BER BOOLEAN (unimplemented). */
+    /** BER BOOLEAN. */
     int BOOLEAN = 1;
         
     /** BER INTEGER. */
@@ -77,10 +77,10 @@ public interface BerTypes
     /** BER EXTERNAL (unimplemented). */
     int EXTERNAL = 8;
 
-    /** BER REAL (unimplemented). */
+    /** BER REAL. */
     int REAL = 9;
 
-    /** BER ENUMERATED (unimplemented). */
+    /** BER ENUMERATED. */
     int ENUMERATED = 10;
 
     // reserved: 11-15
@@ -112,7 +112,7 @@ public interface BerTypes
     /** BER UTCTime (unimplemented). */
     int UTCTime = 23;
 
-    /** BER GeneralizedTime (unimplemented). */
+    /** BER GeneralizedTime. */
     int GeneralizedTime = 24;
 
     /** BER GraphicString (unimplemented). */
@@ -126,5 +126,23 @@ public interface BerTypes
 
     /** BER GeneralString (unimplemented). */
     int GeneralString = 27;
+
+    /** BER UniversalString (unimplemented). */
+    int UniversalString = 28;
+
+    /** BER CHARACTER STRING (unimplemented). */
+    int CHARACTER_STRING = 29;
+
+    /** BER BMPString (unimplemented). */
+    int BMPString = 30;
+
+    /** BER DATE. */
+    int DATE = 31;
+
+    /** BER TIME-OF-DAY. */
+    int TIME_OF_DAY = 32;
+
+    /** BER DATE-TIME (unimplemented). */
+    int DATE_TIME = 33;
 }
 
@@ -21,6 +21,8 @@
 package com.vizdom.dbd.jdbc;
 
 import com.vizdom.ber.BerModule;
+import com.vizdom.ber.BerObject;
+import com.vizdom.ber.BerOctetString;
 
 /**
  * This class contains the package-specific BER packet type constants
@@ -175,6 +177,78 @@ class BerDbdModule extends BerModule implements Cloneable
     static final int gGET_GENERATED_KEYS_RESPONSE = 
         gGET_GENERATED_KEYS_REQUEST + sGAP;
 
+    /** A request to read part of a LOB value. */
+    static final int gLOB_READ_REQUEST =                 (int) 0x22;
+    /** A response containing part of a LOB value. */
+    static final int gLOB_READ_RESPONSE = 
+        gLOB_READ_REQUEST + sGAP;
+
+    /** A LOB locator, sent in place of a column value. */
+    static final int gLOB_LOCATOR =                      (int) 0x23;
+
+    /** A request to begin uploading a LOB parameter value. */
+    static final int gLOB_WRITE_BEGIN_REQUEST =          (int) 0x24;
+    /** A response. */
+    static final int gLOB_WRITE_BEGIN_RESPONSE = 
+        gLOB_WRITE_BEGIN_REQUEST + sGAP;
+
+    /** A request containing part of a LOB parameter value. */
+    static final int gLOB_WRITE_CHUNK_REQUEST =          (int) 0x25;
+    /** A response. */
+    static final int gLOB_WRITE_CHUNK_RESPONSE = 
+        gLOB_WRITE_CHUNK_REQUEST + sGAP;
+
+    /** A request to finish uploading a LOB parameter value. */
+    static final int gLOB_WRITE_END_REQUEST =            (int) 0x26;
+    /** A response. */
+    static final int gLOB_WRITE_END_RESPONSE = 
+        gLOB_WRITE_END_REQUEST + sGAP;
+
+    /** 
+     * A request to move a scrollable cursor and fetch the row there.
+     * The response is a fetch response.
+     */
+    static final int gFETCH_SCROLL_REQUEST =             (int) 0x27;
+
+    /** 
+     * A request to move to a statement's next result. The response 
+     * is an execute response.
+     */
+    static final int gMORE_RESULTS_REQUEST =             (int) 0x28;
+
+    /** The OUT parameter values in an execute response. */
+    static final int gOUT_PARAMETERS =                   (int) 0x29;
+
+    /** A request to remove results from the query cache. */
+    static final int gCACHE_INVALIDATE_REQUEST =         (int) 0x2A;
+    /** A response. */
+    static final int gCACHE_INVALIDATE_RESPONSE = 
+        gCACHE_INVALIDATE_REQUEST + sGAP;
+
+    /** A request to execute a statement for several parameter sets. */
+    static final int gEXECUTE_BATCH_REQUEST =            (int) 0x2B;
+    /** A response. */
+    static final int gEXECUTE_BATCH_RESPONSE = 
+        gEXECUTE_BATCH_REQUEST + sGAP;
+
+    /** A request for all the keys generated by a statement. */
+    static final int gGENERATED_KEYS_REQUEST =           (int) 0x2C;
+    /** A response. */
+    static final int gGENERATED_KEYS_RESPONSE = 
+        gGENERATED_KEYS_REQUEST + sGAP;
+
+    /** A request for database meta data. */
+    static final int gMETA_DATA_REQUEST =                (int) 0x2D;
+    /** A response. */
+    static final int gMETA_DATA_RESPONSE = 
+        gMETA_DATA_REQUEST + sGAP;
+
+    /** A request to remove entries from the meta data cache. */
+    static final int gMETA_DATA_FLUSH_REQUEST =          (int) 0x2E;
+    /** A response. */
+    static final int gMETA_DATA_FLUSH_RESPONSE = 
+        gMETA_DATA_FLUSH_REQUEST + sGAP;
+
     /** A module instance for use by classes in this package. */
     static final BerDbdModule gBerModule = new BerDbdModule();
 
@@ -216,9 +290,43 @@ class BerDbdModule extends BerModule implements Cloneable
             StatementFuncRequest.gIDENTIFIER);
         gBerModule.registerFactory(GetGeneratedKeysRequest.gFACTORY, 
             GetGeneratedKeysRequest.gIDENTIFIER);
+        gBerModule.registerFactory(LobReadRequest.gFACTORY, 
+            LobReadRequest.gIDENTIFIER);
+        gBerModule.registerFactory(LobWriteBeginRequest.gFACTORY, 
+            LobWriteBeginRequest.gIDENTIFIER);
+        gBerModule.registerFactory(LobWriteChunkRequest.gFACTORY, 
+            LobWriteChunkRequest.gIDENTIFIER);
+        gBerModule.registerFactory(LobWriteEndRequest.gFACTORY, 
+            LobWriteEndRequest.gIDENTIFIER);
+        gBerModule.registerFactory(FetchScrollRequest.gFACTORY, 
+            FetchScrollRequest.gIDENTIFIER);
+        gBerModule.registerFactory(MoreResultsRequest.gFACTORY, 
+            MoreResultsRequest.gIDENTIFIER);
+        gBerModule.registerFactory(CacheInvalidateRequest.gFACTORY, 
+            CacheInvalidateRequest.gIDENTIFIER);
+        gBerModule.registerFactory(ExecuteBatchRequest.gFACTORY, 
+            ExecuteBatchRequest.gIDENTIFIER);
+        gBerModule.registerFactory(GeneratedKeysRequest.gFACTORY, 
+            GeneratedKeysRequest.gIDENTIFIER);
+        gBerModule.registerFactory(MetaDataRequest.gFACTORY, 
+            MetaDataRequest.gIDENTIFIER);
+        gBerModule.registerFactory(MetaDataFlushRequest.gFACTORY, 
+            MetaDataFlushRequest.gIDENTIFIER);
 
         gBerModule.registerFactory(BerHash.gFACTORY, 
             BerHash.gIDENTIFIER);
+
+        // Seed the string caches with the property names recognized
+        // by Connection, so that they decode to these instances.
+        String[] commonStrings = { "AutoCommit", "CursorName", "NAME",
+            "TYPE", "PRECISION", "SCALE", "NULLABLE", "LongReadLen",
+            "LongTruncOk", "ChopBlanks", "jdbc_longreadall", 
+            "jdbc_lobthreshold", "jdbc_fetchsize", "jdbc_fetchbytes",
+            "jdbc_scrollable", "jdbc_spool", "jdbc_callable", 
+            "jdbc_cache", "jdbc_query_timeout", "jdbc_max_rows",
+            "jdbc_max_field_size" };
+        for (int i = 0; i < commonStrings.length; i++)
+            gBerModule.registerCommonString(commonStrings[i]);
     }
 
 
@@ -248,4 +356,20 @@ class BerDbdModule extends BerModule implements Cloneable
             throw new com.vizdom.util.UnreachableCodeException();
         }
     }
+
+
+    /**
+     * Decodes a property or method name through the string cache of
+     * the module which read it. Names repeat on nearly every request,
+     * so the cache saves decoding them, and the canonical string's 
+     * hash code is already computed when the name is looked up.
+     *
+     * @param aModule the module which read the name
+     * @param aName the name, an OCTET STRING
+     * @return the canonical name
+     */
+    static String gInternName(BerModule aModule, BerObject aName)
+    {
+        return aModule.getStringCache().intern((BerOctetString) aName);
+    }
 }
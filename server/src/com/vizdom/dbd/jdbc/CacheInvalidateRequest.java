@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * A request to remove results from the query cache. The request
+ * contains the text to look for in the cached statements, or an 
+ * empty string to remove every cached result. The response is the
+ * number of results removed.
+ *
+ * @see QueryCache
+ */
+class CacheInvalidateRequest extends BerOctetString
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.PRIMITIVE, 
+        BerDbdModule.gCACHE_INVALIDATE_REQUEST);
+
+    /** The factory for this object. */
+    static final BerObjectFactory gFACTORY = new BerObjectFactory() {
+        public boolean acceptsIdentifier(BerIdentifier anIdentifier)
+        {
+            return anIdentifier.equals(gIDENTIFIER);
+        }
+        
+        public BerObject createBerObject()
+        {
+            return new CacheInvalidateRequest();
+        }
+    };
+
+    /**
+     * The decoding constructor.
+     */
+    private CacheInvalidateRequest()
+    {
+        super();
+    }    
+
+    /**
+     * Returns the text to look for in the cached statements.
+     *
+     * @return the text, or null if every result should be removed
+     */
+    String getMatch()
+    {
+        String match = super.toString();
+        return (match.length() == 0) ? null : match;
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        String match = getMatch();
+        return "Cache invalidate: " + ((match == null) ? "all" : match);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * A cache invalidate response, containing the number of cached 
+ * results removed.
+ */
+class CacheInvalidateResponse extends BerInteger
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.PRIMITIVE, 
+        BerDbdModule.gCACHE_INVALIDATE_RESPONSE);
+
+    /**
+     * Constructor - sets the number of results removed.
+     *
+     * @param aCount the number of results removed
+     */
+    CacheInvalidateResponse(int aCount)
+    {
+        super(aCount);
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "Cache invalidated: " + intValue();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A fetch response whose contents have already been encoded, for
+ * rows served from the query cache. It is written exactly like the
+ * fetch response it was recorded from.
+ *
+ * @see QueryCache
+ */
+class CachedFetchResponse extends BerObject
+{
+    /** The encoded contents of the fetch response. */
+    private final byte[] mContents;
+
+    /**
+     * Constructor - initializes the contents.
+     *
+     * @param aContents the encoded contents of a fetch response
+     */
+    CachedFetchResponse(byte[] aContents)
+    {
+        mContents = aContents;
+    }
+
+    /**
+     * Returns the size of the encoded contents, in bytes.
+     *
+     * @return the size of the encoded contents, in bytes
+     */
+    protected int mGetLength()
+    {
+        return mContents.length;
+    }
+
+    /** 
+     * Writes the encoded contents to the output stream.
+     * 
+     * @param anOut an output stream
+     * @exception IOException if an I/O error occurs
+     */
+    protected void mWriteContents(OutputStream anOut) throws IOException
+    {
+        anOut.write(mContents);
+    }
+
+    /** 
+     * Fails; cached responses are only written.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     * @exception IOException always
+     */
+    protected void mReadContents(InputStream anIn, BerModule aModule,
+        BerIdentifier anIdentifier, int aLength) throws IOException
+    {
+        throw new IOException(
+            "Cached fetch responses are decoded as FetchResponse: " + 
+            anIdentifier);
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return FetchResponse.gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "Fetch complete (cached)";
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Hashtable;
+import org.apache.log4j.Logger;
+
+/**
+ * Reads one column of the current row of a result set, in the form
+ * sent to the client. A statement's readers are chosen once per 
+ * result set, from the column types and the statement's LongReadLen,
+ * LongTruncOk, ChopBlanks, jdbc_longreadall, and jdbc_lobthreshold
+ * properties, so fetching a row makes no metadata or property lookups.
+ * <p>
+ * Some data types get special handling, but mostly we pass 
+ * everything back as a string and let the client sort it out.
+ *
+ * @see StatementHolder#getColumnReaders
+ */
+abstract class ColumnReader
+{
+    /** The log4j logger. */
+    private static final Logger gLog = Logger.getLogger(ColumnReader.class);
+
+    /** LONG fields will be read in chunks this size. */
+    private static final int sLONG_READ_BUFFER_SIZE = 8192;
+
+
+    /** 
+     * Reads a column with <code>getString</code>. This includes any
+     * Types.OTHER columns.
+     */
+    private static class StringColumnReader extends ColumnReader
+    {
+        StringColumnReader(int aColumnIndex, int aType)
+        {
+            super(aColumnIndex, aType);
+        }
+
+        Object read(ResultSet aResultSet) throws SQLException
+        {
+            return aResultSet.getString(mColumnIndex);
+        }
+    }
+
+
+    /** Reads a CHAR column, removing trailing blanks. */
+    private static class ChoppedColumnReader extends ColumnReader
+    {
+        ChoppedColumnReader(int aColumnIndex, int aType)
+        {
+            super(aColumnIndex, aType);
+        }
+
+        Object read(ResultSet aResultSet) throws SQLException
+        {
+            return gChopBlanks(aResultSet.getString(mColumnIndex));
+        }
+    }
+
+
+    /** Reads a column with <code>getBytes</code>. */
+    private static class BytesColumnReader extends ColumnReader
+    {
+        BytesColumnReader(int aColumnIndex, int aType)
+        {
+            super(aColumnIndex, aType);
+        }
+
+        Object read(ResultSet aResultSet) throws SQLException
+        {
+            return aResultSet.getBytes(mColumnIndex);
+        }
+    }
+
+
+    /** Reads a LONG column as null, when LongReadLen is 0. */
+    private static class NullColumnReader extends ColumnReader
+    {
+        NullColumnReader(int aColumnIndex, int aType)
+        {
+            super(aColumnIndex, aType);
+        }
+
+        Object read(ResultSet aResultSet)
+        {
+            return null;
+        }
+    }
+
+
+    /** 
+     * Reads a LONG column. Implements the DBI semantics associated with
+     * the LongTruncOk and LongReadLen properties.
+     */
+    private static class LongColumnReader extends ColumnReader
+    {
+        /** The LongReadLen property for this statement. */
+        private final int mLongReadLen;
+        /** The LongTruncOk property for this statement. */
+        private final boolean mLongTruncOk;
+        /** The jdbc_longreadall property for this statement. */
+        private final boolean mReadAll;
+
+        LongColumnReader(int aColumnIndex, int aType, int aLongReadLen,
+            boolean aLongTruncOk, boolean readAll)
+        {
+            super(aColumnIndex, aType);
+            mLongReadLen = aLongReadLen;
+            mLongTruncOk = aLongTruncOk;
+            mReadAll = readAll;
+        }
+
+        byte[] mRead(InputStream anInputStream) 
+            throws SQLException, IOException
+        {
+            return gReadLong(mColumnIndex, anInputStream, mLongReadLen, 
+                mLongTruncOk, mReadAll);
+        }
+
+        char[] mRead(Reader aReader) throws SQLException, IOException
+        {
+            return gReadLong(mColumnIndex, aReader, mLongReadLen, 
+                mLongTruncOk, mReadAll);
+        }
+
+        Object read(ResultSet aResultSet) throws SQLException, IOException
+        {
+            switch (mType)
+            {
+            case Types.LONGVARBINARY: 
+                return gReadLong(mColumnIndex, 
+                    aResultSet.getBinaryStream(mColumnIndex),
+                    mLongReadLen, mLongTruncOk, mReadAll);
+
+            case Types.BLOB: 
+                Blob blob = aResultSet.getBlob(mColumnIndex); 
+                if (blob == null)
+                    return null;
+                return gReadLong(mColumnIndex, blob.getBinaryStream(), 
+                    mLongReadLen, mLongTruncOk, mReadAll);
+
+                // The JDBC spec says to prefer
+                // getCharacterStream for
+                // LONGVARCHAR. However, getString is
+                // also supported. We could use getString
+                // here instead, or create a parameter
+                // which lets a caller specify that
+                // getString should be used.
+            case Types.LONGVARCHAR:
+                // The characters are encoded directly,
+                // without making a String of them.
+                return gReadLong(mColumnIndex, 
+                    aResultSet.getCharacterStream(mColumnIndex), 
+                    mLongReadLen, mLongTruncOk, mReadAll);
+
+            default: // Types.CLOB
+                Clob clob = aResultSet.getClob(mColumnIndex);
+                if (clob == null)
+                    return null;
+                return gReadLong(mColumnIndex, clob.getCharacterStream(), 
+                    mLongReadLen, mLongTruncOk, mReadAll);
+            }
+        }
+    }
+
+
+    /** 
+     * Reads a BLOB or CLOB column, returning a locator instead of the
+     * value if the value is longer than the jdbc_lobthreshold property.
+     */
+    private static class LobColumnReader extends LongColumnReader
+    {
+        /** The jdbc_lobthreshold property for this statement. */
+        private final long mLobThreshold;
+        /** The statement, which keeps the locators. */
+        private final StatementHolder mHolder;
+
+        LobColumnReader(int aColumnIndex, int aType, int aLongReadLen,
+            boolean aLongTruncOk, boolean readAll, int aLobThreshold,
+            StatementHolder aHolder)
+        {
+            super(aColumnIndex, aType, aLongReadLen, aLongTruncOk, readAll);
+            mLobThreshold = aLobThreshold;
+            mHolder = aHolder;
+        }
+
+        Object read(ResultSet aResultSet) throws SQLException, IOException
+        {
+            if (mType == Types.BLOB)
+            {
+                Blob blob = aResultSet.getBlob(mColumnIndex); 
+                if (blob == null)
+                    return null;
+                long length = blob.length();
+                if (length > mLobThreshold)
+                    return mHolder.addLob(blob, length);
+                return mRead(blob.getBinaryStream());
+            }
+            else
+            {
+                Clob clob = aResultSet.getClob(mColumnIndex);
+                if (clob == null)
+                    return null;
+                long length = clob.length();
+                if (length > mLobThreshold)
+                    return mHolder.addLob(clob, length);
+                return mRead(clob.getCharacterStream());
+            }
+        }
+    }
+
+
+    /**
+     * Creates the readers for the columns of a result set.
+     *
+     * @param aMetaData the result set meta data
+     * @param aProperties the statement properties
+     * @param aHolder the statement, which keeps any LOB locators; 
+     *      if null, LOB values are always read in full
+     * @return one reader for each column
+     * @exception SQLException if the meta data can't be read
+     */
+    /* Code here relies on prepare (or some other earlier method) to 
+     * set the LongReadLen, LongTruncOk, and ChopBlanks properties.
+     * Older clients don't set jdbc_lobthreshold.
+     */
+    static ColumnReader[] gCreateReaders(ResultSetMetaData aMetaData,
+        Hashtable<String, Object> aProperties, StatementHolder aHolder) 
+        throws SQLException
+    {
+        int longReadLen = ((Integer) 
+            aProperties.get("LongReadLen")).intValue();
+        boolean longTruncOk = ((Boolean) 
+            aProperties.get("LongTruncOk")).booleanValue();
+        boolean chopBlanks = ((Boolean) 
+            aProperties.get("ChopBlanks")).booleanValue();
+        boolean readAll = ((Boolean) 
+            aProperties.get("jdbc_longreadall")).booleanValue();
+        Integer threshold = (Integer) aProperties.get("jdbc_lobthreshold");
+        int lobThreshold = (threshold == null) ? 0 : threshold.intValue();
+
+        ColumnReader[] readers = new ColumnReader[aMetaData.getColumnCount()];
+        for (int i = 0; i < readers.length; i++)
+        {
+            int column = i + 1;
+            int type = aMetaData.getColumnType(column);
+            switch (type)
+            {
+            case Types.BINARY: 
+            case Types.VARBINARY: 
+                readers[i] = new BytesColumnReader(column, type);
+                break;
+
+            case Types.BLOB: 
+            case Types.CLOB: 
+                if (lobThreshold > 0 && aHolder != null)
+                {
+                    readers[i] = new LobColumnReader(column, type, 
+                        longReadLen, longTruncOk, readAll, lobThreshold, 
+                        aHolder);
+                    break;
+                }
+                // Fall through when locators are not wanted.
+
+            case Types.LONGVARBINARY: 
+            case Types.LONGVARCHAR:
+                if (longReadLen == 0)
+                    readers[i] = new NullColumnReader(column, type);
+                else
+                {
+                    readers[i] = new LongColumnReader(column, type, 
+                        longReadLen, longTruncOk, readAll);
+                }
+                break;
+
+                // The driver I mostly use returns arrays
+                // in a convenient string format. This
+                // may be updated later to get an Array
+                // object, build a string, and allow
+                // callers to specify a term separator.
+            case Types.ARRAY: 
+                readers[i] = new StringColumnReader(column, type);
+                break;
+
+            case Types.CHAR: 
+                if (chopBlanks)
+                {
+                    readers[i] = new ChoppedColumnReader(column, type);
+                    break;
+                }
+                // Fall through when chopBlanks is not set.
+
+            default: 
+                readers[i] = new StringColumnReader(column, type);
+                break;
+            }
+        }
+        return readers;
+    }
+
+
+    /** The 1-based index of the column this reader reads. */
+    protected final int mColumnIndex;
+
+    /** The column's type (from <code>java.sql.Types</code>). */
+    protected final int mType;
+
+
+    /**
+     * Constructor - initializes fields.
+     *
+     * @param aColumnIndex the 1-based column index
+     * @param aType the column's type (from <code>java.sql.Types</code>)
+     */
+    protected ColumnReader(int aColumnIndex, int aType)
+    {
+        mColumnIndex = aColumnIndex;
+        mType = aType;
+    }
+
+
+    /**
+     * Returns the column's type.
+     *
+     * @return the column's type (from <code>java.sql.Types</code>)
+     */
+    int getType()
+    {
+        return mType;
+    }
+
+
+    /**
+     * Reads this column from the current row.
+     *
+     * @param aResultSet the result set, positioned on a row
+     * @return the column value, as a String, byte[], or char[], or null
+     * @exception SQLException if a <code>getXXX</code> method fails, 
+     *      or if long data is truncated
+     * @exception IOException if an error occurs reading a stream
+     */
+    abstract Object read(ResultSet aResultSet) 
+        throws SQLException, IOException;
+
+
+    /**
+     * Removes trailing blanks from the given string.
+     *
+     * @param aString a string, potentially with trailing blanks
+     * @return the same string with any trailing blanks removed
+     */
+    private static String gChopBlanks(String aString)
+    {
+        if (aString != null)
+        {
+            int last = aString.length() - 1;
+            while (last >= 0 && aString.charAt(last) == ' ')
+                last--;
+            return aString.substring(0, last + 1);
+        }
+        else
+            return null;
+    }
+
+    /**
+     * Reads a LONG field. Implements the DBI semantics associated with
+     * the LongTruncOk and LongReadLen properties.
+     *
+     * @param aColumnIndex the column index being read, for error reporting
+     * @param anInputStream an input stream returned by a getXXXStream method
+     * @param aLongReadLen the LongReadLen property for this statement
+     * @param aLongTruncOk the LongTruncOk property for this statement
+     * @param readAll the jdbc_longreadall property for this statement
+     * @return a byte array read from the stream, or null if the input
+     *      stream is null
+     * @exception DataTruncation if the data is truncated
+     * @exception IOException if an error occurs reading from the stream
+     */
+    private static byte[] gReadLong(int aColumnIndex, 
+        InputStream anInputStream, int aLongReadLen, boolean aLongTruncOk, 
+        boolean readAll) 
+        throws DbdException, IOException
+    {
+        if (aLongReadLen == 0)
+            return null;
+        if (anInputStream == null)
+            return null;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[sLONG_READ_BUFFER_SIZE];
+        int read;
+        int totalread = 0;
+
+        if (readAll)
+        {
+            while ((read = anInputStream.read(buffer, 0, buffer.length)) != -1)
+            {
+                totalread += read;
+                baos.write(buffer, 0, read);
+            }
+        }
+        else
+        {
+            while (totalread < aLongReadLen &&
+                (read = anInputStream.read(buffer, 0, 
+                    Math.min(buffer.length, (aLongReadLen - totalread)))) != -1)
+            {
+                totalread += read;
+                baos.write(buffer, 0, read);
+            }
+        }
+        baos.close();
+        if (gLog.isDebugEnabled())
+        {
+            gLog.debug("Read " + totalread + " bytes from LONG column " + 
+                aColumnIndex + "(LongReadLen=" + aLongReadLen + 
+                ";LongTruncOk=" + aLongTruncOk + ";jdbc_longreadall=" + 
+                readAll + ")");
+        }
+        if (!readAll && (!aLongTruncOk && anInputStream.read() != -1))
+        {
+            anInputStream.close();
+            throw new DbdException(DbdException.gDATA_TRUNCATION);
+        }
+        anInputStream.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Reads a LONG field. Implements the DBI semantics associated with
+     * the LongTruncOk and LongReadLen properties.
+     *
+     * @param aColumnIndex the column index being read, for error reporting
+     * @param aReader a reader returned by a getXXXStream method
+     * @param aLongReadLen the LongReadLen property for this statement
+     * @param aLongTruncOk the LongTruncOk property for this statement
+     * @param readAll the jdbc_longreadall property for this statement
+     * @return a char array read from the stream, or null if the input
+     *      stream is null
+     * @exception DataTruncation if the data is truncated
+     * @exception IOException if an error occurs reading from the stream
+     */
+    private static char[] gReadLong(int aColumnIndex, Reader aReader, 
+        int aLongReadLen, boolean aLongTruncOk, boolean readAll) 
+        throws DbdException, IOException
+    {
+        if (aLongReadLen == 0)
+            return null;
+        if (aReader == null)
+            return null;
+        CharArrayWriter out = new CharArrayWriter(aLongReadLen); 
+        char[] buffer = new char[sLONG_READ_BUFFER_SIZE]; 
+        int read;
+        int totalread = 0;
+
+        if (readAll)
+        {
+            while ((read = aReader.read(buffer, 0, buffer.length)) != -1)
+            {
+                totalread += read;
+                out.write(buffer, 0, read);
+            }
+        }
+        else
+        {
+            while (totalread < aLongReadLen &&
+                (read = aReader.read(buffer, 0, 
+                    Math.min(buffer.length, (aLongReadLen - totalread)))) != -1)
+            {
+                totalread += read;
+                out.write(buffer, 0, read);
+            }
+        }
+        out.close();
+        if (gLog.isDebugEnabled())
+        {
+            gLog.debug("Read " + totalread + " bytes from LONG column " + 
+                aColumnIndex + "(LongReadLen=" + aLongReadLen + 
+                ";LongTruncOk=" + aLongTruncOk + ";jdbc_longreadall=" +
+                readAll + ")");
+        }
+        if (!readAll && (!aLongTruncOk && aReader.read() != -1))
+        {
+            aReader.close();
+            throw new DbdException(DbdException.gDATA_TRUNCATION);
+        }
+        aReader.close();
+        return out.toCharArray();
+    }
+}
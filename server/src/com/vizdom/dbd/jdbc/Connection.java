@@ -20,19 +20,26 @@
 
 package com.vizdom.dbd.jdbc;
 
+import com.vizdom.ber.BerFrameReader;
 import com.vizdom.ber.BerObject;
 import com.vizdom.ber.BerIdentifier;
 import com.vizdom.ber.BerTypes;
+import com.vizdom.util.CharacterCodec;
 import com.vizdom.util.UnreachableCodeException;
 import java.io.*;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.net.Socket;
 import java.sql.*;
+import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Properties;
+import java.util.Vector;
+import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 import org.apache.log4j.NDC;
 
@@ -62,8 +69,120 @@ public class Connection implements Runnable
     /** The DBI constant for nullable-unknown columns. */
     private static final Integer sDbiNullableUnknown = new Integer(2);
 
-    /** LONG fields will be read in chunks this size. */
-    private static final int sLONG_READ_BUFFER_SIZE = 8192;
+    /** The CursorName statement property. */
+    private static final int sCURSOR_NAME = 1;
+
+    /** The NAME statement property. */
+    private static final int sNAME = 2;
+
+    /** The TYPE statement property. */
+    private static final int sTYPE = 3;
+
+    /** The PRECISION statement property. */
+    private static final int sPRECISION = 4;
+
+    /** The SCALE statement property. */
+    private static final int sSCALE = 5;
+
+    /** The NULLABLE statement property. */
+    private static final int sNULLABLE = 6;
+
+    /** The LongReadLen statement property. */
+    private static final int sLONG_READ_LEN = 7;
+
+    /** The LongTruncOk statement property. */
+    private static final int sLONG_TRUNC_OK = 8;
+
+    /** The ChopBlanks statement property. */
+    private static final int sCHOP_BLANKS = 9;
+
+    /** The jdbc_longreadall statement property. */
+    private static final int sJDBC_LONGREADALL = 10;
+
+    /** The jdbc_lobthreshold statement property. */
+    private static final int sJDBC_LOBTHRESHOLD = 11;
+
+    /** The jdbc_fetchsize statement property. */
+    private static final int sJDBC_FETCHSIZE = 12;
+
+    /** The jdbc_fetchbytes statement property. */
+    private static final int sJDBC_FETCHBYTES = 13;
+
+    /** The jdbc_spool statement property. */
+    private static final int sJDBC_SPOOL = 14;
+
+    /** The jdbc_cache statement property. */
+    private static final int sJDBC_CACHE = 15;
+
+    /** The jdbc_query_timeout statement property. */
+    private static final int sJDBC_QUERY_TIMEOUT = 16;
+
+    /** The jdbc_max_rows statement property. */
+    private static final int sJDBC_MAX_ROWS = 17;
+
+    /** The jdbc_max_field_size statement property. */
+    private static final int sJDBC_MAX_FIELD_SIZE = 18;
+
+    /** 
+     * Maps statement property names to the ids above. The names 
+     * arrive as canonical instances from the BER module's string
+     * cache, so the lookups rarely need to compare characters.
+     */
+    private static final Hashtable<String, Integer> sStatementProperties =
+        new Hashtable<String, Integer>();
+
+    static
+    {
+        sStatementProperties.put("CursorName", Integer.valueOf(sCURSOR_NAME));
+        sStatementProperties.put("NAME", Integer.valueOf(sNAME));
+        sStatementProperties.put("TYPE", Integer.valueOf(sTYPE));
+        sStatementProperties.put("PRECISION", Integer.valueOf(sPRECISION));
+        sStatementProperties.put("SCALE", Integer.valueOf(sSCALE));
+        sStatementProperties.put("NULLABLE", Integer.valueOf(sNULLABLE));
+        sStatementProperties.put("LongReadLen", 
+            Integer.valueOf(sLONG_READ_LEN));
+        sStatementProperties.put("LongTruncOk", 
+            Integer.valueOf(sLONG_TRUNC_OK));
+        sStatementProperties.put("ChopBlanks", Integer.valueOf(sCHOP_BLANKS));
+        sStatementProperties.put("jdbc_longreadall", 
+            Integer.valueOf(sJDBC_LONGREADALL));
+        sStatementProperties.put("jdbc_lobthreshold", 
+            Integer.valueOf(sJDBC_LOBTHRESHOLD));
+        sStatementProperties.put("jdbc_fetchsize", 
+            Integer.valueOf(sJDBC_FETCHSIZE));
+        sStatementProperties.put("jdbc_fetchbytes", 
+            Integer.valueOf(sJDBC_FETCHBYTES));
+        sStatementProperties.put("jdbc_spool", Integer.valueOf(sJDBC_SPOOL));
+        sStatementProperties.put("jdbc_cache", Integer.valueOf(sJDBC_CACHE));
+        sStatementProperties.put("jdbc_query_timeout", 
+            Integer.valueOf(sJDBC_QUERY_TIMEOUT));
+        sStatementProperties.put("jdbc_max_rows", 
+            Integer.valueOf(sJDBC_MAX_ROWS));
+        sStatementProperties.put("jdbc_max_field_size", 
+            Integer.valueOf(sJDBC_MAX_FIELD_SIZE));
+    }
+
+    /** Matches the JDBC escape syntax for a procedure call. */
+    private static final Pattern sCALL = Pattern.compile(
+        "^\\s*\\{\\s*(\\?\\s*=\\s*)?call\\b", Pattern.CASE_INSENSITIVE);
+
+    /** The most func methods to cache before the cache is cleared. */
+    private static final int sMAX_FUNC_METHODS = 1024;
+
+    /** 
+     * Stands for a method which can't be found or invoked in 
+     * <code>sFuncMethods</code>. 
+     */
+    private static final MethodHandle sNO_METHOD = 
+        MethodHandles.constant(Object.class, null);
+
+    /** 
+     * Caches the method handles used for func calls, shared by all
+     * connections. The handles take the target object and an array
+     * of parameters, and return an Object.
+     */
+    private static final Hashtable<FuncMethodKey, MethodHandle> 
+        sFuncMethods = new Hashtable<FuncMethodKey, MethodHandle>();
 
     /** The current thread name, used in tracing messages. */
     private String mThreadId;
@@ -81,6 +200,9 @@ public class Connection implements Runnable
     /** The client socket's output stream. */
     private BufferedOutputStream mOut;
 
+    /** Reads and decodes whole requests from <code>mIn</code>. */
+    private BerFrameReader mReader;
+
     /** This connection's BerModule. */
     private BerDbdModule mBerModule;
 
@@ -119,8 +241,26 @@ public class Connection implements Runnable
     /** Flag indicating whether generated keys are supported by the driver. */
     private boolean mSupportsGetGeneratedKeys; 
 
-    /** The cached generated keys. */
-    private GeneratedKey[] mGeneratedKeys; 
+    /** 
+     * The generated keys from the last execution, of any statement, 
+     * which returned keys; used by last_insert_id.
+     */
+    private GeneratedKeys mGeneratedKeys; 
+
+    /** 
+     * Identifies the database and user in query cache keys, or null
+     * if it hasn't been needed yet.
+     */
+    private String mCacheId;
+
+    /** Counts the bytes written to the client. */
+    private Metrics.CountingOutputStream mCounter;
+
+    /** 
+     * The statement the current request is for, or null; used to 
+     * time the statement's requests.
+     */
+    private StatementHolder mCurrentHolder;
 
     /**
      * Constructor - initializes fields.
@@ -135,10 +275,15 @@ public class Connection implements Runnable
     {
         mSocket = aClient;
 
-        mIn = new BufferedInputStream(mSocket.getInputStream());
-        mOut = new BufferedOutputStream(mSocket.getOutputStream());
+        mIn = new BufferedInputStream(
+            new Metrics.CountingInputStream(mSocket.getInputStream()));
+        mCounter = new Metrics.CountingOutputStream(
+            mSocket.getOutputStream());
+        mOut = new BufferedOutputStream(mCounter);
         mNextHandle = 1;
         mBerModule = aBerModule;
+        mReader = new BerFrameReader(mIn, aBerModule, 
+            Server.gGetMaxFrameSize());
         preExistingConnection = false;
     }
 
@@ -177,9 +322,16 @@ public class Connection implements Runnable
         boolean connected = true;
 
         gLog.info("Client started");
+        Metrics.gSessionStarted();
 
         while (connected)
         {
+            // The request's tag, the time it was read, and the bytes 
+            // written before its response, for metrics.
+            int tagNumber = -1;
+            long started = 0;
+            long written = 0;
+            mCurrentHolder = null;
             try
             {
                 /* Re-implement this, treating Connection as a Visitor
@@ -188,9 +340,11 @@ public class Connection implements Runnable
                  * and each fooRequest would have a 
                  * handleMessage(Connection conn) {conn.handleMessage(this)}
                  */
-                request = mBerModule.readFrom(mIn);
+                request = mReader.readFrame();
                 if (request == null)
                     throw new FatalException("Client disconnected");
+                started = System.nanoTime();
+                written = mCounter.getCount();
                 if (gLog.isDebugEnabled())
                     gLog.debug("Request: " + request);
 
@@ -198,7 +352,7 @@ public class Connection implements Runnable
                 if (id.getTagClass() != BerTypes.APPLICATION)
                     throw new FatalException("Unknown request received " + id);
 
-                int tagNumber = id.getTagNumber();
+                tagNumber = id.getTagNumber();
                 switch (tagNumber)
                 {
                 case BerDbdModule.gDISCONNECT_REQUEST:
@@ -275,6 +429,44 @@ public class Connection implements Runnable
                     response = handleRequest(
                         (GetGeneratedKeysRequest) request);
                     break;
+
+                case BerDbdModule.gLOB_READ_REQUEST:
+                    response = handleRequest((LobReadRequest) request);
+                    break;
+
+                case BerDbdModule.gLOB_WRITE_BEGIN_REQUEST:
+                    response = handleRequest((LobWriteBeginRequest) request);
+                    break;
+                case BerDbdModule.gLOB_WRITE_CHUNK_REQUEST:
+                    response = handleRequest((LobWriteChunkRequest) request);
+                    break;
+                case BerDbdModule.gLOB_WRITE_END_REQUEST:
+                    response = handleRequest((LobWriteEndRequest) request);
+                    break;
+
+                case BerDbdModule.gFETCH_SCROLL_REQUEST:
+                    response = handleRequest((FetchScrollRequest) request);
+                    break;
+                case BerDbdModule.gMORE_RESULTS_REQUEST:
+                    response = handleRequest((MoreResultsRequest) request);
+                    break;
+                case BerDbdModule.gCACHE_INVALIDATE_REQUEST:
+                    response = handleRequest(
+                        (CacheInvalidateRequest) request);
+                    break;
+                case BerDbdModule.gEXECUTE_BATCH_REQUEST:
+                    response = handleRequest((ExecuteBatchRequest) request);
+                    break;
+                case BerDbdModule.gGENERATED_KEYS_REQUEST:
+                    response = handleRequest(
+                        (GeneratedKeysRequest) request);
+                    break;
+                case BerDbdModule.gMETA_DATA_REQUEST:
+                    response = handleRequest((MetaDataRequest) request);
+                    break;
+                case BerDbdModule.gMETA_DATA_FLUSH_REQUEST:
+                    response = handleRequest((MetaDataFlushRequest) request);
+                    break;
                     
                 default: 
                     throw new DbdException(DbdException.gUNKNOWN_REQUEST,
@@ -285,6 +477,8 @@ public class Connection implements Runnable
                 {
                     response.writeTo(mOut);
                     mOut.flush(); 
+                    mMeasure(tagNumber, System.nanoTime() - started,
+                        mCounter.getCount() - written, response);
                     if (gLog.isDebugEnabled())
                         gLog.debug("Response: " + response);
                     response = null;
@@ -303,6 +497,8 @@ public class Connection implements Runnable
                 {
                     gLog.warn("Failed to send error", fatal);
                 }
+                mMeasure(tagNumber, System.nanoTime() - started,
+                    mCounter.getCount() - written, null);
             }
             catch (Throwable throwable)
             {
@@ -320,6 +516,17 @@ public class Connection implements Runnable
                 {
                     gLog.warn("Failed to send error", fatal);
                 }
+                if (tagNumber >= 0)
+                {
+                    Metrics.gRecord(tagNumber, System.nanoTime() - started, 
+                        true);
+                }
+            }
+            finally
+            {
+                // Discard any strings encoded for the response, or
+                // for an error.
+                mBerModule.getCharacterCodec().reset();
             }
         }
 
@@ -331,10 +538,76 @@ public class Connection implements Runnable
         try { mSocket.close(); } catch (IOException e) { }
         mSocket = null;
         
+        Metrics.gSessionEnded();
         gLog.info("Client done");
         NDC.pop();
     }
 
+    /**
+     * Records a request's metrics, and if it was for a statement, 
+     * its timing for the slow statement log and its type for the 
+     * round trip profile. Finishes timing the 
+     * statement's execution if the request ended it: if the 
+     * request failed, if an execute returned no result set, or if
+     * a fetch found no more rows.
+     *
+     * @param aTag the request's tag number
+     * @param aNanos the time taken to handle the request, in 
+     *      nanoseconds
+     * @param aBytes the size of the response, in bytes
+     * @param aResponse the response, or null if an error was sent
+     */
+    private void mMeasure(int aTag, long aNanos, long aBytes, 
+        BerObject aResponse)
+    {
+        boolean row = aResponse instanceof CachedFetchResponse ||
+            (aResponse instanceof FetchResponse &&
+            ((FetchResponse) aResponse).hasData());
+        Metrics.gRecord(aTag, aNanos, aResponse == null);
+        if (row)
+            Metrics.gRowFetched();
+
+        StatementHolder holder = mCurrentHolder;
+        mCurrentHolder = null;
+        if (holder == null)
+            return;
+        if (RoundTripProfile.gIsEnabled())
+            RoundTripProfile.gRecord(holder.getSql(), aTag, row);
+        holder.getTiming().record(aTag, aNanos, aBytes, row);
+        boolean finished;
+        switch (aTag)
+        {
+        case BerDbdModule.gEXECUTE_REQUEST:
+            finished = holder.getResultSet() == null && 
+                !holder.isSpooled() && holder.getCachedResult() == null;
+            break;
+        case BerDbdModule.gFETCH_REQUEST:
+            finished = !row;
+            break;
+        case BerDbdModule.gEXECUTE_BATCH_REQUEST:
+        case BerDbdModule.gSTATEMENT_DESTROY_REQUEST:
+            finished = true;
+            break;
+        default:
+            finished = false;
+            break;
+        }
+        if (finished || aResponse == null)
+            mFinishTiming(holder);
+    }
+
+    /**
+     * Finishes timing an execution of a statement, logging it if
+     * it was slow.
+     *
+     * @param aHolder the statement holder
+     */
+    private void mFinishTiming(StatementHolder aHolder)
+    {
+        aHolder.getTiming().finish(aHolder.getSql(), 
+            mBerModule.getCharacterEncoding());
+    }
+
     /**
      * Attempts to rollback any existing transaction without
      * triggering any errors (in case, for example, no
@@ -390,9 +663,8 @@ public class Connection implements Runnable
             {
                 if (gLog.isDebugEnabled())
                     gLog.debug("Setting character encoding to " + charset);
-                // Trigger UnsupportedEncodingException as soon as possible.
-                com.vizdom.util.CharacterEncoder.toByteArray("test string", 
-                    charset);
+                // This resolves the encoding once for the connection,
+                // and triggers UnsupportedEncodingException if needed.
                 mBerModule.setCharacterEncoding(charset);
             }
             
@@ -489,7 +761,13 @@ public class Connection implements Runnable
         {
             java.util.Enumeration elements = mStatementTable.elements();
             while (elements.hasMoreElements())
-                ((StatementHolder) elements.nextElement()).close();
+            {
+                StatementHolder holder = 
+                    (StatementHolder) elements.nextElement();
+                if (holder.getTiming().isExecuting())
+                    mFinishTiming(holder);
+                holder.close();
+            }
             if (gLog.isDebugEnabled())
             {
                 gLog.debug("Closed " + mStatementTable.size() + 
@@ -567,13 +845,38 @@ public class Connection implements Runnable
      * @exception SQLException if the statement preparation fails
      */
     /* We use PreparedStatements here since we don't know if there are
-     * any substitutable parameters. 
+     * any substitutable parameters. Calls in the JDBC escape syntax,
+     * and statements prepared with jdbc_callable (such as PL/SQL 
+     * blocks), are prepared as CallableStatements so that they can
+     * have OUT parameters.
      */
     BerObject handleRequest(PrepareRequest aRequest)
         throws SQLException
     {
         PreparedStatement stmt = null;
-        if (mSupportsGetGeneratedKeys)
+        boolean scrollable = 
+            "1".equals(aRequest.getOptions().get("jdbc_scrollable"));
+        if ("1".equals(aRequest.getOptions().get("jdbc_callable")) ||
+            sCALL.matcher(aRequest.getStatement()).find())
+        {
+            if (scrollable)
+            {
+                stmt = mConn.prepareCall(aRequest.getStatement(),
+                    ResultSet.TYPE_SCROLL_INSENSITIVE, 
+                    ResultSet.CONCUR_READ_ONLY);
+            }
+            else
+                stmt = mConn.prepareCall(aRequest.getStatement());
+        }
+        else if (scrollable)
+        {
+            // Generated keys can't be requested for a scrollable 
+            // statement; it's meant for queries anyway.
+            stmt = mConn.prepareStatement(aRequest.getStatement(),
+                ResultSet.TYPE_SCROLL_INSENSITIVE, 
+                ResultSet.CONCUR_READ_ONLY);
+        }
+        else if (mSupportsGetGeneratedKeys)
         {
             if ("name".equals(aRequest.getKeyType()))
             {
@@ -594,8 +897,8 @@ public class Connection implements Runnable
         else
             stmt = mConn.prepareStatement(aRequest.getStatement());
         int stmtHandle = mNextHandle++;
-        mStatementTable.put(new Integer(stmtHandle), 
-            new StatementHolder(stmt));
+        mCurrentHolder = new StatementHolder(stmt, aRequest.getStatement());
+        mStatementTable.put(new Integer(stmtHandle), mCurrentHolder);
         if (gLog.isTraceEnabled())
             gLog.trace("Assigned statement handle " + stmtHandle);
         return new PrepareResponse(stmtHandle);
@@ -620,6 +923,9 @@ public class Connection implements Runnable
      * to make sure that the parameter number is included in the 
      * error message, since we're setting all the parameters at once
      * and the user might not know otherwise which one failed.
+     * Parameters uploaded with LOB write requests are bound as 
+     * streams, replacing the placeholder values sent here, and the
+     * uploads are discarded once the statement has been executed.
      */
     BerObject handleRequest(ExecuteRequest aRequest)
         throws SQLException
@@ -627,68 +933,251 @@ public class Connection implements Runnable
         if (gLog.isTraceEnabled())
             gLog.trace("Executing statement handle " + aRequest.getHandle());
         StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
-        PreparedStatement stmt = holder.getStatement();
+        if (holder.getTiming().isExecuting())
+            mFinishTiming(holder);
+        holder.getTiming().start(aRequest.getParameters());
+        try
+        {
+            return mExecute(holder, aRequest);
+        }
+        finally
+        {
+            holder.clearUploads();
+        }
+    }
+
+    /**
+     * Sets the parameters and executes the statement for an execute
+     * request.
+     *
+     * @param aHolder the statement holder
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception SQLException if an error occurs when setting a parameter
+     *      with setXXX or executing the statement
+     */
+    private BerObject mExecute(StatementHolder aHolder, 
+        ExecuteRequest aRequest) throws SQLException
+    {
+        PreparedStatement stmt = aHolder.getStatement();
         Parameter[] params = aRequest.getParameters();
+        int[] outs = aRequest.getOutParameters();
         if (gLog.isDebugEnabled())
             gLog.debug("setting " + params.length + " parameters");
-        for (int i = 0; i < params.length; i++)
+        if (outs.length > 0 && !(stmt instanceof CallableStatement))
+            throw new DbdException(DbdException.gNOT_CALLABLE);
+        String cacheKey = mGetCacheKey(aHolder, params, outs);
+        aHolder.clearCache();
+        if (cacheKey != null)
+        {
+            QueryCache.Entry cached = QueryCache.gGet(cacheKey);
+            if (cached != null)
+            {
+                gLog.debug("Returning a cached result set");
+                aHolder.setCachedResult(cached);
+                return new ExecuteResponse(new ExecuteResultSetResponse(
+                    cached.getMetaData().getColumnCount()));
+            }
+        }
+        boolean[] isOut = new boolean[params.length];
+        for (int i = 0; i < outs.length; i++)
+        {
+            if (outs[i] > 0 && outs[i] <= params.length)
+                isOut[outs[i] - 1] = true;
+        }
+        mSetParameters(aHolder, params, isOut);
+        mBindUploads(aHolder);
+        
+        ExecuteResponse resp;
+        if (stmt.execute())
+        {
+            resp = mResultSetResponse(aHolder, 
+                mGetOutParameters(stmt, params, outs));
+            if (cacheKey != null)
+            {
+                aHolder.startRecording(new QueryCache.Recorder(cacheKey,
+                    aHolder.getSql(), ((Integer) aHolder.getProperties()
+                    .get("jdbc_cache")).intValue(), 
+                    ResultSpool.gCopyMetaData(
+                    aHolder.getResultSetMetaData())));
+            }
+        }
+        else
+        {
+            // execute returned a row count.
+            gLog.debug("Getting and returning a row count");
+            BerObject rows = new ExecuteRowsResponse(stmt.getUpdateCount());
+            resp = (outs.length == 0) ? new ExecuteResponse(rows) : 
+                new ExecuteResponse(rows, 
+                mGetOutParameters(stmt, params, outs));
+            mReadGeneratedKeys(aHolder);
+        }
+        return resp;
+    }
+
+    /**
+     * Executes a statement once for each of a list of parameter sets,
+     * in a single JDBC batch. The generated keys for all the rows are
+     * kept for a later generated keys request.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object with the row count for each 
+     *      parameter set
+     * @exception SQLException if an error occurs when setting a 
+     *      parameter or executing the batch
+     * @exception DbdException if the statement handle is invalid, or
+     *      LOB uploads are pending for the statement
+     */
+    BerObject handleRequest(ExecuteBatchRequest aRequest)
+        throws SQLException
+    {
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        if (holder.getTiming().isExecuting())
+            mFinishTiming(holder);
+        holder.getTiming().start(null);
+        Parameter[][] batch = aRequest.getBatch();
+        if (gLog.isDebugEnabled())
+        {
+            gLog.debug("Executing statement handle " + aRequest.getHandle()
+                + " for " + batch.length + " parameter sets");
+        }
+        PreparedStatement stmt = holder.getStatement();
+        holder.clearCache();
+        try
+        {
+            // An upload is bound to one execution, so it can't stand 
+            // for a parameter in every parameter set.
+            Hashtable<Integer, LobUpload> uploads = holder.getUploads();
+            if (uploads != null)
+            {
+                throw gLobUploadException(
+                    uploads.keys().nextElement().intValue(), 
+                    "uploads can't be used with batch execution");
+            }
+            for (int i = 0; i < batch.length; i++)
+            {
+                mSetParameters(holder, batch[i], 
+                    new boolean[batch[i].length]);
+                stmt.addBatch();
+            }
+            int[] counts = stmt.executeBatch();
+            mReadGeneratedKeys(holder);
+            return new ExecuteBatchResponse(counts);
+        }
+        finally
+        {
+            holder.clearUploads();
+            try { stmt.clearBatch(); } catch (SQLException e) { }
+        }
+    }
+
+    /**
+     * Reads the keys generated by the last execution of a statement,
+     * if the driver supports generated keys. The metadata for each 
+     * key column is read once, and the values for every row are kept.
+     *
+     * @param aHolder the statement holder
+     * @exception SQLException if the keys can't be read
+     */
+    private void mReadGeneratedKeys(StatementHolder aHolder)
+        throws SQLException
+    {
+        aHolder.setGeneratedKeys(null);
+        if (!mSupportsGetGeneratedKeys)
+            return;
+        GeneratedKeys keys = 
+            GeneratedKeys.gRead(aHolder.getStatement().getGeneratedKeys());
+        if (keys != null)
+        {
+            if (gLog.isTraceEnabled())
+                gLog.trace("Keys: " + keys); 
+            aHolder.setGeneratedKeys(keys);
+            mGeneratedKeys = keys;
+        }
+    }
+
+    /**
+     * Sets the parameters of a statement. Parameters uploaded with 
+     * LOB write requests are skipped, and OUT parameters are 
+     * registered.
+     *
+     * @param aHolder the statement holder
+     * @param aParameterList the parameters
+     * @param anOutList whether each parameter is an OUT parameter
+     * @exception SQLException if an error occurs when setting a 
+     *      parameter with setXXX
+     */
+    private void mSetParameters(StatementHolder aHolder, 
+        Parameter[] aParameterList, boolean[] anOutList) throws SQLException
+    {
+        PreparedStatement stmt = aHolder.getStatement();
+        boolean asciiNumbers = 
+            mBerModule.getCharacterCodec().encodesNumbersAsAscii();
+        for (int i = 0; i < aParameterList.length; i++)
         {
+            Parameter param = aParameterList[i];
             try 
             {
-                if (params[i].value == null)
+                if (aHolder.getUpload(i + 1) != null)
+                    continue;
+                if (anOutList[i])
+                {
+                    // An OUT parameter with no value isn't also an 
+                    // IN parameter.
+                    ((CallableStatement) stmt).registerOutParameter(
+                        i + 1, param.type);
+                    if (param.value == null)
+                        continue;
+                }
+                if (param.value == null)
                 {
                     if (gLog.isTraceEnabled())
                     {
                         gLog.trace("setting parameter " + (i + 1) + 
-                            "; value null; type " + params[i].type);
+                            "; value null; type " + param.type);
                     }
-                    stmt.setNull(i + 1, params[i].type);
+                    stmt.setNull(i + 1, param.type);
                     continue;
                 }
                 if (gLog.isTraceEnabled())
                     gLog.trace("setting parameter " + (i + 1) + "; value ");
-                switch (params[i].type) 
+                switch (param.type) 
                 {
                 case Types.BINARY:
                 case Types.VARBINARY:
                 case Types.LONGVARBINARY:
-                    stmt.setBytes(i + 1, params[i].value.toByteArray());
+                    stmt.setBytes(i + 1, param.value.toByteArray());
                     break;
                 case Types.TINYINT:
                 case Types.SMALLINT:
-                    stmt.setShort(i + 1, 
-                        Short.parseShort(params[i].value.toString()));
+                    stmt.setShort(i + 1, param.shortValue(asciiNumbers));
                     break;
                 case Types.INTEGER:
-                    stmt.setInt(i + 1, 
-                        Integer.parseInt(params[i].value.toString()));
+                    stmt.setInt(i + 1, param.intValue(asciiNumbers));
                     break;
                 case Types.BIGINT: 
-                    stmt.setLong(i + 1, 
-                        Long.parseLong(params[i].value.toString()));
+                    stmt.setLong(i + 1, param.longValue(asciiNumbers));
                     break;
                 case Types.REAL: 
                     stmt.setFloat(i + 1, 
-                        new Float(params[i].value.toString()).floatValue());
+                        new Float(param.value.toString()).floatValue());
                     break;
                 case Types.FLOAT: 
                 case Types.DOUBLE: 
-                    stmt.setDouble(i + 1, 
-                        new Double(params[i].value.toString()).doubleValue());
+                    stmt.setDouble(i + 1, param.doubleValue(asciiNumbers));
                     break;
                 case Types.DECIMAL: 
                 case Types.NUMERIC:
                     stmt.setBigDecimal(i + 1, 
-                        new BigDecimal(params[i].value.toString()));
+                        param.bigDecimalValue(asciiNumbers));
                     break;
                 case Types.BIT:   // Clients must send "0" or "1"
-                    stmt.setBoolean(i + 1, 
-                        params[i].value.toString().equals("1"));
+                    stmt.setBoolean(i + 1, param.isOne(asciiNumbers));
                     break;
                 case Types.CHAR: 
                 case Types.VARCHAR:
                 case Types.LONGVARCHAR:  // Use a stream here?
-                    stmt.setString(i + 1, params[i].value.toString());
+                    stmt.setString(i + 1, param.value.toString());
                     break;
                 case Types.DATE:      
                 case Types.TIME:      
@@ -703,26 +1192,26 @@ public class Connection implements Runnable
 
                 case Types.OTHER: 
                 default: 
-                    stmt.setString(i + 1, params[i].value.toString());
+                    stmt.setString(i + 1, param.value.toString());
                     break;
                 }
-                if (params[i].type == Types.BINARY ||
-                    params[i].type == Types.VARBINARY ||
-                    params[i].type == Types.LONGVARBINARY)
+                if (param.type == Types.BINARY ||
+                    param.type == Types.VARBINARY ||
+                    param.type == Types.LONGVARBINARY)
                 {
                     if (gLog.isTraceEnabled())
                     {
                         gLog.trace("(binary; length " + 
-                            params[i].value.toByteArray().length + 
-                            "); type " + params[i].type);
+                            param.value.toByteArray().length + 
+                            "); type " + param.type);
                     }
                 }
                 else
                 {
                     if (gLog.isTraceEnabled())
                     {
-                        gLog.trace(params[i].value.toString() + "; type " + 
-                            params[i].type);
+                        gLog.trace(param.value.toString() + "; type " + 
+                            param.type);
                     }
                 }
             }
@@ -740,1457 +1229,2540 @@ public class Connection implements Runnable
                 throw dbd;
             }            
         }
-        
-        ExecuteResponse resp;
-        if (stmt.execute())
-        {
-            // execute returned a result set.
-            gLog.debug("Getting and returning a result set");
-            ResultSet rs = stmt.getResultSet();
-            holder.setResultSet(rs);
-            ResultSetMetaData rsmd = holder.getResultSetMetaData();
-            int cols = rsmd.getColumnCount();
-            resp = 
-                new ExecuteResponse(
-                new ExecuteResultSetResponse(cols));
-        }
-        else
+    }
+
+    /**
+     * Returns the query cache key for an execution of a statement, 
+     * if its result may be cached: the statement's jdbc_cache 
+     * property is set, it has no OUT parameters or uploaded LOB
+     * parameters, and AutoCommit is on. Inside a transaction the
+     * statement may see uncommitted changes, which mustn't be 
+     * served to other connections, and cached results would hide 
+     * the transaction's own changes from it.
+     *
+     * @param aHolder the statement holder
+     * @param aParameterList the parameters
+     * @param anOutList the 1-based indexes of the OUT parameters
+     * @return the key, or null if the result may not be cached
+     * @exception SQLException if the database meta data can't be read
+     */
+    private String mGetCacheKey(StatementHolder aHolder, 
+        Parameter[] aParameterList, int[] anOutList) throws SQLException
+    {
+        Object ttl = aHolder.getProperties().get("jdbc_cache");
+        if (ttl == null || ((Integer) ttl).intValue() <= 0 || 
+            anOutList.length > 0 || aHolder.getUploads() != null ||
+            !mConn.getAutoCommit())
         {
-            // execute returned a row count.
-            gLog.debug("Getting and returning a row count");
-            resp = new ExecuteResponse(new ExecuteRowsResponse(
-                stmt.getUpdateCount()));
-            if (mSupportsGetGeneratedKeys)
-            {
-                ResultSet rs = stmt.getGeneratedKeys();
-                ResultSetMetaData rsmd = rs.getMetaData(); 
-                if (rsmd.getColumnCount() > 0)
-                {
-                    // We might not be able to jump to the last
-                    // row, so we just have to read each row,
-                    // letting the last row be the last value
-                    // cached.
-                    mGeneratedKeys = new GeneratedKey[rsmd.getColumnCount()]; 
-                    while (rs.next())
-                    {
-                        for (int i = 1; i <= rsmd.getColumnCount(); i++)
-                        {
-                            mGeneratedKeys[i - 1] = new GeneratedKey(
-                                rsmd.getCatalogName(i),
-                                rsmd.getSchemaName(i),
-                                rsmd.getTableName(i),
-                                rsmd.getColumnName(i),
-                                rs.getString(i)); 
-                            if (gLog.isTraceEnabled())
-                                gLog.trace("Key: " + mGeneratedKeys[i - 1]); 
-                        }
-                    }
-                }
-            }
+            return null;
         }
-        return resp;
+        return QueryCache.gCreateKey(mGetCacheId(), aHolder.getSql(), 
+            aParameterList, aHolder.getProperties(), 
+            mBerModule.getCharacterEncoding());
     }
 
     /**
-     * Fetches the next row of data from the ResultSet associated
-     * with a given Statement. Implements the DBI specification 
-     * with regard to LongReadLen, LongTruncOk, and ChopBlanks.
+     * Returns the database URL and user, which identify the cache 
+     * entries this connection may share with others.
      *
-     * @param aRequest the request received from the client
-     * @return a BER response object
-     * @exception SQLException if <code>next</code> or <code>getXXX</code>
-     *      fail, or if long data is truncated
-     * @exception Exception if the statement has no result set, or the
-     *      provided statement handle is invalid
+     * @return the cache id
+     * @exception SQLException if the database meta data can't be read
      */
-     /* Code here relies on prepare (or some other earlier method) to 
-      * set the LongReadLen, LongTruncOk, and ChopBlanks properties.
-      *
-      * Some data types get special handling, but mostly we pass 
-      * everything back as a string and let the client sort it out.
-      */
-    BerObject handleRequest(FetchRequest aRequest)
-        throws SQLException
+    private String mGetCacheId() throws SQLException
     {
-        if (gLog.isTraceEnabled())
+        if (mCacheId == null)
         {
-            gLog.trace("Fetching row from statement handle " + 
-                aRequest.getHandle());
+            DatabaseMetaData dbmd = mConn.getMetaData();
+            mCacheId = dbmd.getURL() + " " + dbmd.getUserName();
         }
-        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
-        ResultSet rs = holder.getResultSet();
-        if (rs == null)
-            throw new DbdException(DbdException.gNO_RESULT_SET);
-        
-        Object[] row = null;
-        boolean hasData;
-        if (hasData = rs.next())
+        return mCacheId;
+    }
+
+    /**
+     * Reads the values of a callable statement's OUT parameters. 
+     * Binary values are read as bytes, and all others as strings.
+     *
+     * @param aStatement the statement, which has been executed
+     * @param aParameterList the parameters
+     * @param anOutList the 1-based indexes of the OUT parameters
+     * @return the values, or null if there are no OUT parameters
+     * @exception SQLException if a value can't be read
+     */
+    private OutParameters mGetOutParameters(PreparedStatement aStatement,
+        Parameter[] aParameterList, int[] anOutList) throws SQLException
+    {
+        if (anOutList.length == 0)
+            return null;
+        CallableStatement call = (CallableStatement) aStatement;
+        Object[] values = new Object[anOutList.length];
+        for (int i = 0; i < anOutList.length; i++)
         {
-            ResultSetMetaData rsmd = holder.getResultSetMetaData();
-            int cols = rsmd.getColumnCount();
-            row = new Object[cols];
-            int longReadLen = ((Integer) 
-                holder.getProperties().get("LongReadLen")).intValue();
-            boolean longTruncOk = ((Boolean) 
-                holder.getProperties().get("LongTruncOk")).booleanValue();
-            boolean chopBlanks = ((Boolean) 
-                holder.getProperties().get("ChopBlanks")).booleanValue();
-            boolean readAll = ((Boolean) 
-                holder.getProperties().get("jdbc_longreadall")).booleanValue();
-            for (int i = 0; i < cols; i++)
+            int index = anOutList[i];
+            switch (aParameterList[index - 1].type)
             {
-                try
-                {
-                    int type = rsmd.getColumnType(i + 1);
-                    if (gLog.isTraceEnabled())
-                    {
-                        gLog.trace("getting column " + (i + 1) + "/" + 
-                            rsmd.getColumnName(i + 1) + "; type " + type);
-                    }
-                    switch (type)
-                    {
-                    case Types.BINARY: 
-                    case Types.VARBINARY: 
-                        row[i] = rs.getBytes(i + 1);
-                        break;
-
-                    case Types.LONGVARBINARY: 
-                        if (longReadLen == 0)
-                            row[i] = null;
-                        else
-                        {
-                            row[i] = mReadLong(i + 1, 
-                                rs.getBinaryStream(i + 1),
-                                longReadLen, longTruncOk, readAll);
-                        }
-                        break;
-
-                    case Types.BLOB: 
-                        if (longReadLen == 0)
-                            row[i] = null;
-                        else
-                        {
-                            Blob blob = rs.getBlob(i + 1); 
-                            if (blob == null)
-                                row[i] = null;
-                            else
-                            {
-                                row[i] = mReadLong(i + 1, 
-                                    blob.getBinaryStream(), longReadLen, 
-                                    longTruncOk, readAll);
-                            }
-                        }
-                        break;
-
-                        // The JDBC spec says to prefer
-                        // getCharacterStream for
-                        // LONGVARCHAR. However, getString is
-                        // also supported. We could use getString
-                        // here instead, or create a parameter
-                        // which lets a caller specify that
-                        // getString should be used.
-                    case Types.LONGVARCHAR:
-                        if (longReadLen == 0)
-                            row[i] = null;
-                        else
-                        {
-                            char[] chars = mReadLong(i + 1, 
-                                rs.getCharacterStream(i + 1), longReadLen, 
-                                longTruncOk, readAll);
-                            row[i] = (chars == null) ? 
-                                null : new String(chars); 
-                        }
-                        break;
-
-                    case Types.CLOB: 
-                        if (longReadLen == 0)
-                            row[i] = null;
-                        else
-                        {
-                            Clob clob = rs.getClob(i + 1);
-                            if (clob == null)
-                                row[i] = null;
-                            else
-                            {
-                                char[] chars = mReadLong(i + 1, 
-                                    clob.getCharacterStream(), longReadLen, 
-                                    longTruncOk, readAll);
-                                row[i] = (chars == null) ? 
-                                    null : new String(chars);
-                            }
-                        }
-                        break;
-
-                        // The driver I mostly use returns arrays
-                        // in a convenient string format. This
-                        // may be updated later to get an Array
-                        // object, build a string, and allow
-                        // callers to specify a term separator.
-                    case Types.ARRAY: 
-                        row[i] = rs.getString(i + 1);
-                        break;
-
-                    case Types.CHAR: 
-                        if (chopBlanks)
-                        {
-                            row[i] = mChopBlanks(rs.getString(i + 1));
-                            break;
-                        }
-                        // Fall through when chopBlanks is not set.
-
-                    default:  // This will include any Types.OTHER columns.
-                        row[i] = rs.getString(i + 1);
-                        break;
-                    }
-                }
-                catch (IOException ioError)
-                {
-                    throw new DbdException(DbdException.gFETCH_EXCEPTION,
-                        new String[] { String.valueOf(i + 1), 
-                                       ioError.toString() });
-                }
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                values[i] = call.getBytes(index);
+                break;
+            default:
+                values[i] = call.getString(index);
+                break;
             }
+            if (gLog.isTraceEnabled())
+                gLog.trace("OUT parameter " + index + ": " + values[i]);
         }
         try
         {
-            return new FetchResponse(hasData, row, 
+            return new OutParameters(values, 
                 mBerModule.getCharacterEncoding());
         }
         catch (UnsupportedEncodingException unsupEnc)
-        {
+        {       
             throw new UnreachableCodeException();
         }
     }
-    
 
+    /**
+     * Makes a statement's current result set the holder's result set,
+     * and returns an execute response describing it.
+     *
+     * @param aHolder the statement holder
+     * @param anOutParameters the OUT parameter values, or null
+     * @return an execute response with the number of columns
+     * @exception SQLException if the result set can't be read
+     */
+    private ExecuteResponse mResultSetResponse(StatementHolder aHolder,
+        OutParameters anOutParameters) throws SQLException
+    {
+        gLog.debug("Getting and returning a result set");
+        aHolder.setResultSet(aHolder.getStatement().getResultSet());
+        mSpool(aHolder);
+        int cols = aHolder.getResultSetMetaData().getColumnCount();
+        BerObject columns = new ExecuteResultSetResponse(cols);
+        return (anOutParameters == null) ? new ExecuteResponse(columns) :
+            new ExecuteResponse(columns, anOutParameters);
+    }
 
     /**
-     * Returns the value of a connection property. 
+     * Moves to a statement's next result, closing its current result
+     * set, for statements that return several result sets or update
+     * counts.
      *
      * @param aRequest the request received from the client
-     * @return a BER response object
-     * @exception Exception if the requested connection property name
-     *      is not recognized
+     * @return an execute response describing the next result; the 
+     *      row count is -1 if there are no more results
+     * @exception SQLException if the next result can't be read
+     * @exception DbdException if the statement handle is invalid
      */
-    BerObject handleRequest(GetConnectionPropertyRequest aRequest)
+    BerObject handleRequest(MoreResultsRequest aRequest)
         throws SQLException
     {
-        String property = aRequest.getPropertyName();
-        if (property.equals("AutoCommit"))
+        if (gLog.isTraceEnabled())
+            gLog.trace(aRequest.toString());
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        if (holder.getStatement().getMoreResults())
+            return mResultSetResponse(holder, null);
+        holder.setResultSet(null);
+        int count = holder.getStatement().getUpdateCount();
+        if (gLog.isDebugEnabled())
+            gLog.debug("Next result: row count " + count);
+        return new ExecuteResponse(new ExecuteRowsResponse(count));
+    }
+
+    /**
+     * Removes results from the query cache, for all connections.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object with the number of results removed
+     */
+    BerObject handleRequest(CacheInvalidateRequest aRequest)
+    {
+        if (gLog.isTraceEnabled())
+            gLog.trace(aRequest.toString());
+        return new CacheInvalidateResponse(
+            QueryCache.gInvalidate(aRequest.getMatch()));
+    }
+
+    /**
+     * Returns database meta data, from the meta data cache if
+     * possible.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception SQLException if a database access error occurs
+     * @exception DbdException if the kind of meta data is unknown
+     * @exception UnsupportedEncodingException if the application
+     *      selects an unsupported character encoding
+     */
+    BerObject handleRequest(MetaDataRequest aRequest)
+        throws SQLException, UnsupportedEncodingException
+    {
+        if (gLog.isTraceEnabled())
+            gLog.trace(aRequest.toString());
+        String key = MetaDataCache.gCreateKey(mGetCacheId(), 
+            aRequest.getKind(), aRequest.getArguments());
+        MetaDataCache.Entry entry = MetaDataCache.gGet(key);
+        if (entry == null)
         {
-            Integer[] response = new Integer[1];
-            response[0] = new Integer(mConn.getAutoCommit() ? 1 : 0);
-            try
+            entry = mReadMetaData(aRequest);
+            MetaDataCache.gPut(key, entry);
+        }
+        else if (gLog.isDebugEnabled())
+            gLog.debug("Meta data found in cache: " + aRequest);
+        return new MetaDataResponse(entry, 
+            mBerModule.getCharacterEncoding());
+    }
+
+    /**
+     * Reads database meta data using <code>DatabaseMetaData</code>.
+     *
+     * @param aRequest the meta data request
+     * @return the meta data
+     * @exception SQLException if a database access error occurs
+     * @exception DbdException if the kind of meta data is unknown
+     */
+    private MetaDataCache.Entry mReadMetaData(MetaDataRequest aRequest)
+        throws SQLException
+    {
+        DatabaseMetaData dbmd = mConn.getMetaData();
+        String kind = aRequest.getKind();
+        String catalog = aRequest.getArgument(0);
+        String schema = aRequest.getArgument(1);
+        String table = aRequest.getArgument(2);
+        if (kind.equals("tables"))
+        {
+            String[] types = null;
+            if (aRequest.getArgument(3) != null)
+                types = aRequest.getArgument(3).split(",");
+            return MetaDataCache.gRead(dbmd.getTables(catalog, schema, 
+                (table == null) ? "%" : table, types), 
+                new String[] { table });
+        }
+        if (kind.equals("columns"))
+        {
+            String column = aRequest.getArgument(3);
+            return MetaDataCache.gRead(dbmd.getColumns(catalog, schema, 
+                (table == null) ? "%" : table, 
+                (column == null) ? "%" : column), new String[] { table });
+        }
+        if (kind.equals("primary_keys"))
+        {
+            return MetaDataCache.gRead(
+                dbmd.getPrimaryKeys(catalog, schema, table), 
+                new String[] { table });
+        }
+        if (kind.equals("foreign_keys"))
+        {
+            String foreignCatalog = aRequest.getArgument(3);
+            String foreignSchema = aRequest.getArgument(4);
+            String foreignTable = aRequest.getArgument(5);
+            ResultSet rs;
+            if (table == null)
             {
-                return new GetConnectionPropertyResponse(response, 
-                    mBerModule.getCharacterEncoding());
+                rs = dbmd.getImportedKeys(foreignCatalog, foreignSchema, 
+                    foreignTable);
             }
-            catch (UnsupportedEncodingException unsupEnc)
+            else if (foreignTable == null)
+                rs = dbmd.getExportedKeys(catalog, schema, table);
+            else
             {
-                throw new UnreachableCodeException();
+                rs = dbmd.getCrossReference(catalog, schema, table, 
+                    foreignCatalog, foreignSchema, foreignTable);
             }
-        }            
-        throw new DbdException(DbdException.gUNKNOWN_PROPERTY, 
-            new String[] { property });
+            return MetaDataCache.gRead(rs, 
+                new String[] { table, foreignTable });
+        }
+        if (kind.equals("catalogs"))
+        {
+            return MetaDataCache.gRead(dbmd.getCatalogs(), 
+                new String[] { null });
+        }
+        if (kind.equals("schemas"))
+        {
+            return MetaDataCache.gRead(dbmd.getSchemas(), 
+                new String[] { null });
+        }
+        if (kind.equals("table_types"))
+        {
+            return MetaDataCache.gRead(dbmd.getTableTypes(), 
+                new String[] { null });
+        }
+        throw new DbdException(DbdException.gUNKNOWN_META_DATA,
+            new String[] { kind });
     }
 
     /**
-     * Sets a connection property value.
+     * Removes entries from the meta data cache, for all connections.
      *
      * @param aRequest the request received from the client
-     * @return a BER response object
-     * @exception Exception if the connection property name
-     *      is not recognized
+     * @return a BER response object with the number of entries removed
      */
-    BerObject handleRequest(SetConnectionPropertyRequest aRequest)
-        throws SQLException
+    BerObject handleRequest(MetaDataFlushRequest aRequest)
     {
-        String property = aRequest.getPropertyName();
-        if (property.equals("AutoCommit"))
+        if (gLog.isTraceEnabled())
+            gLog.trace(aRequest.toString());
+        return new MetaDataFlushResponse(
+            MetaDataCache.gFlush(aRequest.getTable()));
+    }
+
+    /**
+     * Spools a statement's result set to a temporary file, so that
+     * the cursor can be closed before the client has read the rows,
+     * if the statement's jdbc_spool property is set. Scrollable 
+     * result sets aren't spooled.
+     *
+     * @param aHolder the statement holder, with its new result set
+     * @exception SQLException if the rows can't be read
+     * @exception DbdException if the temporary file can't be written
+     */
+    private void mSpool(StatementHolder aHolder) throws SQLException
+    {
+        if (!Boolean.TRUE.equals(aHolder.getProperties().get("jdbc_spool")) ||
+            aHolder.getResultSet().getType() != ResultSet.TYPE_FORWARD_ONLY)
         {
-            boolean autoCommit = aRequest.getPropertyValue().equals("1"); 
-            gLog.debug("Settting AutoCommit to " + autoCommit); 
-            mConn.setAutoCommit(autoCommit);
-            return new SetConnectionPropertyResponse();
+            return;
+        }
+        try
+        {
+            if (aHolder.spool(mBerModule.getCharacterCodec()) &&
+                gLog.isDebugEnabled())
+            {
+                gLog.debug("Spooled and closed the result set");
+            }
+        }
+        catch (IOException ioError)
+        {
+            throw new DbdException(DbdException.gSPOOL,
+                new String[] { ioError.toString() });
         }
-        throw new DbdException(DbdException.gUNKNOWN_PROPERTY, 
-            new String[] { property });
     }
 
     /**
-     * Gets a statement property value.
+     * Fetches the next row of data from the ResultSet associated
+     * with a given Statement. Implements the DBI specification 
+     * with regard to LongReadLen, LongTruncOk, and ChopBlanks.
      *
      * @param aRequest the request received from the client
      * @return a BER response object
-     * @exception SQLException if a database access error occurs
-     * @exception Exception if the property name is unknown, or
-     *      if the statement handle is invalid or has no ResultSet
-     *      associated with it
+     * @exception SQLException if <code>next</code> or <code>getXXX</code>
+     *      fail, or if long data is truncated
+     * @exception Exception if the statement has no result set, or the
+     *      provided statement handle is invalid
      */
-    BerObject handleRequest(GetStatementPropertyRequest aRequest)
+     /* The column readers are chosen once per result set; see
+      * ColumnReader. Spooled rows are sent first; if the spool
+      * didn't hold all the rows, the rest come from the cursor.
+      * Cached results are sent as they were encoded, and results
+      * which may be cached are recorded as they are fetched.
+      */
+    BerObject handleRequest(FetchRequest aRequest)
         throws SQLException
     {
-        try
+        if (gLog.isTraceEnabled())
         {
-            StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
-            String property = aRequest.getPropertyName();
-            if (property.equals("CursorName")) 
+            gLog.trace("Fetching row from statement handle " + 
+                aRequest.getHandle());
+        }
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        if (holder.getCachedResult() != null)
+        {
+            byte[] row = holder.nextCachedRow();
+            if (row != null)
+                return new CachedFetchResponse(row);
+            return new FetchResponse(false, null, 
+                mBerModule.getCharacterCodec());
+        }
+        if (holder.isSpooled())
+        {
+            Object[] row;
+            try
             {
-                ResultSet rs = holder.getResultSet();
-                if (rs == null)
-                    throw new DbdException(DbdException.gNO_CURSOR);
-                String[] cursorname = new String[1];
-                // DBI specifies that the cursor name should be
-                // returned as undef if cursor names are not
-                // supported. JDBC specifies that getCursorName
-                // should throw an exception if named cursors are
-                // not supported.
-                try
-                {
-                    cursorname[0] = rs.getCursorName();
-                }
-                catch (SQLException e)
-                {
-                    cursorname[0] = null;
-                    gLog.warn("getCursorName threw an exception", e);
-                }
-                return new GetStatementPropertyResponse(cursorname,
-                    mBerModule.getCharacterEncoding());
+                row = holder.nextSpooledRow();
             }
-            
-            ResultSetMetaData rsmd = holder.getResultSetMetaData();
-            if (rsmd == null)
-                throw new DbdException(DbdException.gNO_METADATA);
-            int colcount = rsmd.getColumnCount();
-            
-            if (property.equals("NAME"))
+            catch (IOException ioError)
             {
-                String[] data = new String[colcount];
-                for (int i = 1; i <= colcount; i++)
-                    data[i - 1] = rsmd.getColumnName(i);
-                return new GetStatementPropertyResponse(data, 
-                    mBerModule.getCharacterEncoding());
+                throw new DbdException(DbdException.gSPOOL,
+                    new String[] { ioError.toString() });
             }
-            else if (property.equals("TYPE"))
+            if (row != null)
             {
-                Integer[] data = new Integer[colcount];
-                for (int i = 1; i <= colcount; i++)
-                    data[i - 1] = new Integer(rsmd.getColumnType(i));
-                return new GetStatementPropertyResponse(data,
-                    mBerModule.getCharacterEncoding());
+                return mRecord(holder, new FetchResponse(true, row, 
+                    mBerModule.getCharacterCodec()));
             }
-            else if (property.equals("PRECISION"))
+            if (holder.getResultSet() == null)
             {
-                Integer[] data = new Integer[colcount];
-                for (int i = 1; i <= colcount; i++)
-                    data[i - 1] = new Integer(rsmd.getPrecision(i));
-                return new GetStatementPropertyResponse(data,
-                    mBerModule.getCharacterEncoding());
+                return mRecord(holder, new FetchResponse(false, null, 
+                    mBerModule.getCharacterCodec()));
             }
-            else if (property.equals("SCALE"))
+        }
+        ResultSet rs = holder.getResultSet();
+        if (rs == null)
+            throw new DbdException(DbdException.gNO_RESULT_SET);
+        long started = System.nanoTime();
+        boolean hasData = rs.next();
+        return mRecord(holder, 
+            mFetchRow(aRequest.getHandle(), holder, hasData, started));
+    }
+
+    /**
+     * Records a fetched row for the query cache, if the statement's
+     * result is being recorded, and adds the result to the cache 
+     * once the last row has been fetched. Recording stops if a row
+     * has a LOB locator, or the result becomes too large to cache.
+     *
+     * @param aHolder the statement holder
+     * @param aResponse the fetch response for the row
+     * @return the response to send
+     */
+    private BerObject mRecord(StatementHolder aHolder, 
+        FetchResponse aResponse)
+    {
+        QueryCache.Recorder recorder = aHolder.getRecorder();
+        if (recorder == null)
+            return aResponse;
+        if (!aResponse.hasData())
+        {
+            aHolder.stopRecording();
+            recorder.finish();
+            return aResponse;
+        }
+        if (aResponse.hasLocators())
+        {
+            gLog.debug("Not caching a result with LOB locators");
+            aHolder.stopRecording();
+            return aResponse;
+        }
+        // The contents are encoded here anyway, so send them as they 
+        // were recorded rather than encoding them twice.
+        byte[] contents = aResponse.getContents();
+        if (!recorder.add(contents))
+        {
+            gLog.debug("Not caching a result too large for the cache");
+            aHolder.stopRecording();
+        }
+        return new CachedFetchResponse(contents);
+    }
+
+    /**
+     * Moves a scrollable cursor to an absolute or relative position
+     * and fetches the row there, so that a client can skip rows 
+     * without their being sent.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object; a fetch response with no data
+     *      if the new position is before the first row or after 
+     *      the last
+     * @exception SQLException if the cursor can't be moved (for 
+     *      example, because the statement wasn't prepared with
+     *      jdbc_scrollable), or the row can't be read
+     * @exception DbdException if the statement has no result set, or 
+     *      the provided statement handle is invalid
+     */
+    BerObject handleRequest(FetchScrollRequest aRequest)
+        throws SQLException
+    {
+        if (gLog.isTraceEnabled())
+            gLog.trace(aRequest.toString());
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        ResultSet rs = holder.getResultSet();
+        if (rs == null)
+            throw new DbdException(DbdException.gNO_RESULT_SET);
+        // The client won't see every row, so the result can't be cached.
+        holder.stopRecording();
+        long started = System.nanoTime();
+        boolean hasData = 
+            (aRequest.getOrientation() == FetchScrollRequest.gABSOLUTE) ?
+            rs.absolute(aRequest.getRow()) : rs.relative(aRequest.getRow());
+        return mFetchRow(aRequest.getHandle(), holder, hasData, started);
+    }
+
+    /**
+     * Reads the current row of a statement's result set.
+     *
+     * @param aHandle the statement handle
+     * @param aHolder the statement holder
+     * @param aHasData whether the result set is positioned on a row
+     * @param aStarted when the server started moving the cursor to
+     *      the row, from <code>System.nanoTime</code>
+     * @return a fetch response
+     * @exception SQLException if <code>getXXX</code> fails, or if 
+     *      long data is truncated
+     */
+    private FetchResponse mFetchRow(int aHandle, StatementHolder aHolder, 
+        boolean aHasData, long aStarted) throws SQLException
+    {
+        ResultSet rs = aHolder.getResultSet();
+        Object[] row = null;
+        if (aHasData)
+        {
+            ColumnReader[] readers = aHolder.getColumnReaders();
+            row = new Object[readers.length];
+            for (int i = 0; i < readers.length; i++)
             {
-                Integer[] data = new Integer[colcount];
-                for (int i = 1; i <= colcount; i++)
+                try
                 {
-                    // Scale might reasonably be unsupported on some columns.
-                    try
-                    {
-                        data[i - 1] = new Integer(rsmd.getScale(i));
-                    }
-                    catch (SQLException e)
+                    if (gLog.isTraceEnabled())
                     {
-                        data[i - 1] = null;
+                        gLog.trace("getting column " + (i + 1) + "/" + 
+                            aHolder.getResultSetMetaData()
+                            .getColumnName(i + 1) + "; type " + 
+                            readers[i].getType());
                     }
+                    row[i] = readers[i].read(rs);
                 }
-                return new GetStatementPropertyResponse(data,
-                    mBerModule.getCharacterEncoding());
-            }
-            else if (property.equals("NULLABLE"))
-            {
-                Integer[] data = new Integer[colcount];
-                for (int i = 1; i <= colcount; i++)
+                catch (IOException ioError)
                 {
-                    int nullable = rsmd.isNullable(i);
-                    switch (nullable)
-                    {
-                    case ResultSetMetaData.columnNoNulls:
-                        data[i - 1] = sDbiNoNulls;
-                        break;
-                    case ResultSetMetaData.columnNullable:
-                        data[i - 1] = sDbiNullable;
-                        break;
-                    case ResultSetMetaData.columnNullableUnknown:
-                        data[i - 1] = sDbiNullableUnknown;
-                        break;
-                    default:
-                        data[i - 1] = null;
-                        gLog.warn("isNullable returned an unknown value " + 
-                            nullable);
-                        break;
-                    }
+                    throw new DbdException(DbdException.gFETCH_EXCEPTION,
+                        new String[] { String.valueOf(i + 1), 
+                                       ioError.toString() });
                 }
-                return new GetStatementPropertyResponse(data,
-                    mBerModule.getCharacterEncoding());
             }
-            throw new DbdException(DbdException.gUNKNOWN_PROPERTY, 
-                new String[] { property });
-            
-        }
-        catch (UnsupportedEncodingException unsupEnc)
-        {       
-            throw new UnreachableCodeException();
+            int fetchSize = aHolder.rowFetched(row, aStarted);
+            if (fetchSize > 0 && gLog.isDebugEnabled())
+            {
+                gLog.debug("Fetch size for statement handle " + 
+                    aHandle + " is now " + fetchSize);
+            }
         }
+        return new FetchResponse(aHasData, row, 
+            mBerModule.getCharacterCodec());
     }
 
-
     /**
-     * Sets a statement property value.
+     * Reads part of a BLOB or CLOB value, using a locator returned 
+     * by an earlier fetch.
      *
      * @param aRequest the request received from the client
      * @return a BER response object
-     * @exception Exception if the statement handle is invalid or
-     *      the property name is not recognized
+     * @exception SQLException if the value can't be read
+     * @exception DbdException if the statement handle or locator 
+     *      is invalid
      */
-    BerObject handleRequest(SetStatementPropertyRequest aRequest)
+    BerObject handleRequest(LobReadRequest aRequest)
         throws SQLException
     {
         StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
-        String property = aRequest.getPropertyName();
-
-        if (property.equals("LongReadLen"))
+        LobLocator locator = holder.getLob(aRequest.getLocator());
+        if (locator == null)
         {
-            holder.getProperties().put(property, 
-                new Integer(aRequest.getPropertyValue()));
-            return new SetStatementPropertyResponse();
+            throw new DbdException(DbdException.gINVALID_LOB_LOCATOR,
+                new String[] { String.valueOf(aRequest.getLocator()) });
         }
-        if (property.equals("LongTruncOk"))
+        if (gLog.isTraceEnabled())
+            gLog.trace("Reading " + locator + ": " + aRequest);
+        Object value = locator.read(aRequest.getOffset(), 
+            aRequest.getLength());
+        if (value instanceof String)
         {
-            holder.getProperties().put(property, 
-                new Boolean(aRequest.getPropertyValue().equals("1")));
-            return new SetStatementPropertyResponse();
-        }
-        if (property.equals("ChopBlanks"))
-        {
-            holder.getProperties().put(property, 
-                new Boolean(aRequest.getPropertyValue().equals("1")));
-            return new SetStatementPropertyResponse();
-        }
-        if (property.equals("jdbc_longreadall"))
-        {
-            holder.getProperties().put(property, 
-                new Boolean(aRequest.getPropertyValue().equals("1")));
-            return new SetStatementPropertyResponse();
+            return new LobReadResponse(
+                mBerModule.getCharacterCodec().toByteArray((String) value));
         }
-
-        throw new DbdException(DbdException.gUNKNOWN_PROPERTY, 
-            new String[] { property });
-    }    
-    
+        return new LobReadResponse((byte[]) value);
+    }
 
     /**
-     * Finishes a statement. A statement is finished when all its data
-     * has been read, so this method closes the result set. 
+     * Begins uploading a BLOB or CLOB parameter value in pieces. 
+     * Any upload already begun for the parameter is discarded.
      *
      * @param aRequest the request received from the client
      * @return a BER response object
-     * @exception Exception if the statement handle is invalid
+     * @exception DbdException if the statement handle or parameter
+     *      type is invalid, or the temporary file can't be created
      */
-    /* Accept this message, but don't do anything. DBI forbids finish
-     * to have any effect on the session's transaction state, and we
-     * can't guarantee that if we close the ResultSet, which is the 
-     * obvious implementation here.
-     *
-     * JDBC 2.0 also has implications here, since reading all a 
-     * result set's data doesn't necessarily mean you're done with it.
-     */   
-    BerObject handleRequest(StatementFinishRequest aRequest)
+    BerObject handleRequest(LobWriteBeginRequest aRequest)
         throws SQLException
     {
         StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
-        //holder.finish();
-        return new StatementFinishResponse();
-    }    
-    
-    /**
-     * Frees a statement for garbage collection.
-     *
-     * @param aRequest the request received from the client
-     * @return a BER response object
-     * @exception Exception if the statement handle is invalid
-     */
-    /* This should be called by $sth->DESTROY: the statement has gone
-     * out of scope and is no longer usable, so remove it from the
-     * cache.
-     */
-    BerObject handleRequest(StatementDestroyRequest aRequest)
-        throws DbdException
-    {
-        // Note: we want to call mStatementTable.remove, so don't use
-        // mGetStatementHolder.
-        int handle = aRequest.getHandle();
-        StatementHolder holder = (StatementHolder) mStatementTable.remove(
-            new Integer(handle));
-        // XXX: Should this be a runtime exception? Can the user cause this?
-        if (holder == null)
-            throw new DbdException(DbdException.gINVALID_STATEMENT_HANDLE);
-        else
+        int type = aRequest.getType();
+        if (!LobUpload.gIsBinaryType(type) && 
+            !LobUpload.gIsCharacterType(type))
         {
-            if (gLog.isTraceEnabled())
-                gLog.trace("Destroying statement " + handle);
-            
-            // Close the statement and result set. This may cause
-            // a commit or rollback in the JDBC driver in
-            // AutoCommit mode, but not closing these objects
-            // seems to be worse.
-            holder.close();
-            holder = null;
+            throw gLobUploadException(aRequest.getParameter(), 
+                "unsupported type " + type);
         }
-        return new StatementDestroyResponse();
-    }    
-
-
-
-    /**
-     * Uses reflection to call a method on the current Connection object.
-     *
-     * @param aRequest contains the method name and parameter values
-     * @return a response packet containing the return value from the 
-     *      called method
-     * @exception SQLException if the invoked method throws a SQLException
-     * @exception DbdException if an error occurs
-     */
-    BerObject handleRequest(ConnectionFuncRequest aRequest)
-        throws SQLException,DbdException
-    {
-        String methodName = aRequest.getMethodName();
         if (gLog.isTraceEnabled())
-            gLog.trace("Func method: " + methodName);
-        String value =  mHandleFunc(mConn, aRequest.getMethodName(), 
-            aRequest.getParameters());
-        if (gLog.isDebugEnabled())
-            gLog.debug(methodName + " returned '" + value + "'");
+            gLog.trace(aRequest.toString());
         try
         {
-            return new ConnectionFuncResponse(value, 
-                mBerModule.getCharacterEncoding());
+            holder.addUpload(aRequest.getParameter(), 
+                new LobUpload(type, mBerModule.getCharacterEncoding()));
         }
-        catch (UnsupportedEncodingException unsupEnc)
-        { 
-            throw new DbdException(DbdException.gUNSUPPORTED_ENCODING,
-                new String[] { mBerModule.getCharacterEncoding() });
+        catch (IOException ioError)
+        {
+            throw gLobUploadException(aRequest.getParameter(), 
+                ioError.toString());
         }
+        return new LobWriteBeginResponse();
     }
 
     /**
-     * Uses reflection to call a method on a Statement,
-     * ResultSet, or ResultSetMetaData object. The particular
-     * statement is indicated by a statement handle in the
-     * request. The object is indicated by a
-     * <code>Statement.</code>, <code>ResultSet.</code>, or
-     * <code>ResultSetMetaData.</code> prefix on the method name.
+     * Appends a piece of a BLOB or CLOB parameter value to its upload.
+     * If the piece can't be written, the upload is discarded.
      *
-     * @param aRequest contains a statement handle, 
-     *      the method name and parameter values
-     * @return a response packet containing the return value from the 
-     *      called method 
-     * @exception SQLException if the invoked method throws a SQLException
-     * @exception DbdException if an error occurs
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception DbdException if the statement handle is invalid, no
+     *      upload is in progress for the parameter, or the piece can't
+     *      be written
      */
-    BerObject handleRequest(StatementFuncRequest aRequest)
-        throws SQLException,DbdException
+    BerObject handleRequest(LobWriteChunkRequest aRequest)
+        throws SQLException
     {
-        String methodName = aRequest.getMethodName();
-        if (gLog.isTraceEnabled())
-            gLog.trace("Statement func method: " +  methodName);
-
-        int dot = methodName.lastIndexOf(".");
-        if (dot == -1)
-            throw new DbdException(DbdException.gREFLECTION_OBJECT_MISSING);
-
         StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
-        if (holder == null)
-            throw new DbdException(DbdException.gINVALID_STATEMENT_HANDLE);
-            
-        String objectName = methodName.substring(0, dot);
-        if (gLog.isTraceEnabled())
-            gLog.trace("Looking up object type " + objectName);
-        Object object = null;
-        if (objectName.equals("Statement") || 
-            objectName.equals("PreparedStatement"))
-        {
-            object = holder.getStatement();
-        }
-        else if (objectName.equals("ResultSet"))
-        {
-            object = holder.getResultSet();
-            if (object == null)
-                throw new DbdException(DbdException.gNO_RESULT_SET);
-        }
-        else if (objectName.equals("ResultSetMetaData"))
-        {
-            object = holder.getResultSetMetaData();
-            if (object == null)
-                throw new DbdException(DbdException.gNO_METADATA);
-        }
-        else
+        LobUpload upload = mGetUpload(holder, aRequest.getParameter());
+        try
         {
-            throw new DbdException(DbdException.gREFLECTION_INVALID_OBJECT,
-                new String[] { objectName } );
+            upload.write(aRequest.getData());
         }
-
-        if (gLog.isDebugEnabled())
+        catch (IOException ioError)
         {
-            gLog.debug("Underlying object type: " + 
-                object.getClass().getName());
+            holder.removeUpload(aRequest.getParameter());
+            throw gLobUploadException(aRequest.getParameter(), 
+                ioError.toString());
         }
+        return new LobWriteChunkResponse();
+    }
 
-        String value = mHandleFunc(object, methodName.substring(dot + 1),
-            aRequest.getParameters());
-        if (gLog.isDebugEnabled())
-            gLog.debug(methodName + " returned '" + value + "'");
+    /**
+     * Finishes uploading a BLOB or CLOB parameter value. The value is
+     * bound when the statement is next executed. If the upload can't
+     * be finished, it is discarded.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception DbdException if the statement handle is invalid, no
+     *      upload is in progress for the parameter, or the temporary
+     *      file can't be written
+     */
+    BerObject handleRequest(LobWriteEndRequest aRequest)
+        throws SQLException
+    {
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        LobUpload upload = mGetUpload(holder, aRequest.getParameter());
         try
         {
-            return new StatementFuncResponse(value, 
-                mBerModule.getCharacterEncoding());
+            upload.finish();
         }
-        catch (UnsupportedEncodingException unsupEnc)
-        { 
-            throw new DbdException(DbdException.gUNSUPPORTED_ENCODING,
-                new String[] { mBerModule.getCharacterEncoding() });
+        catch (IOException ioError)
+        {
+            holder.removeUpload(aRequest.getParameter());
+            throw gLobUploadException(aRequest.getParameter(), 
+                ioError.toString());
         }
+        if (gLog.isTraceEnabled())
+            gLog.trace("Finished " + upload);
+        return new LobWriteEndResponse();
     }
 
-
     /**
-     * Returns the cached key that best matches the request.
+     * Returns the upload in progress for a parameter.
      *
-     * @param aRequest may contain a table and column name to use
-     * in key lookup
-     * @return a response packet containing a key; may be the empty string
-     * @exception DbdException if an error occurs
+     * @param aHolder the statement holder
+     * @param aParameter the 1-based parameter index
+     * @return the upload
+     * @exception DbdException if no upload is in progress 
      */
-    /* We're ignoring the catalog and schema values. */
-    BerObject handleRequest(GetGeneratedKeysRequest aRequest) 
+    private LobUpload mGetUpload(StatementHolder aHolder, int aParameter)
         throws DbdException
     {
-        try
+        LobUpload upload = aHolder.getUpload(aParameter);
+        if (upload == null || upload.isFinished())
+            throw gLobUploadException(aParameter, "no upload in progress");
+        return upload;
+    }
+
+    /**
+     * Binds the finished uploads to the statement's parameters.
+     *
+     * @param aHolder the statement holder
+     * @exception SQLException if a parameter can't be set
+     * @exception DbdException if an upload isn't finished, or its 
+     *      temporary file can't be read
+     */
+    private void mBindUploads(StatementHolder aHolder) throws SQLException
+    {
+        Hashtable<Integer, LobUpload> uploads = aHolder.getUploads();
+        if (uploads == null)
+            return;
+        Enumeration<Integer> parameters = uploads.keys();
+        while (parameters.hasMoreElements())
         {
-            String table = aRequest.getTable();
-            String column = aRequest.getColumn(); 
-            String key = ""; 
-            if (mGeneratedKeys == null || mGeneratedKeys.length == 0)
-            {                
-                if (gLog.isDebugEnabled())
-                    gLog.debug("Generated key requested, but no keys are available"); 
-            }
-            else if (table == null && column == null)
-            {
-                // No particular table or column requested; return the first key. 
-                key = mGeneratedKeys[0].value; 
-                if (gLog.isTraceEnabled())
-                    gLog.trace("No specific key column or table requested"); 
-            }
-            else if (table == null && column != null)
+            Integer parameter = parameters.nextElement();
+            LobUpload upload = uploads.get(parameter);
+            if (gLog.isTraceEnabled())
+                gLog.trace("setting parameter " + parameter + "; " + upload);
+            try
             {
-                for (int i = 0; i < mGeneratedKeys.length; i++)
-                {
-                    if (column.equalsIgnoreCase(mGeneratedKeys[i].columnName))
-                    {
-                        key = mGeneratedKeys[i].value;
-                        break;
-                    }
-                }
-                if (gLog.isTraceEnabled())
-                    gLog.trace("Key column '" + column + "' requested"); 
+                upload.bind(aHolder.getStatement(), parameter.intValue());
             }
-            else if (table != null && column == null)
+            catch (IOException ioError)
             {
-                for (int i = 0; i < mGeneratedKeys.length; i++)
-                {
-                    if (table.equalsIgnoreCase(mGeneratedKeys[i].table))
-                    {
-                        key = mGeneratedKeys[i].value;
-                        break;
-                    }
-                }
-                if (gLog.isTraceEnabled())
-                    gLog.trace("Key table '" + table + "' requested"); 
+                throw gLobUploadException(parameter.intValue(), 
+                    ioError.toString());
             }
-            else if (table != null && column != null)
+            catch (SQLException se)
             {
-                for (int i = 0; i < mGeneratedKeys.length; i++)
-                {
-                    if (column.equalsIgnoreCase(mGeneratedKeys[i].columnName) &&
-                        table.equalsIgnoreCase(mGeneratedKeys[i].table))
-                    {
-                        key = mGeneratedKeys[i].value;
-                        break;
-                    }
-                }
-                if (gLog.isTraceEnabled())
-                {
-                    gLog.trace("Key table and column '" + table + "'.'" + 
-                        column + "' requested"); 
-                }
+                DbdException dbd = new DbdException(
+                    DbdException.gSET_PARAMETER,
+                    new String[] { parameter.toString(), se.toString() });
+                dbd.setNextException(se);
+                throw dbd;
             }
-            return new GetGeneratedKeysResponse(key,
-                mBerModule.getCharacterEncoding()); 
-        }
-        catch (UnsupportedEncodingException unsupEnc)
-        { 
-            throw new DbdException(DbdException.gUNSUPPORTED_ENCODING,
-                new String[] { mBerModule.getCharacterEncoding() });
         }
     }
 
     /**
-     * Uses reflection to call the given method on the given
-     * object with the given parameter list.
+     * Creates the exception for a failed LOB upload.
      *
-     * @param anObject the object on which to call the method
-     * @param aMethodName the method to be called
-     * @param aParameterList a list of parameters to be passed to the method;
-     *      may not be null, but may have length 0
-     * @return the value of calling <code>toString</code> on the
-     *      Object returned from the method call
-     * @exception SQLException if the invoked method throws a SQLException
-     * @exception DbdException if an error occurs 
+     * @param aParameter the 1-based parameter index
+     * @param aMessage the reason for the failure
+     * @return the exception
      */
-    private String mHandleFunc(Object anObject, String aMethodName,  
-        Parameter[] aParameterList) throws SQLException,DbdException  
-    { 
-        if (gLog.isDebugEnabled())
-            gLog.debug("Method has " + aParameterList.length + " parameters"); 
-        Object[] parameterObjects = new Object[aParameterList.length];
-        Class[] parameterClasses = new Class[aParameterList.length];
-        try
-        {
-            for (int i = 0; i < aParameterList.length; i++)
-            {
-                if (aParameterList[i].value == null)
-                {
-                    parameterObjects[i] = null;
-                    parameterClasses[i] = mGetClass(aParameterList[i].type);
-                    if (gLog.isTraceEnabled())
+    private static DbdException gLobUploadException(int aParameter, 
+        String aMessage)
+    {
+        return new DbdException(DbdException.gLOB_UPLOAD,
+            new String[] { String.valueOf(aParameter), aMessage });
+    }
+    
+
+
+    /**
+     * Returns the value of a connection property. 
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception Exception if the requested connection property name
+     *      is not recognized
+     */
+    BerObject handleRequest(GetConnectionPropertyRequest aRequest)
+        throws SQLException
+    {
+        String property = aRequest.getPropertyName();
+        if (property.equals("AutoCommit"))
+        {
+            Integer[] response = new Integer[1];
+            response[0] = new Integer(mConn.getAutoCommit() ? 1 : 0);
+            try
+            {
+                return new GetConnectionPropertyResponse(response, 
+                    mBerModule.getCharacterEncoding());
+            }
+            catch (UnsupportedEncodingException unsupEnc)
+            {
+                throw new UnreachableCodeException();
+            }
+        }            
+        throw new DbdException(DbdException.gUNKNOWN_PROPERTY, 
+            new String[] { property });
+    }
+
+    /**
+     * Sets a connection property value.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception Exception if the connection property name
+     *      is not recognized
+     */
+    BerObject handleRequest(SetConnectionPropertyRequest aRequest)
+        throws SQLException
+    {
+        String property = aRequest.getPropertyName();
+        if (property.equals("AutoCommit"))
+        {
+            boolean autoCommit = aRequest.getPropertyValue().equals("1"); 
+            gLog.debug("Settting AutoCommit to " + autoCommit); 
+            mConn.setAutoCommit(autoCommit);
+            return new SetConnectionPropertyResponse();
+        }
+        throw new DbdException(DbdException.gUNKNOWN_PROPERTY, 
+            new String[] { property });
+    }
+
+    /**
+     * Gets a statement property value.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception SQLException if a database access error occurs
+     * @exception Exception if the property name is unknown, or
+     *      if the statement handle is invalid or has no ResultSet
+     *      associated with it
+     */
+    BerObject handleRequest(GetStatementPropertyRequest aRequest)
+        throws SQLException
+    {
+        try
+        {
+            StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+            String property = aRequest.getPropertyName();
+            int propertyId = gGetStatementPropertyId(property);
+            if (propertyId == sCURSOR_NAME) 
+            {
+                ResultSet rs = holder.getResultSet();
+                if (rs == null)
+                    throw new DbdException(DbdException.gNO_CURSOR);
+                String[] cursorname = new String[1];
+                // DBI specifies that the cursor name should be
+                // returned as undef if cursor names are not
+                // supported. JDBC specifies that getCursorName
+                // should throw an exception if named cursors are
+                // not supported.
+                try
+                {
+                    cursorname[0] = rs.getCursorName();
+                }
+                catch (SQLException e)
+                {
+                    cursorname[0] = null;
+                    gLog.warn("getCursorName threw an exception", e);
+                }
+                return new GetStatementPropertyResponse(cursorname,
+                    mBerModule.getCharacterEncoding());
+            }
+            
+            ResultSetMetaData rsmd = holder.getResultSetMetaData();
+            if (rsmd == null)
+                throw new DbdException(DbdException.gNO_METADATA);
+            int colcount = rsmd.getColumnCount();
+            
+            switch (propertyId)
+            {
+            case sNAME:
+            {
+                String[] data = new String[colcount];
+                for (int i = 1; i <= colcount; i++)
+                    data[i - 1] = rsmd.getColumnName(i);
+                return new GetStatementPropertyResponse(data, 
+                    mBerModule.getCharacterEncoding());
+            }
+            case sTYPE:
+            {
+                Integer[] data = new Integer[colcount];
+                for (int i = 1; i <= colcount; i++)
+                    data[i - 1] = new Integer(rsmd.getColumnType(i));
+                return new GetStatementPropertyResponse(data,
+                    mBerModule.getCharacterEncoding());
+            }
+            case sPRECISION:
+            {
+                Integer[] data = new Integer[colcount];
+                for (int i = 1; i <= colcount; i++)
+                    data[i - 1] = new Integer(rsmd.getPrecision(i));
+                return new GetStatementPropertyResponse(data,
+                    mBerModule.getCharacterEncoding());
+            }
+            case sSCALE:
+            {
+                Integer[] data = new Integer[colcount];
+                for (int i = 1; i <= colcount; i++)
+                {
+                    // Scale might reasonably be unsupported on some columns.
+                    try
                     {
-                        gLog.trace("Parameter " + (i + 1) + ": null; class " + 
-                            parameterClasses[i].getName());
+                        data[i - 1] = new Integer(rsmd.getScale(i));
+                    }
+                    catch (SQLException e)
+                    {
+                        data[i - 1] = null;
                     }
-                    continue;
                 }
-
-                if (gLog.isTraceEnabled())                  
-                    gLog.trace("Parameter " + (i + 1) + ": ");
-                switch (aParameterList[i].type) 
+                return new GetStatementPropertyResponse(data,
+                    mBerModule.getCharacterEncoding());
+            }
+            case sNULLABLE:
+            {
+                Integer[] data = new Integer[colcount];
+                for (int i = 1; i <= colcount; i++)
                 {
-                case Types.BINARY:
-                case Types.VARBINARY:
-                case Types.LONGVARBINARY:
-                    parameterObjects[i] = 
-                        aParameterList[i].value.toByteArray();
-                    break;
-                case Types.TINYINT:
-                    parameterObjects[i] = 
-                        new Byte(aParameterList[i].value.toString());
-                    break;
-                case Types.SMALLINT:
-                    parameterObjects[i] = 
-                        new Short(aParameterList[i].value.toString());
-                    break;
-                case Types.INTEGER:
-                    parameterObjects[i] = 
-                        new Integer(aParameterList[i].value.toString());
-                    break;
-                case Types.BIGINT: 
-                    parameterObjects[i] = 
-                        new Long(aParameterList[i].value.toString());
-                    break;
-                case Types.REAL: 
-                    parameterObjects[i] = 
-                        new Float(aParameterList[i].value.toString());
-                    break;
-                case Types.FLOAT: 
-                case Types.DOUBLE: 
-                    parameterObjects[i] = 
-                        new Double(aParameterList[i].value.toString());
-                    break;
-                case Types.DECIMAL: 
-                case Types.NUMERIC:
-                    parameterObjects[i] = 
-                        new BigDecimal(aParameterList[i].value.toString());
-                    break;
-                case Types.BIT:   // Clients must send "0" or "1"
-                    parameterObjects[i] = new Boolean(
-                        aParameterList[i].value.toString().equals("1"));
-                    break;
-                case Types.CHAR: 
-                case Types.VARCHAR:
-                case Types.LONGVARCHAR:  // Use a stream here?
-                    parameterObjects[i] = aParameterList[i].value.toString();
-                    break;
-                case Types.DATE:      
-                    parameterObjects[i] = 
-                        java.sql.Date.valueOf(aParameterList[i].value.toString());
-                    break;
-                case Types.TIME: 
-                    parameterObjects[i] = 
-                        java.sql.Time.valueOf(aParameterList[i].value.toString());
-                    break;
-                case Types.TIMESTAMP: 
-                    parameterObjects[i] = 
-                        java.sql.Timestamp.valueOf(aParameterList[i].value.toString());
-                    break;
-                case Types.OTHER: 
-                default: 
-                    parameterObjects[i] = aParameterList[i].value.toString();
-                    break;
+                    int nullable = rsmd.isNullable(i);
+                    switch (nullable)
+                    {
+                    case ResultSetMetaData.columnNoNulls:
+                        data[i - 1] = sDbiNoNulls;
+                        break;
+                    case ResultSetMetaData.columnNullable:
+                        data[i - 1] = sDbiNullable;
+                        break;
+                    case ResultSetMetaData.columnNullableUnknown:
+                        data[i - 1] = sDbiNullableUnknown;
+                        break;
+                    default:
+                        data[i - 1] = null;
+                        gLog.warn("isNullable returned an unknown value " + 
+                            nullable);
+                        break;
+                    }
                 }
+                return new GetStatementPropertyResponse(data,
+                    mBerModule.getCharacterEncoding());
+            }
+            }
+            throw new DbdException(DbdException.gUNKNOWN_PROPERTY, 
+                new String[] { property });
+            
+        }
+        catch (UnsupportedEncodingException unsupEnc)
+        {       
+            throw new UnreachableCodeException();
+        }
+    }
+
+
+    /**
+     * Sets a statement property value. The jdbc_query_timeout, 
+     * jdbc_max_rows and jdbc_max_field_size properties are set on 
+     * the PreparedStatement, so they apply to every later execution.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception SQLException if the driver rejects the value
+     * @exception Exception if the statement handle is invalid or
+     *      the property name is not recognized
+     */
+    BerObject handleRequest(SetStatementPropertyRequest aRequest)
+        throws SQLException
+    {
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        String property = aRequest.getPropertyName();
+
+        switch (gGetStatementPropertyId(property))
+        {
+        case sLONG_READ_LEN:
+        case sJDBC_LOBTHRESHOLD:
+            holder.getProperties().put(property, 
+                new Integer(aRequest.getPropertyValue()));
+            holder.clearColumnReaders();
+            return new SetStatementPropertyResponse();
+
+        case sLONG_TRUNC_OK:
+        case sCHOP_BLANKS:
+        case sJDBC_LONGREADALL:
+            holder.getProperties().put(property, 
+                new Boolean(aRequest.getPropertyValue().equals("1")));
+            holder.clearColumnReaders();
+            return new SetStatementPropertyResponse();
+
+        case sJDBC_SPOOL:
+            holder.getProperties().put(property, 
+                Boolean.valueOf(aRequest.getPropertyValue().equals("1")));
+            return new SetStatementPropertyResponse();
+
+        case sJDBC_FETCHSIZE:
+            holder.setFetchSize(
+                Integer.parseInt(aRequest.getPropertyValue()));
+            return new SetStatementPropertyResponse();
+
+        case sJDBC_FETCHBYTES:
+            holder.setFetchBudget(
+                Integer.parseInt(aRequest.getPropertyValue()));
+            return new SetStatementPropertyResponse();
+
+        case sJDBC_CACHE:
+            holder.getProperties().put(property, 
+                Integer.valueOf(aRequest.getPropertyValue()));
+            return new SetStatementPropertyResponse();
+
+        case sJDBC_QUERY_TIMEOUT:
+        {
+            Integer seconds = Integer.valueOf(aRequest.getPropertyValue());
+            holder.getStatement().setQueryTimeout(seconds.intValue());
+            holder.getProperties().put(property, seconds);
+            return new SetStatementPropertyResponse();
+        }
+
+        case sJDBC_MAX_ROWS:
+        {
+            Integer rows = Integer.valueOf(aRequest.getPropertyValue());
+            holder.getStatement().setMaxRows(rows.intValue());
+            holder.getProperties().put(property, rows);
+            return new SetStatementPropertyResponse();
+        }
+
+        case sJDBC_MAX_FIELD_SIZE:
+        {
+            Integer bytes = Integer.valueOf(aRequest.getPropertyValue());
+            holder.getStatement().setMaxFieldSize(bytes.intValue());
+            holder.getProperties().put(property, bytes);
+            return new SetStatementPropertyResponse();
+        }
+        }
+
+        throw new DbdException(DbdException.gUNKNOWN_PROPERTY, 
+            new String[] { property });
+    }    
+    
+
+    /**
+     * Finishes a statement. A statement is finished when all its data
+     * has been read, so this method closes the result set. 
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception Exception if the statement handle is invalid
+     */
+    /* Accept this message, but don't do anything. DBI forbids finish
+     * to have any effect on the session's transaction state, and we
+     * can't guarantee that if we close the ResultSet, which is the 
+     * obvious implementation here.
+     *
+     * JDBC 2.0 also has implications here, since reading all a 
+     * result set's data doesn't necessarily mean you're done with it.
+     */   
+    BerObject handleRequest(StatementFinishRequest aRequest)
+        throws SQLException
+    {
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        //holder.finish();
+        // The LOB locators can be freed without closing the ResultSet.
+        holder.clearLobs();
+        return new StatementFinishResponse();
+    }    
+    
+    /**
+     * Frees a statement for garbage collection.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object
+     * @exception Exception if the statement handle is invalid
+     */
+    /* This should be called by $sth->DESTROY: the statement has gone
+     * out of scope and is no longer usable, so remove it from the
+     * cache.
+     */
+    BerObject handleRequest(StatementDestroyRequest aRequest)
+        throws DbdException
+    {
+        // Note: we want to call mStatementTable.remove, so don't use
+        // mGetStatementHolder.
+        int handle = aRequest.getHandle();
+        StatementHolder holder = (StatementHolder) mStatementTable.remove(
+            new Integer(handle));
+        // XXX: Should this be a runtime exception? Can the user cause this?
+        if (holder == null)
+            throw new DbdException(DbdException.gINVALID_STATEMENT_HANDLE);
+        else
+        {
+            mCurrentHolder = holder;
+            if (gLog.isTraceEnabled())
+                gLog.trace("Destroying statement " + handle);
+            
+            // Close the statement and result set. This may cause
+            // a commit or rollback in the JDBC driver in
+            // AutoCommit mode, but not closing these objects
+            // seems to be worse.
+            holder.close();
+            holder = null;
+        }
+        return new StatementDestroyResponse();
+    }    
+
+
+
+    /**
+     * Uses reflection to call a method on the current Connection object.
+     *
+     * @param aRequest contains the method name and parameter values
+     * @return a response packet containing the return value from the 
+     *      called method
+     * @exception SQLException if the invoked method throws a SQLException
+     * @exception DbdException if an error occurs
+     */
+    BerObject handleRequest(ConnectionFuncRequest aRequest)
+        throws SQLException,DbdException
+    {
+        String methodName = aRequest.getMethodName();
+        if (gLog.isTraceEnabled())
+            gLog.trace("Func method: " + methodName);
+        String value =  mHandleFunc(mConn, aRequest.getMethodName(), 
+            aRequest.getParameters());
+        if (gLog.isDebugEnabled())
+            gLog.debug(methodName + " returned '" + value + "'");
+        try
+        {
+            return new ConnectionFuncResponse(value, 
+                mBerModule.getCharacterEncoding());
+        }
+        catch (UnsupportedEncodingException unsupEnc)
+        { 
+            throw new DbdException(DbdException.gUNSUPPORTED_ENCODING,
+                new String[] { mBerModule.getCharacterEncoding() });
+        }
+    }
+
+    /**
+     * Uses reflection to call a method on a Statement,
+     * ResultSet, or ResultSetMetaData object. The particular
+     * statement is indicated by a statement handle in the
+     * request. The object is indicated by a
+     * <code>Statement.</code>, <code>ResultSet.</code>, or
+     * <code>ResultSetMetaData.</code> prefix on the method name.
+     *
+     * @param aRequest contains a statement handle, 
+     *      the method name and parameter values
+     * @return a response packet containing the return value from the 
+     *      called method 
+     * @exception SQLException if the invoked method throws a SQLException
+     * @exception DbdException if an error occurs
+     */
+    BerObject handleRequest(StatementFuncRequest aRequest)
+        throws SQLException,DbdException
+    {
+        String methodName = aRequest.getMethodName();
+        if (gLog.isTraceEnabled())
+            gLog.trace("Statement func method: " +  methodName);
+
+        int dot = methodName.lastIndexOf(".");
+        if (dot == -1)
+            throw new DbdException(DbdException.gREFLECTION_OBJECT_MISSING);
+
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        if (holder == null)
+            throw new DbdException(DbdException.gINVALID_STATEMENT_HANDLE);
+            
+        String objectName = methodName.substring(0, dot);
+        if (gLog.isTraceEnabled())
+            gLog.trace("Looking up object type " + objectName);
+        Object object = null;
+        if (objectName.equals("Statement") || 
+            objectName.equals("PreparedStatement"))
+        {
+            object = holder.getStatement();
+        }
+        else if (objectName.equals("ResultSet"))
+        {
+            object = holder.getResultSet();
+            if (object == null)
+                throw new DbdException(DbdException.gNO_RESULT_SET);
+        }
+        else if (objectName.equals("ResultSetMetaData"))
+        {
+            object = holder.getResultSetMetaData();
+            if (object == null)
+                throw new DbdException(DbdException.gNO_METADATA);
+        }
+        else
+        {
+            throw new DbdException(DbdException.gREFLECTION_INVALID_OBJECT,
+                new String[] { objectName } );
+        }
+
+        if (gLog.isDebugEnabled())
+        {
+            gLog.debug("Underlying object type: " + 
+                object.getClass().getName());
+        }
+
+        String value = mHandleFunc(object, methodName.substring(dot + 1),
+            aRequest.getParameters());
+        if (gLog.isDebugEnabled())
+            gLog.debug(methodName + " returned '" + value + "'");
+        try
+        {
+            return new StatementFuncResponse(value, 
+                mBerModule.getCharacterEncoding());
+        }
+        catch (UnsupportedEncodingException unsupEnc)
+        { 
+            throw new DbdException(DbdException.gUNSUPPORTED_ENCODING,
+                new String[] { mBerModule.getCharacterEncoding() });
+        }
+    }
+
+
+    /**
+     * Returns the cached key that best matches the request, from the
+     * last row of the last execution which returned keys.
+     *
+     * @param aRequest may contain a table and column name to use
+     * in key lookup
+     * @return a response packet containing a key; may be the empty string
+     * @exception DbdException if an error occurs
+     */
+    /* We're ignoring the catalog and schema values. */
+    BerObject handleRequest(GetGeneratedKeysRequest aRequest) 
+        throws DbdException
+    {
+        try
+        {
+            String table = aRequest.getTable();
+            String column = aRequest.getColumn(); 
+            if (gLog.isTraceEnabled())
+            {
+                gLog.trace("Key table '" + table + "' and column '" + 
+                    column + "' requested"); 
+            }
+            String key = (mGeneratedKeys == null) ? null : 
+                mGeneratedKeys.find(table, column);
+            if (key == null)
+            {
+                gLog.debug(
+                    "Generated key requested, but no keys are available"); 
+                key = "";
+            }
+            return new GetGeneratedKeysResponse(key,
+                mBerModule.getCharacterEncoding()); 
+        }
+        catch (UnsupportedEncodingException unsupEnc)
+        { 
+            throw new DbdException(DbdException.gUNSUPPORTED_ENCODING,
+                new String[] { mBerModule.getCharacterEncoding() });
+        }
+    }
+
+    /**
+     * Returns all the keys generated by the last execution of a 
+     * statement, including a batch execution.
+     *
+     * @param aRequest the request received from the client
+     * @return a BER response object with the key column names and 
+     *      values; it is empty if no keys were generated
+     * @exception DbdException if the statement handle is invalid
+     */
+    BerObject handleRequest(GeneratedKeysRequest aRequest)
+        throws DbdException
+    {
+        StatementHolder holder = mGetStatementHolder(aRequest.getHandle());
+        try
+        {
+            return new GeneratedKeysResponse(holder.getGeneratedKeys(),
+                mBerModule.getCharacterEncoding());
+        }
+        catch (UnsupportedEncodingException unsupEnc)
+        { 
+            throw new DbdException(DbdException.gUNSUPPORTED_ENCODING,
+                new String[] { mBerModule.getCharacterEncoding() });
+        }
+    }
+
+    /**
+     * Uses reflection to call the given method on the given
+     * object with the given parameter list.
+     *
+     * @param anObject the object on which to call the method
+     * @param aMethodName the method to be called
+     * @param aParameterList a list of parameters to be passed to the method;
+     *      may not be null, but may have length 0
+     * @return the value of calling <code>toString</code> on the
+     *      Object returned from the method call
+     * @exception SQLException if the invoked method throws a SQLException
+     * @exception DbdException if an error occurs 
+     */
+    private String mHandleFunc(Object anObject, String aMethodName,  
+        Parameter[] aParameterList) throws SQLException,DbdException  
+    { 
+        if (gLog.isDebugEnabled())
+            gLog.debug("Method has " + aParameterList.length + " parameters"); 
+        Object[] parameterObjects = new Object[aParameterList.length];
+        Class[] parameterClasses = new Class[aParameterList.length];
+        try
+        {
+            for (int i = 0; i < aParameterList.length; i++)
+            {
+                if (aParameterList[i].value == null)
+                {
+                    parameterObjects[i] = null;
+                    parameterClasses[i] = mGetClass(aParameterList[i].type);
+                    if (gLog.isTraceEnabled())
+                    {
+                        gLog.trace("Parameter " + (i + 1) + ": null; class " + 
+                            parameterClasses[i].getName());
+                    }
+                    continue;
+                }
+
+                if (gLog.isTraceEnabled())                  
+                    gLog.trace("Parameter " + (i + 1) + ": ");
+                switch (aParameterList[i].type) 
+                {
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                    parameterObjects[i] = 
+                        aParameterList[i].value.toByteArray();
+                    break;
+                case Types.TINYINT:
+                    parameterObjects[i] = 
+                        new Byte(aParameterList[i].value.toString());
+                    break;
+                case Types.SMALLINT:
+                    parameterObjects[i] = 
+                        new Short(aParameterList[i].value.toString());
+                    break;
+                case Types.INTEGER:
+                    parameterObjects[i] = 
+                        new Integer(aParameterList[i].value.toString());
+                    break;
+                case Types.BIGINT: 
+                    parameterObjects[i] = 
+                        new Long(aParameterList[i].value.toString());
+                    break;
+                case Types.REAL: 
+                    parameterObjects[i] = 
+                        new Float(aParameterList[i].value.toString());
+                    break;
+                case Types.FLOAT: 
+                case Types.DOUBLE: 
+                    parameterObjects[i] = 
+                        new Double(aParameterList[i].value.toString());
+                    break;
+                case Types.DECIMAL: 
+                case Types.NUMERIC:
+                    parameterObjects[i] = 
+                        new BigDecimal(aParameterList[i].value.toString());
+                    break;
+                case Types.BIT:   // Clients must send "0" or "1"
+                    parameterObjects[i] = new Boolean(
+                        aParameterList[i].value.toString().equals("1"));
+                    break;
+                case Types.CHAR: 
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:  // Use a stream here?
+                    parameterObjects[i] = aParameterList[i].value.toString();
+                    break;
+                case Types.DATE:      
+                    parameterObjects[i] = 
+                        java.sql.Date.valueOf(aParameterList[i].value.toString());
+                    break;
+                case Types.TIME: 
+                    parameterObjects[i] = 
+                        java.sql.Time.valueOf(aParameterList[i].value.toString());
+                    break;
+                case Types.TIMESTAMP: 
+                    parameterObjects[i] = 
+                        java.sql.Timestamp.valueOf(aParameterList[i].value.toString());
+                    break;
+                case Types.OTHER: 
+                default: 
+                    parameterObjects[i] = aParameterList[i].value.toString();
+                    break;
+                }
+
+                parameterClasses[i] = mGetClass(aParameterList[i].type);
+
+                if (aParameterList[i].type == Types.BINARY ||
+                    aParameterList[i].type == Types.VARBINARY ||
+                    aParameterList[i].type == Types.LONGVARBINARY)
+                {
+                    if (gLog.isTraceEnabled())
+                    {
+                        gLog.trace("byte[], length " + 
+                            ((byte[]) parameterObjects[i]).length +
+                            "; class " + parameterClasses[i].getName());
+                    }
+                }
+                else
+                {
+                    if (gLog.isTraceEnabled())
+                    {
+                        gLog.trace(parameterObjects[i].toString() + 
+                            "; class " + parameterClasses[i].getName());
+                    }
+                }
+            }
+            
+            try 
+            {
+                // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6342411
+                // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4283544
+                // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4071957
+
+                // Class.getMethod claims to get the public
+                // method requested from the class or a
+                // superclass or an interface. There's a bug
+                // which prevents this from working in some
+                // cases. One such case can be where a JDBC
+                // implementation class implements a JDBC
+                // interface, say, ResultSet, but the
+                // implementation class is not public. Using
+                // reflection to get e.g. the "close" method on
+                // the implementation class will fail. You have
+                // to get the ResultSet interface first. It's an
+                // IllegalAccessException problem, not a
+                // NoSuchMethodException problem.
+
+                if (aParameterList.length == 0)
+                    parameterClasses = null;
+                Object returnValue = mInvokeMethod(anObject,
+                    aMethodName, parameterClasses, parameterObjects); 
+
+                // Null should be turned into BerNull. Boolean is
+                // turned into 1 or 0 so that the return value
+                // will be appropriately true or false in Perl.
+                if (returnValue == null)
+                    return null;
+                else if (returnValue instanceof Boolean)
+                    return ((Boolean) returnValue).booleanValue() ? "1" : "0";
+                else
+                    return returnValue.toString();
+            }
+            catch (SecurityException security)
+            {
+                throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
+                    new String[] { security.toString() });
+            }
+            catch (IllegalArgumentException argument)
+            {
+                throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
+                    new String[] { argument.toString() });
+            }
+        }
+        catch (Exception e) 
+        { 
+            gLog.debug(e, e); 
+            throw new DbdException(DbdException.gGENERIC_EXCEPTION,
+                new String[] { e.toString() });
+        }            
+    }
+
+    /**
+     * Attempts to invoke a method on the given object.
+     *
+     * @param anObject the object
+     * @param aMethodName the method name
+     * @param parameterClasses the class objects for the method parameters
+     * @param parameterObjects the parameter objects
+     * @return the method return value    
+     * @throws IllegalArgumentException if a null parameter is passed 
+     *      for a primitive type
+     * @throws SQLException if the method throws a SQLException
+     * @throws DbdException if the method can't be found or invoked, or
+     *      throws some other exception
+     */
+    private Object mInvokeMethod(Object anObject, String aMethodName, 
+        Class[] parameterClasses, Object[] parameterObjects) 
+        throws IllegalArgumentException, SQLException
+    {
+        MethodHandle method = gFindMethod(anObject.getClass(), aMethodName,
+            parameterClasses);
+        if (method == null)
+        {
+            throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
+                new String[] { "Unable to invoke method" }); 
+        }
+        for (int i = 0; i < parameterObjects.length; i++)
+        {
+            if (parameterObjects[i] == null && 
+                parameterClasses[i].isPrimitive())
+            {
+                throw new IllegalArgumentException("Parameter " + (i + 1) + 
+                    " may not be null");
+            }
+        }
+
+        try
+        {
+            return (Object) method.invokeExact(anObject, parameterObjects);
+        }
+        catch (SQLException e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
+                new String[] { t.toString() });
+        }
+    }
+
+    /**
+     * Finds a method which can be invoked on an instance of the given
+     * class, using a cached result if possible.
+     *
+     * @param aClass the class
+     * @param aMethodName the method name
+     * @param parameterClasses the class objects for the method 
+     *      parameters; may be null if there are none
+     * @return a method handle taking the object and an array of 
+     *      parameters, or null if there is no such method
+     */
+    static MethodHandle gFindMethod(Class<?> aClass, 
+        String aMethodName, Class[] parameterClasses)
+    {
+        FuncMethodKey key = new FuncMethodKey(aClass, aMethodName, 
+            parameterClasses);
+        MethodHandle method = sFuncMethods.get(key);
+        if (method == null)
+        {
+            method = gLookupMethod(aClass, aMethodName, parameterClasses);
+            if (method == null)
+                method = sNO_METHOD;
+            else
+            {
+                method = method.asSpreader(Object[].class, 
+                    (parameterClasses == null) ? 0 : parameterClasses.length)
+                    .asType(MethodType.methodType(Object.class, 
+                    Object.class, Object[].class));
+            }
+            if (sFuncMethods.size() >= sMAX_FUNC_METHODS)
+                sFuncMethods.clear();
+            sFuncMethods.put(key, method);
+        }
+        else if (gLog.isTraceEnabled())
+            gLog.trace("Found cached method " + aMethodName); 
+        return (method == sNO_METHOD) ? null : method;
+    }
+
+    /**
+     * Returns the number of cached func methods, including methods
+     * which couldn't be found.
+     *
+     * @return the number of cached func methods
+     */
+    static int gGetFuncMethodCount()
+    {
+        return sFuncMethods.size();
+    }
+
+    /**
+     * Looks for an accessible method on the given class, then on 
+     * the interfaces it implements, then on its superclass and 
+     * its interfaces, and so on.
+     *
+     * @param aClass the class
+     * @param aMethodName the method name
+     * @param parameterClasses the class objects for the method parameters
+     * @return a method handle, or null if there is no such method
+     */
+    private static MethodHandle gLookupMethod(Class<?> aClass, 
+        String aMethodName, Class[] parameterClasses)
+    {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Class<?> currentClass = aClass; 
+        while (currentClass != null)
+        {
+            MethodHandle method = gLookupMethod(lookup, currentClass, 
+                aMethodName, parameterClasses);
+            if (method != null)
+                return method;
+
+            Class<?>[] interfaces = currentClass.getInterfaces(); 
+            for (int i = 0; i < interfaces.length; i++)
+            {
+                method = gLookupMethod(lookup, interfaces[i], aMethodName,
+                    parameterClasses);
+                if (method != null)
+                    return method;
+            }
+
+            currentClass = currentClass.getSuperclass();
+        }
+        return null;
+    }
+
+    /**
+     * Looks for an accessible method on the given class or interface.
+     *
+     * @param aLookup the lookup used to check access
+     * @param aClass the class or interface
+     * @param aMethodName the method name
+     * @param parameterClasses the class objects for the method parameters
+     * @return a method handle, or null if there is no such method
+     */
+    private static MethodHandle gLookupMethod(MethodHandles.Lookup aLookup,
+        Class<?> aClass, String aMethodName, Class[] parameterClasses)
+    {
+        try
+        {
+            MethodHandle method = aLookup.unreflect(
+                aClass.getMethod(aMethodName, parameterClasses));
+            if (gLog.isTraceEnabled())
+                gLog.trace("Found " + aClass.getName() + "." + aMethodName); 
+            return method;
+        }
+        catch (NoSuchMethodException noMethod)
+        {
+            if (gLog.isTraceEnabled())
+                gLog.trace(aClass.getName() + "/" + noMethod.toString()); 
+        }
+        catch (SecurityException security)
+        {
+            if (gLog.isTraceEnabled())
+                gLog.trace(aClass.getName() + "/" + security.toString()); 
+        }
+        catch (IllegalAccessException access)
+        {
+            if (gLog.isTraceEnabled())
+                gLog.trace(aClass.getName() + "/" + access.toString()); 
+        }
+        return null;
+    }
+
+    /*
+    private Method mTestInterfaces(Class c, String aMethodName, 
+        Class[] parameterClasses) 
+    {
+        Class[] interfaces = c.getInterfaces(); 
+        gLog.debug("Found " + interfaces.length + 
+            " other interfaces of " + c.getName() + " to try"); 
+        for (int i = 0; i < interfaces.length; i++)
+        {
+            int mod = interfaces[i].getModifiers();
+            if (Modifier.isPublic(mod))
+            {
+                gLog.debug("interface " + interfaces[i].getName() +
+                    " is public"); 
+                try
+                {
+                    Method method = interfaces[i].getMethod(
+                        aMethodName, parameterClasses);
+                    if (gLog.isTraceEnabled())
+                    {
+                        gLog.trace("Found public interface " +
+                            interfaces[i].getName() + 
+                            " with method " + aMethodName);
+                    }
+                    return method;
+                }
+                catch (NoSuchMethodException e)
+                {
+                }
+                catch (SecurityException e)
+                {
+                }
+            }
+        }
+        return null; 
+    }
+    */
+
+
+    // Support methods.
+
+
+    /** 
+     * Returns a <code>java.lang.Class</code> object
+     * corresponding to the argument, which should be a value
+     * from <code>java.sql.Types</code>.  This method returns the
+     * primitive Class objects (e.g. Integer.TYPE) rather than
+     * the wrapper class objects (Integer.class). This means that
+     * you can't call a method which takes one of the
+     * <code>java.lang</code> wrapper types. Since primitive
+     * types are much more common as arguments, this doesn't seem
+     * like too much of a problem.
+     *   <p>
+     * The JDBC type to Class mappings are based on the JDBC type
+     * to Java type tables in the JDBC books:
+     * <ul>
+     * <li>Table 21.6.1 in <i>JDBC Data Access with Java</i>,
+     *      Hamilton, Cattell, Fisher
+     * <li>Table 47.9.1 in <i>JDBC API Tutorial and Reference,
+     *      Second Edition</i>, White, Fisher, Cattell, Hamilton,
+     *      Hapner
+     * </ul>
+     *
+     * @param aJdbcType a JDBC type code from <code>java.sql.Types</code>
+     * @return the class object corresponding to the given type
+     */
+    private Class mGetClass(int aJdbcType)
+    {
+        switch (aJdbcType) 
+        {
+        case Types.BINARY:
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+            return byte[].class;
+
+        case Types.TINYINT:             return Byte.TYPE;
+        case Types.SMALLINT:            return Short.TYPE;
+        case Types.INTEGER:             return Integer.TYPE;
+        case Types.BIGINT:              return Long.TYPE;
+        case Types.REAL:                return Float.TYPE;
+        case Types.FLOAT: 
+        case Types.DOUBLE:              return Double.TYPE;
+        case Types.DECIMAL: 
+        case Types.NUMERIC:             return BigDecimal.class;
+        case Types.BIT:                 return Boolean.TYPE;
+        case Types.CHAR: 
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:         return String.class;
+        case Types.DATE:                return java.sql.Date.class;
+        case Types.TIME:                return java.sql.Time.class;
+        case Types.TIMESTAMP:           return java.sql.Timestamp.class;
+        case Types.OTHER: 
+        default: 
+            return String.class;  // String will be the actual type.
+        }
+    }
+
+    /**
+     * Returns the id of a statement property name.
+     *
+     * @param aName a statement property name
+     * @return the property id, or 0 if the name is not recognized
+     */
+    private static int gGetStatementPropertyId(String aName)
+    {
+        Integer id = sStatementProperties.get(aName);
+        return (id == null) ? 0 : id.intValue();
+    }
+
+    /**
+     * Retrieves a StatementHolder from the statement table.
+     *
+     * @param aStatementHandle the statement handle to retrieve
+     * @return the corresponding StatementHolder from the cache
+     * @exception Exception if the statement handle does not correspond
+     *      to an entry in the statement table */
+    private StatementHolder mGetStatementHolder(int aStatementHandle)
+        throws DbdException
+    {
+        StatementHolder holder = (StatementHolder) mStatementTable.get(
+            new Integer(aStatementHandle));
+        // XXX: Should this be a runtime exception? Can the user cause this?
+        if (holder == null)
+            throw new DbdException(DbdException.gINVALID_STATEMENT_HANDLE);
+        mCurrentHolder = holder;
+        return holder;
+    }
+
+    /** 
+     * Sends the given error information to the client.
+     *
+     * @param aMessage the error text
+     * @param aCode the error code
+     * @param aSQLState the SQL state associated with this error
+     * @exception FatalException if the error message can't be sent
+     */
+    private void mSendError(SQLException aSQLException)
+    {
+        try 
+        {
+            ErrorResponse error = new ErrorResponse(aSQLException,
+                mBerModule.getCharacterEncoding());
+            if (gLog.isTraceEnabled())
+                gLog.trace("Sending error: " + aSQLException.getMessage());
+            error.writeTo(mOut);
+            mOut.flush();
+        }
+        catch (UnsupportedEncodingException unsupEnc)
+        {
+            throw new UnreachableCodeException();
+        }
+        catch (Exception e )
+        {
+            throw new FatalException("Failed to send error message " +
+                "to client: " + e.toString());
+        }
+    }
+}
+
+
+/**
+ * This class encapsulates a PreparedStatement and its associated 
+ * ResultSet, ResultSetMetaData, and properties.
+ */
+class StatementHolder
+{
+    /** The PreparedStatement. */
+    PreparedStatement mStatement;
+    /** The statement's result set, if relevant. */
+    ResultSet mResultSet;
+    /** The result set meta data. */
+    ResultSetMetaData mResultSetMetaData;
+    /** The statement properties (LongReadLen, etc.). */
+    Hashtable<String, Object> mStatementProperties;
+    /** 
+     * The readers for the result set's columns, or null if they 
+     * haven't been chosen since the result set or properties changed.
+     */
+    ColumnReader[] mColumnReaders;
+    /** 
+     * The LOB locators returned by fetches since the statement was 
+     * last executed, keyed by locator handle. 
+     */
+    Hashtable<Integer, LobLocator> mLobs;
+    /** The handle for the next LOB locator. */
+    int mNextLob = 1;
+    /** 
+     * The LOB parameter values uploaded since the statement was last
+     * executed, keyed by parameter index. 
+     */
+    Hashtable<Integer, LobUpload> mUploads;
+    /** The jdbc_fetchbytes budget, or 0 if the fetch size isn't tuned. */
+    int mFetchBudget;
+    /** Tunes the fetch size when jdbc_fetchbytes is set, or null. */
+    FetchSizeTuner mFetchSizeTuner;
+    /** The spool holding unread rows of the result set, or null. */
+    ResultSpool mSpool;
+    /** Whether the result set was spooled when it was executed. */
+    boolean mSpooled;
+    /** The statement text, or null if it isn't known. */
+    String mSql;
+    /** The cached result being fetched instead of a result set, or null. */
+    QueryCache.Entry mCachedResult;
+    /** The index of the next row of the cached result. */
+    int mCachedRow;
+    /** Records the result set for the query cache, or null. */
+    QueryCache.Recorder mRecorder;
+    /** The keys generated by the last execution, or null. */
+    GeneratedKeys mGeneratedKeys;
+    /** Times the statement's requests for the slow statement log. */
+    private final SlowStatementLog.Timing mTiming = 
+        new SlowStatementLog.Timing();
+
+    /**
+     * Constructor - initializes fields. 
+     *
+     * @param aStatement a PreparedStatement
+     */
+    StatementHolder(PreparedStatement aStatement)
+    {
+        this(aStatement, null);
+    }
+
+    /**
+     * Constructor - initializes fields. 
+     *
+     * @param aStatement a PreparedStatement
+     * @param aSql the statement text
+     */
+    StatementHolder(PreparedStatement aStatement, String aSql)
+    {
+        mStatement = aStatement;
+        mSql = aSql;
+        mStatementProperties = new Hashtable<String, Object>();
+        
+        mResultSet = null;
+        mResultSetMetaData = null;
+        Metrics.gStatementOpened();
+    }
+
+    /**
+     * Closes this statement. Ignores any exceptions thrown by 
+     * PreparedStatement.close.
+     */
+    void close()
+    {
+        clearLobs();
+        clearUploads();
+        clearSpool();
+        clearCache();
+        if (mStatement != null)
+        {
+            try { mStatement.close(); } catch (Exception e) { }
+            Metrics.gStatementClosed();
+        }
+        mStatementProperties = null;
+        mColumnReaders = null;
+        mResultSetMetaData = null;
+        mResultSet = null;
+        mStatement = null;
+    }
+
+    /**
+     * Finishes this statement. Ignores any exceptions thrown by 
+     * ResultSet.close. 
+     */
+    /* This is like DBI's finish - no more data to be read from the 
+     * statement, but execute may be called again. However, in JDBC, 
+     * closing the result set may commit a transaction in AutoCommit 
+     * mode, which is forbidden by the DBI spec. I'm leaving this 
+     * here, but it shouldn't be called unless we decide to support
+     * this behavior.
+     */
+    void finish()
+    {
+        if (mResultSet != null)
+        {
+            try { mResultSet.close(); } catch (Exception e) { }
+        }
+        mResultSet = null;
+        mResultSetMetaData = null;
+        mColumnReaders = null;
+    }
+
+    /**
+     * Returns this holder's PreparedStatement.
+     *
+     * @return this holder's PreparedStatement
+     */
+    PreparedStatement getStatement()
+    {
+        return mStatement;
+    }
+
+    /**
+     * Returns the statement text.
+     *
+     * @return the statement text, or null if it isn't known
+     */
+    String getSql()
+    {
+        return mSql;
+    }
+
+    /**
+     * Returns this holder's ResultSet.
+     *
+     * @return this holder's ResultSet
+     */
+    ResultSet getResultSet()
+    {
+        return mResultSet;
+    }
+    /**
+     * Updates this holder's ResultSet and ResultSetMetaData
+     * when the statement has been executed.
+     *
+     * @param aResultSet a new ResultSet for this statement
+     * @exception SQLException if ResultSet.getMetaData fails
+     */
+    void setResultSet(ResultSet aResultSet) throws SQLException
+    {
+        clearLobs();
+        clearSpool();
+        clearCache();
+        mSpooled = false;
+        if (mFetchSizeTuner != null)
+            mFetchSizeTuner.reset();
+        mResultSet = aResultSet;
+        mResultSetMetaData = 
+            (aResultSet == null) ? null : aResultSet.getMetaData();
+        mColumnReaders = null;
+    }
 
-                parameterClasses[i] = mGetClass(aParameterList[i].type);
 
-                if (aParameterList[i].type == Types.BINARY ||
-                    aParameterList[i].type == Types.VARBINARY ||
-                    aParameterList[i].type == Types.LONGVARBINARY)
-                {
-                    if (gLog.isTraceEnabled())
-                    {
-                        gLog.trace("byte[], length " + 
-                            ((byte[]) parameterObjects[i]).length +
-                            "; class " + parameterClasses[i].getName());
-                    }
-                }
-                else
-                {
-                    if (gLog.isTraceEnabled())
-                    {
-                        gLog.trace(parameterObjects[i].toString() + 
-                            "; class " + parameterClasses[i].getName());
-                    }
-                }
-            }
-            
-            try 
-            {
-                // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6342411
-                // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4283544
-                // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4071957
+    /**
+     * Returns this holder's ResultSetMetaData.
+     *
+     * @return this holder's ResultSetMetaData
+     */
+    ResultSetMetaData getResultSetMetaData()
+    {
+        return mResultSetMetaData;
+    }
 
-                // Class.getMethod claims to get the public
-                // method requested from the class or a
-                // superclass or an interface. There's a bug
-                // which prevents this from working in some
-                // cases. One such case can be where a JDBC
-                // implementation class implements a JDBC
-                // interface, say, ResultSet, but the
-                // implementation class is not public. Using
-                // reflection to get e.g. the "close" method on
-                // the implementation class will fail. You have
-                // to get the ResultSet interface first. It's an
-                // IllegalAccessException problem, not a
-                // NoSuchMethodException problem.
+    /**
+     * Returns this holder's property list.
+     *
+     * @return this holder's property list
+     */
+    Hashtable<String, Object> getProperties()
+    {
+        return mStatementProperties;
+    }
 
-                if (aParameterList.length == 0)
-                    parameterClasses = null;
-                Object returnValue = mInvokeMethod(anObject,
-                    aMethodName, parameterClasses, parameterObjects); 
+    /**
+     * Returns the readers for this holder's result set columns,
+     * choosing them if the result set or the properties have 
+     * changed since they were last chosen.
+     *
+     * @return the readers for this holder's result set columns
+     * @exception SQLException if the result set meta data can't be read
+     */
+    ColumnReader[] getColumnReaders() throws SQLException
+    {
+        if (mColumnReaders == null)
+        {
+            mColumnReaders = ColumnReader.gCreateReaders(mResultSetMetaData,
+                mStatementProperties, this);
+        }
+        return mColumnReaders;
+    }
 
-                // Null should be turned into BerNull. Boolean is
-                // turned into 1 or 0 so that the return value
-                // will be appropriately true or false in Perl.
-                if (returnValue == null)
-                    return null;
-                else if (returnValue instanceof Boolean)
-                    return ((Boolean) returnValue).booleanValue() ? "1" : "0";
-                else
-                    return returnValue.toString();
-            }
-            catch (SecurityException security)
-            {
-                throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
-                    new String[] { security.toString() });
-            }
-            catch (IllegalArgumentException argument)
-            {
-                throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
-                    new String[] { argument.toString() });
-            }
-            catch (InvocationTargetException target)
-            {
-                Throwable t = target.getTargetException();
-                if (t != null)
-                {
-                    if (t instanceof SQLException)
-                        throw (SQLException) t;
-                    throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
-                        new String[] { t.toString() });
-                }
-                throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
-                    new String[] { target.toString() });
-            }
+    /**
+     * Discards the column readers after a property that affects 
+     * them changes.
+     */
+    void clearColumnReaders()
+    {
+        mColumnReaders = null;
+    }
+
+    /**
+     * Sets the fetch size for the statement's result sets. If the 
+     * fetch size is being tuned, tuning restarts from this size.
+     *
+     * @param aSize the fetch size, or 0 for the driver's default
+     * @exception SQLException if the driver rejects the fetch size
+     */
+    void setFetchSize(int aSize) throws SQLException
+    {
+        mStatement.setFetchSize(aSize);
+        if (mFetchBudget > 0)
+            setFetchBudget(mFetchBudget);
+    }
+
+    /**
+     * Sets the byte budget for a batch of rows, and starts or stops
+     * tuning the fetch size.
+     *
+     * @param aBudget the most bytes a batch of rows should take, or 0
+     *      to stop tuning the fetch size
+     * @exception SQLException if the driver rejects the fetch size
+     */
+    void setFetchBudget(int aBudget) throws SQLException
+    {
+        mFetchBudget = Math.max(0, aBudget);
+        if (mFetchBudget == 0)
+        {
+            mFetchSizeTuner = null;
+            return;
         }
-        catch (Exception e) 
-        { 
-            gLog.debug(e, e); 
-            throw new DbdException(DbdException.gGENERIC_EXCEPTION,
-                new String[] { e.toString() });
-        }            
+        mFetchSizeTuner = new FetchSizeTuner(mFetchBudget, 
+            mStatement.getFetchSize());
+        mStatement.setFetchSize(mFetchSizeTuner.getFetchSize());
     }
 
     /**
-     * Attempts to invoke a method on the given object.
+     * Records a row fetched by the client, changing the fetch size
+     * if it is being tuned.
      *
-     * @param anObject the object
-     * @param aMethodName the method name
-     * @param parameterClasses the class objects for the method parameters
-     * @param parameterObjects the parameter objects
-     * @return the method return value    
-     * @throws IllegalArgumentException
-     * @throws InvocationTargetException
-     * @throws DbdException if an otherwise unreported problem
-     * causes the method to go uninvoked
+     * @param aRow the row values, as read by the column readers
+     * @param aStarted when the server started reading the row, from
+     *      <code>System.nanoTime</code>
+     * @return the new fetch size, or 0 if it is unchanged
      */
-    private Object mInvokeMethod(Object anObject, String aMethodName, 
-        Class[] parameterClasses, Object[] parameterObjects) 
-        throws IllegalArgumentException, InvocationTargetException,
-        DbdException
+    int rowFetched(Object[] aRow, long aStarted)
     {
-        Class<?> currentClass = anObject.getClass(); 
-        while (currentClass != null)
+        if (mFetchSizeTuner == null)
+            return 0;
+        int size = mFetchSizeTuner.rowFetched(
+            FetchSizeTuner.gEstimateWidth(aRow), aStarted, 
+            System.nanoTime());
+        if (size > 0)
         {
             try
             {
-                Method method = currentClass.getMethod(aMethodName, 
-                    parameterClasses);
-                gLog.trace("Invoking " + currentClass.getName() + "." + 
-                    aMethodName); 
-                return method.invoke(anObject, parameterObjects);
-            }
-            catch (NoSuchMethodException noMethod)
-            {
-                gLog.trace(currentClass.getName() + "/" + noMethod.toString()); 
+                mResultSet.setFetchSize(size);
+                mStatement.setFetchSize(size);
             }
-            catch (SecurityException security)
-            {
-                gLog.trace(currentClass.getName() + "/" + security.toString()); 
-            }
-            catch (IllegalAccessException access)
-            {
-                gLog.trace(currentClass.getName() + "/" + access.toString()); 
-            }
-
-            Class<?>[] interfaces = currentClass.getInterfaces(); 
-            for (int i = 0; i < interfaces.length; i++)
+            catch (SQLException e)
             {
-                try
-                {
-                    Method method = interfaces[i].getMethod(
-                        aMethodName, parameterClasses);
-                    gLog.trace("Invoking " + interfaces[i].getName() + "." + 
-                        aMethodName); 
-                    return method.invoke(anObject, parameterObjects); 
-                }
-                catch (NoSuchMethodException noMethod)
-                {
-                    gLog.trace(currentClass.getName() + "/" + 
-                        noMethod.toString()); 
-                }
-                catch (SecurityException security)
-                {
-                    gLog.trace(currentClass.getName() + "/" + 
-                        security.toString()); 
-                }
-                catch (IllegalAccessException access)
-                {
-                    gLog.trace(currentClass.getName() + "/" + 
-                        access.toString()); 
-                }
+                // The fetch size is only a hint; if the driver won't 
+                // take it, stop tuning rather than failing the fetch.
+                mFetchSizeTuner = null;
+                return 0;
             }
-
-            currentClass = currentClass.getSuperclass();
         }
-        throw new DbdException(DbdException.gREFLECTION_EXCEPTION,
-            new String[] { "Unable to invoke method" }); 
+        return size;
     }
 
-    /*
-    private Method mTestInterfaces(Class c, String aMethodName, 
-        Class[] parameterClasses) 
+    /**
+     * Spools this holder's result set to a temporary file. If every
+     * row fits in the spool, the result set is closed, and its meta
+     * data is replaced by a copy. Otherwise the result set is left
+     * open, positioned after the spooled rows. LOB values are read
+     * in full rather than returned as locators.
+     *
+     * @param aCodec the client's character codec
+     * @return true if the result set was spooled and closed
+     * @exception SQLException if a row can't be read
+     * @exception IOException if a column value can't be read, or the
+     *      spool can't be written
+     */
+    boolean spool(CharacterCodec aCodec) throws SQLException, IOException
     {
-        Class[] interfaces = c.getInterfaces(); 
-        gLog.debug("Found " + interfaces.length + 
-            " other interfaces of " + c.getName() + " to try"); 
-        for (int i = 0; i < interfaces.length; i++)
+        ResultSpool spool = ResultSpool.gCreate();
+        if (spool == null)
+            return false;
+        mSpool = spool;
+        mSpooled = true;
+        boolean filled = false;
+        boolean complete;
+        try
         {
-            int mod = interfaces[i].getModifiers();
-            if (Modifier.isPublic(mod))
-            {
-                gLog.debug("interface " + interfaces[i].getName() +
-                    " is public"); 
-                try
-                {
-                    Method method = interfaces[i].getMethod(
-                        aMethodName, parameterClasses);
-                    if (gLog.isTraceEnabled())
-                    {
-                        gLog.trace("Found public interface " +
-                            interfaces[i].getName() + 
-                            " with method " + aMethodName);
-                    }
-                    return method;
-                }
-                catch (NoSuchMethodException e)
-                {
-                }
-                catch (SecurityException e)
-                {
-                }
-            }
+            complete = spool.fill(mResultSet, ColumnReader.gCreateReaders(
+                mResultSetMetaData, mStatementProperties, null), aCodec);
+            filled = true;
         }
-        return null; 
-    }
-    */
-
-
-    // Support methods.
+        finally
+        {
+            if (!filled)
+                clearSpool();
+        }
+        if (!complete)
+            return false;
 
+        mResultSetMetaData = ResultSpool.gCopyMetaData(mResultSetMetaData);
+        try { mResultSet.close(); } catch (Exception e) { }
+        mResultSet = null;
+        mColumnReaders = null;
+        return true;
+    }
 
-    /** 
-     * Returns a <code>java.lang.Class</code> object
-     * corresponding to the argument, which should be a value
-     * from <code>java.sql.Types</code>.  This method returns the
-     * primitive Class objects (e.g. Integer.TYPE) rather than
-     * the wrapper class objects (Integer.class). This means that
-     * you can't call a method which takes one of the
-     * <code>java.lang</code> wrapper types. Since primitive
-     * types are much more common as arguments, this doesn't seem
-     * like too much of a problem.
-     *   <p>
-     * The JDBC type to Class mappings are based on the JDBC type
-     * to Java type tables in the JDBC books:
-     * <ul>
-     * <li>Table 21.6.1 in <i>JDBC Data Access with Java</i>,
-     *      Hamilton, Cattell, Fisher
-     * <li>Table 47.9.1 in <i>JDBC API Tutorial and Reference,
-     *      Second Edition</i>, White, Fisher, Cattell, Hamilton,
-     *      Hapner
-     * </ul>
+    /**
+     * Returns whether the result set was spooled when it was executed.
+     * Rows are read from the spool until it is exhausted, and then
+     * from the result set, if it is still open.
      *
-     * @param aJdbcType a JDBC type code from <code>java.sql.Types</code>
-     * @return the class object corresponding to the given type
+     * @return true if the result set was spooled
      */
-    private Class mGetClass(int aJdbcType)
+    boolean isSpooled()
     {
-        switch (aJdbcType) 
-        {
-        case Types.BINARY:
-        case Types.VARBINARY:
-        case Types.LONGVARBINARY:
-            byte[] b = new byte[0];
-            return b.getClass();
+        return mSpooled;
+    }
 
-        case Types.TINYINT:             return Byte.TYPE;
-        case Types.SMALLINT:            return Short.TYPE;
-        case Types.INTEGER:             return Integer.TYPE;
-        case Types.BIGINT:              return Long.TYPE;
-        case Types.REAL:                return Float.TYPE;
-        case Types.FLOAT: 
-        case Types.DOUBLE:              return Double.TYPE;
-        case Types.DECIMAL: 
-        case Types.NUMERIC:             return BigDecimal.class;
-        case Types.BIT:                 return Boolean.TYPE;
-        case Types.CHAR: 
-        case Types.VARCHAR:
-        case Types.LONGVARCHAR:         return String.class;
-        case Types.DATE:                return java.sql.Date.class;
-        case Types.TIME:                return java.sql.Time.class;
-        case Types.TIMESTAMP:           return java.sql.Timestamp.class;
-        case Types.OTHER: 
-        default: 
-            return String.class;  // String will be the actual type.
+    /**
+     * Reads the next row from the spool, discarding the spool once 
+     * all its rows have been read.
+     *
+     * @return the row, or null if there are no more spooled rows
+     * @exception IOException if the spool can't be read
+     */
+    Object[] nextSpooledRow() throws IOException
+    {
+        if (mSpool == null)
+            return null;
+        Object[] row = mSpool.next();
+        if (row == null)
+            clearSpool();
+        return row;
+    }
+
+    /**
+     * Closes and deletes the spool, if there is one.
+     */
+    void clearSpool()
+    {
+        if (mSpool != null)
+        {
+            mSpool.close();
+            mSpool = null;
         }
     }
 
     /**
-     * Retrieves a StatementHolder from the statement table.
+     * Returns the keys generated by the last execution.
      *
-     * @param aStatementHandle the statement handle to retrieve
-     * @return the corresponding StatementHolder from the cache
-     * @exception Exception if the statement handle does not correspond
-     *      to an entry in the statement table */
-    private StatementHolder mGetStatementHolder(int aStatementHandle)
-        throws DbdException
+     * @return the keys, or null if none were generated
+     */
+    GeneratedKeys getGeneratedKeys()
     {
-        StatementHolder holder = (StatementHolder) mStatementTable.get(
-            new Integer(aStatementHandle));
-        // XXX: Should this be a runtime exception? Can the user cause this?
-        if (holder == null)
-            throw new DbdException(DbdException.gINVALID_STATEMENT_HANDLE);
-        return holder;
+        return mGeneratedKeys;
     }
 
     /**
-     * Removes trailing blanks from the given string.
+     * Sets the keys generated by the last execution.
      *
-     * @param aString a string, potentially with trailing blanks
-     * @return the same string with any trailing blanks removed
+     * @param aKeys the keys, or null if none were generated
      */
-    private String mChopBlanks(String aString)
+    void setGeneratedKeys(GeneratedKeys aKeys)
     {
-        if (aString != null)
-        {
-            int last = aString.length() - 1;
-            while (last >= 0 && aString.charAt(last) == ' ')
-                last--;
-            return aString.substring(0, last + 1);
-        }
-        else
-            return null;
+        mGeneratedKeys = aKeys;
     }
 
     /**
-     * Reads a LONG field. Implements the DBI semantics associated with
-     * the LongTruncOk and LongReadLen properties.
+     * Replaces this holder's result set with a result from the query
+     * cache. The statement isn't executed, so any previous result set
+     * is closed here.
      *
-     * @param aColumnIndex the column index being read, for error reporting
-     * @param anInputStream an input stream returned by a getXXXStream method
-     * @param aLongReadLen the LongReadLen property for this statement
-     * @param aLongTruncOk the LongTruncOk property for this statement
-     * @return a byte array read from the stream, or null if the input
-     *      stream is null
-     * @exception DataTruncation if the data is truncated
-     * @exception IOException if an error occurs reading from the stream
+     * @param anEntry the cached result
+     * @exception SQLException if the result set can't be replaced
      */
-    private byte[] mReadLong(int aColumnIndex, InputStream anInputStream, 
-        int aLongReadLen, boolean aLongTruncOk, boolean readAll) 
-        throws DbdException, IOException
+    void setCachedResult(QueryCache.Entry anEntry) throws SQLException
     {
-        if (aLongReadLen == 0)
-            return null;
-        if (anInputStream == null)
-            return null;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] buffer = new byte[sLONG_READ_BUFFER_SIZE];
-        int read;
-        int totalread = 0;
-
-        if (readAll)
-        {
-            while ((read = anInputStream.read(buffer, 0, buffer.length)) != -1)
-            {
-                totalread += read;
-                baos.write(buffer, 0, read);
-            }
-        }
-        else
-        {
-            while (totalread < aLongReadLen &&
-                (read = anInputStream.read(buffer, 0, 
-                    Math.min(buffer.length, (aLongReadLen - totalread)))) != -1)
-            {
-                totalread += read;
-                baos.write(buffer, 0, read);
-            }
-        }
-        baos.close();
-        if (gLog.isDebugEnabled())
-        {
-            gLog.debug("Read " + totalread + " bytes from LONG column " + 
-                aColumnIndex + "(LongReadLen=" + aLongReadLen + 
-                ";LongTruncOk=" + aLongTruncOk + ";jdbc_longreadall=" + 
-                readAll + ")");
-        }
-        if (!readAll && (!aLongTruncOk && anInputStream.read() != -1))
+        if (mResultSet != null)
         {
-            anInputStream.close();
-            throw new DbdException(DbdException.gDATA_TRUNCATION);
+            try { mResultSet.close(); } catch (Exception e) { }
         }
-        anInputStream.close();
-        return baos.toByteArray();
+        setResultSet(null);
+        mCachedResult = anEntry;
+        mCachedRow = 0;
+        mResultSetMetaData = anEntry.getMetaData();
     }
 
     /**
-     * Reads a LONG field. Implements the DBI semantics associated with
-     * the LongTruncOk and LongReadLen properties.
+     * Returns the cached result being fetched.
      *
-     * @param aColumnIndex the column index being read, for error reporting
-     * @param aReader a reader returned by a getXXXStream method
-     * @param aLongReadLen the LongReadLen property for this statement
-     * @param aLongTruncOk the LongTruncOk property for this statement
-     * @return a char array read from the stream, or null if the input
-     *      stream is null
-     * @exception DataTruncation if the data is truncated
-     * @exception IOException if an error occurs reading from the stream
+     * @return the cached result, or null if rows are fetched from 
+     *      the result set
      */
-    private char[] mReadLong(int aColumnIndex, Reader aReader, 
-        int aLongReadLen, boolean aLongTruncOk, boolean readAll) 
-        throws DbdException, IOException
+    QueryCache.Entry getCachedResult()
     {
-        if (aLongReadLen == 0)
-            return null;
-        if (aReader == null)
+        return mCachedResult;
+    }
+
+    /**
+     * Returns the next row of the cached result.
+     *
+     * @return the encoded row, or null if there are no more rows
+     */
+    byte[] nextCachedRow()
+    {
+        if (mCachedRow >= mCachedResult.getRowCount())
             return null;
-        CharArrayWriter out = new CharArrayWriter(aLongReadLen); 
-        char[] buffer = new char[sLONG_READ_BUFFER_SIZE]; 
-        int read;
-        int totalread = 0;
+        return mCachedResult.getRow(mCachedRow++);
+    }
 
-        if (readAll)
-        {
-            while ((read = aReader.read(buffer, 0, buffer.length)) != -1)
-            {
-                totalread += read;
-                out.write(buffer, 0, read);
-            }
-        }
-        else
-        {
-            while (totalread < aLongReadLen &&
-                (read = aReader.read(buffer, 0, 
-                    Math.min(buffer.length, (aLongReadLen - totalread)))) != -1)
-            {
-                totalread += read;
-                out.write(buffer, 0, read);
-            }
-        }
-        out.close();
-        if (gLog.isDebugEnabled())
-        {
-            gLog.debug("Read " + totalread + " bytes from LONG column " + 
-                aColumnIndex + "(LongReadLen=" + aLongReadLen + 
-                ";LongTruncOk=" + aLongTruncOk + ";jdbc_longreadall=" +
-                readAll + ")");
-        }
-        if (!readAll && (!aLongTruncOk && aReader.read() != -1))
-        {
-            aReader.close();
-            throw new DbdException(DbdException.gDATA_TRUNCATION);
-        }
-        aReader.close();
-        return out.toCharArray();
+    /**
+     * Starts recording this holder's result set for the query cache.
+     *
+     * @param aRecorder the recorder
+     */
+    void startRecording(QueryCache.Recorder aRecorder)
+    {
+        mRecorder = aRecorder;
     }
 
-    /** 
-     * Sends the given error information to the client.
+    /**
+     * Returns the timing of the statement's current execution.
      *
-     * @param aMessage the error text
-     * @param aCode the error code
-     * @param aSQLState the SQL state associated with this error
-     * @exception FatalException if the error message can't be sent
+     * @return the timing
      */
-    private void mSendError(SQLException aSQLException)
+    SlowStatementLog.Timing getTiming()
     {
-        try 
-        {
-            ErrorResponse error = new ErrorResponse(aSQLException,
-                mBerModule.getCharacterEncoding());
-            if (gLog.isTraceEnabled())
-                gLog.trace("Sending error: " + aSQLException.getMessage());
-            error.writeTo(mOut);
-            mOut.flush();
-        }
-        catch (UnsupportedEncodingException unsupEnc)
-        {
-            throw new UnreachableCodeException();
-        }
-        catch (Exception e )
-        {
-            throw new FatalException("Failed to send error message " +
-                "to client: " + e.toString());
-        }
+        return mTiming;
+    }
+
+    /**
+     * Returns the recorder for this holder's result set.
+     *
+     * @return the recorder, or null if the result set isn't being 
+     *      recorded
+     */
+    QueryCache.Recorder getRecorder()
+    {
+        return mRecorder;
     }
-}
 
+    /**
+     * Stops recording this holder's result set, without caching it.
+     */
+    void stopRecording()
+    {
+        mRecorder = null;
+    }
 
-/**
- * This class encapsulates a PreparedStatement and its associated 
- * ResultSet, ResultSetMetaData, and properties.
- */
-class StatementHolder
-{
-    /** The PreparedStatement. */
-    PreparedStatement mStatement;
-    /** The statement's result set, if relevant. */
-    ResultSet mResultSet;
-    /** The result set meta data. */
-    ResultSetMetaData mResultSetMetaData;
-    /** The statement properties (LongReadLen, etc.). */
-    Hashtable<String, Object> mStatementProperties;
+    /**
+     * Discards the cached result and the recorder, if there are any.
+     */
+    void clearCache()
+    {
+        mCachedResult = null;
+        mRecorder = null;
+    }
 
     /**
-     * Constructor - initializes fields. 
+     * Creates a locator for a Blob fetched from this holder's result set.
      *
-     * @param aStatement a PreparedStatement
+     * @param aBlob the Blob
+     * @param aLength the length of the Blob, in bytes
+     * @return the locator
      */
-    StatementHolder(PreparedStatement aStatement)
+    LobLocator addLob(Blob aBlob, long aLength)
     {
-        mStatement = aStatement;
-        mStatementProperties = new Hashtable<String, Object>();
-        
-        mResultSet = null;
-        mResultSetMetaData = null;
+        int handle = mNextLob++;
+        return mAddLob(handle, new LobLocator(handle, aBlob, aLength));
     }
 
     /**
-     * Closes this statement. Ignores any exceptions thrown by 
-     * PreparedStatement.close.
+     * Creates a locator for a Clob fetched from this holder's result set.
+     *
+     * @param aClob the Clob
+     * @param aLength the length of the Clob, in characters
+     * @return the locator
      */
-    void close()
+    LobLocator addLob(Clob aClob, long aLength)
     {
-        if (mStatement != null)
-        {
-            try { mStatement.close(); } catch (Exception e) { }
-        }
-        mStatementProperties = null;
-        mResultSetMetaData = null;
-        mResultSet = null;
-        mStatement = null;
+        int handle = mNextLob++;
+        return mAddLob(handle, new LobLocator(handle, aClob, aLength));
     }
 
     /**
-     * Finishes this statement. Ignores any exceptions thrown by 
-     * ResultSet.close. 
+     * Adds a locator to the locator table.
+     *
+     * @param aHandle the locator handle
+     * @param aLocator the locator
+     * @return the locator
      */
-    /* This is like DBI's finish - no more data to be read from the 
-     * statement, but execute may be called again. However, in JDBC, 
-     * closing the result set may commit a transaction in AutoCommit 
-     * mode, which is forbidden by the DBI spec. I'm leaving this 
-     * here, but it shouldn't be called unless we decide to support
-     * this behavior.
+    private LobLocator mAddLob(int aHandle, LobLocator aLocator)
+    {
+        if (mLobs == null)
+            mLobs = new Hashtable<Integer, LobLocator>();
+        mLobs.put(Integer.valueOf(aHandle), aLocator);
+        return aLocator;
+    }
+
+    /**
+     * Returns a LOB locator.
+     *
+     * @param aHandle the locator handle
+     * @return the locator, or null if there is no such locator
      */
-    void finish()
+    LobLocator getLob(int aHandle)
     {
-        if (mResultSet != null)
+        return (mLobs == null) ? null : mLobs.get(Integer.valueOf(aHandle));
+    }
+
+    /**
+     * Frees the LOB locators. They're valid until the statement
+     * is executed again, finished or destroyed.
+     */
+    void clearLobs()
+    {
+        if (mLobs != null)
         {
-            try { mResultSet.close(); } catch (Exception e) { }
+            Enumeration<LobLocator> locators = mLobs.elements();
+            while (locators.hasMoreElements())
+                locators.nextElement().free();
+            mLobs = null;
         }
-        mResultSet = null;
-        mResultSetMetaData = null;
     }
 
     /**
-     * Returns this holder's PreparedStatement.
+     * Adds an upload for a parameter, discarding any previous upload
+     * for that parameter.
      *
-     * @return this holder's PreparedStatement
+     * @param aParameter the 1-based parameter index
+     * @param anUpload the upload
      */
-    PreparedStatement getStatement()
+    void addUpload(int aParameter, LobUpload anUpload)
     {
-        return mStatement;
+        if (mUploads == null)
+            mUploads = new Hashtable<Integer, LobUpload>();
+        LobUpload previous = mUploads.put(Integer.valueOf(aParameter), 
+            anUpload);
+        if (previous != null)
+            previous.delete();
     }
 
     /**
-     * Returns this holder's ResultSet.
+     * Returns the upload for a parameter.
      *
-     * @return this holder's ResultSet
+     * @param aParameter the 1-based parameter index
+     * @return the upload, or null if there is no upload for the parameter
      */
-    ResultSet getResultSet()
+    LobUpload getUpload(int aParameter)
     {
-        return mResultSet;
+        return (mUploads == null) ? null : 
+            mUploads.get(Integer.valueOf(aParameter));
     }
+
     /**
-     * Updates this holder's ResultSet and ResultSetMetaData
-     * when the statement has been executed.
+     * Returns the uploads, keyed by parameter index.
      *
-     * @param aResultSet a new ResultSet for this statement
-     * @exception SQLException if ResultSet.getMetaData fails
+     * @return the uploads, or null if there are none
      */
-    void setResultSet(ResultSet aResultSet) throws SQLException
+    Hashtable<Integer, LobUpload> getUploads()
     {
-        mResultSet = aResultSet;
-        mResultSetMetaData = 
-            (aResultSet == null) ? null : aResultSet.getMetaData();
+        return mUploads;
     }
 
-
     /**
-     * Returns this holder's ResultSetMetaData.
+     * Discards the upload for a parameter, deleting its temporary file.
      *
-     * @return this holder's ResultSetMetaData
+     * @param aParameter the 1-based parameter index
      */
-    ResultSetMetaData getResultSetMetaData()
+    void removeUpload(int aParameter)
     {
-        return mResultSetMetaData;
+        if (mUploads != null)
+        {
+            LobUpload upload = mUploads.remove(Integer.valueOf(aParameter));
+            if (upload != null)
+                upload.delete();
+        }
     }
 
     /**
-     * Returns this holder's property list.
-     *
-     * @return this holder's property list
+     * Discards the uploads, deleting their temporary files. Uploads 
+     * are used by one execute, and are discarded if the statement is 
+     * closed first.
      */
-    Hashtable<String, Object> getProperties()
+    void clearUploads()
     {
-        return mStatementProperties;
+        if (mUploads != null)
+        {
+            Enumeration<LobUpload> uploads = mUploads.elements();
+            while (uploads.hasMoreElements())
+                uploads.nextElement().delete();
+            mUploads = null;
+        }
     }
 }
 
 
 /**
- * Caches the value and metadata for a generated key.
+ * Caches the generated keys returned by an execution of a statement:
+ * the metadata for each key column, read once, and the key values
+ * for each row.
  */
-class GeneratedKey
+class GeneratedKeys
 {
-    /** The catalog name. */
-    String catalog;
+    /** The catalog name of each column. */
+    String[] catalogs;
+
+    /** The schema name of each column. */
+    String[] schemas;
 
-    /** The schema name. */
-    String schema;
+    /** The table name of each column. */
+    String[] tables;
 
-    /** The table name. */
-    String table;
+    /** The column names. */
+    String[] columnNames;
 
-    /** The column name. */
-    String columnName;
+    /** The key values, one array per row. */
+    Vector<String[]> rows = new Vector<String[]>();
 
-    /** The key value. */
-    String value;
 
+    /**
+     * Constructor - reads the column metadata.
+     *
+     * @param aMetaData the generated keys' metadata
+     * @exception SQLException if the metadata can't be read
+     */
+    private GeneratedKeys(ResultSetMetaData aMetaData) throws SQLException
+    {
+        int count = aMetaData.getColumnCount();
+        catalogs = new String[count];
+        schemas = new String[count];
+        tables = new String[count];
+        columnNames = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            catalogs[i] = aMetaData.getCatalogName(i + 1);
+            schemas[i] = aMetaData.getSchemaName(i + 1);
+            tables[i] = aMetaData.getTableName(i + 1);
+            columnNames[i] = aMetaData.getColumnName(i + 1);
+        }
+    }
 
     /**
-     * Constructor - caches values.
+     * Reads and closes a generated keys result set.
      *
-     * @param aCatalog the catalog
-     * @param aSchema the schema
-     * @param aTable the table
-     * @param aColumnName the column name
-     * @param aValue the value
+     * @param aResultSet the result set from getGeneratedKeys
+     * @return the keys, or null if the result set has no columns
+     * @exception SQLException if the result set can't be read
      */
-    GeneratedKey(String aCatalog, String aSchema, String aTable, 
-        String aColumnName, String aValue)
+    static GeneratedKeys gRead(ResultSet aResultSet) throws SQLException
     {
-        catalog = aCatalog;
-        schema = aSchema;
-        table = aTable;
-        columnName = aColumnName;
-        value = aValue;
+        try
+        {
+            ResultSetMetaData rsmd = aResultSet.getMetaData();
+            if (rsmd.getColumnCount() == 0)
+                return null;
+            GeneratedKeys keys = new GeneratedKeys(rsmd);
+            int count = keys.columnNames.length;
+            while (aResultSet.next())
+            {
+                String[] row = new String[count];
+                for (int i = 0; i < count; i++)
+                    row[i] = aResultSet.getString(i + 1);
+                keys.rows.addElement(row);
+            }
+            return keys;
+        }
+        finally
+        {
+            try { aResultSet.close(); } catch (Exception e) { }
+        }
     }
 
+    /**
+     * Returns the last row's value for the first key column matching
+     * a table and column name, ignoring case.
+     *
+     * @param aTable the table name, or null to match any table
+     * @param aColumnName the column name, or null to match any column
+     * @return the key value, or null if no column matches or there 
+     *      are no rows
+     */
+    String find(String aTable, String aColumnName)
+    {
+        if (rows.size() == 0)
+            return null;
+        String[] last = rows.lastElement();
+        for (int i = 0; i < columnNames.length; i++)
+        {
+            if ((aTable == null || aTable.equalsIgnoreCase(tables[i])) &&
+                (aColumnName == null || 
+                aColumnName.equalsIgnoreCase(columnNames[i])))
+            {
+                return last[i];
+            }
+        }
+        return null;
+    }
 
     /**
-     * Returns a string representation of the key.
+     * Returns a string representation of the keys.
      *
-     * @return a string representation of the key
+     * @return a string representation of the keys
      */
     public String toString()
     {
         StringBuffer b = new StringBuffer();
-        if (catalog != null)
-            b.append(catalog);
-        if (schema != null && b.length() > 0)
-            b.append(".").append(schema);
-        else if (schema != null)
-            b.append(schema);            
-        if (table != null && b.length() > 0)
-            b.append(".").append(table);
-        else if (table != null)
-            b.append(table);            
-        if (columnName != null && b.length() > 0)
-            b.append(".").append(columnName);
-        else if (columnName != null)
-            b.append(columnName);
-        b.append(" = "); 
-        if (value != null)
-            b.append(value);
-        else
-            b.append("NULL");
+        for (int i = 0; i < columnNames.length; i++)
+        {
+            if (i > 0)
+                b.append(", ");
+            if (catalogs[i] != null)
+                b.append(catalogs[i]).append(".");
+            if (schemas[i] != null)
+                b.append(schemas[i]).append(".");
+            if (tables[i] != null)
+                b.append(tables[i]).append(".");
+            b.append(columnNames[i]);
+        }
+        b.append(": ").append(rows.size()).append(" rows");
         return b.toString(); 
     }
 }
+
+
+/**
+ * The key for a cached func method: the class of the object the 
+ * method is called on, the method name, and the parameter classes.
+ */
+class FuncMethodKey
+{
+    /** The class of the object. */
+    private final Class<?> mClass;
+
+    /** The method name. */
+    private final String mName;
+
+    /** The parameter classes; may be null. */
+    private final Class[] mParameterClasses;
+
+    /** The hash code. */
+    private final int mHashCode;
+
+
+    /**
+     * Constructor - initializes fields.
+     *
+     * @param aClass the class of the object
+     * @param aName the method name
+     * @param parameterClasses the parameter classes; may be null
+     */
+    FuncMethodKey(Class<?> aClass, String aName, Class[] parameterClasses)
+    {
+        mClass = aClass;
+        mName = aName;
+        mParameterClasses = parameterClasses;
+        mHashCode = (aClass.hashCode() * 31 + aName.hashCode()) * 31 + 
+            java.util.Arrays.hashCode(parameterClasses);
+    }
+
+
+    /**
+     * Returns true if the given object is an equal key.
+     *
+     * @param anObject an object
+     * @return true if the given object is an equal key
+     */
+    public boolean equals(Object anObject)
+    {
+        if (!(anObject instanceof FuncMethodKey))
+            return false;
+        FuncMethodKey key = (FuncMethodKey) anObject;
+        return mClass == key.mClass && mName.equals(key.mName) &&
+            java.util.Arrays.equals(mParameterClasses, key.mParameterClasses);
+    }
+
+
+    /**
+     * Returns a hash code for this key.
+     *
+     * @return a hash code for this key
+     */
+    public int hashCode()
+    {
+        return mHashCode;
+    }
+}
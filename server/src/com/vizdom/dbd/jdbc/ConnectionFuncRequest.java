@@ -77,6 +77,7 @@ class ConnectionFuncRequest extends BerSequence
         super.mReadContents(anIn, aModule, anIdentifier, aLength);
 
         // Method name is mSequence[0]
+        BerDbdModule.gInternName(aModule, mSequence[0]);
         int parameterCount = (mSequence.length - 1) / 2;
         mParameters = new Parameter[parameterCount];
         int paramIndex = 0;
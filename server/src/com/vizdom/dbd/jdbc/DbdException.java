@@ -69,6 +69,17 @@ class DbdException extends java.sql.SQLException
     /** Java reflection-related exception. */
     static final int gREFLECTION_EXCEPTION              = 15;
 
+    /** The LOB locator is not known. */
+    static final int gINVALID_LOB_LOCATOR               = 16;
+    /** A LOB parameter upload failed or was used incorrectly. */
+    static final int gLOB_UPLOAD                        = 17;
+    /** A result set couldn't be spooled. */
+    static final int gSPOOL                             = 18;
+    /** OUT parameters were given for a statement that isn't a call. */
+    static final int gNOT_CALLABLE                      = 19;
+    /** The kind of meta data requested is not known. */
+    static final int gUNKNOWN_META_DATA                 = 20;
+
     /** The messages for each exception. */
     private static final String[] sMessages =
     {   "[placeholder]",
@@ -87,6 +98,11 @@ class DbdException extends java.sql.SQLException
         "No object type provided in reflection method call",
         "{0} is not an available reflection object",
         "Reflection exception: {0}",
+        "Invalid LOB locator {0}; perhaps the statement was executed again?",
+        "Failed to upload parameter {0} ({1})",
+        "Failed to spool the result set ({0})",
+        "OUT parameters require a statement prepared as a call",
+        "Unknown meta data kind {0}",
     };
 
     /** All errors generated by the server have this SQL state. */
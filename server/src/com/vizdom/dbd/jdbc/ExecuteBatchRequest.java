@@ -0,0 +1,147 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * A request to execute a statement once for each of several 
+ * parameter sets, as a JDBC batch. The request is a sequence of the
+ * statement handle, the parameter count, the number of parameter 
+ * sets, and a value and type for each parameter of each set. The
+ * response contains the row count for each set.
+ *
+ * @see java.sql.Statement#executeBatch
+ */
+class ExecuteBatchRequest extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gEXECUTE_BATCH_REQUEST);
+
+    /** The factory for this object. */
+    static final BerObjectFactory gFACTORY = new BerObjectFactory() {
+        public boolean acceptsIdentifier(BerIdentifier anIdentifier)
+        {
+            return anIdentifier.equals(gIDENTIFIER);
+        }
+        
+        public BerObject createBerObject()
+        {
+            return new ExecuteBatchRequest();
+        }
+    };
+
+    /** The parameter sets. */
+    private Parameter[][] mBatch;
+
+    /**
+     * The decoding constructor.
+     */
+    private ExecuteBatchRequest()
+    {
+        super();
+    }
+
+    /** 
+     * Reads the encoded contents from the input stream.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     * @exception IOException if an error occurs reading the input
+     */
+    protected void mReadContents(java.io.InputStream anIn, 
+        BerModule aModule, BerIdentifier anIdentifier, int aLength) 
+        throws java.io.IOException
+    {
+        super.mReadContents(anIn, aModule, anIdentifier, aLength);
+        // mSequence[0] is the statement handle
+        int parameterCount = ((BerInteger) mSequence[1]).intValue();
+        int setCount = ((BerInteger) mSequence[2]).intValue();
+        if (parameterCount < 0 || setCount < 0 ||
+            mSequence.length != 3 + 2 * parameterCount * setCount)
+        {
+            throw new java.io.IOException("Invalid batch: " + setCount +
+                " sets of " + parameterCount + " parameters in " +
+                mSequence.length + " elements");
+        }
+        mBatch = new Parameter[setCount][parameterCount];
+        int index = 3;
+        for (int i = 0; i < setCount; i++)
+        {
+            for (int j = 0; j < parameterCount; j++)
+            {
+                BerOctetString value;
+                if (mSequence[index] instanceof BerNull)
+                    value = null;
+                else
+                    value = (BerOctetString) mSequence[index];
+                int type = ((BerInteger) mSequence[index + 1]).intValue();
+                mBatch[i][j] = new Parameter(value, type);
+                index += 2;
+            }
+        }
+    }
+
+    /**
+     * Returns the handle of the statement to be executed.
+     *
+     * @return a statement handle
+     */
+    int getHandle()
+    {
+        return ((BerInteger) mSequence[0]).intValue();
+    }
+
+    /**
+     * Returns the parameter sets.
+     *
+     * @return the parameters for each execution
+     */
+    Parameter[][] getBatch()
+    {
+        return mBatch;
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "Execute batch: statement " + getHandle() + ", " + 
+            mBatch.length + " parameter sets";
+    }
+}
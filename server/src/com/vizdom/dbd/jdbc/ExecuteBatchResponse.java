@@ -0,0 +1,70 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * An execute batch response, containing the row count for each 
+ * parameter set. A count may be 
+ * <code>Statement.SUCCESS_NO_INFO</code> if the driver doesn't 
+ * report it.
+ */
+class ExecuteBatchResponse extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gEXECUTE_BATCH_RESPONSE);
+
+    /**
+     * Constructor - initializes the row counts.
+     *
+     * @param aCountList the row counts from executeBatch
+     */
+    ExecuteBatchResponse(int[] aCountList)
+    {
+        super();
+        mSequence = new BerObject[aCountList.length];
+        for (int i = 0; i < aCountList.length; i++)
+            mSequence[i] = new BerInteger(aCountList[i]);
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "Executed batch of " + mSequence.length;
+    }
+}
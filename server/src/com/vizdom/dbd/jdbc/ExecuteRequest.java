@@ -24,7 +24,10 @@ import com.vizdom.ber.*;
 import java.util.Vector;
 
 /**
- * An execute request.
+ * An execute request. The request is a sequence of the statement 
+ * handle, the parameter count, and a value and type for each 
+ * parameter. For a callable statement, the indexes of the OUT and 
+ * INOUT parameters may follow.
  *
  * @author Gennis Emerson
  * @version $Revision: 1.10 $
@@ -52,6 +55,9 @@ class ExecuteRequest extends BerSequence
     /** The parameters to be used in this execution. */
     private Parameter[] mParameters;
 
+    /** The 1-based indexes of the OUT and INOUT parameters. */
+    private int[] mOutParameters;
+
     /**
      * The decoding constructor.
      */
@@ -89,6 +95,10 @@ class ExecuteRequest extends BerSequence
             int type = ((BerInteger) mSequence[paramIndex + 1]).intValue();
             mParameters[i] = new Parameter(value, type);
         }
+        int first = 2 * parameterCount + 2;
+        mOutParameters = new int[mSequence.length - first];
+        for (int i = 0; i < mOutParameters.length; i++)
+            mOutParameters[i] = ((BerInteger) mSequence[first + i]).intValue();
     }
 
     /**
@@ -122,6 +132,18 @@ class ExecuteRequest extends BerSequence
         return mParameters;
     }
 
+    /**
+     * Returns the 1-based indexes of the OUT and INOUT parameters,
+     * whose values are returned in the execute response. Older 
+     * clients don't send any.
+     *
+     * @return the indexes of the OUT parameters; may be empty
+     */
+    int[] getOutParameters()
+    {
+        return mOutParameters;
+    }
+
     /**
      * Returns the identifier for this BerObject. 
      *
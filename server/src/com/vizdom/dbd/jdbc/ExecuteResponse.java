@@ -54,6 +54,20 @@ class ExecuteResponse extends BerSequence
         mSequence = new BerObject[] { aResponse };
     }
 
+    /**
+     * Constructor - sets the given BerObject and the values of a 
+     * callable statement's OUT parameters as the content of this 
+     * response.
+     *
+     * @param aResponse the response object to be sent
+     * @param anOutParameters the OUT parameter values
+     */
+    ExecuteResponse(BerObject aResponse, OutParameters anOutParameters)
+    {
+        super();
+        mSequence = new BerObject[] { aResponse, anOutParameters };
+    }
+
     /**
      * Returns the identifier for this BerObject. 
      *
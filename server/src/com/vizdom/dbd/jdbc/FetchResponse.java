@@ -21,6 +21,10 @@
 package com.vizdom.dbd.jdbc;
 
 import com.vizdom.ber.*;
+import com.vizdom.util.CharacterCodec;
+import com.vizdom.util.UnreachableCodeException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 
 /**
  * A fetch response will return a sequence of column values as
@@ -46,15 +50,14 @@ class FetchResponse extends BerSequence
      *
      * @param aContainsDataFlag true if there are column values; 
      *      false otherwise
-     * @param aRow the column values; either String, byte[], or
-     *      null values
-     * @param aCharacterEncoding the character encoding to use in 
-     *      encoding any String data
-     * @exception UnsupportedEncodingException if the application
-     *      selects an unsupported character encoding
+     * @param aRow the column values; either String, char[], byte[], 
+     *      BerObject (such as a LobLocator), or null values
+     * @param aCodec the codec to use in encoding any String data. 
+     *      The strings are encoded into the codec's buffer, so the
+     *      response must be written before the codec is reset.
      */
     FetchResponse(boolean aContainsDataFlag, Object[] aRow, 
-        String aCharacterEncoding) throws java.io.UnsupportedEncodingException
+        CharacterCodec aCodec)
     {
         super();
         mSequence = new BerObject[((aRow != null) ? aRow.length : 0) + 1];
@@ -67,18 +70,70 @@ class FetchResponse extends BerSequence
                     mSequence[i + 1] = BerDbdModule.NULL;
                 else if (aRow[i] instanceof String)
                 {
-                    mSequence[i + 1] = new BerOctetString((String) aRow[i],
-                        aCharacterEncoding);
+                    mSequence[i + 1] = new BerEncodedString((String) aRow[i],
+                        aCodec);
+                }
+                else if (aRow[i] instanceof char[])
+                {
+                    mSequence[i + 1] = new BerEncodedString((char[]) aRow[i],
+                        aCodec);
                 }
                 else if (aRow[i] instanceof byte[])
                 {
-                    mSequence[i + 1] = new BerOctetString((byte[]) aRow[i],
-                        aCharacterEncoding);
+                    mSequence[i + 1] = new BerOctetString((byte[]) aRow[i]);
                 }
+                else if (aRow[i] instanceof BerObject)
+                    mSequence[i + 1] = (BerObject) aRow[i];
             }
         }
     }
 
+    /**
+     * Returns whether this response contains a row.
+     *
+     * @return true if there are column values
+     */
+    boolean hasData()
+    {
+        return ((BerInteger) mSequence[0]).intValue() == 1;
+    }
+
+    /**
+     * Returns whether any column value is a LOB locator, which is 
+     * only valid for the statement that returned it.
+     *
+     * @return true if a column value is a LOB locator
+     */
+    boolean hasLocators()
+    {
+        for (int i = 1; i < mSequence.length; i++)
+        {
+            if (mSequence[i] instanceof LobLocator)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the encoded contents of this response, without its
+     * identifier and length, for the query cache.
+     *
+     * @return the encoded contents
+     */
+    byte[] getContents()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try
+        {
+            mWriteContents(out);
+        }
+        catch (IOException e)
+        {
+            throw new UnreachableCodeException();
+        }
+        return out.toByteArray();
+    }
+
     /**
      * Returns the identifier for this BerObject. 
      *
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * A request to move a statement's scrollable cursor and fetch the row
+ * at the new position. The request is a sequence of the statement 
+ * handle, the orientation (absolute or relative), and the row number
+ * or number of rows to move. The response is a fetch response, after
+ * which ordinary fetch requests continue from the new position.
+ *
+ * @see PrepareRequest#getOptions
+ */
+class FetchScrollRequest extends BerSequence
+{
+    /** The orientation for a row number, as in ResultSet.absolute. */
+    static final int gABSOLUTE = 1;
+
+    /** The orientation for a move, as in ResultSet.relative. */
+    static final int gRELATIVE = 2;
+
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gFETCH_SCROLL_REQUEST);
+
+    /** The factory for this object. */
+    static final BerObjectFactory gFACTORY = new BerObjectFactory() {
+        public boolean acceptsIdentifier(BerIdentifier anIdentifier)
+        {
+            return anIdentifier.equals(gIDENTIFIER);
+        }
+        
+        public BerObject createBerObject()
+        {
+            return new FetchScrollRequest();
+        }
+    };
+
+
+    /**
+     * The decoding constructor.
+     */
+    private FetchScrollRequest()
+    {
+        super();
+    }
+
+    /**
+     * Returns the handle of the statement whose cursor should move.
+     *
+     * @return a statement handle
+     */
+    int getHandle()
+    {
+        return ((BerInteger) mSequence[0]).intValue();
+    }
+
+    /**
+     * Returns the orientation.
+     *
+     * @return <code>gABSOLUTE</code> or <code>gRELATIVE</code>
+     */
+    int getOrientation()
+    {
+        return ((BerInteger) mSequence[1]).intValue();
+    }
+
+    /**
+     * Returns the row number, for an absolute fetch, or the number 
+     * of rows to move, for a relative fetch. Negative values count
+     * from the end of the result set or move backwards.
+     *
+     * @return the row number or number of rows
+     */
+    int getRow()
+    {
+        return ((BerInteger) mSequence[2]).intValue();
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "Fetch scroll: statement " + getHandle() + ", " + 
+            ((getOrientation() == gABSOLUTE) ? "absolute " : "relative ") +
+            getRow();
+    }
+}
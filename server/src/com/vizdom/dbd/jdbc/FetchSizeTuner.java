@@ -0,0 +1,185 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+/**
+ * Tunes the JDBC fetch size of a statement's result sets when the
+ * statement's jdbc_fetchbytes property is set. The fetch size starts
+ * at the statement's fetch size. Each time the client has fetched a
+ * full batch of rows, the time the server spent reading the batch is
+ * compared with the time the client spent between its fetch requests.
+ * If the client kept up, it was mostly waiting on the driver's round
+ * trips to the database, so the fetch size doubles; a slower client
+ * gains little from fewer round trips, and the fetch size stays put.
+ * Since the round trips' share of the server's time falls as the 
+ * fetch size grows, the growth stops once the client becomes the 
+ * slower side. The fetch size is capped so that a batch of rows of
+ * the average width seen so far fits in the byte budget, which 
+ * shrinks it again if the rows turn out to be wide.
+ *
+ * @see StatementHolder#rowFetched
+ */
+class FetchSizeTuner
+{
+    /** The fetch size used when the driver reports none. */
+    static final int gDEFAULT_FETCH_SIZE = 10;
+
+    /** The largest fetch size chosen, however narrow the rows. */
+    static final int gMAX_FETCH_SIZE = 10000;
+
+    /** The estimated width of a column apart from its data. */
+    private static final int sCOLUMN_OVERHEAD = 8;
+
+    /** The most bytes a batch of rows should take. */
+    private final int mBudget;
+
+    /** The current fetch size. */
+    private int mFetchSize;
+
+    /** The rows fetched since the fetch size last changed. */
+    private int mBatchRows;
+
+    /** The nanoseconds the server spent reading the batch's rows. */
+    private long mServerTime;
+
+    /** 
+     * The nanoseconds the client spent between fetch requests in 
+     * the batch. 
+     */
+    private long mClientTime;
+
+    /** When the server finished reading the last row fetched. */
+    private long mLastFetch;
+
+    /** Whether a row has been fetched since the last execution. */
+    private boolean mFetched;
+
+    /** The rows fetched since the tuner was created. */
+    private long mRows;
+
+    /** The estimated width of the rows fetched. */
+    private long mBytes;
+
+
+    /**
+     * Returns an estimate of the bytes a driver holds for a row.
+     *
+     * @param aRow the row values, as read by the column readers
+     * @return the estimated width of the row
+     */
+    static int gEstimateWidth(Object[] aRow)
+    {
+        int width = aRow.length * sCOLUMN_OVERHEAD;
+        for (int i = 0; i < aRow.length; i++)
+        {
+            Object value = aRow[i];
+            if (value instanceof String)
+                width += ((String) value).length();
+            else if (value instanceof byte[])
+                width += ((byte[]) value).length;
+            else if (value instanceof char[])
+                width += ((char[]) value).length;
+        }
+        return width;
+    }
+
+
+    /**
+     * Constructor - initializes fields.
+     *
+     * @param aBudget the most bytes a batch of rows should take
+     * @param aFetchSize the initial fetch size, or 0 if the driver
+     *      reports none
+     */
+    FetchSizeTuner(int aBudget, int aFetchSize)
+    {
+        mBudget = aBudget;
+        mFetchSize = (aFetchSize > 0) ? aFetchSize : gDEFAULT_FETCH_SIZE;
+    }
+
+    /**
+     * Returns the current fetch size.
+     *
+     * @return the current fetch size
+     */
+    int getFetchSize()
+    {
+        return mFetchSize;
+    }
+
+    /**
+     * Restarts the count of rows in the current batch, when the 
+     * statement is executed again.
+     */
+    void reset()
+    {
+        mBatchRows = 0;
+        mServerTime = 0;
+        mClientTime = 0;
+        mFetched = false;
+    }
+
+    /**
+     * Records a fetched row, and chooses a new fetch size if the 
+     * client has fetched a full batch.
+     *
+     * @param aWidth the estimated width of the row
+     * @param aStarted when the server started reading the row, from
+     *      <code>System.nanoTime</code>
+     * @param aFinished when the server finished reading the row
+     * @return the new fetch size, or 0 if it is unchanged
+     */
+    int rowFetched(int aWidth, long aStarted, long aFinished)
+    {
+        mRows++;
+        mBytes += aWidth;
+        mServerTime += aFinished - aStarted;
+        if (mFetched)
+            mClientTime += aStarted - mLastFetch;
+        mLastFetch = aFinished;
+        mFetched = true;
+        if (++mBatchRows < mFetchSize)
+            return 0;
+        boolean keptUp = (mClientTime <= mServerTime);
+        mBatchRows = 0;
+        mServerTime = 0;
+        mClientTime = 0;
+
+        long average = Math.max(1, mBytes / mRows);
+        long size = keptUp ? (long) mFetchSize * 2 : mFetchSize;
+        size = Math.min(size, mBudget / average);
+        size = Math.max(1, Math.min(size, gMAX_FETCH_SIZE));
+        if (size == mFetchSize)
+            return 0;
+        mFetchSize = (int) size;
+        return mFetchSize;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "fetch size " + mFetchSize + " (budget " + mBudget + 
+            " bytes, " + mRows + " rows seen)";
+    }
+}
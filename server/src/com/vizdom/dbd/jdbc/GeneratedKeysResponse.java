@@ -0,0 +1,110 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A generated keys response. It is a sequence of the number of key
+ * columns, the column names, and the key values for each row in 
+ * turn; values may be null. The sequence is empty if no keys were
+ * generated.
+ */
+class GeneratedKeysResponse extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gGENERATED_KEYS_RESPONSE);
+
+    /**
+     * Constructor - initializes sequence values.
+     *
+     * @param aKeys the generated keys, or null
+     * @param aCharacterEncoding the character encoding to use in 
+     *      encoding the names and values
+     * @exception UnsupportedEncodingException if the application
+     *      selects an unsupported character encoding
+     */
+    GeneratedKeysResponse(GeneratedKeys aKeys, String aCharacterEncoding) 
+        throws UnsupportedEncodingException
+    {
+        super();
+        if (aKeys == null)
+        {
+            mSequence = new BerObject[0];
+            return;
+        }
+        int count = aKeys.columnNames.length;
+        mSequence = new BerObject[1 + count * (1 + aKeys.rows.size())];
+        mSequence[0] = new BerInteger(count);
+        int index = 1;
+        for (int i = 0; i < count; i++)
+        {
+            mSequence[index++] = 
+                gString(aKeys.columnNames[i], aCharacterEncoding);
+        }
+        for (int i = 0; i < aKeys.rows.size(); i++)
+        {
+            String[] row = aKeys.rows.elementAt(i);
+            for (int j = 0; j < count; j++)
+                mSequence[index++] = gString(row[j], aCharacterEncoding);
+        }
+    }
+
+    /**
+     * Encodes a string that may be null.
+     *
+     * @param aString the string, or null
+     * @param aCharacterEncoding the character encoding
+     * @return an octet string, or NULL
+     * @exception UnsupportedEncodingException if the encoding is 
+     *      unsupported
+     */
+    private static BerObject gString(String aString, 
+        String aCharacterEncoding) throws UnsupportedEncodingException
+    {
+        if (aString == null)
+            return BerDbdModule.NULL;
+        return new BerOctetString(aString, aCharacterEncoding);
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "Generated keys being returned";
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * A locator for a BLOB or CLOB value, sent in a fetch response in
+ * place of the value itself. The client reads the value in pieces 
+ * with LOB read requests. The locator is encoded as a sequence of 
+ * the locator handle, the length of the value in bytes or 
+ * characters, and the column type (from <code>java.sql.Types</code>).
+ *
+ * @see LobReadRequest
+ */
+class LobLocator extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gLOB_LOCATOR);
+
+    /** The Blob or Clob. */
+    private Object mLob;
+
+    /** The length of the value, in bytes or characters. */
+    private long mLength;
+
+
+    /**
+     * Constructor - creates a locator for a Blob.
+     *
+     * @param aHandle the locator handle
+     * @param aBlob the Blob
+     * @param aLength the length of the Blob, in bytes
+     */
+    LobLocator(int aHandle, Blob aBlob, long aLength)
+    {
+        this(aHandle, (Object) aBlob, aLength, Types.BLOB);
+    }
+
+    /**
+     * Constructor - creates a locator for a Clob.
+     *
+     * @param aHandle the locator handle
+     * @param aClob the Clob
+     * @param aLength the length of the Clob, in characters
+     */
+    LobLocator(int aHandle, Clob aClob, long aLength)
+    {
+        this(aHandle, (Object) aClob, aLength, Types.CLOB);
+    }
+
+    /**
+     * Constructor - initializes fields.
+     *
+     * @param aHandle the locator handle
+     * @param aLob the Blob or Clob
+     * @param aLength the length of the value
+     * @param aType the column type
+     */
+    private LobLocator(int aHandle, Object aLob, long aLength, int aType)
+    {
+        super(new BerObject[] { new BerInteger(aHandle), 
+            (aLength > Integer.MAX_VALUE) ? (BerObject) new BerLong(aLength)
+            : new BerInteger((int) aLength), new BerInteger(aType) });
+        mLob = aLob;
+        mLength = aLength;
+    }
+
+    /**
+     * Reads part of the value.
+     *
+     * @param anOffset the 1-based position of the first byte or 
+     *      character to read
+     * @param aLength the most bytes or characters to read
+     * @return a byte[] for a Blob or a String for a Clob; empty if 
+     *      the offset is past the end of the value
+     * @exception SQLException if the value can't be read
+     */
+    Object read(long anOffset, int aLength) throws SQLException
+    {
+        int length = (int) Math.max(0, 
+            Math.min(aLength, mLength - anOffset + 1));
+        if (mLob instanceof Blob)
+        {
+            if (length == 0)
+                return new byte[0];
+            return ((Blob) mLob).getBytes(anOffset, length);
+        }
+        if (length == 0)
+            return "";
+        return ((Clob) mLob).getSubString(anOffset, length);
+    }
+
+    /**
+     * Releases the Blob or Clob. Ignores any exceptions thrown by 
+     * <code>free</code>.
+     */
+    void free()
+    {
+        try
+        {
+            if (mLob instanceof Blob)
+                ((Blob) mLob).free();
+            else if (mLob instanceof Clob)
+                ((Clob) mLob).free();
+        }
+        catch (Exception e)
+        {
+        }
+        catch (AbstractMethodError e)
+        {
+            // The driver predates JDBC 4.
+        }
+        mLob = null;
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "LOB locator " + mSequence[0] + " (length " + mLength + ")";
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * A request to read part of a BLOB or CLOB value by its locator. The
+ * request is a sequence of the statement handle, the locator handle,
+ * the 1-based offset, and the length to read.
+ *
+ * @see LobLocator
+ */
+class LobReadRequest extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gLOB_READ_REQUEST);
+
+    /** The factory for this object. */
+    static final BerObjectFactory gFACTORY = new BerObjectFactory() {
+        public boolean acceptsIdentifier(BerIdentifier anIdentifier)
+        {
+            return anIdentifier.equals(gIDENTIFIER);
+        }
+        
+        public BerObject createBerObject()
+        {
+            return new LobReadRequest();
+        }
+    };
+
+
+    /**
+     * The decoding constructor.
+     */
+    private LobReadRequest()
+    {
+        super();
+    }
+
+    /**
+     * Returns the handle of the statement which fetched the locator.
+     *
+     * @return a statement handle
+     */
+    int getHandle()
+    {
+        return ((BerInteger) mSequence[0]).intValue();
+    }
+
+    /**
+     * Returns the locator handle.
+     *
+     * @return the locator handle
+     */
+    int getLocator()
+    {
+        return ((BerInteger) mSequence[1]).intValue();
+    }
+
+    /**
+     * Returns the 1-based position of the first byte or character 
+     * to read.
+     *
+     * @return the offset
+     */
+    long getOffset()
+    {
+        if (mSequence[2] instanceof BerLong)
+            return ((BerLong) mSequence[2]).longValue();
+        return ((BerInteger) mSequence[2]).longValue();
+    }
+
+    /**
+     * Returns the most bytes or characters to read.
+     *
+     * @return the length
+     */
+    int getLength()
+    {
+        return ((BerInteger) mSequence[3]).intValue();
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "LOB read: statement " + getHandle() + ", locator " + 
+            getLocator() + ", offset " + getOffset() + ", length " + 
+            getLength();
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.util.CharacterEncoder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * A BLOB or CLOB parameter value uploaded in pieces with LOB write
+ * requests. The pieces are spooled to a temporary file through a 
+ * fixed-size buffer, so that a large value never has to be held in
+ * memory, and the file is bound to the parameter as a stream when 
+ * the statement is executed. The file is deleted after the execute,
+ * or when the upload is replaced or abandoned.
+ *
+ * @see LobWriteBeginRequest
+ */
+class LobUpload
+{
+    /** The size of the buffers used to write and read the file. */
+    private static final int sBUFFER_SIZE = 64 * 1024;
+
+    /** The parameter type. */
+    private final int mType;
+
+    /** The client's character encoding, for character values. */
+    private final String mEncoding;
+
+    /** The temporary file. */
+    private File mFile;
+
+    /** The stream writing the file, until the upload is finished. */
+    private OutputStream mOut;
+
+    /** The stream reading the file, once it has been bound. */
+    private InputStream mIn;
+
+    /** The number of bytes written. */
+    private long mLength;
+
+    /** The number of characters written, for a character value. */
+    private long mCharacters;
+
+
+    /**
+     * Returns whether an upload of the given type is sent as bytes.
+     *
+     * @param aType a type from java.sql.Types
+     * @return true if the type is a binary type
+     */
+    static boolean gIsBinaryType(int aType)
+    {
+        return aType == Types.BLOB || aType == Types.LONGVARBINARY ||
+            aType == Types.VARBINARY || aType == Types.BINARY;
+    }
+
+    /**
+     * Returns whether an upload of the given type is sent as 
+     * characters.
+     *
+     * @param aType a type from java.sql.Types
+     * @return true if the type is a character type
+     */
+    static boolean gIsCharacterType(int aType)
+    {
+        return aType == Types.CLOB || aType == Types.LONGVARCHAR ||
+            aType == Types.VARCHAR || aType == Types.CHAR;
+    }
+
+
+    /**
+     * Constructor - creates the temporary file.
+     *
+     * @param aType the parameter type; a binary or character type
+     * @param anEncoding the client's character encoding
+     * @exception IOException if the file can't be created
+     */
+    LobUpload(int aType, String anEncoding) throws IOException
+    {
+        mType = aType;
+        mEncoding = anEncoding;
+        mFile = File.createTempFile("dbdjdbc", ".lob");
+        try
+        {
+            mOut = new BufferedOutputStream(new FileOutputStream(mFile),
+                sBUFFER_SIZE);
+        }
+        catch (IOException e)
+        {
+            mFile.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends bytes to the value.
+     *
+     * @param aBytes the bytes to append
+     * @exception IOException if the upload is finished, or the bytes
+     *      can't be written
+     */
+    void write(byte[] aBytes) throws IOException
+    {
+        if (mOut == null)
+            throw new IOException("The upload is finished");
+        mOut.write(aBytes);
+        mLength += aBytes.length;
+    }
+
+    /**
+     * Finishes the upload, closing the file. For a character value,
+     * counts the characters, which JDBC 3 drivers need to know to 
+     * read a character stream.
+     *
+     * @exception IOException if the file can't be written or read
+     */
+    void finish() throws IOException
+    {
+        if (mOut == null)
+            throw new IOException("The upload is finished");
+        mOut.close();
+        mOut = null;
+        if (gIsCharacterType(mType))
+        {
+            Reader reader = mOpenReader();
+            try
+            {
+                char[] buffer = new char[sBUFFER_SIZE];
+                int count;
+                while ((count = reader.read(buffer)) != -1)
+                    mCharacters += count;
+            }
+            finally
+            {
+                reader.close();
+                mIn = null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether all the pieces of the value have been written.
+     *
+     * @return true if the upload is finished
+     */
+    boolean isFinished()
+    {
+        return mOut == null && mFile != null;
+    }
+
+    /**
+     * Returns the length of the value.
+     *
+     * @return the number of bytes written, or the number of characters
+     *      for a finished character value
+     */
+    long getLength()
+    {
+        return (gIsCharacterType(mType) && isFinished()) ? 
+            mCharacters : mLength;
+    }
+
+    /**
+     * Binds the value to a statement parameter as a stream. The 
+     * stream remains open until <code>delete</code> is called.
+     *
+     * @param aStatement the statement
+     * @param anIndex the 1-based parameter index
+     * @exception IOException if the upload isn't finished, or the 
+     *      file can't be opened
+     * @exception SQLException if the parameter can't be set
+     */
+    void bind(PreparedStatement aStatement, int anIndex) 
+        throws IOException, SQLException
+    {
+        if (!isFinished())
+            throw new IOException("The upload is not finished");
+        long length = getLength();
+        if (gIsCharacterType(mType))
+        {
+            Reader reader = mOpenReader();
+            if (length <= Integer.MAX_VALUE)
+                aStatement.setCharacterStream(anIndex, reader, (int) length);
+            else
+                aStatement.setCharacterStream(anIndex, reader, length);
+        }
+        else
+        {
+            mIn = new BufferedInputStream(new FileInputStream(mFile), 
+                sBUFFER_SIZE);
+            if (length <= Integer.MAX_VALUE)
+                aStatement.setBinaryStream(anIndex, mIn, (int) length);
+            else
+                aStatement.setBinaryStream(anIndex, mIn, length);
+        }
+    }
+
+    /**
+     * Closes and deletes the file. Ignores any exceptions.
+     */
+    void delete()
+    {
+        if (mOut != null)
+        {
+            try { mOut.close(); } catch (IOException e) { }
+            mOut = null;
+        }
+        if (mIn != null)
+        {
+            try { mIn.close(); } catch (IOException e) { }
+            mIn = null;
+        }
+        if (mFile != null)
+        {
+            mFile.delete();
+            mFile = null;
+        }
+    }
+
+    /**
+     * Opens a reader for the file, decoding the client's character 
+     * encoding. The underlying stream is kept in <code>mIn</code>.
+     *
+     * @return a reader
+     * @exception IOException if the file can't be opened
+     */
+    private Reader mOpenReader() throws IOException
+    {
+        mIn = new BufferedInputStream(new FileInputStream(mFile), 
+            sBUFFER_SIZE);
+        try
+        {
+            return CharacterEncoder.toReader(mIn, mEncoding);
+        }
+        catch (IOException e)
+        {
+            mIn.close();
+            mIn = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "LOB upload (type " + mType + ", " + mLength + " bytes)";
+    }
+}
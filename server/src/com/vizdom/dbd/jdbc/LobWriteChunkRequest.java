@@ -0,0 +1,111 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * A piece of a BLOB or CLOB parameter value being uploaded. The 
+ * request is a sequence of the statement handle, the 1-based 
+ * parameter index, and the bytes, in the client's character encoding
+ * for a CLOB.
+ *
+ * @see LobUpload
+ */
+class LobWriteChunkRequest extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gLOB_WRITE_CHUNK_REQUEST);
+
+    /** The factory for this object. */
+    static final BerObjectFactory gFACTORY = new BerObjectFactory() {
+        public boolean acceptsIdentifier(BerIdentifier anIdentifier)
+        {
+            return anIdentifier.equals(gIDENTIFIER);
+        }
+        
+        public BerObject createBerObject()
+        {
+            return new LobWriteChunkRequest();
+        }
+    };
+
+
+    /**
+     * The decoding constructor.
+     */
+    private LobWriteChunkRequest()
+    {
+        super();
+    }
+
+    /**
+     * Returns the handle of the statement being uploaded to.
+     *
+     * @return a statement handle
+     */
+    int getHandle()
+    {
+        return ((BerInteger) mSequence[0]).intValue();
+    }
+
+    /**
+     * Returns the 1-based index of the parameter being uploaded.
+     *
+     * @return a parameter index
+     */
+    int getParameter()
+    {
+        return ((BerInteger) mSequence[1]).intValue();
+    }
+
+    /**
+     * Returns the bytes to append to the parameter value.
+     *
+     * @return the bytes
+     */
+    byte[] getData()
+    {
+        return ((BerOctetString) mSequence[2]).toByteArray();
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "LOB write chunk: statement " + getHandle() + ", parameter " + 
+            getParameter() + ", length " + getData().length;
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the same terms as the Perl Kit, namely, under
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more
+ *  details.
+ */
+package com.vizdom.dbd.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+import org.apache.log4j.Logger;
+
+/**
+ * A server-wide cache of database meta data, such as the tables and
+ * columns returned for a meta data request. Entries are keyed by
+ * the database URL and user, the kind of meta data, and its
+ * arguments, so connections to the same database share them.
+ * <p>
+ * Entries expire after the time to live set by the
+ * <code>dbd.metadatattl</code> system property. At most
+ * <code>sMAX_ENTRIES</code> entries are kept, evicting the least
+ * recently used, and results with more than
+ * <code>sMAX_ROWS</code> rows aren't cached. Entries for a table
+ * may also be removed with a meta data flush request, or by calling
+ * <code>gFlush</code>, after the table is altered.
+ *
+ * @see Server
+ */
+class MetaDataCache
+{
+    /** log4j logger. */
+    private static final Logger gLog = 
+        Logger.getLogger(MetaDataCache.class);
+
+    /** The most entries to keep. */
+    private static final int sMAX_ENTRIES = 1024;
+
+    /** The most rows to cache for a single result. */
+    private static final int sMAX_ROWS = 10000;
+
+    /** The entries, from least to most recently used. */
+    private static final LinkedHashMap<String, Entry> gEntries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Entry> anEldest)
+            {
+                return size() > sMAX_ENTRIES;
+            }
+        };
+
+    /** The number of lookups that found an entry. */
+    private static long gHits;
+
+    /** The number of lookups that didn't. */
+    private static long gMisses;
+
+
+    /**
+     * Meta data: the column names and the rows, as strings.
+     */
+    static class Entry
+    {
+        /** The column names. */
+        private final String[] mColumnNames;
+
+        /** The rows. */
+        private final String[][] mRows;
+
+        /** 
+         * The tables the meta data describes; a null table stands 
+         * for any table.
+         */
+        private final String[] mTables;
+
+        /** The time at which this entry expires. */
+        private long mExpires;
+
+        /**
+         * Constructor - initializes fields.
+         *
+         * @param aColumnNameList the column names
+         * @param aRowList the rows
+         * @param aTableList the tables the meta data describes
+         */
+        private Entry(String[] aColumnNameList, String[][] aRowList,
+            String[] aTableList)
+        {
+            mColumnNames = aColumnNameList;
+            mRows = aRowList;
+            mTables = aTableList;
+        }
+
+        /**
+         * Returns the column names.
+         *
+         * @return the column names
+         */
+        String[] getColumnNames()
+        {
+            return mColumnNames;
+        }
+
+        /**
+         * Returns the number of rows.
+         *
+         * @return the number of rows
+         */
+        int getRowCount()
+        {
+            return mRows.length;
+        }
+
+        /**
+         * Returns a row.
+         *
+         * @param anIndex the 0-based row index
+         * @return the column values; values may be null
+         */
+        String[] getRow(int anIndex)
+        {
+            return mRows[anIndex];
+        }
+
+        /**
+         * Returns whether this entry may describe a table.
+         *
+         * @param aTable the table name
+         * @return true if one of this entry's tables is the given
+         *      table, ignoring case, or is a pattern or null
+         */
+        private boolean describes(String aTable)
+        {
+            for (int i = 0; i < mTables.length; i++)
+            {
+                if (mTables[i] == null || mTables[i].indexOf('%') >= 0 ||
+                    mTables[i].equalsIgnoreCase(aTable))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * Reads the meta data in a result set, and closes the result set.
+     *
+     * @param aResultSet a result set returned by 
+     *      <code>DatabaseMetaData</code>
+     * @param aTableList the tables the meta data describes; null 
+     *      stands for any table
+     * @return the meta data
+     * @exception SQLException if a database access error occurs
+     */
+    static Entry gRead(ResultSet aResultSet, String[] aTableList)
+        throws SQLException
+    {
+        try
+        {
+            ResultSetMetaData rsmd = aResultSet.getMetaData();
+            int count = rsmd.getColumnCount();
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++)
+                names[i] = rsmd.getColumnName(i + 1);
+            Vector<String[]> rows = new Vector<String[]>();
+            while (aResultSet.next())
+            {
+                String[] row = new String[count];
+                for (int i = 0; i < count; i++)
+                    row[i] = aResultSet.getString(i + 1);
+                rows.addElement(row);
+            }
+            String[][] rowList = new String[rows.size()][];
+            rows.copyInto(rowList);
+            return new Entry(names, rowList, aTableList);
+        }
+        finally
+        {
+            aResultSet.close();
+        }
+    }
+
+    /**
+     * Creates the cache key for a meta data request.
+     *
+     * @param aConnection identifies the database and user
+     * @param aKind the kind of meta data
+     * @param anArgumentList the arguments; they may be null
+     * @return the key
+     */
+    static String gCreateKey(String aConnection, String aKind, 
+        String[] anArgumentList)
+    {
+        // Each part is prefixed with its length, so that different
+        // values can't run together into the same key.
+        StringBuffer key = new StringBuffer();
+        gAppend(key, aConnection);
+        gAppend(key, aKind);
+        for (int i = 0; i < anArgumentList.length; i++)
+            gAppend(key, anArgumentList[i]);
+        return key.toString();
+    }
+
+    /**
+     * Appends a part of a key.
+     *
+     * @param aKey the key
+     * @param aPart the part; may be null
+     */
+    private static void gAppend(StringBuffer aKey, String aPart)
+    {
+        if (aPart == null)
+            aKey.append("-;");
+        else
+            aKey.append(aPart.length()).append(';').append(aPart);
+    }
+
+    /**
+     * Returns the entry for a key, unless it has expired.
+     *
+     * @param aKey the key
+     * @return the entry, or null if there is none
+     */
+    static synchronized Entry gGet(String aKey)
+    {
+        Entry entry = gEntries.get(aKey);
+        if (entry != null && entry.mExpires <= System.currentTimeMillis())
+        {
+            gEntries.remove(aKey);
+            entry = null;
+        }
+        if (entry == null)
+            gMisses++;
+        else
+            gHits++;
+        return entry;
+    }
+
+    /**
+     * Adds an entry, unless it has too many rows.
+     *
+     * @param aKey the key
+     * @param anEntry the entry
+     */
+    static synchronized void gPut(String aKey, Entry anEntry)
+    {
+        if (anEntry.mRows.length > sMAX_ROWS)
+            return;
+        anEntry.mExpires = System.currentTimeMillis() + 
+            1000L * Server.gGetMetaDataTtl();
+        gEntries.put(aKey, anEntry);
+    }
+
+    /**
+     * Removes the entries that may describe a table, or all the
+     * entries. An entry for a table name pattern, or for no 
+     * particular table, is removed along with the entries for the
+     * table itself.
+     *
+     * @param aTable the table name, or null to remove every entry
+     * @return the number of entries removed
+     */
+    static synchronized int gFlush(String aTable)
+    {
+        int count = 0;
+        Iterator<Entry> entries = gEntries.values().iterator();
+        while (entries.hasNext())
+        {
+            Entry entry = entries.next();
+            if (aTable == null || entry.describes(aTable))
+            {
+                entries.remove();
+                count++;
+            }
+        }
+        if (gLog.isDebugEnabled())
+        {
+            gLog.debug("Flushed " + count + " meta data entries" +
+                ((aTable == null) ? "" : " for " + aTable));
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    static synchronized int gGetEntryCount()
+    {
+        return gEntries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return the number of cache hits
+     */
+    static synchronized long gGetHits()
+    {
+        return gHits;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find an entry.
+     *
+     * @return the number of cache misses
+     */
+    static synchronized long gGetMisses()
+    {
+        return gMisses;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * A request to remove entries from the meta data cache. The request
+ * contains the name of the table whose meta data has changed, or an
+ * empty string to remove every entry. The response is the number of
+ * entries removed.
+ *
+ * @see MetaDataCache
+ */
+class MetaDataFlushRequest extends BerOctetString
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.PRIMITIVE, 
+        BerDbdModule.gMETA_DATA_FLUSH_REQUEST);
+
+    /** The factory for this object. */
+    static final BerObjectFactory gFACTORY = new BerObjectFactory() {
+        public boolean acceptsIdentifier(BerIdentifier anIdentifier)
+        {
+            return anIdentifier.equals(gIDENTIFIER);
+        }
+        
+        public BerObject createBerObject()
+        {
+            return new MetaDataFlushRequest();
+        }
+    };
+
+    /**
+     * The decoding constructor.
+     */
+    private MetaDataFlushRequest()
+    {
+        super();
+    }    
+
+    /**
+     * Returns the name of the table whose meta data has changed.
+     *
+     * @return the table name, or null if every entry should be removed
+     */
+    String getTable()
+    {
+        String table = super.toString();
+        return (table.length() == 0) ? null : table;
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        String table = getTable();
+        return "Meta data flush: " + ((table == null) ? "all" : table);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * A request for database meta data, such as the tables or the
+ * columns of a table. The request is a sequence of the kind of meta
+ * data wanted and its arguments, each of which may be null. The
+ * kinds and their arguments are:
+ * <ul>
+ * <li> <code>tables</code>: catalog, schema, table name pattern, and
+ *      a comma-separated list of table types
+ * <li> <code>columns</code>: catalog, schema, table name pattern,
+ *      and column name pattern
+ * <li> <code>primary_keys</code>: catalog, schema, and table
+ * <li> <code>foreign_keys</code>: the catalog, schema, and table of
+ *      the primary key, then those of the foreign key
+ * <li> <code>catalogs</code>, <code>schemas</code>, and
+ *      <code>table_types</code>: no arguments
+ * </ul>
+ * The response has the same layout as a generated keys response.
+ *
+ * @see java.sql.DatabaseMetaData
+ * @see MetaDataCache
+ */
+class MetaDataRequest extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gMETA_DATA_REQUEST);
+
+    /** The factory for this object. */
+    static final BerObjectFactory gFACTORY = new BerObjectFactory() {
+        public boolean acceptsIdentifier(BerIdentifier anIdentifier)
+        {
+            return anIdentifier.equals(gIDENTIFIER);
+        }
+        
+        public BerObject createBerObject()
+        {
+            return new MetaDataRequest();
+        }
+    };
+
+    /** The kind of meta data. */
+    private String mKind;
+
+    /** The arguments. */
+    private String[] mArguments;
+
+    /**
+     * The decoding constructor.
+     */
+    private MetaDataRequest()
+    {
+        super();
+    }
+
+    /** 
+     * Reads the encoded contents from the input stream.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     * @exception IOException if an error occurs reading the input
+     */
+    protected void mReadContents(java.io.InputStream anIn, 
+        BerModule aModule, BerIdentifier anIdentifier, int aLength) 
+        throws java.io.IOException
+    {
+        super.mReadContents(anIn, aModule, anIdentifier, aLength);
+        if (mSequence.length == 0)
+            throw new java.io.IOException("Missing meta data kind");
+        mKind = mSequence[0].toString();
+        mArguments = new String[mSequence.length - 1];
+        for (int i = 0; i < mArguments.length; i++)
+        {
+            if (mSequence[i + 1] instanceof BerNull)
+                mArguments[i] = null;
+            else
+                mArguments[i] = mSequence[i + 1].toString();
+        }
+    }
+
+    /**
+     * Returns the kind of meta data requested.
+     *
+     * @return the kind of meta data
+     */
+    String getKind()
+    {
+        return mKind;
+    }
+
+    /**
+     * Returns an argument.
+     *
+     * @param anIndex the 0-based argument index
+     * @return the argument, or null if it is null or wasn't given
+     */
+    String getArgument(int anIndex)
+    {
+        return (anIndex < mArguments.length) ? mArguments[anIndex] : null;
+    }
+
+    /**
+     * Returns the arguments.
+     *
+     * @return the arguments
+     */
+    String[] getArguments()
+    {
+        return mArguments;
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        StringBuffer b = new StringBuffer("Meta data ");
+        b.append(mKind).append(" (");
+        for (int i = 0; i < mArguments.length; i++)
+        {
+            if (i > 0)
+                b.append(", ");
+            b.append(mArguments[i]);
+        }
+        return b.append(")").toString();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A meta data response. It is a sequence of the number of columns,
+ * the column names, and the values for each row in turn; values
+ * may be null.
+ */
+class MetaDataResponse extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gMETA_DATA_RESPONSE);
+
+    /**
+     * Constructor - initializes sequence values.
+     *
+     * @param anEntry the meta data
+     * @param aCharacterEncoding the character encoding to use in 
+     *      encoding the names and values
+     * @exception UnsupportedEncodingException if the application
+     *      selects an unsupported character encoding
+     */
+    MetaDataResponse(MetaDataCache.Entry anEntry, String aCharacterEncoding) 
+        throws UnsupportedEncodingException
+    {
+        super();
+        String[] names = anEntry.getColumnNames();
+        int count = names.length;
+        mSequence = new BerObject[1 + count * (1 + anEntry.getRowCount())];
+        mSequence[0] = new BerInteger(count);
+        int index = 1;
+        for (int i = 0; i < count; i++)
+            mSequence[index++] = gString(names[i], aCharacterEncoding);
+        for (int i = 0; i < anEntry.getRowCount(); i++)
+        {
+            String[] row = anEntry.getRow(i);
+            for (int j = 0; j < count; j++)
+                mSequence[index++] = gString(row[j], aCharacterEncoding);
+        }
+    }
+
+    /**
+     * Encodes a string that may be null.
+     *
+     * @param aString the string, or null
+     * @param aCharacterEncoding the character encoding
+     * @return an octet string, or NULL
+     * @exception UnsupportedEncodingException if the encoding is 
+     *      unsupported
+     */
+    private static BerObject gString(String aString, 
+        String aCharacterEncoding) throws UnsupportedEncodingException
+    {
+        if (aString == null)
+            return BerDbdModule.NULL;
+        return new BerOctetString(aString, aCharacterEncoding);
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "Meta data being returned";
+    }
+}
@@ -0,0 +1,602 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.log4j.Logger;
+
+/**
+ * Server-wide metrics: for each type of request, the number 
+ * handled, the number answered with an error, and a histogram of
+ * their latencies; and the bytes read from and written to clients,
+ * the rows fetched, and the active sessions and statements. The
+ * values are recorded with atomic operations, without locking, so
+ * connections don't wait for each other to record them.
+ * <p>
+ * The metrics are exposed as JMX MBeans registered with the 
+ * platform MBean server by <code>gRegister</code>, and may be
+ * logged periodically; see the <code>dbd.metricsinterval</code>
+ * system property.
+ *
+ * @see MetricsMBean
+ * @see RequestMetricsMBean
+ */
+class Metrics implements MetricsMBean
+{
+    /** log4j logger, which also logs the periodic reports. */
+    private static final Logger gLog = Logger.getLogger(Metrics.class);
+
+    /** The JMX domain of the MBeans. */
+    private static final String sDOMAIN = "com.vizdom.dbd.jdbc";
+
+    /** 
+     * The number of request tags tracked. Requests with larger tag
+     * numbers are counted with tag 0, which isn't used.
+     */
+    static final int sTAG_COUNT = 64;
+
+    /** 
+     * The number of latency buckets for each tag. There are four
+     * buckets for each power of two microseconds.
+     */
+    private static final int sBUCKET_COUNT = 4 * 40;
+
+    /** The number of requests, by tag. */
+    private static final AtomicLongArray gCounts = 
+        new AtomicLongArray(sTAG_COUNT);
+
+    /** The number of errors, by tag. */
+    private static final AtomicLongArray gErrors = 
+        new AtomicLongArray(sTAG_COUNT);
+
+    /** The total latency in nanoseconds, by tag. */
+    private static final AtomicLongArray gNanos = 
+        new AtomicLongArray(sTAG_COUNT);
+
+    /** The longest latency in nanoseconds, by tag. */
+    private static final AtomicLongArray gMaxNanos = 
+        new AtomicLongArray(sTAG_COUNT);
+
+    /** The latency histograms, <code>sBUCKET_COUNT</code> per tag. */
+    private static final AtomicLongArray gBuckets = 
+        new AtomicLongArray(sTAG_COUNT * sBUCKET_COUNT);
+
+    /** The number of bytes read from clients. */
+    private static final AtomicLong gBytesRead = new AtomicLong();
+
+    /** The number of bytes written to clients. */
+    private static final AtomicLong gBytesWritten = new AtomicLong();
+
+    /** The number of rows fetched. */
+    private static final AtomicLong gRowsFetched = new AtomicLong();
+
+    /** The number of active sessions. */
+    private static final AtomicInteger gSessions = new AtomicInteger();
+
+    /** The number of active statements. */
+    private static final AtomicInteger gStatements = new AtomicInteger();
+
+    /** The request names, by tag; null for unused tags. */
+    private static final String[] gNames = new String[sTAG_COUNT];
+
+    /** Whether the MBeans have been registered. */
+    private static boolean gRegistered;
+
+    /** The timer for periodic reports, or null if none. */
+    private static Timer gReportTimer;
+
+    /* Name the requests after their tag constants in BerDbdModule;
+     * for example, gFETCH_REQUEST is FETCH.
+     */
+    static
+    {
+        gNames[0] = "OTHER";
+        Field[] fields = BerDbdModule.class.getDeclaredFields();
+        for (int i = 0; i < fields.length; i++)
+        {
+            String name = fields[i].getName();
+            if (!Modifier.isStatic(fields[i].getModifiers()) ||
+                fields[i].getType() != Integer.TYPE || 
+                !name.startsWith("g") || !name.endsWith("_REQUEST"))
+            {
+                continue;
+            }
+            try
+            {
+                int tag = fields[i].getInt(null);
+                if (tag > 0 && tag < sTAG_COUNT)
+                {
+                    gNames[tag] = 
+                        name.substring(1, name.length() - "_REQUEST".length());
+                }
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new com.vizdom.util.UnreachableCodeException();
+            }
+        }
+    }
+
+
+    /**
+     * A stream that counts the bytes read from a client.
+     */
+    static class CountingInputStream extends FilterInputStream
+    {
+        /**
+         * Constructor - initializes fields.
+         *
+         * @param anIn the client's input stream
+         */
+        CountingInputStream(InputStream anIn)
+        {
+            super(anIn);
+        }
+
+        /**
+         * Reads a byte.
+         *
+         * @return the byte, or -1 at the end of the stream
+         * @exception IOException if an I/O error occurs
+         */
+        public int read() throws IOException
+        {
+            int b = in.read();
+            if (b != -1)
+                gBytesRead.incrementAndGet();
+            return b;
+        }
+
+        /**
+         * Reads bytes into an array.
+         *
+         * @param aBuffer the array
+         * @param anOffset the offset at which to store the bytes
+         * @param aLength the most bytes to read
+         * @return the number of bytes read, or -1 at the end of the 
+         *      stream
+         * @exception IOException if an I/O error occurs
+         */
+        public int read(byte[] aBuffer, int anOffset, int aLength) 
+            throws IOException
+        {
+            int count = in.read(aBuffer, anOffset, aLength);
+            if (count > 0)
+                gBytesRead.addAndGet(count);
+            return count;
+        }
+    }
+
+
+    /**
+     * A stream that counts the bytes written to a client.
+     */
+    static class CountingOutputStream extends FilterOutputStream
+    {
+        /** The number of bytes written to this stream. */
+        private long mCount;
+
+        /**
+         * Constructor - initializes fields.
+         *
+         * @param anOut the client's output stream
+         */
+        CountingOutputStream(OutputStream anOut)
+        {
+            super(anOut);
+        }
+
+        /**
+         * Writes a byte.
+         *
+         * @param aByte the byte
+         * @exception IOException if an I/O error occurs
+         */
+        public void write(int aByte) throws IOException
+        {
+            out.write(aByte);
+            gBytesWritten.incrementAndGet();
+            mCount++;
+        }
+
+        /**
+         * Writes bytes from an array. Unlike 
+         * <code>FilterOutputStream</code>, this writes the bytes
+         * to the underlying stream all at once.
+         *
+         * @param aBuffer the array
+         * @param anOffset the offset of the first byte to write
+         * @param aLength the number of bytes to write
+         * @exception IOException if an I/O error occurs
+         */
+        public void write(byte[] aBuffer, int anOffset, int aLength) 
+            throws IOException
+        {
+            out.write(aBuffer, anOffset, aLength);
+            gBytesWritten.addAndGet(aLength);
+            mCount += aLength;
+        }
+
+        /**
+         * Returns the number of bytes written to this stream.
+         *
+         * @return the number of bytes written
+         */
+        long getCount()
+        {
+            return mCount;
+        }
+    }
+
+
+    /**
+     * Records a request.
+     *
+     * @param aTag the request's tag number
+     * @param aNanos the time taken to handle the request, in 
+     *      nanoseconds
+     * @param anError true if the request was answered with an error
+     */
+    static void gRecord(int aTag, long aNanos, boolean anError)
+    {
+        int tag = (aTag > 0 && aTag < sTAG_COUNT) ? aTag : 0;
+        long nanos = Math.max(aNanos, 0);
+        gCounts.incrementAndGet(tag);
+        if (anError)
+            gErrors.incrementAndGet(tag);
+        gNanos.addAndGet(tag, nanos);
+        gBuckets.incrementAndGet(tag * sBUCKET_COUNT + 
+            gBucket(nanos / 1000));
+        long max;
+        do
+        {
+            max = gMaxNanos.get(tag);
+        }
+        while (nanos > max && !gMaxNanos.compareAndSet(tag, max, nanos));
+    }
+
+    /**
+     * Returns the latency bucket for a number of microseconds. 
+     * Each power of two is split into four buckets.
+     *
+     * @param aMicros the latency, in microseconds
+     * @return the bucket
+     */
+    static int gBucket(long aMicros)
+    {
+        if (aMicros < 4)
+            return (int) aMicros;
+        int exponent = 63 - Long.numberOfLeadingZeros(aMicros);
+        int bucket = 4 * (exponent - 1) + 
+            (int) ((aMicros >> (exponent - 2)) & 3);
+        return Math.min(bucket, sBUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the upper bound of a latency bucket.
+     *
+     * @param aBucket the bucket
+     * @return the smallest latency in microseconds above the bucket
+     */
+    static long gUpperBound(int aBucket)
+    {
+        if (aBucket < 4)
+            return aBucket + 1;
+        int shift = aBucket / 4 - 1;
+        return (4L + aBucket % 4 + 1) << shift;
+    }
+
+    /** Records a row sent to a client. */
+    static void gRowFetched()
+    {
+        gRowsFetched.incrementAndGet();
+    }
+
+    /** Records the start of a client session. */
+    static void gSessionStarted()
+    {
+        gSessions.incrementAndGet();
+    }
+
+    /** Records the end of a client session. */
+    static void gSessionEnded()
+    {
+        gSessions.decrementAndGet();
+    }
+
+    /** Records the preparation of a statement. */
+    static void gStatementOpened()
+    {
+        gStatements.incrementAndGet();
+    }
+
+    /** Records the closing of a statement. */
+    static void gStatementClosed()
+    {
+        gStatements.decrementAndGet();
+    }
+
+    /**
+     * Returns the name of a request type.
+     *
+     * @param aTag the request's tag number
+     * @return the name, or null if the tag isn't used
+     */
+    static String gGetName(int aTag)
+    {
+        return gNames[aTag];
+    }
+
+    /**
+     * Returns the number of requests of a type.
+     *
+     * @param aTag the request's tag number
+     * @return the number of requests
+     */
+    static long gGetCount(int aTag)
+    {
+        return gCounts.get(aTag);
+    }
+
+    /**
+     * Returns the number of requests of a type answered with an 
+     * error.
+     *
+     * @param aTag the request's tag number
+     * @return the number of errors
+     */
+    static long gGetErrorCount(int aTag)
+    {
+        return gErrors.get(aTag);
+    }
+
+    /**
+     * Returns the mean latency of a type of request.
+     *
+     * @param aTag the request's tag number
+     * @return the mean latency, in milliseconds
+     */
+    static double gGetMeanMillis(int aTag)
+    {
+        long count = gCounts.get(aTag);
+        return (count == 0) ? 0 : gNanos.get(aTag) / 1e6 / count;
+    }
+
+    /**
+     * Returns the longest latency of a type of request.
+     *
+     * @param aTag the request's tag number
+     * @return the longest latency, in milliseconds
+     */
+    static double gGetMaxMillis(int aTag)
+    {
+        return gMaxNanos.get(aTag) / 1e6;
+    }
+
+    /**
+     * Returns a latency percentile for a type of request: the upper
+     * bound of the bucket holding it, or the longest latency if
+     * that is less.
+     *
+     * @param aTag the request's tag number
+     * @param aFraction the percentile, as a fraction
+     * @return the latency, in milliseconds
+     */
+    static double gGetPercentileMillis(int aTag, double aFraction)
+    {
+        long[] counts = new long[sBUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < sBUCKET_COUNT; i++)
+        {
+            counts[i] = gBuckets.get(aTag * sBUCKET_COUNT + i);
+            total += counts[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(aFraction * total);
+        long seen = 0;
+        int bucket = 0;
+        while (bucket < sBUCKET_COUNT - 1)
+        {
+            seen += counts[bucket];
+            if (seen >= rank)
+                break;
+            bucket++;
+        }
+        return Math.min(gUpperBound(bucket) * 1000, gMaxNanos.get(aTag)) 
+            / 1e6;
+    }
+
+    /**
+     * Returns a text report of all the metrics, with a line for 
+     * each type of request received.
+     *
+     * @return the report
+     */
+    static String gGetReport()
+    {
+        StringBuffer report = new StringBuffer();
+        report.append("Sessions ").append(gSessions.get())
+            .append(", statements ").append(gStatements.get())
+            .append(", bytes read ").append(gBytesRead.get())
+            .append(", bytes written ").append(gBytesWritten.get())
+            .append(", rows fetched ").append(gRowsFetched.get());
+        report.append(String.format("%n%-24s %10s %8s %10s %10s %10s " +
+            "%10s %10s", "Request", "Count", "Errors", "Mean ms", "p50 ms",
+            "p99 ms", "p99.9 ms", "Max ms"));
+        for (int tag = 0; tag < sTAG_COUNT; tag++)
+        {
+            long count = gCounts.get(tag);
+            if (count == 0)
+                continue;
+            report.append(String.format("%n%-24s %10d %8d %10.3f %10.3f " +
+                "%10.3f %10.3f %10.3f", gNames[tag], count, gErrors.get(tag),
+                gGetMeanMillis(tag), gGetPercentileMillis(tag, 0.5), 
+                gGetPercentileMillis(tag, 0.99), 
+                gGetPercentileMillis(tag, 0.999), gGetMaxMillis(tag)));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Sets the counters and latencies to zero. The active session
+     * and statement counts aren't changed. Requests recorded while
+     * this runs may be partly cleared.
+     */
+    static void gReset()
+    {
+        for (int i = 0; i < sTAG_COUNT; i++)
+        {
+            gCounts.set(i, 0);
+            gErrors.set(i, 0);
+            gNanos.set(i, 0);
+            gMaxNanos.set(i, 0);
+        }
+        for (int i = 0; i < gBuckets.length(); i++)
+            gBuckets.set(i, 0);
+        gBytesRead.set(0);
+        gBytesWritten.set(0);
+        gRowsFetched.set(0);
+    }
+
+    /**
+     * Registers the MBeans with the platform MBean server, unless
+     * they are already registered: the server-wide metrics, and 
+     * the metrics of each type of request. Failures are logged
+     * rather than thrown, since the server can run without them.
+     */
+    static synchronized void gRegister()
+    {
+        if (gRegistered)
+            return;
+        gRegistered = true;
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new Metrics(), 
+                new ObjectName(sDOMAIN + ":type=Server"));
+            for (int tag = 0; tag < sTAG_COUNT; tag++)
+            {
+                if (gNames[tag] == null)
+                    continue;
+                server.registerMBean(new RequestMetrics(tag), new ObjectName(
+                    sDOMAIN + ":type=Request,name=" + gNames[tag]));
+            }
+        }
+        catch (Exception e)
+        {
+            gLog.warn("Failed to register the metrics MBeans", e);
+        }
+    }
+
+    /**
+     * Starts logging a report of the metrics periodically, at the
+     * INFO level.
+     *
+     * @param aSeconds the time between reports, in seconds
+     */
+    static synchronized void gStartReports(long aSeconds)
+    {
+        if (gReportTimer != null)
+            gReportTimer.cancel();
+        gReportTimer = new Timer("Metrics", true);
+        gReportTimer.schedule(new TimerTask() {
+                public void run()
+                {
+                    gLog.info("Metrics:" + 
+                        System.getProperty("line.separator") + gGetReport());
+                }
+            }, aSeconds * 1000, aSeconds * 1000);
+    }
+
+
+    // The MBean implementation.
+
+    public int getActiveSessions()
+    {
+        return gSessions.get();
+    }
+
+    public int getActiveStatements()
+    {
+        return gStatements.get();
+    }
+
+    public long getBytesRead()
+    {
+        return gBytesRead.get();
+    }
+
+    public long getBytesWritten()
+    {
+        return gBytesWritten.get();
+    }
+
+    public long getRowsFetched()
+    {
+        return gRowsFetched.get();
+    }
+
+    public long getRequestCount()
+    {
+        long count = 0;
+        for (int i = 0; i < sTAG_COUNT; i++)
+            count += gCounts.get(i);
+        return count;
+    }
+
+    public long getErrorCount()
+    {
+        long count = 0;
+        for (int i = 0; i < sTAG_COUNT; i++)
+            count += gErrors.get(i);
+        return count;
+    }
+
+    public String getReport()
+    {
+        return gGetReport();
+    }
+
+    public String getRoundTripReport()
+    {
+        return RoundTripProfile.gGetReport();
+    }
+
+    public void reset()
+    {
+        gReset();
+    }
+}
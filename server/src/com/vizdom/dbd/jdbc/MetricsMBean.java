@@ -0,0 +1,102 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+/**
+ * The JMX management interface for the server-wide metrics. The
+ * registered name is <code>com.vizdom.dbd.jdbc:type=Server</code>.
+ *
+ * @see Metrics
+ */
+public interface MetricsMBean
+{
+    /**
+     * Returns the number of client connections being served.
+     *
+     * @return the number of active sessions
+     */
+    int getActiveSessions();
+
+    /**
+     * Returns the number of prepared statements not yet destroyed.
+     *
+     * @return the number of active statements
+     */
+    int getActiveStatements();
+
+    /**
+     * Returns the number of bytes read from clients.
+     *
+     * @return the number of bytes read
+     */
+    long getBytesRead();
+
+    /**
+     * Returns the number of bytes written to clients.
+     *
+     * @return the number of bytes written
+     */
+    long getBytesWritten();
+
+    /**
+     * Returns the number of rows sent in fetch responses.
+     *
+     * @return the number of rows fetched
+     */
+    long getRowsFetched();
+
+    /**
+     * Returns the number of requests handled, of every type.
+     *
+     * @return the number of requests
+     */
+    long getRequestCount();
+
+    /**
+     * Returns the number of requests answered with an error.
+     *
+     * @return the number of errors
+     */
+    long getErrorCount();
+
+    /**
+     * Returns a text report of all the metrics, with a line for 
+     * each type of request received.
+     *
+     * @return the report
+     */
+    String getReport();
+
+    /**
+     * Returns a text report of the statements with the most 
+     * requests, if the requests are being profiled; see the
+     * <code>dbd.profileinterval</code> system property.
+     *
+     * @return the report
+     */
+    String getRoundTripReport();
+
+    /**
+     * Sets the counters and latencies to zero. The active session
+     * and statement counts aren't changed.
+     */
+    void reset();
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.*;
+
+/**
+ * The values of a callable statement's OUT and INOUT parameters, sent
+ * at the end of an execute response in the order the parameters were
+ * listed in the execute request. Each value is a string or bytes,
+ * or null.
+ *
+ * @see ExecuteRequest#getOutParameters
+ */
+class OutParameters extends BerSequence
+{
+    /** This object's identifier. */
+    static final BerIdentifier gIDENTIFIER = 
+        new BerIdentifier(BerTypes.APPLICATION, BerTypes.CONSTRUCTED, 
+        BerDbdModule.gOUT_PARAMETERS);
+
+    /**
+     * Constructor - encodes the parameter values.
+     *
+     * @param aValueList the values; Strings, byte arrays, or nulls
+     * @param aCharacterEncoding the client's character encoding
+     * @exception java.io.UnsupportedEncodingException if the encoding 
+     *      is not supported
+     */
+    OutParameters(Object[] aValueList, String aCharacterEncoding)
+        throws java.io.UnsupportedEncodingException
+    {
+        super();
+        mSequence = new BerObject[aValueList.length];
+        for (int i = 0; i < aValueList.length; i++)
+        {
+            if (aValueList[i] == null)
+                mSequence[i] = new BerNull();
+            else if (aValueList[i] instanceof byte[])
+                mSequence[i] = new BerOctetString((byte[]) aValueList[i]);
+            else
+            {
+                mSequence[i] = new BerOctetString(aValueList[i].toString(),
+                    aCharacterEncoding);
+            }
+        }
+    }
+
+    /**
+     * Returns the identifier for this BerObject. 
+     *
+     * @return the identifier for this BerObject
+     */
+    public BerIdentifier getIdentifier()
+    {
+        return gIDENTIFIER;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString()
+    {
+        return "OUT parameters: " + mSequence.length;
+    }
+}
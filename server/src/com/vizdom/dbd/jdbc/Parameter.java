@@ -21,10 +21,18 @@
 package com.vizdom.dbd.jdbc;
 
 import com.vizdom.ber.*;
+import java.math.BigDecimal;
 import java.util.Vector;
 
 /**
  * A Parameter contains a parameter value and type hint.
+ * <p>
+ * The numeric accessors take a flag saying whether the client's
+ * character encoding encodes numbers as ASCII. If it does, simple
+ * numbers are parsed directly from the encoded bytes, without
+ * decoding them into a String. Anything else, including every
+ * invalid number, is parsed from the String as before, so the
+ * results and NumberFormatException messages are unchanged.
  *
  * @author Gennis Emerson
  * @version $Revision: 1.2 $
@@ -51,4 +59,217 @@ class Parameter
         value = aValue;
         type = aType;
     }
+
+    /** The most digits parsed directly as an int. */
+    private static final int sMAX_INT_DIGITS = 9;
+
+    /** The most digits parsed directly as a long. */
+    private static final int sMAX_LONG_DIGITS = 18;
+
+    /** 
+     * The most significant digits parsed directly as a double; the
+     * value must be exactly representable.
+     */
+    private static final int sMAX_DOUBLE_DIGITS = 15;
+
+    /** The powers of ten that are exactly representable as doubles. */
+    private static final double[] sPOWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+
+    /** The value returned when the bytes can't be parsed directly. */
+    private static final long sNOT_PARSED = Long.MIN_VALUE;
+
+
+    /**
+     * Parses a decimal number of the form [+-]digits[.digits] from
+     * the given ASCII bytes, returning the digits as a long. 
+     *
+     * @param aBytes the ASCII bytes
+     * @param aMaxDigits the most digits allowed
+     * @param aPointAllowed true if a decimal point is allowed
+     * @return the digits, negated if there is a minus sign, or
+     *     <code>sNOT_PARSED</code> if the bytes have some other form 
+     *     or too many digits
+     * @see #gGetScale
+     */
+    private static long gParseDigits(byte[] aBytes, int aMaxDigits, 
+        boolean aPointAllowed)
+    {
+        int length = aBytes.length;
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (aBytes[0] == '-' || aBytes[0] == '+'))
+        {
+            negative = (aBytes[0] == '-');
+            i++;
+        }
+        if (length - i > aMaxDigits + (aPointAllowed ? 1 : 0))
+            return sNOT_PARSED;
+
+        long value = 0;
+        int digits = 0;
+        boolean point = false;
+        for (; i < length; i++)
+        {
+            int b = aBytes[i];
+            if (b >= '0' && b <= '9')
+            {
+                value = value * 10 + (b - '0');
+                digits++;
+            }
+            else if (b == '.' && aPointAllowed && !point)
+                point = true;
+            else
+                return sNOT_PARSED;
+        }
+        if (digits == 0 || digits > aMaxDigits)
+            return sNOT_PARSED;
+        return negative ? -value : value;
+    }
+
+
+    /**
+     * Returns the number of digits after the decimal point in a
+     * number parsed by <code>gParseDigits</code>.
+     *
+     * @param aBytes the ASCII bytes
+     * @return the number of digits after the decimal point
+     */
+    private static int gGetScale(byte[] aBytes)
+    {
+        for (int i = aBytes.length - 1; i >= 0; i--)
+        {
+            if (aBytes[i] == '.')
+                return aBytes.length - 1 - i;
+        }
+        return 0;
+    }
+
+
+    /**
+     * Returns the value as a short.
+     *
+     * @param anAsciiNumbers true if numbers are encoded as ASCII
+     * @return the value as a short
+     * @exception NumberFormatException if the value is not a short
+     */
+    short shortValue(boolean anAsciiNumbers)
+    {
+        if (anAsciiNumbers)
+        {
+            long l = gParseDigits(value.toByteArray(), sMAX_INT_DIGITS, false);
+            if (l >= Short.MIN_VALUE && l <= Short.MAX_VALUE)
+                return (short) l;
+        }
+        return Short.parseShort(value.toString());
+    }
+
+
+    /**
+     * Returns the value as an int.
+     *
+     * @param anAsciiNumbers true if numbers are encoded as ASCII
+     * @return the value as an int
+     * @exception NumberFormatException if the value is not an int
+     */
+    int intValue(boolean anAsciiNumbers)
+    {
+        if (anAsciiNumbers)
+        {
+            long l = gParseDigits(value.toByteArray(), sMAX_INT_DIGITS, false);
+            if (l != sNOT_PARSED)
+                return (int) l;
+        }
+        return Integer.parseInt(value.toString());
+    }
+
+
+    /**
+     * Returns the value as a long.
+     *
+     * @param anAsciiNumbers true if numbers are encoded as ASCII
+     * @return the value as a long
+     * @exception NumberFormatException if the value is not a long
+     */
+    long longValue(boolean anAsciiNumbers)
+    {
+        if (anAsciiNumbers)
+        {
+            long l = gParseDigits(value.toByteArray(), sMAX_LONG_DIGITS, 
+                false);
+            if (l != sNOT_PARSED)
+                return l;
+        }
+        return Long.parseLong(value.toString());
+    }
+
+
+    /**
+     * Returns the value as a double.
+     *
+     * @param anAsciiNumbers true if numbers are encoded as ASCII
+     * @return the value as a double
+     * @exception NumberFormatException if the value is not a double
+     */
+    /* The digits and the power of ten are both exact, so a single
+     * division gives the correctly rounded result, the same as
+     * Double.parseDouble.
+     */
+    double doubleValue(boolean anAsciiNumbers)
+    {
+        if (anAsciiNumbers)
+        {
+            byte[] bytes = value.toByteArray();
+            long l = gParseDigits(bytes, sMAX_DOUBLE_DIGITS, true);
+            if (l != sNOT_PARSED)
+            {
+                // The scale is at most sMAX_DOUBLE_DIGITS.
+                double d = Math.abs(l) / sPOWERS_OF_TEN[gGetScale(bytes)];
+                return (bytes[0] == '-') ? -d : d;
+            }
+        }
+        return Double.parseDouble(value.toString());
+    }
+
+
+    /**
+     * Returns the value as a BigDecimal.
+     *
+     * @param anAsciiNumbers true if numbers are encoded as ASCII
+     * @return the value as a BigDecimal
+     * @exception NumberFormatException if the value is not a decimal
+     *     number
+     */
+    BigDecimal bigDecimalValue(boolean anAsciiNumbers)
+    {
+        if (anAsciiNumbers)
+        {
+            byte[] bytes = value.toByteArray();
+            long l = gParseDigits(bytes, sMAX_LONG_DIGITS, true);
+            if (l != sNOT_PARSED)
+                return BigDecimal.valueOf(l, gGetScale(bytes));
+        }
+        return new BigDecimal(value.toString());
+    }
+
+
+    /**
+     * Returns true if the value is "1", which is how clients send
+     * true BIT values.
+     *
+     * @param anAsciiNumbers true if numbers are encoded as ASCII
+     * @return true if the value is "1"
+     */
+    boolean isOne(boolean anAsciiNumbers)
+    {
+        if (anAsciiNumbers)
+        {
+            byte[] bytes = value.toByteArray();
+            return bytes.length == 1 && bytes[0] == '1';
+        }
+        return value.toString().equals("1");
+    }
 }
@@ -21,9 +21,13 @@
 package com.vizdom.dbd.jdbc;
 
 import com.vizdom.ber.*;
+import java.util.Hashtable;
 
 /**
- * A prepare request.
+ * A prepare request. The request is a sequence of the statement, the
+ * generated key type (or null), and the key columns, optionally 
+ * followed by a hash of prepare options such as 
+ * <code>jdbc_scrollable</code>.
  *
  * @author Gennis Emerson
  * @version $Revision: 1.8 $
@@ -60,6 +64,9 @@ class PrepareRequest extends BerSequence
 
     /** The column indexes for keys to return; may be null. */
     private int[] mColumnIndexes;
+
+    /** The prepare options; empty if none were sent. */
+    private Hashtable<String, String> mOptions;
     
 
     /**
@@ -114,6 +121,18 @@ class PrepareRequest extends BerSequence
     }
 
 
+    /**
+     * Returns the prepare options.
+     * 
+     * @return the prepare options, keyed by name; empty if none 
+     *      were sent
+     */
+    Hashtable<String, String> getOptions()
+    {
+        return mOptions;
+    }
+
+
     /**
      * Reads the parameters.
      *
@@ -129,7 +148,15 @@ class PrepareRequest extends BerSequence
     {
         super.mReadContents(anIn, aModule, anIdentifier, aLength);
         mStatement = ((BerOctetString) mSequence[0]).toString();
-        if (mSequence.length <= 2) // No columns were provided, even if a type was. 
+        int count = mSequence.length;
+        if (mSequence[count - 1] instanceof BerHash)
+        {
+            count--;
+            mOptions = ((BerHash) mSequence[count]).toHashtable();
+        }
+        else
+            mOptions = new Hashtable<String, String>();
+        if (count <= 2) // No columns were provided, even if a type was. 
         {
             mKeyType = null;
             return;
@@ -144,14 +171,14 @@ class PrepareRequest extends BerSequence
             mKeyType = ((BerOctetString) mSequence[1]).toString();
         if ("name".equals(mKeyType))
         {
-            mColumnNames = new String[mSequence.length - 2];
-            for (int i = 2; i < mSequence.length; i++)
+            mColumnNames = new String[count - 2];
+            for (int i = 2; i < count; i++)
                 mColumnNames[i-2] = mSequence[i].toString(); 
         }
         else if ("index".equals(mKeyType))
         {
-            mColumnIndexes = new int[mSequence.length - 2];
-            for (int i = 2; i < mSequence.length; i++)
+            mColumnIndexes = new int[count - 2];
+            for (int i = 2; i < count; i++)
                 mColumnIndexes[i-2] = ((BerInteger) mSequence[i]).intValue(); 
         }
     }
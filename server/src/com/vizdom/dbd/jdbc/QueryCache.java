@@ -0,0 +1,424 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the same terms as the Perl Kit, namely, under
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more
+ *  details.
+ */
+package com.vizdom.dbd.jdbc;
+
+import java.io.UnsupportedEncodingException;
+import java.sql.ResultSetMetaData;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+import org.apache.log4j.Logger;
+
+/**
+ * A server-wide cache of query results, for statements with the
+ * <code>jdbc_cache</code> property set. Results are keyed by the
+ * database URL and user, the statement text, the parameter values
+ * and types, the client's character encoding, and the statement
+ * properties that affect how columns are read. Each entry holds the
+ * encoded contents of the fetch responses for its rows, so a hit is
+ * served without using JDBC at all.
+ * <p>
+ * Entries expire after the time to live given by
+ * <code>jdbc_cache</code>, and the least recently used entries are
+ * evicted to keep the cache within the size set by the
+ * <code>dbd.cachesize</code> system property. A result larger than
+ * a quarter of that size isn't cached. Entries may also be removed
+ * with a cache invalidate request, or by calling
+ * <code>gInvalidate</code>.
+ *
+ * @see Server
+ */
+class QueryCache
+{
+    /** log4j logger. */
+    private static final Logger gLog = Logger.getLogger(QueryCache.class);
+
+    /**
+     * The statement properties that change the fetched values.
+     * Results are only shared by statements that agree on these.
+     */
+    private static final String[] sKEY_PROPERTIES = { "LongReadLen",
+        "LongTruncOk", "ChopBlanks", "jdbc_longreadall",
+        "jdbc_lobthreshold", "jdbc_max_rows", "jdbc_max_field_size" };
+
+    /** The entries, from least to most recently used. */
+    private static final LinkedHashMap<String, Entry> gEntries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** The total size of the entries, in bytes. */
+    private static long gSize;
+
+    /** The number of lookups that found an entry. */
+    private static long gHits;
+
+    /** The number of lookups that didn't. */
+    private static long gMisses;
+
+
+    /**
+     * A cached result: the column meta data and the encoded rows.
+     */
+    static class Entry
+    {
+        /** The cache key. */
+        private final String mKey;
+
+        /** The statement text, for invalidation. */
+        private final String mStatement;
+
+        /** The result set meta data. */
+        private final ResultSetMetaData mMetaData;
+
+        /** The contents of the fetch response for each row. */
+        private final byte[][] mRows;
+
+        /** The approximate size of this entry, in bytes. */
+        private final long mSize;
+
+        /** The time at which this entry expires. */
+        private final long mExpires;
+
+        /**
+         * Constructor - initializes fields.
+         *
+         * @param aKey the cache key
+         * @param aStatement the statement text
+         * @param aMetaData the result set meta data
+         * @param aRowList the contents of the fetch responses
+         * @param aSize the size of the rows, in bytes
+         * @param anExpires the time at which this entry expires
+         */
+        private Entry(String aKey, String aStatement,
+            ResultSetMetaData aMetaData, byte[][] aRowList, long aSize,
+            long anExpires)
+        {
+            mKey = aKey;
+            mStatement = aStatement;
+            mMetaData = aMetaData;
+            mRows = aRowList;
+            mSize = aSize + 2 * aKey.length();
+            mExpires = anExpires;
+        }
+
+        /**
+         * Returns the result set meta data.
+         *
+         * @return the result set meta data
+         */
+        ResultSetMetaData getMetaData()
+        {
+            return mMetaData;
+        }
+
+        /**
+         * Returns the number of rows.
+         *
+         * @return the number of rows
+         */
+        int getRowCount()
+        {
+            return mRows.length;
+        }
+
+        /**
+         * Returns the contents of the fetch response for a row.
+         *
+         * @param anIndex the 0-based row index
+         * @return the encoded row
+         */
+        byte[] getRow(int anIndex)
+        {
+            return mRows[anIndex];
+        }
+    }
+
+
+    /**
+     * Collects the rows of a result set as the client fetches them,
+     * so that they can be cached once the last row has been fetched.
+     */
+    static class Recorder
+    {
+        /** The cache key. */
+        private final String mKey;
+
+        /** The statement text. */
+        private final String mStatement;
+
+        /** The time to live, in seconds. */
+        private final int mTtl;
+
+        /** The result set meta data. */
+        private final ResultSetMetaData mMetaData;
+
+        /** The most bytes to record. */
+        private final long mMaxSize;
+
+        /** The rows recorded so far. */
+        private final Vector<byte[]> mRows = new Vector<byte[]>();
+
+        /** The number of bytes recorded. */
+        private long mSize;
+
+        /**
+         * Constructor - initializes fields.
+         *
+         * @param aKey the cache key
+         * @param aStatement the statement text
+         * @param aTtl the time to live, in seconds
+         * @param aMetaData the result set meta data; a copy that can
+         *      be used after the result set is closed
+         */
+        Recorder(String aKey, String aStatement, int aTtl,
+            ResultSetMetaData aMetaData)
+        {
+            mKey = aKey;
+            mStatement = aStatement;
+            mTtl = aTtl;
+            mMetaData = aMetaData;
+            mMaxSize = Server.gGetMaxCacheSize() / 4;
+        }
+
+        /**
+         * Records a row.
+         *
+         * @param aRow the contents of the fetch response for the row
+         * @return false if the result has become too large to cache
+         */
+        boolean add(byte[] aRow)
+        {
+            mSize += aRow.length;
+            if (mSize > mMaxSize)
+                return false;
+            mRows.addElement(aRow);
+            return true;
+        }
+
+        /**
+         * Adds the recorded result to the cache. Call this once the
+         * last row has been fetched.
+         */
+        void finish()
+        {
+            byte[][] rows = new byte[mRows.size()][];
+            mRows.copyInto(rows);
+            gPut(new Entry(mKey, mStatement, mMetaData, rows, mSize,
+                System.currentTimeMillis() + 1000L * mTtl));
+        }
+    }
+
+
+    /**
+     * Creates the cache key for an execution of a statement.
+     *
+     * @param aConnection identifies the database and user
+     * @param aStatement the statement text
+     * @param aParameterList the parameters
+     * @param aProperties the statement properties
+     * @param anEncoding the client's character encoding
+     * @return the key
+     */
+    static String gCreateKey(String aConnection, String aStatement,
+        Parameter[] aParameterList, Hashtable<String, Object> aProperties,
+        String anEncoding)
+    {
+        // Each part is prefixed with its length, so that different
+        // values can't run together into the same key.
+        StringBuffer key = new StringBuffer();
+        gAppend(key, aConnection);
+        gAppend(key, anEncoding);
+        for (int i = 0; i < sKEY_PROPERTIES.length; i++)
+        {
+            Object value = aProperties.get(sKEY_PROPERTIES[i]);
+            gAppend(key, (value == null) ? null : value.toString());
+        }
+        gAppend(key, aStatement);
+        for (int i = 0; i < aParameterList.length; i++)
+        {
+            key.append(aParameterList[i].type).append(':');
+            if (aParameterList[i].value == null)
+                gAppend(key, null);
+            else
+            {
+                try
+                {
+                    gAppend(key, new String(
+                        aParameterList[i].value.toByteArray(), "ISO8859_1"));
+                }
+                catch (UnsupportedEncodingException e)
+                {
+                    throw new com.vizdom.util.UnreachableCodeException();
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Appends a part of a key.
+     *
+     * @param aKey the key
+     * @param aPart the part; may be null
+     */
+    private static void gAppend(StringBuffer aKey, String aPart)
+    {
+        if (aPart == null)
+            aKey.append("-;");
+        else
+            aKey.append(aPart.length()).append(';').append(aPart);
+    }
+
+    /**
+     * Returns the entry for a key, unless it has expired.
+     *
+     * @param aKey the key
+     * @return the entry, or null if there is none
+     */
+    static synchronized Entry gGet(String aKey)
+    {
+        Entry entry = gEntries.get(aKey);
+        if (entry != null && entry.mExpires <= System.currentTimeMillis())
+        {
+            gRemove(entry);
+            entry = null;
+        }
+        if (entry == null)
+            gMisses++;
+        else
+            gHits++;
+        return entry;
+    }
+
+    /**
+     * Adds an entry, evicting the least recently used entries if
+     * the cache would otherwise be too large.
+     *
+     * @param anEntry the entry
+     */
+    private static synchronized void gPut(Entry anEntry)
+    {
+        Entry previous = gEntries.remove(anEntry.mKey);
+        if (previous != null)
+            gSize -= previous.mSize;
+        long maxSize = Server.gGetMaxCacheSize();
+        Iterator<Entry> entries = gEntries.values().iterator();
+        while (gSize + anEntry.mSize > maxSize && entries.hasNext())
+        {
+            Entry eldest = entries.next();
+            entries.remove();
+            gSize -= eldest.mSize;
+            if (gLog.isDebugEnabled())
+                gLog.debug("Evicted cached result of " + eldest.mStatement);
+        }
+        gEntries.put(anEntry.mKey, anEntry);
+        gSize += anEntry.mSize;
+        if (gLog.isDebugEnabled())
+        {
+            gLog.debug("Cached " + anEntry.mRows.length + " rows of " +
+                anEntry.mStatement + "; cache size is " + gSize);
+        }
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param anEntry the entry
+     */
+    private static void gRemove(Entry anEntry)
+    {
+        gEntries.remove(anEntry.mKey);
+        gSize -= anEntry.mSize;
+    }
+
+    /**
+     * Removes the entries for statements containing the given text,
+     * ignoring case, or all the entries. An application that embeds
+     * the server may call this when it changes the data behind
+     * cached results.
+     *
+     * @param aMatch the text, such as a table name, or null to
+     *      remove every entry
+     * @return the number of entries removed
+     */
+    static synchronized int gInvalidate(String aMatch)
+    {
+        String match = (aMatch == null) ? null : aMatch.toLowerCase();
+        int count = 0;
+        Iterator<Entry> entries = gEntries.values().iterator();
+        while (entries.hasNext())
+        {
+            Entry entry = entries.next();
+            if (match == null ||
+                entry.mStatement.toLowerCase().indexOf(match) >= 0)
+            {
+                entries.remove();
+                gSize -= entry.mSize;
+                count++;
+            }
+        }
+        if (gLog.isDebugEnabled())
+        {
+            gLog.debug("Invalidated " + count + " cached results" +
+                ((aMatch == null) ? "" : " matching " + aMatch));
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    static synchronized int gGetEntryCount()
+    {
+        return gEntries.size();
+    }
+
+    /**
+     * Returns the total size of the entries.
+     *
+     * @return the total size of the entries, in bytes
+     */
+    static synchronized long gGetSize()
+    {
+        return gSize;
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return the number of cache hits
+     */
+    static synchronized long gGetHits()
+    {
+        return gHits;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find an entry.
+     *
+     * @return the number of cache misses
+     */
+    static synchronized long gGetMisses()
+    {
+        return gMisses;
+    }
+}
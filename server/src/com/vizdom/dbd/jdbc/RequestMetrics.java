@@ -0,0 +1,82 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+/**
+ * The metrics of one type of request, as a JMX MBean.
+ *
+ * @see Metrics
+ */
+class RequestMetrics implements RequestMetricsMBean
+{
+    /** The request's tag number. */
+    private final int mTag;
+
+    /**
+     * Constructor - initializes fields.
+     *
+     * @param aTag the request's tag number
+     */
+    RequestMetrics(int aTag)
+    {
+        mTag = aTag;
+    }
+
+    public String getRequestType()
+    {
+        return Metrics.gGetName(mTag);
+    }
+
+    public long getCount()
+    {
+        return Metrics.gGetCount(mTag);
+    }
+
+    public long getErrorCount()
+    {
+        return Metrics.gGetErrorCount(mTag);
+    }
+
+    public double getMeanMillis()
+    {
+        return Metrics.gGetMeanMillis(mTag);
+    }
+
+    public double getP50Millis()
+    {
+        return Metrics.gGetPercentileMillis(mTag, 0.5);
+    }
+
+    public double getP99Millis()
+    {
+        return Metrics.gGetPercentileMillis(mTag, 0.99);
+    }
+
+    public double getP999Millis()
+    {
+        return Metrics.gGetPercentileMillis(mTag, 0.999);
+    }
+
+    public double getMaxMillis()
+    {
+        return Metrics.gGetMaxMillis(mTag);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+/**
+ * The JMX management interface for the metrics of one type of
+ * request. The registered name is 
+ * <code>com.vizdom.dbd.jdbc:type=Request,name=</code><i>type</i>,
+ * where the type is the name of the request's tag in 
+ * <code>BerDbdModule</code>, such as <code>FETCH</code>. Latencies
+ * are measured on the server, from the time a request has been 
+ * read to the time its response has been written, and are recorded
+ * in buckets whose widths are a quarter of their lower bounds; 
+ * the percentiles are the upper bounds of their buckets.
+ *
+ * @see Metrics
+ */
+public interface RequestMetricsMBean
+{
+    /**
+     * Returns the name of the request type.
+     *
+     * @return the request type
+     */
+    String getRequestType();
+
+    /**
+     * Returns the number of requests handled.
+     *
+     * @return the number of requests
+     */
+    long getCount();
+
+    /**
+     * Returns the number of requests answered with an error.
+     *
+     * @return the number of errors
+     */
+    long getErrorCount();
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return the mean latency, in milliseconds
+     */
+    double getMeanMillis();
+
+    /**
+     * Returns the median latency.
+     *
+     * @return the 50th percentile latency, in milliseconds
+     */
+    double getP50Millis();
+
+    /**
+     * Returns the 99th percentile latency.
+     *
+     * @return the 99th percentile latency, in milliseconds
+     */
+    double getP99Millis();
+
+    /**
+     * Returns the 99.9th percentile latency.
+     *
+     * @return the 99.9th percentile latency, in milliseconds
+     */
+    double getP999Millis();
+
+    /**
+     * Returns the longest latency.
+     *
+     * @return the longest latency, in milliseconds
+     */
+    double getMaxMillis();
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the same terms as the Perl Kit, namely, under
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more
+ *  details.
+ */
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.util.CharacterCodec;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Hashtable;
+import java.util.Vector;
+import org.apache.log4j.Logger;
+
+/**
+ * The rows of a result set, drained into a temporary file so that
+ * the cursor can be closed before the client has read them. The rows
+ * are read from the result set as fast as the driver returns them
+ * and written in a compact form: each column value is stored as the
+ * bytes that a fetch response would send. The file is then mapped
+ * into memory a segment at a time and the rows are served from it.
+ * <p>
+ * The number of spools open at once and the size of each spool are
+ * limited by the <code>dbd.spools</code> and
+ * <code>dbd.spoolsize</code> system properties. A spool that reaches
+ * the size limit stops; the caller then serves the remaining rows
+ * from the result set.
+ *
+ * @see Server
+ */
+class ResultSpool
+{
+    /** log4j logger. */
+    private static final Logger gLog = Logger.getLogger(ResultSpool.class);
+
+    /** The size of the buffer used to write the file. */
+    private static final int sBUFFER_SIZE = 64 * 1024;
+
+    /** The most bytes to map at once. */
+    private static final int sSEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** Marks a null column value. */
+    private static final int sNULL = 0;
+
+    /** Marks a column value stored as bytes. */
+    private static final int sBYTES = 1;
+
+    /** The number of spools open in this server. */
+    private static int gOpenSpools;
+
+
+    /**
+     * Reserves one of the server's spools.
+     *
+     * @return true if a spool was reserved, or false if the
+     *      <code>dbd.spools</code> limit has been reached
+     */
+    private static synchronized boolean gReserve()
+    {
+        if (gOpenSpools >= Server.gGetMaxSpools())
+            return false;
+        gOpenSpools++;
+        return true;
+    }
+
+    /**
+     * Releases a spool reserved with <code>gReserve</code>.
+     */
+    private static synchronized void gRelease()
+    {
+        gOpenSpools--;
+    }
+
+    /**
+     * Returns the number of spools open in this server.
+     *
+     * @return the number of spools open in this server
+     */
+    static synchronized int gGetOpenSpools()
+    {
+        return gOpenSpools;
+    }
+
+    /**
+     * Creates a spool, unless the limit on open spools has been
+     * reached.
+     *
+     * @return a new spool, or null if the limit has been reached
+     * @exception IOException if the temporary file can't be created
+     */
+    static ResultSpool gCreate() throws IOException
+    {
+        if (!gReserve())
+        {
+            gLog.info("Not spooling; " + Server.gGetMaxSpools() +
+                " spools are open");
+            return null;
+        }
+        try
+        {
+            return new ResultSpool(Server.gGetMaxSpoolSize());
+        }
+        catch (IOException e)
+        {
+            gRelease();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a copy of a result set's meta data that can still be
+     * used once the result set has been closed. Every method of
+     * <code>ResultSetMetaData</code> that takes a column index is
+     * called for each column, and the proxy returned replays the
+     * results, including any exceptions.
+     *
+     * @param aMetaData the result set meta data
+     * @return a copy of the meta data
+     * @exception SQLException if the column count can't be read
+     */
+    static ResultSetMetaData gCopyMetaData(ResultSetMetaData aMetaData)
+        throws SQLException
+    {
+        final int count = aMetaData.getColumnCount();
+        final Hashtable<String, Object[]> values =
+            new Hashtable<String, Object[]>();
+        Method[] methods = ResultSetMetaData.class.getMethods();
+        for (int i = 0; i < methods.length; i++)
+        {
+            Class[] parameters = methods[i].getParameterTypes();
+            if (parameters.length != 1 || parameters[0] != Integer.TYPE)
+                continue;
+            Object[] columns = new Object[count];
+            for (int j = 0; j < count; j++)
+            {
+                try
+                {
+                    columns[j] = methods[i].invoke(aMetaData,
+                        new Object[] { Integer.valueOf(j + 1) });
+                }
+                catch (java.lang.reflect.InvocationTargetException e)
+                {
+                    columns[j] = e.getTargetException();
+                }
+                catch (IllegalAccessException e)
+                {
+                    columns[j] = new SQLException(e.toString());
+                }
+            }
+            values.put(methods[i].getName(), columns);
+        }
+
+        InvocationHandler handler = new InvocationHandler()
+            {
+                public Object invoke(Object aProxy, Method aMethod,
+                    Object[] anArgumentList) throws Throwable
+                {
+                    String name = aMethod.getName();
+                    if (name.equals("getColumnCount"))
+                        return Integer.valueOf(count);
+                    Object[] columns = values.get(name);
+                    if (columns == null)
+                    {
+                        if (aMethod.getDeclaringClass() == Object.class)
+                            return aMethod.invoke(this, anArgumentList);
+                        throw new SQLException(name +
+                            " is not available after spooling");
+                    }
+                    int column = ((Integer) anArgumentList[0]).intValue();
+                    if (column < 1 || column > count)
+                        throw new SQLException("Invalid column " + column);
+                    Object value = columns[column - 1];
+                    if (value instanceof Throwable)
+                        throw (Throwable) value;
+                    return value;
+                }
+            };
+        return (ResultSetMetaData) Proxy.newProxyInstance(
+            ResultSetMetaData.class.getClassLoader(),
+            new Class[] { ResultSetMetaData.class }, handler);
+    }
+
+
+    /** The most bytes to write before spooling stops. */
+    private final long mMaxSize;
+
+    /** The temporary file. */
+    private File mFile;
+
+    /** The stream writing the file, while it is being filled. */
+    private DataOutputStream mOut;
+
+    /** The channel reading the file, once it has been filled. */
+    private FileChannel mChannel;
+
+    /** The mapped segment of the file. */
+    private MappedByteBuffer mSegment;
+
+    /** The file offset of the mapped segment. */
+    private long mSegmentStart;
+
+    /** The number of bytes written. */
+    private long mSize;
+
+    /** The file offset of the next row to read. */
+    private long mPosition;
+
+    /** The number of rows written. */
+    private int mRows;
+
+    /** Whether every row of the result set was written. */
+    private boolean mComplete;
+
+
+    /**
+     * Constructor - creates the temporary file.
+     *
+     * @param aMaxSize the most bytes to write before spooling stops
+     * @exception IOException if the file can't be created
+     */
+    private ResultSpool(long aMaxSize) throws IOException
+    {
+        mMaxSize = aMaxSize;
+        mFile = File.createTempFile("dbdjdbc", ".spool");
+        try
+        {
+            mOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(mFile), sBUFFER_SIZE));
+        }
+        catch (IOException e)
+        {
+            mFile.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads rows from a result set into the file until the result set
+     * is exhausted or the size limit is reached, and then prepares
+     * the file for reading.
+     * <p>
+     * Each row is written as its length in bytes followed by its
+     * columns; each column is written as a marker byte, and if the
+     * value is not null, its length and bytes. Strings and character
+     * arrays are encoded with the client's encoding, so that they
+     * are sent unchanged.
+     *
+     * @param aResultSet the result set, positioned before its first row
+     * @param aReaders the column readers
+     * @param aCodec the client's character codec; its buffer must
+     *      not hold anything that is still needed
+     * @return true if every row was written
+     * @exception SQLException if a row can't be read
+     * @exception IOException if a column value can't be read, or the
+     *      file can't be written
+     */
+    boolean fill(ResultSet aResultSet, ColumnReader[] aReaders,
+        CharacterCodec aCodec) throws SQLException, IOException
+    {
+        Object[] row = new Object[aReaders.length];
+        int[] offsets = new int[aReaders.length];
+        int[] lengths = new int[aReaders.length];
+        try
+        {
+            while (mSize < mMaxSize && aResultSet.next())
+            {
+                aCodec.reset();
+                int length = 0;
+                for (int i = 0; i < aReaders.length; i++)
+                {
+                    Object value = aReaders[i].read(aResultSet);
+                    if (value instanceof String)
+                    {
+                        offsets[i] = aCodec.encode((String) value);
+                        lengths[i] = aCodec.size() - offsets[i];
+                    }
+                    else if (value instanceof char[])
+                    {
+                        char[] chars = (char[]) value;
+                        offsets[i] = aCodec.encode(chars, 0, chars.length);
+                        lengths[i] = aCodec.size() - offsets[i];
+                    }
+                    else if (value instanceof byte[])
+                    {
+                        offsets[i] = 0;
+                        lengths[i] = ((byte[]) value).length;
+                    }
+                    else if (value != null)
+                    {
+                        offsets[i] = aCodec.encode(value.toString());
+                        lengths[i] = aCodec.size() - offsets[i];
+                    }
+                    row[i] = value;
+                    length += (value == null) ? 1 : 5 + lengths[i];
+                }
+
+                mOut.writeInt(length);
+                byte[] buffer = aCodec.getBuffer();
+                for (int i = 0; i < aReaders.length; i++)
+                {
+                    if (row[i] == null)
+                    {
+                        mOut.writeByte(sNULL);
+                        continue;
+                    }
+                    mOut.writeByte(sBYTES);
+                    mOut.writeInt(lengths[i]);
+                    mOut.write((row[i] instanceof byte[]) ?
+                        (byte[]) row[i] : buffer, offsets[i], lengths[i]);
+                }
+                mSize += 4 + length;
+                mRows++;
+            }
+            mComplete = (mSize < mMaxSize);
+        }
+        finally
+        {
+            aCodec.reset();
+        }
+
+        mOut.close();
+        mOut = null;
+        mChannel = new RandomAccessFile(mFile, "r").getChannel();
+        if (gLog.isDebugEnabled())
+        {
+            gLog.debug("Spooled " + mRows + " rows (" + mSize + " bytes)" +
+                (mComplete ? "" : "; the size limit was reached"));
+        }
+        return mComplete;
+    }
+
+    /**
+     * Returns whether every row of the result set was written.
+     *
+     * @return true if every row of the result set was written
+     */
+    boolean isComplete()
+    {
+        return mComplete;
+    }
+
+    /**
+     * Returns the number of rows written.
+     *
+     * @return the number of rows written
+     */
+    int getRowCount()
+    {
+        return mRows;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return the number of bytes written
+     */
+    long getSize()
+    {
+        return mSize;
+    }
+
+    /**
+     * Reads the next row from the file. Column values are returned
+     * as byte arrays, already in the client's encoding.
+     *
+     * @return the row, or null if all the rows have been read
+     * @exception IOException if the file can't be read
+     */
+    Object[] next() throws IOException
+    {
+        if (mPosition >= mSize)
+            return null;
+        mMap(mPosition, 4);
+        int length = mSegment.getInt((int) (mPosition - mSegmentStart));
+        mMap(mPosition, 4 + length);
+        mSegment.position((int) (mPosition + 4 - mSegmentStart));
+
+        Vector<byte[]> columns = new Vector<byte[]>();
+        int end = mSegment.position() + length;
+        while (mSegment.position() < end)
+        {
+            if (mSegment.get() == sNULL)
+            {
+                columns.addElement(null);
+                continue;
+            }
+            byte[] value = new byte[mSegment.getInt()];
+            mSegment.get(value);
+            columns.addElement(value);
+        }
+        mPosition += 4 + length;
+        return columns.toArray();
+    }
+
+    /**
+     * Maps the segment of the file containing the given range,
+     * unless it is already mapped.
+     *
+     * @param aStart the file offset of the range
+     * @param aLength the length of the range
+     * @exception IOException if the file can't be mapped
+     */
+    private void mMap(long aStart, int aLength) throws IOException
+    {
+        if (mSegment != null && aStart >= mSegmentStart &&
+            aStart + aLength <= mSegmentStart + mSegment.limit())
+        {
+            return;
+        }
+        long length = Math.min(Math.max(sSEGMENT_SIZE, aLength),
+            mSize - aStart);
+        mSegment = mChannel.map(FileChannel.MapMode.READ_ONLY, aStart,
+            length);
+        mSegmentStart = aStart;
+    }
+
+    /**
+     * Closes and deletes the file, and releases the spool so that
+     * another statement can use it.
+     */
+    void close()
+    {
+        if (mFile == null)
+            return;
+        try
+        {
+            if (mOut != null)
+                mOut.close();
+            if (mChannel != null)
+                mChannel.close();
+        }
+        catch (IOException e)
+        {
+            gLog.warn("Failed to close a spool", e);
+        }
+        mOut = null;
+        mChannel = null;
+        mSegment = null;
+        if (!mFile.delete())
+            gLog.warn("Failed to delete " + mFile);
+        mFile = null;
+        gRelease();
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+package com.vizdom.dbd.jdbc;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.log4j.Logger;
+
+/**
+ * A profile of the round trips made for each statement. The
+ * requests for each statement text are counted by type, across
+ * every prepare, execute, fetch and destroy of the statement, in 
+ * every connection, so that chatty patterns in clients show up:
+ * fetching a row at a time, reading a statement attribute such as
+ * <code>NAME</code> over and over, or preparing the same statement
+ * inside a loop.
+ * <p>
+ * While profiling is on, a report of the statements with the most
+ * requests is logged at the INFO level every interval, and the 
+ * counts are then cleared. A statement is flagged in the report if
+ * it needed more fetch requests per row, more statement property
+ * requests per execution, or more prepares than the thresholds set
+ * by the <code>dbd.profilefetchratio</code>, 
+ * <code>dbd.profileproperties</code> and 
+ * <code>dbd.profileprepares</code> system properties. The counts
+ * are kept with atomic operations, without locking.
+ *
+ * @see Server
+ */
+class RoundTripProfile
+{
+    /** log4j logger, which also logs the reports. */
+    private static final Logger gLog = 
+        Logger.getLogger(RoundTripProfile.class);
+
+    /** The most statements profiled at once. */
+    private static final int sMAX_STATEMENTS = 1000;
+
+    /** The most characters of statement text in the report. */
+    private static final int sMAX_STATEMENT_LENGTH = 100;
+
+    /** Whether profiling is on. */
+    private static volatile boolean gEnabled;
+
+    /** The counts for each statement text. */
+    private static final ConcurrentHashMap<String, Entry> gEntries =
+        new ConcurrentHashMap<String, Entry>();
+
+    /** 
+     * The number of requests not counted because too many 
+     * statements were being profiled.
+     */
+    private static final AtomicLong gDropped = new AtomicLong();
+
+    /** The time the counts were last cleared. */
+    private static volatile long gStarted = System.currentTimeMillis();
+
+    /** The timer which logs the reports, or null. */
+    private static Timer gReportTimer;
+
+
+    /**
+     * The request counts for a statement text.
+     */
+    static class Entry
+    {
+        /** The statement text. */
+        private final String mStatement;
+
+        /** The number of requests, by tag. */
+        private final AtomicLongArray mCounts = 
+            new AtomicLongArray(Metrics.sTAG_COUNT);
+
+        /** The number of rows fetched. */
+        private final AtomicLong mRows = new AtomicLong();
+
+        /**
+         * Constructor - initializes fields.
+         *
+         * @param aStatement the statement text
+         */
+        Entry(String aStatement)
+        {
+            mStatement = aStatement;
+        }
+
+        /**
+         * Returns the number of requests of a type.
+         *
+         * @param aTag the request tag number
+         * @return the number of requests
+         */
+        long getCount(int aTag)
+        {
+            return mCounts.get(aTag);
+        }
+
+        /**
+         * Returns the number of requests of every type.
+         *
+         * @return the number of requests
+         */
+        long getRequestCount()
+        {
+            long count = 0;
+            for (int i = 0; i < Metrics.sTAG_COUNT; i++)
+                count += mCounts.get(i);
+            return count;
+        }
+
+        /**
+         * Returns the number of rows fetched.
+         *
+         * @return the number of rows
+         */
+        long getRowCount()
+        {
+            return mRows.get();
+        }
+
+        /**
+         * Returns the number of executions, counting a batch as one.
+         *
+         * @return the number of executions
+         */
+        long getExecutions()
+        {
+            return getCount(BerDbdModule.gEXECUTE_REQUEST) +
+                getCount(BerDbdModule.gEXECUTE_BATCH_REQUEST);
+        }
+
+        /**
+         * Returns the number of fetch requests.
+         *
+         * @return the number of fetch requests
+         */
+        long getFetches()
+        {
+            return getCount(BerDbdModule.gFETCH_REQUEST) +
+                getCount(BerDbdModule.gFETCH_SCROLL_REQUEST);
+        }
+
+        /**
+         * Returns the number of statement property requests.
+         *
+         * @return the number of property requests
+         */
+        long getPropertyRequests()
+        {
+            return getCount(BerDbdModule.gGET_STATEMENT_PROPERTY_REQUEST) +
+                getCount(BerDbdModule.gSET_STATEMENT_PROPERTY_REQUEST);
+        }
+
+        /**
+         * Returns the thresholds this statement exceeded.
+         *
+         * @return the names of the thresholds, separated by commas,
+         *      or "-" if none were exceeded
+         */
+        String getFlags()
+        {
+            StringBuffer flags = new StringBuffer();
+            long rows = Math.max(getRowCount(), 1);
+            long executions = Math.max(getExecutions(), 1);
+            if (getFetches() * 100 > Server.gGetProfileFetchRatio() * rows)
+                flags.append(",fetches");
+            if (getPropertyRequests() > 
+                Server.gGetProfileProperties() * executions)
+            {
+                flags.append(",properties");
+            }
+            if (getCount(BerDbdModule.gPREPARE_REQUEST) > 
+                Server.gGetProfilePrepares())
+            {
+                flags.append(",prepares");
+            }
+            return (flags.length() == 0) ? "-" : flags.substring(1);
+        }
+    }
+
+
+    /**
+     * Returns whether profiling is on. Connections check this 
+     * before recording requests.
+     *
+     * @return true if requests should be recorded
+     */
+    static boolean gIsEnabled()
+    {
+        return gEnabled;
+    }
+
+    /**
+     * Records a request for a statement.
+     *
+     * @param aStatement the statement text
+     * @param aTag the request's tag number
+     * @param aRow true if the response contained a row
+     */
+    static void gRecord(String aStatement, int aTag, boolean aRow)
+    {
+        if (aStatement == null)
+            return;
+        Entry entry = gEntries.get(aStatement);
+        if (entry == null)
+        {
+            if (gEntries.size() >= sMAX_STATEMENTS)
+            {
+                gDropped.incrementAndGet();
+                return;
+            }
+            entry = new Entry(aStatement);
+            Entry previous = gEntries.putIfAbsent(aStatement, entry);
+            if (previous != null)
+                entry = previous;
+        }
+        entry.mCounts.incrementAndGet(
+            (aTag > 0 && aTag < Metrics.sTAG_COUNT) ? aTag : 0);
+        if (aRow)
+            entry.mRows.incrementAndGet();
+    }
+
+    /**
+     * Returns the counts for a statement text.
+     *
+     * @param aStatement the statement text
+     * @return the counts, or null if the statement hasn't been
+     *      recorded since the counts were cleared
+     */
+    static Entry gGetEntry(String aStatement)
+    {
+        return gEntries.get(aStatement);
+    }
+
+    /**
+     * Returns the statements with the most requests.
+     *
+     * @param aCount the most statements to return
+     * @return the statements, from the most requests to the least
+     */
+    static Entry[] gGetTop(int aCount)
+    {
+        Entry[] entries = gEntries.values().toArray(new Entry[0]);
+        final long[] requests = new long[entries.length];
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < entries.length; i++)
+        {
+            requests[i] = entries[i].getRequestCount();
+            order[i] = i;
+        }
+        // Sort by a snapshot of the counts, which may change meanwhile.
+        Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b)
+                {
+                    long difference = requests[b] - requests[a];
+                    return (difference > 0) ? 1 : 
+                        (difference < 0) ? -1 : 0;
+                }
+            });
+        Entry[] top = new Entry[Math.min(aCount, entries.length)];
+        for (int i = 0; i < top.length; i++)
+            top[i] = entries[order[i]];
+        return top;
+    }
+
+    /**
+     * Returns a text report of the statements with the most 
+     * requests, with the number set by the 
+     * <code>dbd.profiletop</code> system property.
+     *
+     * @return the report
+     */
+    static String gGetReport()
+    {
+        Entry[] top = gGetTop(Server.gGetProfileTop());
+        StringBuffer report = new StringBuffer();
+        report.append("Statements ").append(gEntries.size())
+            .append(", requests not profiled ").append(gDropped.get())
+            .append(", seconds ")
+            .append((System.currentTimeMillis() - gStarted) / 1000);
+        report.append(String.format("%n%10s %8s %8s %10s %10s %8s %8s " +
+            "%-28s %s", "Requests", "Prepares", "Executes", "Fetches", 
+            "Rows", "Props", "Destroys", "Flags", "Statement"));
+        for (int i = 0; i < top.length; i++)
+        {
+            Entry entry = top[i];
+            String statement = entry.mStatement.replace('\n', ' ');
+            if (statement.length() > sMAX_STATEMENT_LENGTH)
+            {
+                statement = 
+                    statement.substring(0, sMAX_STATEMENT_LENGTH) + "...";
+            }
+            report.append(String.format("%n%10d %8d %8d %10d %10d %8d %8d " +
+                "%-28s %s", entry.getRequestCount(),
+                entry.getCount(BerDbdModule.gPREPARE_REQUEST),
+                entry.getExecutions(), entry.getFetches(), 
+                entry.getRowCount(), entry.getPropertyRequests(),
+                entry.getCount(BerDbdModule.gSTATEMENT_DESTROY_REQUEST),
+                entry.getFlags(), statement));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Clears the counts. Requests recorded while this runs may be
+     * lost.
+     */
+    static void gReset()
+    {
+        gEntries.clear();
+        gDropped.set(0);
+        gStarted = System.currentTimeMillis();
+    }
+
+    /**
+     * Turns profiling on, and starts logging a report and clearing
+     * the counts periodically.
+     *
+     * @param aSeconds the time between reports, in seconds
+     */
+    static synchronized void gStart(long aSeconds)
+    {
+        gStop();
+        gReset();
+        gEnabled = true;
+        gReportTimer = new Timer("RoundTripProfile", true);
+        gReportTimer.schedule(new TimerTask() {
+                public void run()
+                {
+                    gLog.info("Round trips by statement:" + 
+                        System.getProperty("line.separator") + gGetReport());
+                    gReset();
+                }
+            }, aSeconds * 1000, aSeconds * 1000);
+    }
+
+    /**
+     * Turns profiling off and stops the reports.
+     */
+    static synchronized void gStop()
+    {
+        gEnabled = false;
+        if (gReportTimer != null)
+        {
+            gReportTimer.cancel();
+            gReportTimer = null;
+        }
+    }
+}
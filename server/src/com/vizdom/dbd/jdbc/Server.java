@@ -44,6 +44,56 @@ import org.apache.log4j.NDC;
  * <li> <code>jdbc.drivers</code>: the names of the JDBC drivers
  *      which this server should load on startup
  * <li> <code>dbd.port</code>: the port on which this server will listen
+ * <li> <code>dbd.maxframesize</code>: (optional) the size in bytes of 
+ *      the largest request the server will accept. The default is
+ *      64 MB. A connection that sends a larger request is closed.
+ * <li> <code>dbd.spools</code>: (optional) the number of result sets
+ *      that may be spooled to temporary files at once, for statements
+ *      with <code>jdbc_spool</code> set. The default is 8. Statements
+ *      executed while this many spools are open read from their
+ *      cursors as usual.
+ * <li> <code>dbd.spoolsize</code>: (optional) the size in bytes at
+ *      which a spool stops growing. The default is 256 MB. The rows
+ *      that don't fit are read from the cursor.
+ * <li> <code>dbd.cachesize</code>: (optional) the size in bytes of
+ *      the query cache, shared by all connections, for statements
+ *      with <code>jdbc_cache</code> set. The default is 16 MB. A 
+ *      result larger than a quarter of this size isn't cached.
+ * <li> <code>dbd.metadatattl</code>: (optional) the time in seconds
+ *      for which the results of meta data requests, such as 
+ *      <code>table_info</code>, are cached. The cache is shared by all
+ *      connections to the same database as the same user. The 
+ *      default is 300.
+ * <li> <code>dbd.metricsinterval</code>: (optional) the time in 
+ *      seconds between reports of the server's metrics, which are
+ *      logged at the INFO level by the 
+ *      <code>com.vizdom.dbd.jdbc.Metrics</code> logger. By default
+ *      the metrics are only available through JMX; see 
+ *      <code>MetricsMBean</code>.
+ * <li> <code>dbd.slowstatement</code>: (optional) the time in
+ *      milliseconds beyond which an execution of a statement is
+ *      logged by the <code>com.vizdom.dbd.jdbc.SlowStatementLog</code>
+ *      logger, if its prepare, execute or fetch time exceeds it. By
+ *      default, no statements are logged.
+ * <li> <code>dbd.slowparamlength</code>: (optional) the number of
+ *      characters of each parameter value shown in the slow 
+ *      statement log. By default, the values are not shown.
+ * <li> <code>dbd.profileinterval</code>: (optional) the time in
+ *      seconds between reports of the requests made for each 
+ *      statement, which are logged at the INFO level by the
+ *      <code>com.vizdom.dbd.jdbc.RoundTripProfile</code> logger. 
+ *      By default, the requests aren't profiled.
+ * <li> <code>dbd.profiletop</code>: (optional) the number of 
+ *      statements in each report. The default is 10.
+ * <li> <code>dbd.profilefetchratio</code>: (optional) the number of
+ *      fetch requests per hundred rows above which a statement is
+ *      flagged in the report. The default is 200.
+ * <li> <code>dbd.profileproperties</code>: (optional) the number of
+ *      statement property requests per execution above which a
+ *      statement is flagged. The default is 4.
+ * <li> <code>dbd.profileprepares</code>: (optional) the number of
+ *      prepares of the same statement per report above which it is
+ *      flagged. The default is 100.
  * <li> <code>dbd.trace</code>: (optional) the logging level for the server
  *      <p>This property should be set to one of "off" or
  *      "silent", "fatal", "error", "warn" or "brief", "info" or
@@ -75,6 +125,304 @@ public class Server implements Runnable
     /** log4j logger. */
     private static final Logger gLog = Logger.getLogger(Server.class); 
 
+    /** The default maximum request size, in bytes. */
+    private static final int sDEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /** The default number of result sets spooled at once. */
+    private static final int sDEFAULT_MAX_SPOOLS = 8;
+
+    /** The default maximum spool size, in bytes. */
+    private static final long sDEFAULT_MAX_SPOOL_SIZE = 256L * 1024 * 1024;
+
+    /** The default query cache size, in bytes. */
+    private static final long sDEFAULT_MAX_CACHE_SIZE = 16L * 1024 * 1024;
+
+    /** The default meta data time to live, in seconds. */
+    private static final int sDEFAULT_META_DATA_TTL = 300;
+
+    /** The default time between metrics reports; 0 for no reports. */
+    private static final int sDEFAULT_METRICS_INTERVAL = 0;
+
+    /** The default slow statement threshold; 0 for no log. */
+    private static final int sDEFAULT_SLOW_STATEMENT_THRESHOLD = 0;
+
+    /** The default length of parameters in the slow statement log. */
+    private static final int sDEFAULT_SLOW_PARAMETER_LENGTH = 0;
+
+    /** The default time between profile reports; 0 for no profile. */
+    private static final int sDEFAULT_PROFILE_INTERVAL = 0;
+
+    /** The default number of statements in a profile report. */
+    private static final int sDEFAULT_PROFILE_TOP = 10;
+
+    /** The default fetch requests per hundred rows flagged. */
+    private static final int sDEFAULT_PROFILE_FETCH_RATIO = 200;
+
+    /** The default property requests per execution flagged. */
+    private static final int sDEFAULT_PROFILE_PROPERTIES = 4;
+
+    /** The default prepares of a statement per report flagged. */
+    private static final int sDEFAULT_PROFILE_PREPARES = 100;
+
+
+    /**
+     * Returns the maximum request size, from the 
+     * <code>dbd.maxframesize</code> system property.
+     *
+     * @return the maximum request size, in bytes
+     * @exception FatalException if the property is not a positive integer
+     */
+    static int gGetMaxFrameSize()
+    {
+        return (int) gGetLimit("dbd.maxframesize", sDEFAULT_MAX_FRAME_SIZE,
+            Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the number of result sets that may be spooled at once,
+     * from the <code>dbd.spools</code> system property.
+     *
+     * @return the number of result sets that may be spooled at once
+     * @exception FatalException if the property is not a positive integer
+     */
+    static int gGetMaxSpools()
+    {
+        return (int) gGetLimit("dbd.spools", sDEFAULT_MAX_SPOOLS, 
+            Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the maximum spool size, from the <code>dbd.spoolsize</code>
+     * system property.
+     *
+     * @return the maximum spool size, in bytes
+     * @exception FatalException if the property is not a positive integer
+     */
+    static long gGetMaxSpoolSize()
+    {
+        return gGetLimit("dbd.spoolsize", sDEFAULT_MAX_SPOOL_SIZE, 
+            Long.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the query cache size, from the <code>dbd.cachesize</code>
+     * system property.
+     *
+     * @return the query cache size, in bytes
+     * @exception FatalException if the property is not a positive integer
+     */
+    static long gGetMaxCacheSize()
+    {
+        return gGetLimit("dbd.cachesize", sDEFAULT_MAX_CACHE_SIZE, 
+            Long.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the meta data time to live, from the 
+     * <code>dbd.metadatattl</code> system property.
+     *
+     * @return the meta data time to live, in seconds
+     * @exception FatalException if the property is not a positive integer
+     */
+    static int gGetMetaDataTtl()
+    {
+        return (int) gGetLimit("dbd.metadatattl", sDEFAULT_META_DATA_TTL, 
+            Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the time between metrics reports, from the 
+     * <code>dbd.metricsinterval</code> system property.
+     *
+     * @return the time between reports, in seconds, or 0 if the
+     *      metrics shouldn't be reported
+     * @exception FatalException if the property is not a non-negative
+     *      integer
+     */
+    static int gGetMetricsInterval()
+    {
+        return (int) gGetSetting("dbd.metricsinterval", 
+            sDEFAULT_METRICS_INTERVAL, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the slow statement threshold, from the 
+     * <code>dbd.slowstatement</code> system property.
+     *
+     * @return the threshold, in milliseconds, or 0 if statements 
+     *      shouldn't be logged
+     * @exception FatalException if the property is not a non-negative
+     *      integer
+     */
+    static int gGetSlowStatementThreshold()
+    {
+        return (int) gGetSetting("dbd.slowstatement", 
+            sDEFAULT_SLOW_STATEMENT_THRESHOLD, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the length of parameter values in the slow statement
+     * log, from the <code>dbd.slowparamlength</code> system property.
+     *
+     * @return the number of characters shown, or 0 if the values 
+     *      shouldn't be shown
+     * @exception FatalException if the property is not a non-negative
+     *      integer
+     */
+    static int gGetSlowParameterLength()
+    {
+        return (int) gGetSetting("dbd.slowparamlength", 
+            sDEFAULT_SLOW_PARAMETER_LENGTH, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the time between round trip profile reports, from the
+     * <code>dbd.profileinterval</code> system property.
+     *
+     * @return the time between reports, in seconds, or 0 if the
+     *      requests shouldn't be profiled
+     * @exception FatalException if the property is not a non-negative
+     *      integer
+     */
+    static int gGetProfileInterval()
+    {
+        return (int) gGetSetting("dbd.profileinterval", 
+            sDEFAULT_PROFILE_INTERVAL, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the number of statements in a round trip profile 
+     * report, from the <code>dbd.profiletop</code> system property.
+     *
+     * @return the number of statements
+     * @exception FatalException if the property is not a positive integer
+     */
+    static int gGetProfileTop()
+    {
+        return (int) gGetLimit("dbd.profiletop", sDEFAULT_PROFILE_TOP, 
+            1000);
+    }
+
+
+    /**
+     * Returns the number of fetch requests per hundred rows above
+     * which a statement is flagged, from the 
+     * <code>dbd.profilefetchratio</code> system property.
+     *
+     * @return the fetch ratio, in percent
+     * @exception FatalException if the property is not a positive integer
+     */
+    static int gGetProfileFetchRatio()
+    {
+        return (int) gGetLimit("dbd.profilefetchratio", 
+            sDEFAULT_PROFILE_FETCH_RATIO, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the number of statement property requests per 
+     * execution above which a statement is flagged, from the 
+     * <code>dbd.profileproperties</code> system property.
+     *
+     * @return the number of property requests
+     * @exception FatalException if the property is not a positive integer
+     */
+    static int gGetProfileProperties()
+    {
+        return (int) gGetLimit("dbd.profileproperties", 
+            sDEFAULT_PROFILE_PROPERTIES, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the number of prepares of a statement per report above
+     * which it is flagged, from the <code>dbd.profileprepares</code>
+     * system property.
+     *
+     * @return the number of prepares
+     * @exception FatalException if the property is not a positive integer
+     */
+    static int gGetProfilePrepares()
+    {
+        return (int) gGetLimit("dbd.profileprepares", 
+            sDEFAULT_PROFILE_PREPARES, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Returns the value of a system property that sets a limit.
+     *
+     * @param aName the property name
+     * @param aDefault the value to use if the property is not set
+     * @param aMaximum the largest value allowed
+     * @return the limit
+     * @exception FatalException if the property is not a positive integer
+     *      no greater than the maximum
+     */
+    private static long gGetLimit(String aName, long aDefault, 
+        long aMaximum)
+    {
+        return gGetLimit(aName, aDefault, 1, aMaximum);
+    }
+
+
+    /**
+     * Returns the value of a system property for which 0 turns
+     * a feature off.
+     *
+     * @param aName the property name
+     * @param aDefault the value to use if the property is not set
+     * @param aMaximum the largest value allowed
+     * @return the value
+     * @exception FatalException if the property is not a non-negative
+     *      integer no greater than the maximum
+     */
+    private static long gGetSetting(String aName, long aDefault, 
+        long aMaximum)
+    {
+        return gGetLimit(aName, aDefault, 0, aMaximum);
+    }
+
+
+    /**
+     * Returns the value of a system property within a range.
+     *
+     * @param aName the property name
+     * @param aDefault the value to use if the property is not set
+     * @param aMinimum the smallest value allowed; 0 or 1
+     * @param aMaximum the largest value allowed
+     * @return the value
+     * @exception FatalException if the property is not an integer
+     *      within the range
+     */
+    private static long gGetLimit(String aName, long aDefault, 
+        long aMinimum, long aMaximum)
+    {
+        String value = System.getProperty(aName);
+        if (value == null)
+            return aDefault;
+        try
+        {
+            long limit = Long.parseLong(value.trim());
+            if (limit >= aMinimum && limit <= aMaximum)
+                return limit;
+        }
+        catch (NumberFormatException nf)
+        {
+        }
+        throw new FatalException("Property " + aName + " is not a " + 
+            ((aMinimum > 0) ? "positive" : "non-negative") + " integer.");
+    }
+
 
     /**
      * Starts a server listening to a given socket for connection
@@ -92,6 +440,19 @@ public class Server implements Runnable
             System.err.println("  -Djdbc.drivers=[driverlist]");
             System.err.println("  -Ddbd.port=[portnum]");
             System.err.println("Optional system properties:");
+            System.err.println("  -Ddbd.maxframesize=[bytes]");
+            System.err.println("  -Ddbd.spools=[count]");
+            System.err.println("  -Ddbd.spoolsize=[bytes]");
+            System.err.println("  -Ddbd.cachesize=[bytes]");
+            System.err.println("  -Ddbd.metadatattl=[seconds]");
+            System.err.println("  -Ddbd.metricsinterval=[seconds]");
+            System.err.println("  -Ddbd.slowstatement=[milliseconds]");
+            System.err.println("  -Ddbd.slowparamlength=[characters]");
+            System.err.println("  -Ddbd.profileinterval=[seconds]");
+            System.err.println("  -Ddbd.profiletop=[count]");
+            System.err.println("  -Ddbd.profilefetchratio=[percent]");
+            System.err.println("  -Ddbd.profileproperties=[count]");
+            System.err.println("  -Ddbd.profileprepares=[count]");
             System.err.println(
                 "  -Ddbd.trace=[silent|brief|verbose|tedious|abusive]");
             return;
@@ -118,6 +479,21 @@ public class Server implements Runnable
             throw new FatalException("Unable to access property dbd.port.");
         }
 
+        // Fail now rather than on the first connection.
+        gGetMaxFrameSize();
+        gGetMaxSpools();
+        gGetMaxSpoolSize();
+        gGetMaxCacheSize();
+        gGetMetaDataTtl();
+        int metricsInterval = gGetMetricsInterval();
+        SlowStatementLog.gConfigure(gGetSlowStatementThreshold(),
+            gGetSlowParameterLength());
+        int profileInterval = gGetProfileInterval();
+        gGetProfileTop();
+        gGetProfileFetchRatio();
+        gGetProfileProperties();
+        gGetProfilePrepares();
+
         NDC.push("[Server]");
 
         String trace = System.getProperty("dbd.trace");
@@ -160,6 +536,12 @@ public class Server implements Runnable
             }
         }
 
+        Metrics.gRegister();
+        if (metricsInterval > 0)
+            Metrics.gStartReports(metricsInterval);
+        if (profileInterval > 0)
+            RoundTripProfile.gStart(profileInterval);
+
         // Set the default character encoding. If the client transmits
         // another character encoding, it must use ASCII to do so.
         try
@@ -277,6 +659,9 @@ public class Server implements Runnable
             // Set the default character encoding. If the client transmits
             // another character encoding, it must use ASCII to do so.
             BerDbdModule.gBerModule.setCharacterEncoding("ASCII");
+            Metrics.gRegister();
+            SlowStatementLog.gConfigure(gGetSlowStatementThreshold(),
+                gGetSlowParameterLength());
             
             Connection dbiConn = new Connection(mSocket.accept(),
                 (BerDbdModule) BerDbdModule.gBerModule.clone(), mConn);
@@ -21,6 +21,8 @@
 package com.vizdom.dbd.jdbc;
 
 import com.vizdom.ber.*;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * A request to set the value of a connection property.
@@ -58,6 +60,22 @@ class SetConnectionPropertyRequest extends BerSequence
         super();
     }    
 
+    /** 
+     * Reads the encoded contents from the input stream.
+     * 
+     * @param anIn an input stream
+     * @param aModule a BER module for reading constructed encodings
+     * @param anIdentifier the BER identifier of the encoded object
+     * @param aLength the length in bytes of the encoded contents
+     * @exception IOException if an error occurs reading the input
+     */
+    protected void mReadContents(InputStream anIn, BerModule aModule,
+        BerIdentifier anIdentifier, int aLength) throws IOException
+    {
+        super.mReadContents(anIn, aModule, anIdentifier, aLength);
+        BerDbdModule.gInternName(aModule, mSequence[0]);
+    }
+
     /**
      * Returns the name of the property whose value should be changed.
      *
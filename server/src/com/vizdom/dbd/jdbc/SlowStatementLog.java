@@ -0,0 +1,407 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.util.CharacterEncoder;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * The slow statement log. Each statement's requests are timed, and
+ * when an execution of a statement finishes, it is logged if its
+ * prepare, execute or total fetch time exceeded the threshold set
+ * by the <code>dbd.slowstatement</code> system property. The log
+ * shows the times, the rows fetched, the bytes sent, the number of
+ * requests, and the statement text and parameters; parameter values
+ * are redacted unless <code>dbd.slowparamlength</code> is set.
+ * <p>
+ * Entries are logged at the WARN level by this class's log4j
+ * logger, on a thread of their own, so that request threads don't
+ * wait for the log to be written. If the log falls behind by more
+ * than <code>sQUEUE_SIZE</code> entries, further entries are 
+ * dropped and the number dropped is logged.
+ *
+ * @see Server
+ */
+class SlowStatementLog
+{
+    /** log4j logger, which writes the slow statement log. */
+    private static final Logger gLog = 
+        Logger.getLogger(SlowStatementLog.class);
+
+    /** The most characters of statement text logged. */
+    private static final int sMAX_STATEMENT_LENGTH = 1000;
+
+    /** The most entries waiting to be logged. */
+    private static final int sQUEUE_SIZE = 1024;
+
+    /** The entries waiting to be logged. */
+    private static final BlockingQueue<Entry> gQueue = 
+        new ArrayBlockingQueue<Entry>(sQUEUE_SIZE);
+
+    /** The number of entries dropped since the last one logged. */
+    private static final AtomicLong gDropped = new AtomicLong();
+
+    /** The thread which logs the entries, or null if not started. */
+    private static Thread gWriter;
+
+    /** The slow statement threshold in nanoseconds; 0 for no log. */
+    private static volatile long gThreshold;
+
+    /** The most characters of each parameter value logged. */
+    private static volatile int gParameterLength;
+
+
+    /**
+     * The timing of the requests for one execution of a statement,
+     * from the end of the previous execution (or the prepare) to
+     * the end of this one.
+     */
+    static class Timing
+    {
+        /** The time spent preparing the statement, in nanoseconds. */
+        private long mPrepareNanos;
+
+        /** The time spent executing the statement, in nanoseconds. */
+        private long mExecuteNanos;
+
+        /** The time spent fetching rows, in nanoseconds. */
+        private long mFetchNanos;
+
+        /** The time spent on other requests, in nanoseconds. */
+        private long mOtherNanos;
+
+        /** The number of rows fetched. */
+        private long mRows;
+
+        /** The number of bytes sent to the client. */
+        private long mBytes;
+
+        /** The number of requests. */
+        private int mRequests;
+
+        /** Whether the statement has been executed. */
+        private boolean mExecuting;
+
+        /** The parameters of the execution, or null. */
+        private Parameter[] mParameters;
+
+        /**
+         * Records a request for the statement.
+         *
+         * @param aTag the request's tag number
+         * @param aNanos the time taken to handle the request, in
+         *      nanoseconds
+         * @param aBytes the size of the response, in bytes
+         * @param aRow true if the response contained a row
+         */
+        void record(int aTag, long aNanos, long aBytes, boolean aRow)
+        {
+            switch (aTag)
+            {
+            case BerDbdModule.gPREPARE_REQUEST:
+                mPrepareNanos += aNanos;
+                break;
+            case BerDbdModule.gEXECUTE_REQUEST:
+            case BerDbdModule.gEXECUTE_BATCH_REQUEST:
+            case BerDbdModule.gMORE_RESULTS_REQUEST:
+                mExecuteNanos += aNanos;
+                break;
+            case BerDbdModule.gFETCH_REQUEST:
+            case BerDbdModule.gFETCH_SCROLL_REQUEST:
+            case BerDbdModule.gLOB_READ_REQUEST:
+                mFetchNanos += aNanos;
+                break;
+            default:
+                mOtherNanos += aNanos;
+                break;
+            }
+            mBytes += aBytes;
+            mRequests++;
+            if (aRow)
+                mRows++;
+        }
+
+        /**
+         * Starts an execution of the statement.
+         *
+         * @param aParameterList the parameters, or null if there are
+         *      several sets of parameters
+         */
+        void start(Parameter[] aParameterList)
+        {
+            mExecuting = true;
+            mParameters = aParameterList;
+        }
+
+        /**
+         * Returns whether the statement has been executed since the
+         * last execution finished.
+         *
+         * @return true if an execution is in progress
+         */
+        boolean isExecuting()
+        {
+            return mExecuting;
+        }
+
+        /**
+         * Finishes an execution of the statement, logging it if it
+         * was slow, and starts timing the next one.
+         *
+         * @param aStatement the statement text
+         * @param anEncoding the client's character encoding, for 
+         *      logging the parameters
+         */
+        void finish(String aStatement, String anEncoding)
+        {
+            long threshold = gThreshold;
+            if (threshold > 0 && (mPrepareNanos > threshold || 
+                mExecuteNanos > threshold || mFetchNanos > threshold))
+            {
+                gWrite(new Entry(this, aStatement, anEncoding));
+            }
+            mPrepareNanos = 0;
+            mExecuteNanos = 0;
+            mFetchNanos = 0;
+            mOtherNanos = 0;
+            mRows = 0;
+            mBytes = 0;
+            mRequests = 0;
+            mExecuting = false;
+            mParameters = null;
+        }
+    }
+
+
+    /**
+     * A slow statement waiting to be logged.
+     */
+    private static class Entry
+    {
+        /** A copy of the statement's timing. */
+        private final Timing mTiming = new Timing();
+
+        /** The statement text. */
+        private final String mStatement;
+
+        /** The client's character encoding. */
+        private final String mEncoding;
+
+        /**
+         * Constructor - initializes fields.
+         *
+         * @param aTiming the statement's timing
+         * @param aStatement the statement text
+         * @param anEncoding the client's character encoding
+         */
+        Entry(Timing aTiming, String aStatement, String anEncoding)
+        {
+            mTiming.mPrepareNanos = aTiming.mPrepareNanos;
+            mTiming.mExecuteNanos = aTiming.mExecuteNanos;
+            mTiming.mFetchNanos = aTiming.mFetchNanos;
+            mTiming.mOtherNanos = aTiming.mOtherNanos;
+            mTiming.mRows = aTiming.mRows;
+            mTiming.mBytes = aTiming.mBytes;
+            mTiming.mRequests = aTiming.mRequests;
+            mTiming.mParameters = aTiming.mParameters;
+            mStatement = aStatement;
+            mEncoding = anEncoding;
+        }
+
+        /**
+         * Returns the log message for this entry.
+         *
+         * @return the log message
+         */
+        public String toString()
+        {
+            StringBuffer b = new StringBuffer("Slow statement: prepare ");
+            b.append(gMillis(mTiming.mPrepareNanos))
+                .append(" ms, execute ")
+                .append(gMillis(mTiming.mExecuteNanos))
+                .append(" ms, fetch ").append(gMillis(mTiming.mFetchNanos))
+                .append(" ms, other ").append(gMillis(mTiming.mOtherNanos))
+                .append(" ms; ").append(mTiming.mRows).append(" rows, ")
+                .append(mTiming.mBytes).append(" bytes, ")
+                .append(mTiming.mRequests).append(" requests: ");
+            if (mStatement == null)
+                b.append("(unknown)");
+            else
+                gAppend(b, mStatement, sMAX_STATEMENT_LENGTH);
+            Parameter[] params = mTiming.mParameters;
+            if (params != null && params.length > 0)
+            {
+                b.append(" [");
+                for (int i = 0; i < params.length; i++)
+                {
+                    if (i > 0)
+                        b.append(", ");
+                    mAppendParameter(b, params[i]);
+                }
+                b.append("]");
+            }
+            return b.toString();
+        }
+
+        /**
+         * Appends a parameter value, redacted or truncated.
+         *
+         * @param aBuffer the message
+         * @param aParameter the parameter
+         */
+        private void mAppendParameter(StringBuffer aBuffer, 
+            Parameter aParameter)
+        {
+            int length = gParameterLength;
+            if (aParameter.value == null)
+                aBuffer.append("NULL");
+            else if (length == 0)
+                aBuffer.append("?");
+            else
+            {
+                String value;
+                try
+                {
+                    value = CharacterEncoder.toString(
+                        aParameter.value.toByteArray(), mEncoding);
+                }
+                catch (UnsupportedEncodingException e)
+                {
+                    throw new com.vizdom.util.UnreachableCodeException();
+                }
+                aBuffer.append('\'');
+                gAppend(aBuffer, value, length);
+                aBuffer.append('\'');
+            }
+        }
+    }
+
+
+    /**
+     * Appends text, truncated to a maximum length.
+     *
+     * @param aBuffer the message
+     * @param aText the text
+     * @param aMaxLength the most characters to append
+     */
+    private static void gAppend(StringBuffer aBuffer, String aText, 
+        int aMaxLength)
+    {
+        if (aText.length() <= aMaxLength)
+            aBuffer.append(aText);
+        else
+            aBuffer.append(aText.substring(0, aMaxLength)).append("...");
+    }
+
+    /**
+     * Formats a time in milliseconds.
+     *
+     * @param aNanos the time, in nanoseconds
+     * @return the time in milliseconds, to three decimal places
+     */
+    private static String gMillis(long aNanos)
+    {
+        return String.format("%.3f", aNanos / 1e6);
+    }
+
+    /**
+     * Sets the threshold and the parameter length, from the 
+     * <code>dbd.slowstatement</code> and 
+     * <code>dbd.slowparamlength</code> system properties. The server
+     * calls this once at startup.
+     *
+     * @param aThreshold the threshold, in milliseconds, or 0 if
+     *      statements shouldn't be logged
+     * @param aParameterLength the most characters of each parameter
+     *      value logged, or 0 to redact the values
+     */
+    static void gConfigure(int aThreshold, int aParameterLength)
+    {
+        gThreshold = aThreshold * 1000000L;
+        gParameterLength = aParameterLength;
+    }
+
+    /**
+     * Queues an entry to be logged, starting the writer thread if
+     * necessary. The entry is dropped if the queue is full.
+     *
+     * @param anEntry the entry
+     */
+    private static void gWrite(Entry anEntry)
+    {
+        if (!gQueue.offer(anEntry))
+        {
+            gDropped.incrementAndGet();
+            return;
+        }
+        synchronized (SlowStatementLog.class)
+        {
+            if (gWriter != null)
+                return;
+            gWriter = new Thread("SlowStatementLog") {
+                    public void run()
+                    {
+                        gRun();
+                    }
+                };
+            gWriter.setDaemon(true);
+            gWriter.start();
+        }
+    }
+
+    /**
+     * Logs the queued entries as they arrive.
+     */
+    private static void gRun()
+    {
+        while (true)
+        {
+            Entry entry;
+            try
+            {
+                entry = gQueue.take();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            // Keep logging if one entry can't be formatted.
+            try
+            {
+                long dropped = gDropped.getAndSet(0);
+                if (dropped > 0)
+                {
+                    gLog.warn(dropped + " slow statements weren't " +
+                        "logged; the log fell behind");
+                }
+                gLog.warn(entry.toString());
+            }
+            catch (RuntimeException e)
+            {
+                gLog.error("Failed to log a slow statement", e);
+            }
+        }
+    }
+}
@@ -79,6 +79,7 @@ class StatementFuncRequest extends BerSequence
 
         // Statement handle is mSequence[0]
         // Method name is mSequence[1]
+        BerDbdModule.gInternName(aModule, mSequence[1]);
 
         int parameterCount = (mSequence.length - 2) / 2;
         mParameters = new Parameter[parameterCount];
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.util;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+
+/**
+ * A character encoding resolved once, for repeated use. The static
+ * methods of CharacterEncoder look up the encoding by name on every
+ * call; this class looks it up when it is constructed and keeps a
+ * CharsetEncoder and CharsetDecoder (or the custom CharacterEncoder)
+ * for the life of the object.
+ * <p>
+ * Strings may be encoded into an internal buffer which grows as
+ * needed and is reused after <code>reset</code>, so that encoding a
+ * series of values doesn't allocate a byte array for each value.
+ * Character arrays may be encoded the same way, so that values read
+ * from a character stream don't have to be made into strings. If a
+ * CharacterFastPath is registered for the encoding, it is used 
+ * instead of the CharsetEncoder.
+ * <p>
+ * Unmappable characters and malformed input are replaced, as they are
+ * by <code>String.getBytes</code> and <code>new String</code>. An
+ * instance is intended to be used by a single connection; the encoding
+ * methods are not thread-safe.
+ *
+ * @author Gennis Emerson
+ * @version $Revision: 1.1 $
+ */
+public final class CharacterCodec
+{
+    /** The initial size of the encoding buffer. */
+    private static final int gINITIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * The largest encoding buffer that is kept by <code>reset</code>,
+     * so that one very large value doesn't pin that much memory for
+     * the life of the connection.
+     */
+    private static final int gMAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /** The characters that may appear in a number. */
+    private static final String gNUMBER_CHARACTERS = " +-.0123456789Ee";
+
+    /** The encoding name. */
+    private final String mEncoding;
+
+    /** The custom encoder, or <code>null</code> for a Java charset. */
+    private final CharacterEncoder mEncoder;
+
+    /** The reusable charset encoder, if <code>mEncoder</code> is null. */
+    private final CharsetEncoder mCharsetEncoder;
+
+    /** The reusable charset decoder, if <code>mEncoder</code> is null. */
+    private final CharsetDecoder mCharsetDecoder;
+
+    /** The fast path for the charset, or <code>null</code>. */
+    private final CharacterFastPath mFastPath;
+
+    /** Whether the characters used in numbers are encoded as ASCII. */
+    private final boolean mEncodesNumbersAsAscii;
+
+    /** The encoding buffer. */
+    private byte[] mBuffer = new byte[gINITIAL_BUFFER_SIZE];
+
+    /** The ByteBuffer wrapping <code>mBuffer</code>. */
+    private ByteBuffer mByteBuffer = ByteBuffer.wrap(mBuffer);
+
+    /** The number of bytes used in <code>mBuffer</code>. */
+    private int mCount;
+
+    /** The scratch buffer for decoding. */
+    private char[] mChars = new char[0];
+
+
+    /**
+     * Constructor. Resolves the encoding name.
+     *
+     * @param anEncoding an encoding name
+     * @exception UnsupportedEncodingException if the
+     *      encoding name is unknown or unsupported on the current platform
+     */
+    public CharacterCodec(String anEncoding)
+        throws UnsupportedEncodingException
+    {
+        if (anEncoding == null)
+            throw new NullPointerException();
+        mEncoding = anEncoding;
+        mEncoder = CharacterEncoder.gGetEncoder(anEncoding);
+        if (mEncoder != null)
+        {
+            mCharsetEncoder = null;
+            mCharsetDecoder = null;
+            mFastPath = null;
+        }
+        else
+        {
+            Charset charset;
+            try
+            {
+                charset = Charset.forName(anEncoding);
+            }
+            catch (IllegalCharsetNameException e)
+            {
+                UnsupportedEncodingException ue =
+                    new UnsupportedEncodingException(anEncoding);
+                ue.initCause(e);
+                throw ue;
+            }
+            catch (UnsupportedCharsetException e)
+            {
+                UnsupportedEncodingException ue =
+                    new UnsupportedEncodingException(anEncoding);
+                ue.initCause(e);
+                throw ue;
+            }
+            mCharsetEncoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            mCharsetDecoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            mFastPath = CharacterFastPath.gGetFastPath(charset);
+        }
+
+        byte[] number = toByteArray(gNUMBER_CHARACTERS);
+        mEncodesNumbersAsAscii = gNUMBER_CHARACTERS.equals(
+            toString(number, 0, number.length)) &&
+            java.util.Arrays.equals(number, 
+                gNUMBER_CHARACTERS.getBytes("US-ASCII"));
+    }
+
+
+    /**
+     * Returns the encoding name given to the constructor.
+     *
+     * @return the encoding name
+     */
+    public String getEncoding()
+    {
+        return mEncoding;
+    }
+
+
+    /**
+     * Returns true if the digits, signs, decimal point and exponent
+     * characters are encoded as their ASCII values, each in a single
+     * byte, and those bytes are decoded as the same characters. If so,
+     * an encoded number consisting only of those bytes can be parsed
+     * without decoding it.
+     *
+     * @return true if numbers are encoded as ASCII
+     */
+    public boolean encodesNumbersAsAscii()
+    {
+        return mEncodesNumbersAsAscii;
+    }
+
+
+    /**
+     * Discards the contents of the encoding buffer.
+     */
+    public void reset()
+    {
+        if (mBuffer.length > gMAX_RETAINED_BUFFER_SIZE)
+        {
+            mBuffer = new byte[gINITIAL_BUFFER_SIZE];
+            mByteBuffer = ByteBuffer.wrap(mBuffer);
+        }
+        mCount = 0;
+    }
+
+
+    /**
+     * Returns the encoding buffer. The encoded bytes are at the
+     * offsets returned by <code>encode</code>. The returned array
+     * may be replaced by a later call to <code>encode</code>.
+     *
+     * @return the encoding buffer
+     */
+    public byte[] getBuffer()
+    {
+        return mBuffer;
+    }
+
+
+    /**
+     * Returns the number of bytes in the encoding buffer.
+     *
+     * @return the number of bytes in the encoding buffer
+     */
+    public int size()
+    {
+        return mCount;
+    }
+
+
+    /**
+     * Makes room for at least the given number of bytes after
+     * <code>mCount</code>.
+     *
+     * @param aLength the number of bytes needed
+     */
+    private void mEnsureCapacity(int aLength)
+    {
+        int needed = mCount + aLength;
+        if (needed < 0)
+            throw new OutOfMemoryError();
+        if (needed > mBuffer.length)
+        {
+            byte[] buffer = new byte[Math.max(needed, 2 * mBuffer.length)];
+            System.arraycopy(mBuffer, 0, buffer, 0, mCount);
+            mBuffer = buffer;
+            mByteBuffer = ByteBuffer.wrap(mBuffer);
+        }
+    }
+
+
+    /**
+     * Encodes the given string, appending the bytes to the encoding
+     * buffer.
+     *
+     * @param aString a string
+     * @return the offset of the encoded bytes in the encoding buffer;
+     *     their length is <code>size()</code> less this offset
+     */
+    public int encode(String aString)
+    {
+        int offset = mCount;
+        int length = aString.length();
+        if (length == 0)
+            return offset;
+
+        if (mFastPath != null)
+        {
+            mEnsureCapacity(length * mFastPath.getMaxBytesPerChar());
+            mCount = mFastPath.encode(aString, 0, length, mBuffer, mCount);
+        }
+        else if (mEncoder != null)
+        {
+            // Custom encodings are single-byte encodings.
+            mEnsureCapacity(length);
+            mEncoder.encode(aString, mBuffer, mCount);
+            mCount += length;
+        }
+        else
+            mEncode(CharBuffer.wrap(aString));
+        return offset;
+    }
+
+
+    /**
+     * Encodes part of the given character array, appending the bytes
+     * to the encoding buffer.
+     *
+     * @param aCharacterArray a character array
+     * @param anOffset the offset in the array of the first character
+     * @param aLength the number of characters to encode
+     * @return the offset of the encoded bytes in the encoding buffer;
+     *     their length is <code>size()</code> less this offset
+     * @exception IndexOutOfBoundsException if the offset or
+     *      length are invalid
+     */
+    public int encode(char[] aCharacterArray, int anOffset, int aLength)
+    {
+        if (anOffset < 0 || aLength < 0 || 
+            anOffset > aCharacterArray.length - aLength)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        int offset = mCount;
+        if (aLength == 0)
+            return offset;
+
+        if (mFastPath != null)
+        {
+            mEnsureCapacity(aLength * mFastPath.getMaxBytesPerChar());
+            mCount = mFastPath.encode(aCharacterArray, anOffset, 
+                anOffset + aLength, mBuffer, mCount);
+        }
+        else if (mEncoder != null)
+        {
+            mEnsureCapacity(aLength);
+            mEncoder.encode(aCharacterArray, anOffset, aLength, 
+                mBuffer, mCount);
+            mCount += aLength;
+        }
+        else
+            mEncode(CharBuffer.wrap(aCharacterArray, anOffset, aLength));
+        return offset;
+    }
+
+
+    /**
+     * Encodes the given characters with the CharsetEncoder, appending
+     * the bytes to the encoding buffer.
+     *
+     * @param aCharacters the characters to encode
+     */
+    private void mEncode(CharBuffer aCharacters)
+    {
+        mEnsureCapacity((int) (aCharacters.remaining() *
+            mCharsetEncoder.averageBytesPerChar()) + 1);
+        mCharsetEncoder.reset();
+        boolean flushing = false;
+        while (true)
+        {
+            mByteBuffer.limit(mBuffer.length);
+            mByteBuffer.position(mCount);
+            CoderResult result = flushing ?
+                mCharsetEncoder.flush(mByteBuffer) :
+                mCharsetEncoder.encode(aCharacters, mByteBuffer, true);
+            mCount = mByteBuffer.position();
+            if (result.isOverflow())
+            {
+                mEnsureCapacity((int) (aCharacters.remaining() *
+                    mCharsetEncoder.maxBytesPerChar()) + 16);
+            }
+            else if (!result.isUnderflow())
+                throw new UnreachableCodeException(); // errors are replaced
+            else if (flushing)
+                return;
+            else
+                flushing = true;
+        }
+    }
+
+
+    /**
+     * Converts the given string to a new byte array. This does not
+     * use or change the encoding buffer.
+     *
+     * @param aString a string to be converted to bytes
+     * @return the bytes corresponding to the characters in the string
+     */
+    public byte[] toByteArray(String aString)
+    {
+        if (mFastPath != null && mFastPath.getMaxBytesPerChar() == 1)
+        {
+            byte[] bytes = new byte[aString.length()];
+            mFastPath.encode(aString, 0, bytes.length, bytes, 0);
+            return bytes;
+        }
+        if (mEncoder != null)
+        {
+            byte[] bytes = new byte[aString.length()];
+            mEncoder.encode(aString, bytes, 0);
+            return bytes;
+        }
+        try
+        {
+            // This encode method resets the encoder itself.
+            ByteBuffer out = mCharsetEncoder.encode(CharBuffer.wrap(aString));
+            byte[] bytes = new byte[out.remaining()];
+            out.get(bytes);
+            return bytes;
+        }
+        catch (CharacterCodingException e)
+        {
+            throw new UnreachableCodeException(e); // errors are replaced
+        }
+    }
+
+
+    /**
+     * Converts part of the given byte array to a string. This method
+     * may be called from any thread.
+     *
+     * @param aByteArray a byte array
+     * @param anOffset the offset into the byte array at which to begin
+     *      converting bytes
+     * @param aLength the number of bytes to convert
+     * @return the string corresponding to the bytes
+     */
+    public String toString(byte[] aByteArray, int anOffset, int aLength)
+    {
+        if (aLength == 0)
+            return "";
+        if (mEncoder != null)
+            return mEncoder.gConvert(aByteArray, anOffset, aLength);
+
+        synchronized (mCharsetDecoder)
+        {
+            int size = (int) Math.ceil(aLength *
+                (double) mCharsetDecoder.maxCharsPerByte());
+            if (mChars.length < size)
+                mChars = new char[size];
+            ByteBuffer in = ByteBuffer.wrap(aByteArray, anOffset, aLength);
+            CharBuffer out = CharBuffer.wrap(mChars);
+            mCharsetDecoder.reset();
+            CoderResult result = mCharsetDecoder.decode(in, out, true);
+            if (result.isUnderflow())
+                result = mCharsetDecoder.flush(out);
+            if (!result.isUnderflow())
+                throw new UnreachableCodeException(); // the buffer is large enough
+            String s = new String(mChars, 0, out.position());
+
+            // Don't keep a very large buffer around.
+            if (mChars.length > gMAX_RETAINED_BUFFER_SIZE)
+                mChars = new char[0];
+            return s;
+        }
+    }
+}
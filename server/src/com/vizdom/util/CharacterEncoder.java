@@ -20,6 +20,7 @@
 
 package com.vizdom.util;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,6 +32,8 @@ import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.StringTokenizer;
 import com.vizdom.util.UnreachableCodeException;
 import org.apache.log4j.Logger;
 
@@ -46,31 +49,211 @@ import org.apache.log4j.Logger;
  * Note that this class only works for single-byte character
  * encodings.
  * <p>
- * The great comedy here is that this class is not currently extensible,
- * either. It is hard-coded for the extra character encodings we happen
- * to need.
+ * Each encoding is defined by a table giving the Unicode character
+ * for each of the 256 byte values. The encoders for DEC_MCS, HP_Roman8,
+ * HP_Roman9 and Europa_3 are built in. Other encodings may be added
+ * with <code>register</code>, or by placing a table named
+ * <code>encodings/<i>name</i>.map</code> next to this class, which is
+ * loaded the first time the encoding is used. See <code>load</code>
+ * for the table format.
+ * <p>
+ * The byte-to-character and character-to-byte maps are precomputed
+ * arrays, so converting a character is a single array access.
  *   
  * @author Gennis Emerson
  * @version $Revision: 1.31 $
  */
-public abstract class CharacterEncoder implements CharacterEncodable
+public class CharacterEncoder implements CharacterEncodable
 {
     /** Log instance for this class. */
     private static final Logger gLog =
         Logger.getLogger(CharacterEncoder.class);
 
-    /** A cache of instantiated encoders. */
+    /** The directory, relative to this class, of encoding tables. */
+    private static final String gRESOURCE_DIRECTORY = "encodings/";
+
+    /** The file name extension of encoding tables. */
+    private static final String gRESOURCE_EXTENSION = ".map";
+
+    /** 
+     * The registered encoders. The built-in encoders have a 
+     * <code>null</code> entry until they are first used.
+     */
     private static HashMap<String, CharacterEncoder> gEncoders;
 
+    /** 
+     * The encoding names known not to be custom encodings, so that
+     * Java encodings don't look for a table resource on every call.
+     */
+    private static HashSet<String> gJavaEncodings;
+
 
     static
     {
-        // All supported non-Java encodings must be listed here.
         gEncoders = new HashMap<String, CharacterEncoder>();
         gEncoders.put("DEC_MCS", null);
         gEncoders.put("HP_Roman8", null);
         gEncoders.put("HP_Roman9", null);
         gEncoders.put("Europa_3", null);
+        gJavaEncodings = new HashSet<String>();
+    }
+
+
+    /**
+     * Registers a custom encoding. The encoder replaces any existing
+     * encoder with the same name. Codecs that have already been 
+     * created for the encoding are not affected.
+     *
+     * @param anEncoding an encoding name
+     * @param anEncoder the encoder for the encoding
+     * @throws NullPointerException if the name or encoder is 
+     *     <code>null</code>
+     */
+    public static synchronized void register(String anEncoding, 
+        CharacterEncoder anEncoder)
+    {
+        if (anEncoding == null || anEncoder == null)
+            throw new NullPointerException();
+        anEncoder.mBuildTables();
+        gEncoders.put(anEncoding, anEncoder);
+        gJavaEncodings.remove(anEncoding);
+    }
+
+
+    /**
+     * Creates an encoder from a table in text form. Each line of the
+     * table has a byte value and the Unicode character it represents,
+     * both as hexadecimal numbers with a "0x" prefix, separated by
+     * white space, as in the mapping tables published by the Unicode
+     * Consortium:
+     * <pre>
+     * 0xA9    0x02CB  # MODIFIER LETTER GRAVE ACCENT
+     * </pre>
+     * Text following a '#' is ignored. One line may instead have the
+     * word "unknown" and the byte to be used for characters that are
+     * not in the encoding; the default is the byte for '?'. Byte 
+     * values that are not listed are decoded as U+FFFD. When more than
+     * one byte value is listed for a character, the lowest is used to
+     * encode it.
+     *
+     * @param anIn a stream containing the table, encoded in ASCII
+     * @return an encoder for the table
+     * @exception IOException if an I/O error occurs, or the table
+     *     is not valid
+     */
+    public static CharacterEncoder load(InputStream anIn) throws IOException
+    {
+        char[] table = new char[256];
+        java.util.Arrays.fill(table, '\ufffd');
+        int unknown = -1;
+
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(anIn, "ASCII"));
+        String line;
+        for (int lineNumber = 1; (line = in.readLine()) != null; 
+             lineNumber++)
+        {
+            int comment = line.indexOf('#');
+            if (comment != -1)
+                line = line.substring(0, comment);
+            StringTokenizer tokens = new StringTokenizer(line);
+            if (!tokens.hasMoreTokens())
+                continue;
+            String first = tokens.nextToken();
+            try
+            {
+                if (first.equals("unknown") && tokens.countTokens() == 1)
+                {
+                    unknown = gParseHex(tokens.nextToken(), 0xFF);
+                    continue;
+                }
+                if (tokens.countTokens() != 1)
+                    throw new NumberFormatException();
+                int b = gParseHex(first, 0xFF);
+                table[b] = (char) gParseHex(tokens.nextToken(), 0xFFFF);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("Invalid encoding table entry " + 
+                    "at line " + lineNumber + ": " + line.trim());
+            }
+        }
+
+        if (unknown == -1)
+        {
+            unknown = '?';
+            for (int i = 0; i < table.length; i++)
+            {
+                if (table[i] == '?')
+                {
+                    unknown = i;
+                    break;
+                }
+            }
+        }
+        return new CharacterEncoder(table, (byte) unknown);
+    }
+
+
+    /**
+     * Parses a hexadecimal number with a "0x" prefix.
+     *
+     * @param aNumber the number
+     * @param aMaximum the largest value allowed
+     * @return the value
+     * @exception NumberFormatException if the number is invalid
+     *     or too large
+     */
+    private static int gParseHex(String aNumber, int aMaximum)
+    {
+        if (!aNumber.startsWith("0x") && !aNumber.startsWith("0X"))
+            throw new NumberFormatException(aNumber);
+        int value = Integer.parseInt(aNumber.substring(2), 16);
+        if (value < 0 || value > aMaximum)
+            throw new NumberFormatException(aNumber);
+        return value;
+    }
+
+
+    /**
+     * Loads the table resource for the given encoding, if there is one.
+     *
+     * @param anEncoding an encoding name
+     * @return an encoder, or <code>null</code> if there is no table
+     *     for the encoding
+     */
+    private static CharacterEncoder gLoadResource(String anEncoding)
+    {
+        // Don't let the name wander out of the directory.
+        for (int i = 0; i < anEncoding.length(); i++)
+        {
+            char c = anEncoding.charAt(i);
+            if (!Character.isLetterOrDigit(c) && "_-.+:".indexOf(c) == -1)
+                return null;
+        }
+        if (anEncoding.length() == 0 || anEncoding.startsWith("."))
+            return null;
+
+        String name = gRESOURCE_DIRECTORY + anEncoding + gRESOURCE_EXTENSION;
+        InputStream in = CharacterEncoder.class.getResourceAsStream(name);
+        if (in == null)
+            return null;
+        try
+        {
+            CharacterEncoder enc = load(in);
+            if (gLog.isDebugEnabled())
+                gLog.debug("Loaded character encoding table " + name);
+            return enc;
+        }
+        catch (IOException e)
+        {
+            gLog.warn("Unable to load character encoding table " + name, e);
+            return null;
+        }
+        finally
+        {
+            try { in.close(); } catch (IOException e) {}
+        }
     }
 
 
@@ -247,13 +430,16 @@ public abstract class CharacterEncoder implements CharacterEncodable
      *     <code>null</code> if the encoding is not a custom encoding (for
      *     example, if the encoding is a standard Java encoding)
      */
-    private static synchronized CharacterEncoder gGetEncoder(String anEncoding)
+    static synchronized CharacterEncoder gGetEncoder(String anEncoding)
     {
         CharacterEncoder enc = gEncoders.get(anEncoding);
+        if (enc != null || anEncoding == null)
+            return enc;
 
-        // All supported encodings must have an entry in the map, which
-        // may be null. Java or unknown encodings will not be in the map.
-        if (enc == null && gEncoders.containsKey(anEncoding))
+        // The built-in encodings have an entry in the map, which
+        // is null until they are used. Other encodings may have a 
+        // table resource; if not, they are Java or unknown encodings.
+        if (gEncoders.containsKey(anEncoding))
         {
             if (anEncoding.equals("DEC_MCS"))
             {
@@ -277,6 +463,15 @@ public abstract class CharacterEncoder implements CharacterEncodable
             }
             else
                 throw new UnreachableCodeException();
+            enc.mBuildTables();
+        }
+        else if (!gJavaEncodings.contains(anEncoding))
+        {
+            enc = gLoadResource(anEncoding);
+            if (enc == null)
+                gJavaEncodings.add(anEncoding);
+            else
+                gEncoders.put(anEncoding, enc);
         }
         return enc;
     }
@@ -315,36 +510,188 @@ public abstract class CharacterEncoder implements CharacterEncodable
      */
     protected byte mNativeUnknownCharacter;
 
-    // ??? Are the rest of these methods supposed to be private, protected,
-    // package, or public? (The class used to be package, so they could have
-    // been intended as any of the above.)
-
+    /** 
+     * The precomputed byte to character map, indexed by unsigned byte
+     * value. This is built from the tables above.
+     */
+    private char[] mDecodeTable;
 
     /** 
-     * Converts a string to bytes.
+     * The precomputed character to byte map, with an entry for every
+     * <code>char</code> value. This is built from the tables above.
+     */
+    private byte[] mEncodeTable;
+
+
+    /**
+     * Constructor for subclasses, which must assign the mapping
+     * tables. The tables are used when the encoder is registered.
+     */
+    protected CharacterEncoder()
+    {
+    }
+
+
+    /**
+     * Creates an encoder for a single-byte encoding defined by the
+     * Unicode character for each byte value. Byte values that are not
+     * in the encoding should map to U+FFFD. When more than one byte
+     * value maps to a character, the lowest is used to encode it.
+     *
+     * @param aByteToCharTable the character for each byte value
+     * @param aNativeUnknownCharacter the byte to use for characters
+     *     that are not in the encoding
+     * @throws IllegalArgumentException if the table does not have
+     *     256 entries
+     */
+    public CharacterEncoder(char[] aByteToCharTable, 
+        byte aNativeUnknownCharacter)
+    {
+        if (aByteToCharTable.length != 256)
+        {
+            throw new IllegalArgumentException(
+                "Encoding table has " + aByteToCharTable.length + 
+                " entries instead of 256");
+        }
+        mNativeUnknownCharacter = aNativeUnknownCharacter;
+        mDecodeTable = (char[]) aByteToCharTable.clone();
+        mEncodeTable = new byte[65536];
+        java.util.Arrays.fill(mEncodeTable, aNativeUnknownCharacter);
+        for (int i = 255; i >= 0; i--)
+        {
+            if (mDecodeTable[i] != mUnicodeUnknownCharacter)
+                mEncodeTable[mDecodeTable[i]] = (byte) i;
+        }
+    }
+
+
+    /**
+     * Builds the precomputed maps from the mapping tables assigned by
+     * a subclass, if that hasn't been done yet.
+     */
+    final synchronized void mBuildTables()
+    {
+        if (mEncodeTable != null)
+            return;
+
+        char[] decodeTable = new char[256];
+        for (int i = 0; i < decodeTable.length; i++)
+        {
+            decodeTable[i] = (i < mByteToCharTable.length) ? 
+                (char) mByteToCharTable[i] : mUnicodeUnknownCharacter;
+        }
+
+        byte[] encodeTable = new byte[65536];
+        java.util.Arrays.fill(encodeTable, mNativeUnknownCharacter);
+        for (int i = 0; i < mCharToByteTable.length; i++)
+            encodeTable[i] = (byte) (mCharToByteTable[i] & 0xFF);
+        if (mCharExceptions != null)
+        {
+            // Assign in reverse so that the first exception wins.
+            for (int i = mCharExceptions.length - 1; i >= 0; i--)
+            {
+                if (mCharExceptions[i] >= mCharToByteTable.length)
+                    encodeTable[mCharExceptions[i]] = mByteExceptions[i];
+            }
+        }
+
+        mDecodeTable = decodeTable;
+        mEncodeTable = encodeTable;
+    }
+
+
+    /**
+     * Converts part of a string to bytes, storing them in the given
+     * array. Exactly one byte is stored for each character.
      *
      * @param aString a string to be converted
-     * @return the bytes corresponding to the characters in the string
+     * @param aByteArray the array in which to store the bytes
+     * @param anOffset the offset in the byte array of the first byte
+     * @exception IndexOutOfBoundsException if the byte array
+     *      is too small
      */
-    private byte[] gConvertAll(String aString)
+    public final void encode(String aString, byte[] aByteArray, int anOffset)
     {
-        byte[] bytes = new byte[aString.length()];
-        for (int i = 0; i < aString.length(); i++)
-            bytes[i] = getNative(aString.charAt(i));
-        return bytes;
+        byte[] table = mEncodeTable;
+        int length = aString.length();
+        if (anOffset < 0 || anOffset > aByteArray.length - length)
+            throw new IndexOutOfBoundsException();
+        for (int i = 0; i < length; i++)
+            aByteArray[anOffset + i] = table[aString.charAt(i)];
     }
 
 
     /**
-     * Converts a character array to bytes. This is useful for a Writer.
+     * Converts part of a character array to bytes, storing them in
+     * the given array. Exactly one byte is stored for each character.
      *
      * @param aCharacterArray an array of characters to be converted
-     *      to bytes
-     * @return the bytes corresponding to the given characters
+     * @param anOffset the offset in the character array at which to begin
+     *      converting characters
+     * @param aLength the number of characters to convert
+     * @param aByteArray the array in which to store the bytes
+     * @param aByteOffset the offset in the byte array of the first byte
+     * @exception IndexOutOfBoundsException if the offsets or
+     *      length are invalid
      */
-    private byte[] gConvertAll(char[] aCharacterArray)
+    public final void encode(char[] aCharacterArray, int anOffset, 
+        int aLength, byte[] aByteArray, int aByteOffset)
     {
-        return gConvert(aCharacterArray, 0, aCharacterArray.length);
+        byte[] table = mEncodeTable;
+        if (anOffset < 0 || aLength < 0 || aByteOffset < 0 ||
+            anOffset > aCharacterArray.length - aLength ||
+            aByteOffset > aByteArray.length - aLength)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = 0; i < aLength; i++)
+            aByteArray[aByteOffset + i] = table[aCharacterArray[anOffset + i]];
+    }
+
+
+    /**
+     * Converts part of a byte array to characters, storing them in
+     * the given array. Exactly one character is stored for each byte.
+     *
+     * @param aByteArray an array of bytes to be converted
+     * @param anOffset the offset in the byte array at which to begin
+     *      converting bytes
+     * @param aLength the number of bytes to convert
+     * @param aCharacterArray the array in which to store the characters
+     * @param aCharacterOffset the offset in the character array of the
+     *      first character
+     * @exception IndexOutOfBoundsException if the offsets or
+     *      length are invalid
+     */
+    public final void decode(byte[] aByteArray, int anOffset, int aLength,
+        char[] aCharacterArray, int aCharacterOffset)
+    {
+        char[] table = mDecodeTable;
+        if (anOffset < 0 || aLength < 0 || aCharacterOffset < 0 ||
+            anOffset > aByteArray.length - aLength ||
+            aCharacterOffset > aCharacterArray.length - aLength)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = 0; i < aLength; i++)
+        {
+            aCharacterArray[aCharacterOffset + i] = 
+                table[aByteArray[anOffset + i] & 0xFF];
+        }
+    }
+
+
+    /** 
+     * Converts a string to bytes.
+     *
+     * @param aString a string to be converted
+     * @return the bytes corresponding to the characters in the string
+     */
+    private byte[] gConvertAll(String aString)
+    {
+        byte[] bytes = new byte[aString.length()];
+        encode(aString, bytes, 0);
+        return bytes;
     }
 
 
@@ -357,14 +704,13 @@ public abstract class CharacterEncoder implements CharacterEncodable
      *      converting characters
      * @param aLength the number of characters to convert
      * @return the bytes corresponding to the given characters
-     * @exception ArrayIndexOutOfBoundsException if the offset or
+     * @exception IndexOutOfBoundsException if the offset or
      *      length are invalid
      */
     final byte[] gConvert(char[] aCharacterArray, int anOffset, int aLength)
     {
         byte[] bytes = new byte[aLength];
-        for (int i = anOffset; i < anOffset + aLength; i++)
-            bytes[i] = getNative(aCharacterArray[i]);
+        encode(aCharacterArray, anOffset, aLength, bytes, 0);
         return bytes;
     }
 
@@ -391,12 +737,11 @@ public abstract class CharacterEncoder implements CharacterEncodable
      * @return the string corresponding to the bytes,
      *      using the given encoding
      */
-    private String gConvert(byte[] aByteArray, int anOffset, int aLength)
+    final String gConvert(byte[] aByteArray, int anOffset, int aLength)
     {
-        StringBuffer buffer = new StringBuffer(aLength);
-        for (int i = anOffset; i < anOffset + aLength; i++)
-            buffer.append(getUnicode(aByteArray[i]));
-        return buffer.toString();
+        char[] chars = new char[aLength];
+        decode(aByteArray, anOffset, aLength, chars, 0);
+        return new String(chars);
     }
 
 
@@ -407,22 +752,9 @@ public abstract class CharacterEncoder implements CharacterEncodable
      * @return the native byte representation of the given character,
      *      or a default value if no encoding is known
      */
-    private byte getNative(char aCharacter)
+    final byte getNative(char aCharacter)
     {
-        int index = (int) aCharacter;
-        if (index < mCharToByteTable.length)
-            return (byte) (mCharToByteTable[index] & 0xFF);
-        else if (mCharExceptions != null)
-        {
-            for (int i = 0; i < mCharExceptions.length; i++)
-            {
-                if (mCharExceptions[i] == aCharacter)
-                    return mByteExceptions[i];
-            }
-            return mNativeUnknownCharacter;
-        }
-        else
-            return mNativeUnknownCharacter;
+        return mEncodeTable[aCharacter];
     }
 
 
@@ -435,8 +767,7 @@ public abstract class CharacterEncoder implements CharacterEncodable
      */
     final char getUnicode(byte aByte)
     {
-        int index = aByte & 0xFF;
-        return (char) mByteToCharTable[index];
+        return mDecodeTable[aByte & 0xFF];
     }
 
 
@@ -450,13 +781,9 @@ public abstract class CharacterEncoder implements CharacterEncodable
      */
     public boolean canEncode(char aCharacter)
     {
-        int index = (int) aCharacter;
-        if (index < mCharToByteTable.length && 
-            (((byte) aCharacter) == mNativeUnknownCharacter))
-        {
-            return true;
-        }
-        return getNative(aCharacter) != mNativeUnknownCharacter;
+        // The unknown byte itself stands for some character.
+        return mEncodeTable[aCharacter] != mNativeUnknownCharacter ||
+            mDecodeTable[mNativeUnknownCharacter & 0xFF] == aCharacter;
     }
 }
 
@@ -1111,9 +1438,7 @@ class CharacterEncoderReader extends Reader
         if (count == -1)
             return count;
         
-        for (int i = 0; i < bytes.length; i++)
-            aCharacterBuffer[anOffset + i] = mEncoder.getUnicode(bytes[i]);
-
+        mEncoder.decode(bytes, 0, count, aCharacterBuffer, anOffset);
         return count;
     }
 
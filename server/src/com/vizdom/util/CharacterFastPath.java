@@ -0,0 +1,399 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.util;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+
+
+/**
+ * Encodes characters directly into a byte array for one encoding,
+ * without going through a CharsetEncoder. CharacterCodec uses a fast
+ * path, if one is registered for its encoding, in place of its
+ * CharsetEncoder. This avoids wrapping each value in a CharBuffer and
+ * lets the loop over the characters be compiled for the encoding.
+ * <p>
+ * Fast paths for US-ASCII, ISO-8859-1 and UTF-8 are registered by
+ * default. A fast path must produce exactly the bytes that 
+ * <code>String.getBytes</code> would, including the replacement
+ * byte for unmappable characters.
+ *
+ * @author Gennis Emerson
+ * @version $Revision: 1.1 $
+ */
+public abstract class CharacterFastPath
+{
+    /** The registered fast paths, by canonical charset name. */
+    private static HashMap<String, CharacterFastPath> gFastPaths;
+
+
+    static
+    {
+        gFastPaths = new HashMap<String, CharacterFastPath>();
+        gFastPaths.put("US-ASCII", new CharacterFastPathAscii());
+        gFastPaths.put("ISO-8859-1", new CharacterFastPathLatin1());
+        gFastPaths.put("UTF-8", new CharacterFastPathUtf8());
+    }
+
+
+    /**
+     * Registers a fast path for a Java charset. The fast path will be
+     * used by codecs created afterwards for the charset or any of its
+     * aliases.
+     *
+     * @param anEncoding the name of a charset supported by this JVM
+     * @param aFastPath the fast path for the charset
+     * @throws IllegalArgumentException if the charset is not supported
+     * @throws NullPointerException if the fast path is <code>null</code>
+     */
+    public static synchronized void register(String anEncoding, 
+        CharacterFastPath aFastPath)
+    {
+        if (aFastPath == null)
+            throw new NullPointerException();
+        try
+        {
+            gFastPaths.put(Charset.forName(anEncoding).name(), aFastPath);
+        }
+        catch (IllegalCharsetNameException e)
+        {
+            throw new IllegalArgumentException(e.toString());
+        }
+        catch (UnsupportedCharsetException e)
+        {
+            throw new IllegalArgumentException(e.toString());
+        }
+    }
+
+
+    /**
+     * Returns the fast path registered for the given charset.
+     *
+     * @param aCharset a charset
+     * @return the fast path, or <code>null</code> if there is none
+     */
+    static synchronized CharacterFastPath gGetFastPath(Charset aCharset)
+    {
+        return gFastPaths.get(aCharset.name());
+    }
+
+
+    /**
+     * Returns the largest number of bytes produced for one character.
+     *
+     * @return the largest number of bytes produced for one character
+     */
+    public abstract int getMaxBytesPerChar();
+
+
+    /**
+     * Encodes part of a string. The byte array must have room for
+     * <code>getMaxBytesPerChar()</code> bytes for each character.
+     *
+     * @param aString a string
+     * @param aStart the index of the first character to encode
+     * @param anEnd the index after the last character to encode
+     * @param aBuffer the byte array in which to store the bytes
+     * @param anOffset the offset in the byte array of the first byte
+     * @return the offset in the byte array after the last byte stored
+     */
+    public abstract int encode(String aString, int aStart, int anEnd,
+        byte[] aBuffer, int anOffset);
+
+
+    /**
+     * Encodes part of a character array. The byte array must have
+     * room for <code>getMaxBytesPerChar()</code> bytes for each character.
+     *
+     * @param aCharacterArray a character array
+     * @param aStart the index of the first character to encode
+     * @param anEnd the index after the last character to encode
+     * @param aBuffer the byte array in which to store the bytes
+     * @param anOffset the offset in the byte array of the first byte
+     * @return the offset in the byte array after the last byte stored
+     */
+    public abstract int encode(char[] aCharacterArray, int aStart, int anEnd,
+        byte[] aBuffer, int anOffset);
+
+
+    /**
+     * Returns true if the character at the given index begins a
+     * surrogate pair, which the JDK encoders replace with a single
+     * replacement byte in single-byte encodings.
+     *
+     * @param aCharacter a character
+     * @param aNext the index of the following character
+     * @param anEnd the index after the last character
+     * @param aString the characters, as a string
+     * @return true if the characters form a surrogate pair
+     */
+    static boolean gIsSurrogatePair(char aCharacter, int aNext, int anEnd,
+        String aString)
+    {
+        return Character.isHighSurrogate(aCharacter) && aNext < anEnd &&
+            Character.isLowSurrogate(aString.charAt(aNext));
+    }
+
+
+    /**
+     * Returns true if the character at the given index begins a
+     * surrogate pair.
+     *
+     * @param aCharacter a character
+     * @param aNext the index of the following character
+     * @param anEnd the index after the last character
+     * @param aCharacterArray the characters
+     * @return true if the characters form a surrogate pair
+     */
+    static boolean gIsSurrogatePair(char aCharacter, int aNext, int anEnd,
+        char[] aCharacterArray)
+    {
+        return Character.isHighSurrogate(aCharacter) && aNext < anEnd &&
+            Character.isLowSurrogate(aCharacterArray[aNext]);
+    }
+}
+
+
+/**
+ * Encodes US-ASCII. Characters above 127 are replaced with '?'.
+ *
+ * @author Gennis Emerson
+ */
+class CharacterFastPathAscii extends CharacterFastPath
+{
+    public int getMaxBytesPerChar()
+    {
+        return 1;
+    }
+
+    public int encode(String aString, int aStart, int anEnd, 
+        byte[] aBuffer, int anOffset)
+    {
+        int j = anOffset;
+        for (int i = aStart; i < anEnd; i++)
+        {
+            char c = aString.charAt(i);
+            if (c < 0x80)
+                aBuffer[j++] = (byte) c;
+            else
+            {
+                if (gIsSurrogatePair(c, i + 1, anEnd, aString))
+                    i++;
+                aBuffer[j++] = (byte) '?';
+            }
+        }
+        return j;
+    }
+
+    public int encode(char[] aCharacterArray, int aStart, int anEnd, 
+        byte[] aBuffer, int anOffset)
+    {
+        int j = anOffset;
+        for (int i = aStart; i < anEnd; i++)
+        {
+            char c = aCharacterArray[i];
+            if (c < 0x80)
+                aBuffer[j++] = (byte) c;
+            else
+            {
+                if (gIsSurrogatePair(c, i + 1, anEnd, aCharacterArray))
+                    i++;
+                aBuffer[j++] = (byte) '?';
+            }
+        }
+        return j;
+    }
+}
+
+
+/**
+ * Encodes ISO-8859-1. Characters above 255 are replaced with '?'.
+ *
+ * @author Gennis Emerson
+ */
+class CharacterFastPathLatin1 extends CharacterFastPath
+{
+    public int getMaxBytesPerChar()
+    {
+        return 1;
+    }
+
+    public int encode(String aString, int aStart, int anEnd, 
+        byte[] aBuffer, int anOffset)
+    {
+        int j = anOffset;
+        for (int i = aStart; i < anEnd; i++)
+        {
+            char c = aString.charAt(i);
+            if (c < 0x100)
+                aBuffer[j++] = (byte) c;
+            else
+            {
+                if (gIsSurrogatePair(c, i + 1, anEnd, aString))
+                    i++;
+                aBuffer[j++] = (byte) '?';
+            }
+        }
+        return j;
+    }
+
+    public int encode(char[] aCharacterArray, int aStart, int anEnd, 
+        byte[] aBuffer, int anOffset)
+    {
+        int j = anOffset;
+        for (int i = aStart; i < anEnd; i++)
+        {
+            char c = aCharacterArray[i];
+            if (c < 0x100)
+                aBuffer[j++] = (byte) c;
+            else
+            {
+                if (gIsSurrogatePair(c, i + 1, anEnd, aCharacterArray))
+                    i++;
+                aBuffer[j++] = (byte) '?';
+            }
+        }
+        return j;
+    }
+}
+
+
+/**
+ * Encodes UTF-8. Unpaired surrogates are replaced with '?'.
+ *
+ * @author Gennis Emerson
+ */
+class CharacterFastPathUtf8 extends CharacterFastPath
+{
+    public int getMaxBytesPerChar()
+    {
+        // A surrogate pair takes four bytes for two characters.
+        return 3;
+    }
+
+    public int encode(String aString, int aStart, int anEnd, 
+        byte[] aBuffer, int anOffset)
+    {
+        int j = anOffset;
+        int i = aStart;
+
+        // Runs of ASCII are the common case.
+        while (i < anEnd)
+        {
+            char c = aString.charAt(i);
+            if (c >= 0x80)
+                break;
+            aBuffer[j++] = (byte) c;
+            i++;
+        }
+
+        for (; i < anEnd; i++)
+        {
+            char c = aString.charAt(i);
+            if (c < 0x80)
+                aBuffer[j++] = (byte) c;
+            else if (c < 0x800)
+            {
+                aBuffer[j++] = (byte) (0xC0 | (c >> 6));
+                aBuffer[j++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (!Character.isSurrogate(c))
+            {
+                aBuffer[j++] = (byte) (0xE0 | (c >> 12));
+                aBuffer[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                aBuffer[j++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (gIsSurrogatePair(c, i + 1, anEnd, aString))
+            {
+                j = gEncodeSupplementary(
+                    Character.toCodePoint(c, aString.charAt(++i)),
+                    aBuffer, j);
+            }
+            else
+                aBuffer[j++] = (byte) '?';
+        }
+        return j;
+    }
+
+    public int encode(char[] aCharacterArray, int aStart, int anEnd, 
+        byte[] aBuffer, int anOffset)
+    {
+        int j = anOffset;
+        int i = aStart;
+
+        // Runs of ASCII are the common case.
+        while (i < anEnd)
+        {
+            char c = aCharacterArray[i];
+            if (c >= 0x80)
+                break;
+            aBuffer[j++] = (byte) c;
+            i++;
+        }
+
+        for (; i < anEnd; i++)
+        {
+            char c = aCharacterArray[i];
+            if (c < 0x80)
+                aBuffer[j++] = (byte) c;
+            else if (c < 0x800)
+            {
+                aBuffer[j++] = (byte) (0xC0 | (c >> 6));
+                aBuffer[j++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (!Character.isSurrogate(c))
+            {
+                aBuffer[j++] = (byte) (0xE0 | (c >> 12));
+                aBuffer[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                aBuffer[j++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (gIsSurrogatePair(c, i + 1, anEnd, aCharacterArray))
+            {
+                j = gEncodeSupplementary(
+                    Character.toCodePoint(c, aCharacterArray[++i]),
+                    aBuffer, j);
+            }
+            else
+                aBuffer[j++] = (byte) '?';
+        }
+        return j;
+    }
+
+    /**
+     * Stores the four-byte encoding of a supplementary code point.
+     *
+     * @param aCodePoint a code point above U+FFFF
+     * @param aBuffer the byte array in which to store the bytes
+     * @param anOffset the offset in the byte array of the first byte
+     * @return the offset in the byte array after the last byte stored
+     */
+    private static int gEncodeSupplementary(int aCodePoint, byte[] aBuffer,
+        int anOffset)
+    {
+        aBuffer[anOffset] = (byte) (0xF0 | (aCodePoint >> 18));
+        aBuffer[anOffset + 1] = (byte) (0x80 | ((aCodePoint >> 12) & 0x3F));
+        aBuffer[anOffset + 2] = (byte) (0x80 | ((aCodePoint >> 6) & 0x3F));
+        aBuffer[anOffset + 3] = (byte) (0x80 | (aCodePoint & 0x3F));
+        return anOffset + 4;
+    }
+}
@@ -247,4 +247,472 @@ public class BerTest extends TestCase
         assertEquals("[hello, world, 42, NULL]",
             inputSeq.toString());
     }
+
+
+    /**
+     * Tests indefinite-length BER sequence encoding/decoding.
+     *
+     * @throws Exception if an error occurs
+     */
+    public void testStreamingSequence() throws Exception
+    {
+        BerOctetString berString = new BerOctetString("hi", "ASCII");
+        BerInteger berInt = new BerInteger(42);
+        java.util.Vector<BerObject> elements = new java.util.Vector<BerObject>();
+        elements.addElement(berString);
+        elements.addElement(new BerStreamingSequence(
+            new java.util.Vector<BerObject>().elements()));
+        elements.addElement(berInt);
+
+        byte[] berEncoding = {
+            (byte) (BerTypes.UNIVERSAL | BerTypes.CONSTRUCTED |
+                BerTypes.SEQUENCE), (byte) 0x80,
+            (byte) BerTypes.OCTET_STRING, (byte) 2, (byte) 'h', (byte) 'i',
+            (byte) (BerTypes.UNIVERSAL | BerTypes.CONSTRUCTED |
+                BerTypes.SEQUENCE), (byte) 0x80, (byte) 0, (byte) 0,
+            (byte) BerTypes.INTEGER, (byte) 1, (byte) 42,
+            (byte) 0, (byte) 0
+        };
+
+        BerModule module = new BerModule();
+        module.setCharacterEncoding("ASCII");
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        BerStreamingSequence berSeq = 
+            new BerStreamingSequence(elements.elements());
+        berSeq.writeTo(bout);
+        byte[] bytes = bout.toByteArray();
+        assertEquals("byte array length", berEncoding.length, bytes.length);
+        for (int i = 0; i < bytes.length; i++)
+            assertEquals("byte array element " + i, berEncoding[i], bytes[i]);
+
+        try
+        {
+            berSeq.writeTo(new ByteArrayOutputStream());
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException e)
+        {
+        }
+
+        ByteArrayInputStream bin = new ByteArrayInputStream(bytes);
+        BerSequence inputSeq = (BerSequence) module.readFrom(bin);
+        assertEquals("[hi, [], 42]", inputSeq.toString());
+        assertEquals(-1, bin.read());
+
+        // An indefinite-length sequence inside a definite-length one.
+        bout = new ByteArrayOutputStream();
+        new BerSequence(new BerObject[] { new BerSequence(new BerObject[0]),
+            new BerStreamingSequence(new BerObjectEnumeration(
+                new BerObject[] { berString, berInt })) }).writeTo(bout);
+        bin = new ByteArrayInputStream(bout.toByteArray());
+        inputSeq = (BerSequence) module.readFrom(bin);
+        assertEquals("[[], [hi, 42]]", inputSeq.toString());
+    }
+
+
+    /**
+     * Tests that malformed indefinite-length encodings are rejected.
+     *
+     * @throws Exception if an error occurs
+     */
+    public void testBadIndefiniteLength() throws Exception
+    {
+        BerModule module = new BerModule();
+        module.setCharacterEncoding("ASCII");
+
+        byte[][] badEncodings = {
+            // A primitive encoding with an indefinite length.
+            { (byte) BerTypes.OCTET_STRING, (byte) 0x80, (byte) 'h',
+              (byte) 0, (byte) 0 },
+            // A missing end-of-contents marker.
+            { (byte) (BerTypes.CONSTRUCTED | BerTypes.SEQUENCE), (byte) 0x80,
+              (byte) BerTypes.NULL, (byte) 0 },
+            // An end-of-contents marker in a definite-length encoding.
+            { (byte) (BerTypes.CONSTRUCTED | BerTypes.SEQUENCE), (byte) 4,
+              (byte) BerTypes.NULL, (byte) 0, (byte) 0, (byte) 0 },
+        };
+        for (int i = 0; i < badEncodings.length; i++)
+        {
+            try
+            {
+                module.readFrom(new ByteArrayInputStream(badEncodings[i]));
+                fail("Expected IOException for encoding " + i);
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+
+    /**
+     * Encodes a BER object and decodes it again.
+     *
+     * @param aModule a BER module
+     * @param anObject the object to encode
+     * @return the decoded object
+     * @throws IOException if an error occurs
+     */
+    private static BerObject roundTrip(BerModule aModule, BerObject anObject)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        anObject.writeTo(bout);
+        ByteArrayInputStream bin = 
+            new ByteArrayInputStream(bout.toByteArray());
+        BerObject bero = aModule.readFrom(bin);
+        assertEquals("trailing bytes", -1, bin.read());
+        return bero;
+    }
+
+
+    /**
+     * Tests 64-bit BER INTEGER encoding/decoding.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testBerLong() throws IOException
+    {
+        BerModule module = new BerModule();
+
+        long[] longs = { 0, 1, -1, 127, 128, -128, -129, 0x7FFFFFFFL,
+            0x80000000L, -0x80000000L, -0x80000001L, 0xFFFFFFFFL,
+            0x123456789ABCL, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (int i = 0; i < longs.length; i++)
+        {
+            BerObject bero = roundTrip(module, new BerLong(longs[i]));
+            long value;
+            if (longs[i] >= Integer.MIN_VALUE && longs[i] <= Integer.MAX_VALUE)
+                value = ((BerInteger) bero).longValue();
+            else
+                value = ((BerLong) bero).longValue();
+            assertEquals(longs[i], value);
+        }
+
+        // BerLong and BerInteger use the same encoding.
+        ByteArrayOutputStream intOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream longOut = new ByteArrayOutputStream();
+        new BerInteger(-32768).writeTo(intOut);
+        new BerLong(-32768).writeTo(longOut);
+        assertEquals(intOut.toString("ISO-8859-1"), 
+            longOut.toString("ISO-8859-1"));
+
+        try
+        {
+            module.readFrom(new ByteArrayInputStream(new byte[] {
+                (byte) BerTypes.INTEGER, (byte) 9, 1, 0, 0, 0, 0, 0, 0, 0, 0 }));
+            fail("Expected IOException");
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+
+    /**
+     * Tests BER REAL encoding/decoding.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testBerReal() throws IOException
+    {
+        BerModule module = new BerModule();
+
+        double[] doubles = { 0.0, -0.0, 1.0, -1.0, 0.5, 3.141592653589793,
+            -2.5e-300, 1.0e300, Double.MAX_VALUE, Double.MIN_VALUE,
+            Double.MIN_NORMAL, 4.9e-320, 123456789.125,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN };
+        for (int i = 0; i < doubles.length; i++)
+        {
+            BerReal bero = (BerReal) roundTrip(module, new BerReal(doubles[i]));
+            assertEquals("value " + i, 
+                Double.doubleToLongBits(doubles[i]),
+                Double.doubleToLongBits(bero.doubleValue()));
+        }
+
+        // 1.0 is 1 * 2^0: binary, base 2, one exponent octet.
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        new BerReal(1.0).writeTo(bout);
+        byte[] bytes = bout.toByteArray();
+        byte[] berEncoding = { (byte) BerTypes.REAL, 3, (byte) 0x80, 0, 1 };
+        assertEquals("byte array length", berEncoding.length, bytes.length);
+        for (int i = 0; i < bytes.length; i++)
+            assertEquals("byte array element " + i, berEncoding[i], bytes[i]);
+
+        // Other bases and scaling factors: 3 * 16^1 * 2^1 = 96, and
+        // the decimal NR3 form.
+        byte[][] encodings = {
+            { (byte) BerTypes.REAL, 3, (byte) 0xA4, 1, 3 },
+            { (byte) BerTypes.REAL, 8, 3, '-', '1', '2', ',', '5', 'E', '1' },
+        };
+        double[] values = { 96.0, -125.0 };
+        for (int i = 0; i < encodings.length; i++)
+        {
+            BerReal bero = (BerReal) module.readFrom(
+                new ByteArrayInputStream(encodings[i]));
+            assertEquals(values[i], bero.doubleValue(), 0.0);
+        }
+    }
+
+
+    /**
+     * Tests BER BOOLEAN and ENUMERATED encoding/decoding.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testBerBoolean() throws IOException
+    {
+        BerModule module = new BerModule();
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        new BerBoolean(true).writeTo(bout);
+        byte[] bytes = bout.toByteArray();
+        assertEquals(3, bytes.length);
+        assertEquals((byte) 0xFF, bytes[2]);
+
+        assertTrue(((BerBoolean) roundTrip(module, 
+            new BerBoolean(true))).booleanValue());
+        assertFalse(((BerBoolean) roundTrip(module, 
+            new BerBoolean(false))).booleanValue());
+        assertEquals(7, ((BerEnumerated) roundTrip(module,
+            new BerEnumerated(7))).intValue());
+    }
+
+
+    /**
+     * Tests BER GeneralizedTime, DATE and TIME-OF-DAY encoding/decoding.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testBerTime() throws IOException
+    {
+        BerModule module = new BerModule();
+
+        long[] times = { 0L, 1225888200000L, 1225888200250L, -1L,
+            253402300799999L };
+        int[] nanos = { 0, 0, 250000000, 999000000, 999999999 };
+        String[] strings = { "19700101000000Z", "20081105123000Z",
+            "20081105123000.25Z", "19691231235959.999Z",
+            "99991231235959.999999999Z" };
+        for (int i = 0; i < times.length; i++)
+        {
+            BerGeneralizedTime berTime = 
+                new BerGeneralizedTime(times[i], nanos[i]);
+            assertEquals(strings[i], berTime.toString());
+            BerGeneralizedTime inputTime = 
+                (BerGeneralizedTime) roundTrip(module, berTime);
+            assertEquals(times[i], inputTime.getTime());
+            assertEquals(nanos[i], inputTime.getNanos());
+        }
+
+        // Time zone offsets and omitted fields.
+        String[] encodings = { "200811051330+0100", "2008110507-0530",
+            "20081105123000,25Z" };
+        long[] decodedTimes = { 1225888200000L, 1225888200000L, 
+            1225888200250L };
+        for (int i = 0; i < encodings.length; i++)
+        {
+            byte[] contents = encodings[i].getBytes("US-ASCII");
+            byte[] bytes = new byte[contents.length + 2];
+            bytes[0] = (byte) BerTypes.GeneralizedTime;
+            bytes[1] = (byte) contents.length;
+            System.arraycopy(contents, 0, bytes, 2, contents.length);
+            BerGeneralizedTime inputTime = (BerGeneralizedTime) 
+                module.readFrom(new ByteArrayInputStream(bytes));
+            assertEquals(encodings[i], decodedTimes[i], inputTime.getTime());
+        }
+
+        BerDate berDate = (BerDate) roundTrip(module, new BerDate(2008, 11, 5));
+        assertEquals("2008-11-05", berDate.toString());
+        assertEquals(2008, berDate.getYear());
+        assertEquals(11, berDate.getMonth());
+        assertEquals(5, berDate.getDay());
+
+        BerTimeOfDay berTime = 
+            (BerTimeOfDay) roundTrip(module, new BerTimeOfDay(9, 5, 30));
+        assertEquals("09:05:30", berTime.toString());
+
+        // DATE and TIME-OF-DAY have tag numbers above 30.
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        new BerTimeOfDay(23, 59, 59).writeTo(bout);
+        byte[] bytes = bout.toByteArray();
+        assertEquals(0x1F, bytes[0]);
+        assertEquals(BerTypes.TIME_OF_DAY, bytes[1]);
+        assertEquals(6, bytes[2]);
+    }
+
+
+    /**
+     * Tests the string cache.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testStringCache() throws IOException
+    {
+        String common = "LongReadLen";
+        BerModule module = new BerModule();
+        module.setCharacterEncoding("ASCII");
+        module.registerCommonString(common);
+
+        BerStringCache cache = module.getStringCache();
+        BerOctetString first = (BerOctetString) roundTrip(module,
+            new BerOctetString(new String("LongReadLen"), "ASCII"));
+        assertSame(common, cache.intern(first));
+        assertSame(common, first.toString());
+
+        BerOctetString second = (BerOctetString) roundTrip(module,
+            new BerOctetString("ChopBlanks", "ASCII"));
+        BerOctetString third = (BerOctetString) roundTrip(module,
+            new BerOctetString("ChopBlanks", "ASCII"));
+        String canonical = cache.intern(second);
+        assertEquals("ChopBlanks", canonical);
+        assertSame(canonical, cache.intern(third));
+
+        // Changing the encoding discards the cache.
+        module.setCharacterEncoding("UTF-8");
+        assertNotSame(cache, module.getStringCache());
+        assertSame(common, module.getStringCache().intern(first));
+    }
+
+
+    /**
+     * Tests reading whole frames.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testFrameReader() throws IOException
+    {
+        BerModule module = new BerModule();
+        module.setCharacterEncoding("ASCII");
+        module.registerFactory(new TestStringFactory());
+
+        byte[] large = new byte[100000];
+        for (int i = 0; i < large.length; i++)
+            large[i] = (byte) ('a' + i % 26);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        new BerInteger(42).writeTo(bout);
+        new TestString("ciao, bella", "ASCII").writeTo(bout);
+        new BerOctetString(large, "ASCII").writeTo(bout);
+        new BerSequence(new BerObject[] { new BerInteger(1), 
+            new BerOctetString("x", "ASCII") }).writeTo(bout);
+
+        BerFrameReader reader = new BerFrameReader(
+            new ByteArrayInputStream(bout.toByteArray()), module, 200000);
+        assertEquals("42", reader.readFrame().toString());
+        assertEquals("ciao, bella", reader.readFrame().toString());
+        BerOctetString berString = (BerOctetString) reader.readFrame();
+        assertEquals(large.length, berString.toByteArray().length);
+        assertEquals(large[large.length - 1], 
+            berString.toByteArray()[large.length - 1]);
+        assertEquals("[1, x]", reader.readFrame().toString());
+        assertNull(reader.readFrame());
+
+        // A frame larger than the maximum.
+        reader = new BerFrameReader(
+            new ByteArrayInputStream(bout.toByteArray()), module, 1000);
+        reader.readFrame();
+        reader.readFrame();
+        try
+        {
+            reader.readFrame();
+            fail("Expected IOException");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage(), 
+                e.getMessage().indexOf("maximum frame size") != -1);
+        }
+
+        byte[][] badFrames = {
+            // An indefinite-length frame.
+            { (byte) (BerTypes.CONSTRUCTED | BerTypes.SEQUENCE), (byte) 0x80,
+              (byte) 0, (byte) 0 },
+            // A truncated frame.
+            { (byte) BerTypes.OCTET_STRING, (byte) 5, (byte) 'h' },
+            // A hostile length.
+            { (byte) BerTypes.OCTET_STRING, (byte) 0x84, (byte) 0x7F,
+              (byte) 0xFF, (byte) 0xFF, (byte) 0xFF },
+        };
+        for (int i = 0; i < badFrames.length; i++)
+        {
+            reader = new BerFrameReader(
+                new ByteArrayInputStream(badFrames[i]), module, 1000);
+            try
+            {
+                reader.readFrame();
+                fail("Expected IOException for frame " + i);
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+
+    /**
+     * Tests strings encoded into a module's reusable codec buffer.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testEncodedString() throws IOException
+    {
+        String[] encodings = { "ASCII", "ISO8859_1", "UTF-8", "HP_Roman8",
+            "UTF-16BE", "Cp1252" };
+        String[] strings = { "", "hello, world", "caf\u00e9", 
+            "\u20ac10 \u2014 \ud83d\ude00", "\ud800 unpaired", 
+            "unpaired \udc00", "\u07ff\u0800\uffff\ud800" };
+        for (int i = 0; i < encodings.length; i++)
+        {
+            BerModule module = new BerModule();
+            module.setCharacterEncoding(encodings[i]);
+            com.vizdom.util.CharacterCodec codec = 
+                module.getCharacterCodec();
+            for (int j = 0; j < strings.length; j++)
+            {
+                BerOctetString expected = 
+                    new BerOctetString(strings[j], encodings[i]);
+                BerEncodedString actual = 
+                    new BerEncodedString(strings[j], codec);
+                ByteArrayOutputStream expectedOut = 
+                    new ByteArrayOutputStream();
+                expected.writeTo(expectedOut);
+                ByteArrayOutputStream actualOut = new ByteArrayOutputStream();
+                actual.writeTo(actualOut);
+                assertTrue(encodings[i] + ": " + strings[j], 
+                    java.util.Arrays.equals(expectedOut.toByteArray(), 
+                        actualOut.toByteArray()));
+                assertEquals(expected.toString(encodings[i]), 
+                    roundTrip(module, actual).toString());
+
+                // Character arrays are encoded the same way.
+                BerEncodedString fromChars = new BerEncodedString(
+                    strings[j].toCharArray(), codec);
+                actualOut.reset();
+                fromChars.writeTo(actualOut);
+                assertTrue(encodings[i] + ": " + strings[j], 
+                    java.util.Arrays.equals(expectedOut.toByteArray(), 
+                        actualOut.toByteArray()));
+                assertEquals(strings[j], fromChars.toString());
+            }
+        }
+
+        // Strings stay valid while the buffer grows, until the
+        // codec is reset.
+        BerModule module = new BerModule();
+        module.setCharacterEncoding("UTF-8");
+        com.vizdom.util.CharacterCodec codec = module.getCharacterCodec();
+        char[] chars = new char[10000];
+        java.util.Arrays.fill(chars, '\u00e9');
+        String large = new String(chars);
+        BerSequence sequence = new BerSequence(new BerObject[] {
+            new BerEncodedString("first", codec), 
+            new BerEncodedString(large, codec),
+            new BerEncodedString("last", codec) });
+        assertEquals(5 + 2 * chars.length + 4, codec.size());
+        BerSequence decoded = (BerSequence) roundTrip(module, sequence);
+        assertEquals("[first, " + large + ", last]", decoded.toString());
+        codec.reset();
+        assertEquals(0, codec.size());
+    }
 }
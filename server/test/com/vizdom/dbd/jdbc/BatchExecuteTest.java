@@ -0,0 +1,158 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+/**
+ * Unit testing for batch execution and generated keys, against an 
+ * in-memory HSQLDB database.
+ */
+public class BatchExecuteTest extends ProtocolTestCase
+{
+    public BatchExecuteTest(String aName)
+    {
+        super(aName, "batchexecute");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mUpdate("CREATE TABLE rows (id INTEGER, name VARCHAR(20))");
+    }
+
+    private int mCount() throws SQLException
+    {
+        Statement stmt = mJdbcConnection.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM rows");
+        rs.next();
+        int count = rs.getInt(1);
+        stmt.close();
+        return count;
+    }
+
+
+    public void testBatch() throws Exception
+    {
+        int handle = mPrepare("INSERT INTO rows VALUES (?, ?)");
+        BerObject[] request = new BerObject[3 + 2 * 2 * 3];
+        request[0] = new BerInteger(handle);
+        request[1] = new BerInteger(2);
+        request[2] = new BerInteger(3);
+        for (int i = 0; i < 3; i++)
+        {
+            request[3 + 4 * i] = mString(String.valueOf(i + 1));
+            request[4 + 4 * i] = new BerInteger(Types.INTEGER);
+            request[5 + 4 * i] = 
+                (i == 1) ? (BerObject) BerModule.NULL : mString("row");
+            request[6 + 4 * i] = new BerInteger(Types.VARCHAR);
+        }
+        BerObject[] counts = ((BerSequence) mConnection.handleRequest(
+            (ExecuteBatchRequest) mDecode(new SequenceEncoder(
+            ExecuteBatchRequest.gIDENTIFIER, request)))).toArray();
+        assertEquals(3, counts.length);
+        for (int i = 0; i < counts.length; i++)
+            assertEquals(1, ((BerInteger) counts[i]).intValue());
+        assertEquals(3, mCount());
+
+        // The driver doesn't return keys, so there are none.
+        BerObject keys = mConnection.handleRequest((GeneratedKeysRequest)
+            mDecode(new IntegerEncoder(GeneratedKeysRequest.gIDENTIFIER, 
+            handle)));
+        assertEquals(0, ((BerSequence) keys).toArray().length);
+    }
+
+    public void testBadBatch() throws Exception
+    {
+        int handle = mPrepare("INSERT INTO rows VALUES (?, ?)");
+        try
+        {
+            mDecode(new SequenceEncoder(ExecuteBatchRequest.gIDENTIFIER,
+                new BerObject[] { new BerInteger(handle), new BerInteger(2),
+                    new BerInteger(2), mString("1"), 
+                    new BerInteger(Types.INTEGER) }));
+            fail("Decoded a short batch");
+        }
+        catch (IOException expected)
+        {
+        }
+    }
+
+    public void testUploads() throws Exception
+    {
+        int handle = mPrepare("INSERT INTO rows VALUES (?, ?)");
+        BerObject[] upload = { new BerInteger(handle), new BerInteger(2) };
+        mConnection.handleRequest((LobWriteBeginRequest) mDecode(
+            LobWriteBeginRequest.gIDENTIFIER, new BerObject[] { upload[0], 
+                upload[1], new BerInteger(Types.CLOB) }));
+        mConnection.handleRequest((LobWriteChunkRequest) mDecode(
+            LobWriteChunkRequest.gIDENTIFIER, new BerObject[] { upload[0],
+                upload[1], mString("row") }));
+        mConnection.handleRequest((LobWriteEndRequest) mDecode(
+            LobWriteEndRequest.gIDENTIFIER, upload));
+
+        BerObject[] request = { new BerInteger(handle), new BerInteger(2), 
+            new BerInteger(1), mString("1"), new BerInteger(Types.INTEGER),
+            BerModule.NULL, new BerInteger(Types.CLOB) };
+        try
+        {
+            mConnection.handleRequest((ExecuteBatchRequest) mDecode(
+                ExecuteBatchRequest.gIDENTIFIER, request));
+            fail("Executed a batch with an upload");
+        }
+        catch (DbdException expected)
+        {
+            assertEquals(DbdException.gLOB_UPLOAD, expected.getErrorCode());
+        }
+        assertEquals(0, mCount());
+
+        // The upload is discarded, and the batch can be executed again.
+        mConnection.handleRequest((ExecuteBatchRequest) mDecode(
+            ExecuteBatchRequest.gIDENTIFIER, request));
+        assertEquals(1, mCount());
+    }
+
+    public void testGeneratedKeys() throws Exception
+    {
+        Statement stmt = mJdbcConnection.createStatement();
+        for (int i = 1; i <= 3; i++)
+            stmt.execute("INSERT INTO rows VALUES (" + i + ", 'row')");
+        GeneratedKeys keys = GeneratedKeys.gRead(
+            stmt.executeQuery("SELECT id, name FROM rows ORDER BY id"));
+        stmt.close();
+
+        assertEquals(3, keys.rows.size());
+        assertEquals("3", keys.find(null, null));
+        assertEquals("row", keys.find("ROWS", "name"));
+        assertNull(keys.find("other", null));
+
+        BerObject[] response = 
+            new GeneratedKeysResponse(keys, sENCODING).toArray();
+        assertEquals(1 + 2 * 4, response.length);
+        assertEquals(2, ((BerInteger) response[0]).intValue());
+        assertEquals("ID", response[1].toString());
+        assertEquals("2", response[5].toString());
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Hashtable;
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import junit.framework.TestCase;
+
+/**
+ * Unit testing for the column readers used by the fetch loop.
+ */
+public class ColumnReaderTest extends TestCase
+{
+    /** The column types of the test result set. */
+    private static final int[] sTYPES = { Types.INTEGER, Types.CHAR, 
+        Types.VARBINARY, Types.LONGVARCHAR, Types.LONGVARBINARY };
+
+    /** 
+     * A result set and its meta data, with one row. Counts the calls
+     * to getColumnType.
+     */
+    private static class FakeResultSet implements InvocationHandler
+    {
+        int mTypeCalls;
+
+        public Object invoke(Object aProxy, Method aMethod, Object[] args)
+        {
+            String name = aMethod.getName();
+            if (name.equals("getColumnCount"))
+                return Integer.valueOf(sTYPES.length);
+            if (name.equals("getColumnType"))
+            {
+                mTypeCalls++;
+                int column = ((Integer) args[0]).intValue();
+                return Integer.valueOf(sTYPES[column - 1]);
+            }
+            if (name.equals("getString"))
+                return ((Integer) args[0]).intValue() == 1 ? "42" : "ab  ";
+            if (name.equals("getBytes"))
+                return new byte[] { 1, 2 };
+            if (name.equals("getCharacterStream"))
+                return new StringReader("abcdef");
+            if (name.equals("getBinaryStream"))
+                return new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+            throw new UnsupportedOperationException(name);
+        }
+
+        Object mProxy(Class<?> anInterface)
+        {
+            return Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { anInterface }, this);
+        }
+    }
+
+
+    /**
+     * Returns statement properties.
+     *
+     * @param aLongReadLen the LongReadLen property
+     * @param aLongTruncOk the LongTruncOk property
+     * @param aChopBlanks the ChopBlanks property
+     * @return the properties
+     */
+    private static Hashtable<String, Object> gProperties(int aLongReadLen,
+        boolean aLongTruncOk, boolean aChopBlanks)
+    {
+        Hashtable<String, Object> properties = 
+            new Hashtable<String, Object>();
+        properties.put("LongReadLen", Integer.valueOf(aLongReadLen));
+        properties.put("LongTruncOk", Boolean.valueOf(aLongTruncOk));
+        properties.put("ChopBlanks", Boolean.valueOf(aChopBlanks));
+        properties.put("jdbc_longreadall", Boolean.FALSE);
+        return properties;
+    }
+
+
+    /**
+     * Tests reading a row with the readers for various properties.
+     *
+     * @throws Exception if an error occurs
+     */
+    public void testRead() throws Exception
+    {
+        FakeResultSet fake = new FakeResultSet();
+        ResultSetMetaData metaData = 
+            (ResultSetMetaData) fake.mProxy(ResultSetMetaData.class);
+        ResultSet rs = (ResultSet) fake.mProxy(ResultSet.class);
+
+        ColumnReader[] readers = ColumnReader.gCreateReaders(metaData,
+            gProperties(10, false, true), null);
+        assertEquals(sTYPES.length, fake.mTypeCalls);
+        for (int row = 0; row < 3; row++)
+        {
+            assertEquals("42", readers[0].read(rs));
+            assertEquals("ab", readers[1].read(rs));
+            assertTrue(Arrays.equals(new byte[] { 1, 2 }, 
+                (byte[]) readers[2].read(rs)));
+            assertEquals("abcdef", 
+                new String((char[]) readers[3].read(rs)));
+            assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, 
+                (byte[]) readers[4].read(rs)));
+        }
+        assertEquals(sTYPES.length, fake.mTypeCalls);
+        assertEquals(Types.CHAR, readers[1].getType());
+
+        readers = ColumnReader.gCreateReaders(metaData,
+            gProperties(0, false, false), null);
+        assertEquals("ab  ", readers[1].read(rs));
+        assertNull(readers[3].read(rs));
+        assertNull(readers[4].read(rs));
+
+        readers = ColumnReader.gCreateReaders(metaData,
+            gProperties(2, true, false), null);
+        assertEquals("ab", new String((char[]) readers[3].read(rs)));
+
+        readers = ColumnReader.gCreateReaders(metaData,
+            gProperties(2, false, false), null);
+        try
+        {
+            readers[3].read(rs);
+            fail("Long data was truncated");
+        }
+        catch (DbdException expected)
+        {
+        }
+    }
+
+
+    /**
+     * Tests returning locators for BLOB and CLOB values longer than
+     * jdbc_lobthreshold.
+     *
+     * @throws Exception if an error occurs
+     */
+    public void testLobLocators() throws Exception
+    {
+        final byte[] bytes = new byte[100];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) i;
+        final String chars = "The quick brown fox";
+        InvocationHandler handler = new InvocationHandler() {
+                public Object invoke(Object aProxy, Method aMethod, 
+                    Object[] args) throws SQLException
+                {
+                    String name = aMethod.getName();
+                    if (name.equals("getColumnCount"))
+                        return Integer.valueOf(2);
+                    if (name.equals("getColumnType"))
+                    {
+                        return Integer.valueOf((((Integer) args[0]).intValue() 
+                            == 1) ? Types.BLOB : Types.CLOB);
+                    }
+                    if (name.equals("getBlob"))
+                        return new SerialBlob(bytes);
+                    if (name.equals("getClob"))
+                        return new SerialClob(chars.toCharArray());
+                    throw new UnsupportedOperationException(name);
+                }
+            };
+        ResultSetMetaData metaData = (ResultSetMetaData) 
+            Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { ResultSetMetaData.class }, handler);
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { ResultSet.class }, 
+            handler);
+        StatementHolder holder = new StatementHolder(null);
+
+        Hashtable<String, Object> properties = gProperties(1000, false, 
+            false);
+        properties.put("jdbc_lobthreshold", Integer.valueOf(50));
+        ColumnReader[] readers = ColumnReader.gCreateReaders(metaData,
+            properties, holder);
+        LobLocator blob = (LobLocator) readers[0].read(rs);
+        assertEquals("1", blob.toArray()[0].toString());
+        assertEquals("100", blob.toArray()[1].toString());
+        assertEquals(String.valueOf(Types.BLOB), 
+            blob.toArray()[2].toString());
+        assertSame(blob, holder.getLob(1));
+        assertTrue(Arrays.equals(new byte[] { 10, 11, 12 }, 
+            (byte[]) blob.read(11, 3)));
+        assertEquals(10, ((byte[]) blob.read(91, 50)).length);
+        assertEquals(0, ((byte[]) blob.read(101, 50)).length);
+        assertEquals(chars, new String((char[]) readers[1].read(rs)));
+
+        properties.put("jdbc_lobthreshold", Integer.valueOf(10));
+        readers = ColumnReader.gCreateReaders(metaData, properties, holder);
+        LobLocator clob = (LobLocator) readers[1].read(rs);
+        assertSame(clob, holder.getLob(2));
+        assertEquals("quick", clob.read(5, 5));
+        assertEquals("fox", clob.read(17, 100));
+        assertEquals("", clob.read(20, 100));
+
+        holder.clearLobs();
+        assertNull(holder.getLob(1));
+        assertNull(holder.getLob(2));
+    }
+}
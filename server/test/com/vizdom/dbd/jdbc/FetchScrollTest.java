@@ -0,0 +1,105 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Unit testing for scrollable cursors, against an in-memory HSQLDB
+ * database.
+ */
+public class FetchScrollTest extends ProtocolTestCase
+{
+    /** The number of rows in the test table. */
+    private static final int sROWS = 100;
+
+
+    public FetchScrollTest(String aName)
+    {
+        super(aName, "fetchscroll");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mCreateRows(sROWS);
+    }
+
+    /**
+     * Prepares and executes the test query.
+     *
+     * @param aPrepare the prepare request's sequence
+     * @return the statement handle
+     */
+    private int mQuery(BerObject[] aPrepare) 
+        throws IOException, SQLException
+    {
+        int handle = mPrepare(aPrepare);
+        mSetReadProperties(handle);
+        mExecute(handle);
+        return handle;
+    }
+
+    private int mScroll(int aHandle, int anOrientation, int aRow)
+        throws IOException, SQLException
+    {
+        return mId(mConnection.handleRequest((FetchScrollRequest) mDecode(
+            FetchScrollRequest.gIDENTIFIER, new BerObject[] { 
+                new BerInteger(aHandle), new BerInteger(anOrientation), 
+                new BerInteger(aRow) })));
+    }
+
+
+    public void testScroll() throws Exception
+    {
+        BerObject options = new SequenceEncoder(BerHash.gIDENTIFIER, 
+            new BerObject[] { mString("jdbc_scrollable"), mString("1") });
+        int handle = mQuery(new BerObject[] { 
+            mString("SELECT id, name FROM rows ORDER BY id"), 
+            BerModule.NULL, options });
+
+        assertEquals(50, mScroll(handle, FetchScrollRequest.gABSOLUTE, 50));
+        assertEquals(51, mFetchId(handle));
+        assertEquals(41, mScroll(handle, FetchScrollRequest.gRELATIVE, -10));
+        assertEquals(sROWS, 
+            mScroll(handle, FetchScrollRequest.gABSOLUTE, -1));
+        assertEquals(0, mFetchId(handle));
+        assertEquals(1, mScroll(handle, FetchScrollRequest.gABSOLUTE, 1));
+        assertEquals(0, 
+            mScroll(handle, FetchScrollRequest.gABSOLUTE, sROWS + 1));
+    }
+
+    public void testForwardOnly() throws Exception
+    {
+        int handle = mQuery(new BerObject[] { 
+            mString("SELECT id, name FROM rows ORDER BY id") });
+        assertEquals(1, mFetchId(handle));
+        try
+        {
+            mScroll(handle, FetchScrollRequest.gABSOLUTE, 50);
+            fail("Scrolled a forward-only cursor");
+        }
+        catch (SQLException expected)
+        {
+        }
+    }
+}
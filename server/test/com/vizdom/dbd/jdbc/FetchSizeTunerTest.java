@@ -0,0 +1,149 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import junit.framework.TestCase;
+
+/**
+ * Unit testing for tuning the fetch size.
+ */
+public class FetchSizeTunerTest extends TestCase
+{
+    /** The simulated time, in nanoseconds. */
+    private long mClock;
+
+
+    public FetchSizeTunerTest(String aName)
+    {
+        super(aName);
+    }
+
+    /**
+     * Fetches a row.
+     *
+     * @param aTuner the tuner
+     * @param aWidth the width of the row
+     * @param aClientTime the time the client takes before the fetch
+     * @param aServerTime the time the server takes to read the row
+     * @return the new fetch size, or 0 if it is unchanged
+     */
+    private int mFetch(FetchSizeTuner aTuner, int aWidth, long aClientTime,
+        long aServerTime)
+    {
+        mClock += aClientTime;
+        long started = mClock;
+        mClock += aServerTime;
+        return aTuner.rowFetched(aWidth, started, mClock);
+    }
+
+    /**
+     * Fetches rows until the fetch size changes, with a client that
+     * keeps up with the server.
+     *
+     * @param aTuner the tuner
+     * @param aWidth the width of each row
+     * @return the number of rows fetched, and the new fetch size
+     */
+    private int[] mFetchBatch(FetchSizeTuner aTuner, int aWidth)
+    {
+        for (int rows = 1; rows <= FetchSizeTuner.gMAX_FETCH_SIZE; rows++)
+        {
+            int size = mFetch(aTuner, aWidth, 1000, 2000);
+            if (size > 0)
+                return new int[] { rows, size };
+        }
+        return new int[] { FetchSizeTuner.gMAX_FETCH_SIZE, 0 };
+    }
+
+    public void testGrowth()
+    {
+        FetchSizeTuner tuner = new FetchSizeTuner(10000, 0);
+        assertEquals(FetchSizeTuner.gDEFAULT_FETCH_SIZE, 
+            tuner.getFetchSize());
+        int[][] expected = { { 10, 20 }, { 20, 40 }, { 40, 80 }, 
+            { 80, 100 }, { 10000, 0 } };
+        for (int i = 0; i < expected.length; i++)
+        {
+            int[] batch = mFetchBatch(tuner, 100);
+            assertEquals("batch " + i, expected[i][0], batch[0]);
+            assertEquals("batch " + i, expected[i][1], batch[1]);
+        }
+        assertEquals(100, tuner.getFetchSize());
+    }
+
+    public void testLimits()
+    {
+        // Wide rows shrink the fetch size to fit the budget.
+        FetchSizeTuner tuner = new FetchSizeTuner(1000, 10);
+        int[] batch = mFetchBatch(tuner, 500);
+        assertEquals(10, batch[0]);
+        assertEquals(2, batch[1]);
+        batch = mFetchBatch(tuner, 5000);
+        assertEquals(2, batch[0]);
+        assertEquals(1, batch[1]);
+
+        // Narrow rows stop at the largest fetch size.
+        tuner = new FetchSizeTuner(Integer.MAX_VALUE, 8000);
+        assertEquals(FetchSizeTuner.gMAX_FETCH_SIZE, 
+            mFetchBatch(tuner, 10)[1]);
+
+        // Executing again starts a new batch.
+        tuner = new FetchSizeTuner(10000, 10);
+        for (int i = 0; i < 5; i++)
+            mFetch(tuner, 10, 1000, 2000);
+        tuner.reset();
+        assertEquals(10, mFetchBatch(tuner, 10)[0]);
+    }
+
+    public void testClientRate()
+    {
+        // A client slower than the server doesn't grow the fetch size.
+        FetchSizeTuner tuner = new FetchSizeTuner(10000, 10);
+        for (int i = 0; i < 100; i++)
+            assertEquals(0, mFetch(tuner, 10, 5000, 1000));
+
+        // The client keeps up while the round trip at the start of 
+        // each batch outweighs its time between fetches, and the 
+        // growth stops once the round trips are spread over enough 
+        // rows.
+        tuner = new FetchSizeTuner(Integer.MAX_VALUE, 10);
+        int batches = 0;
+        for (int i = 0; i < 1000; i++)
+        {
+            long serverTime = (i % tuner.getFetchSize() == 0) ? 
+                100000 : 1000;
+            if (mFetch(tuner, 10, 5000, serverTime) > 0)
+            {
+                batches++;
+                i = -1;
+            }
+        }
+        assertEquals(2, batches);
+        assertEquals(40, tuner.getFetchSize());
+    }
+
+    public void testEstimateWidth()
+    {
+        Object[] row = { "abc", null, new byte[10], new char[5], 
+            Integer.valueOf(7) };
+        assertEquals(5 * 8 + 3 + 10 + 5, 
+            FetchSizeTuner.gEstimateWidth(row));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.sql.SQLException;
+import java.sql.Types;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Unit testing for the cache of func methods, against an in-memory
+ * HSQLDB database.
+ */
+public class FuncMethodTest extends ProtocolTestCase
+{
+    public FuncMethodTest(String aName)
+    {
+        super(aName, "func");
+    }
+
+    /**
+     * Calls a method on the connection, and returns its value.
+     *
+     * @param aMethodName the method name
+     * @param aParameterList each parameter's value and type, in turn
+     */
+    private String mFunc(String aMethodName, BerObject[] aParameterList)
+        throws IOException, SQLException
+    {
+        BerObject[] request = new BerObject[1 + aParameterList.length];
+        request[0] = mString(aMethodName);
+        System.arraycopy(aParameterList, 0, request, 1,
+            aParameterList.length);
+        BerObject value = ((BerSequence) mConnection.handleRequest(
+            (ConnectionFuncRequest) mDecode(ConnectionFuncRequest.gIDENTIFIER,
+            request))).toArray()[0];
+        return (value instanceof BerNull) ? null : value.toString();
+    }
+
+    /**
+     * Calls a method on the connection which should fail, and returns
+     * the error message.
+     */
+    private String mFuncError(String aMethodName, BerObject[] aParameterList)
+        throws IOException
+    {
+        try
+        {
+            mFunc(aMethodName, aParameterList);
+            fail("Called " + aMethodName);
+        }
+        catch (SQLException expected)
+        {
+            return expected.getMessage();
+        }
+        return null;
+    }
+
+
+    public void testCache() throws Exception
+    {
+        // The second call uses the handle cached by the first.
+        int count = Connection.gGetFuncMethodCount();
+        assertEquals("1", mFunc("getAutoCommit", new BerObject[0]));
+        MethodHandle method = Connection.gFindMethod(
+            mJdbcConnection.getClass(), "getAutoCommit", null);
+        assertNotNull(method);
+        assertEquals(count + 1, Connection.gGetFuncMethodCount());
+        assertEquals("1", mFunc("getAutoCommit", new BerObject[0]));
+        assertEquals(count + 1, Connection.gGetFuncMethodCount());
+        assertSame(method, Connection.gFindMethod(
+            mJdbcConnection.getClass(), "getAutoCommit", null));
+
+        // The parameter types are part of the key.
+        assertNull(mFunc("setAutoCommit", new BerObject[] {
+            mString("0"), new BerInteger(Types.BIT) }));
+        assertFalse(mJdbcConnection.getAutoCommit());
+        assertEquals(count + 2, Connection.gGetFuncMethodCount());
+        assertEquals("0", mFunc("getAutoCommit", new BerObject[0]));
+        assertEquals(count + 2, Connection.gGetFuncMethodCount());
+    }
+
+    public void testMissing() throws Exception
+    {
+        // A method that can't be found is cached, and fails every time.
+        String reflection = new DbdException(
+            DbdException.gREFLECTION_EXCEPTION,
+            new String[] { "Unable to invoke method" }).getMessage();
+        int count = Connection.gGetFuncMethodCount();
+        String message = mFuncError("noSuchMethod", new BerObject[0]);
+        assertTrue(message, message.indexOf(reflection) >= 0);
+        assertEquals(count + 1, Connection.gGetFuncMethodCount());
+        message = mFuncError("noSuchMethod", new BerObject[0]);
+        assertTrue(message, message.indexOf(reflection) >= 0);
+        assertEquals(count + 1, Connection.gGetFuncMethodCount());
+        assertNull(Connection.gFindMethod(mJdbcConnection.getClass(),
+            "noSuchMethod", null));
+    }
+
+    public void testInterface() throws Throwable
+    {
+        // The JDK's CachedRowSet implementation is in a package the
+        // server can't access, like a driver's non-public classes, so
+        // its methods are called through the public interface.
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        Class<?> rowSetClass = rowSet.getClass();
+        assertFalse(rowSetClass.getModule().isExported(
+            rowSetClass.getPackageName()));
+        MethodHandle method = Connection.gFindMethod(rowSetClass, "size",
+            null);
+        assertNotNull(method);
+        assertEquals(Integer.valueOf(0),
+            (Object) method.invokeExact((Object) rowSet, new Object[0]));
+        rowSet.close();
+    }
+
+    public void testNullPrimitive() throws Exception
+    {
+        String message = mFuncError("setAutoCommit", new BerObject[] {
+            BerModule.NULL, new BerInteger(Types.BIT) });
+        assertTrue(message,
+            message.indexOf("Parameter 1 may not be null") >= 0);
+        assertTrue(mJdbcConnection.getAutoCommit());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Unit testing for LOB parameter uploads, against an in-memory 
+ * HSQLDB database.
+ */
+public class LobUploadTest extends ProtocolTestCase
+{
+    /** The client's character encoding. */
+    private static final String sENCODING = "UTF-8";
+
+    /** Accepts the temporary files created by uploads. */
+    private static final FilenameFilter sUPLOAD_FILES = 
+        new FilenameFilter() {
+            public boolean accept(File aDirectory, String aName)
+            {
+                return aName.startsWith("dbdjdbc") && 
+                    aName.endsWith(".lob");
+            }
+        };
+
+    private int mHandle;
+
+
+    public LobUploadTest(String aName)
+    {
+        super(aName, "lobupload", sENCODING);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mUpdate("CREATE TABLE lobs (id INTEGER, b LONGVARBINARY, " +
+            "c LONGVARCHAR)");
+        mHandle = mPrepare("INSERT INTO lobs VALUES (?, ?, ?)");
+    }
+
+    private void mBegin(int aParameter, int aType) 
+        throws IOException, SQLException
+    {
+        mConnection.handleRequest((LobWriteBeginRequest) mDecode(
+            LobWriteBeginRequest.gIDENTIFIER, new BerObject[] { 
+                new BerInteger(mHandle), new BerInteger(aParameter),
+                new BerInteger(aType) }));
+    }
+
+    private void mChunk(int aParameter, byte[] aData, int anOffset, 
+        int aLength) throws IOException, SQLException
+    {
+        byte[] chunk = new byte[aLength];
+        System.arraycopy(aData, anOffset, chunk, 0, aLength);
+        mConnection.handleRequest((LobWriteChunkRequest) mDecode(
+            LobWriteChunkRequest.gIDENTIFIER, new BerObject[] { 
+                new BerInteger(mHandle), new BerInteger(aParameter),
+                new BerOctetString(chunk) }));
+    }
+
+    private void mEnd(int aParameter) throws IOException, SQLException
+    {
+        mConnection.handleRequest((LobWriteEndRequest) mDecode(
+            LobWriteEndRequest.gIDENTIFIER, new BerObject[] { 
+                new BerInteger(mHandle), new BerInteger(aParameter) }));
+    }
+
+    private void mUpload(int aParameter, int aType, byte[] aData, 
+        int aChunkSize) throws IOException, SQLException
+    {
+        mBegin(aParameter, aType);
+        for (int i = 0; i < aData.length; i += aChunkSize)
+            mChunk(aParameter, aData, i, 
+                Math.min(aChunkSize, aData.length - i));
+        mEnd(aParameter);
+    }
+
+    /**
+     * Inserts a row, with the uploads as the LOB parameters.
+     */
+    private void mInsert(int anId) throws IOException, SQLException
+    {
+        mExecute(mHandle, new BerObject[] { mString(String.valueOf(anId)),
+            new BerInteger(Types.INTEGER), BerModule.NULL, 
+            new BerInteger(Types.BLOB), BerModule.NULL, 
+            new BerInteger(Types.CLOB) });
+    }
+
+    private int mCountUploadFiles()
+    {
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        return directory.list(sUPLOAD_FILES).length;
+    }
+
+
+    public void testUpload() throws Exception
+    {
+        int files = mCountUploadFiles();
+        byte[] bytes = new byte[200000];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (i * 7);
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < 30000; i++)
+            text.append("Stra\u00dfe ");
+        byte[] encoded = text.toString().getBytes(sENCODING);
+
+        mUpload(2, Types.BLOB, bytes, 65536);
+        // Chunks that split the two-byte characters.
+        mUpload(3, Types.CLOB, encoded, 4099);
+        assertEquals(files + 2, mCountUploadFiles());
+        mInsert(1);
+        assertEquals(files, mCountUploadFiles());
+
+        // The uploads are used by one execute only.
+        mInsert(2);
+
+        Statement stmt = mJdbcConnection.createStatement();
+        ResultSet rs = stmt.executeQuery(
+            "SELECT id, b, c FROM lobs ORDER BY id");
+        assertTrue(rs.next());
+        assertTrue(Arrays.equals(bytes, rs.getBytes(2)));
+        assertEquals(text.toString(), rs.getString(3));
+        assertTrue(rs.next());
+        assertNull(rs.getBytes(2));
+        assertNull(rs.getString(3));
+        assertFalse(rs.next());
+        stmt.close();
+    }
+
+    public void testErrors() throws Exception
+    {
+        int files = mCountUploadFiles();
+        byte[] bytes = { 1, 2, 3 };
+        try
+        {
+            mChunk(2, bytes, 0, bytes.length);
+            fail("Wrote a chunk without beginning an upload");
+        }
+        catch (DbdException expected)
+        {
+        }
+        try
+        {
+            mBegin(1, Types.INTEGER);
+            fail("Began an upload of an INTEGER");
+        }
+        catch (DbdException expected)
+        {
+        }
+
+        mBegin(2, Types.BLOB);
+        mChunk(2, bytes, 0, bytes.length);
+        try
+        {
+            mInsert(1);
+            fail("Executed with an unfinished upload");
+        }
+        catch (DbdException expected)
+        {
+        }
+        assertEquals(files, mCountUploadFiles());
+
+        // An abandoned upload is discarded when the statement is 
+        // destroyed.
+        mBegin(2, Types.BLOB);
+        mChunk(2, bytes, 0, bytes.length);
+        mBegin(3, Types.CLOB);
+        assertEquals(files + 2, mCountUploadFiles());
+        mConnection.handleRequest((StatementDestroyRequest) mDecode(
+            new IntegerEncoder(StatementDestroyRequest.gIDENTIFIER, mHandle)));
+        assertEquals(files, mCountUploadFiles());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Unit testing for meta data requests and the meta data cache,
+ * against an in-memory HSQLDB database.
+ */
+public class MetaDataTest extends ProtocolTestCase
+{
+    public MetaDataTest(String aName)
+    {
+        super(aName, "metadata");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mUpdate("CREATE TABLE customer (id INTEGER PRIMARY KEY, " +
+            "name VARCHAR(20))");
+        mUpdate("CREATE TABLE orders (id INTEGER PRIMARY KEY, " +
+            "customer INTEGER, FOREIGN KEY (customer) " +
+            "REFERENCES customer (id))");
+        MetaDataCache.gFlush(null);
+    }
+
+    /**
+     * Sends a meta data request, and returns the values of a column
+     * in the response.
+     *
+     * @param aColumn the column name
+     * @param anArgumentList the kind of meta data and its arguments
+     */
+    private String mMetaData(String aColumn, String[] anArgumentList) 
+        throws IOException, SQLException
+    {
+        BerObject[] request = new BerObject[anArgumentList.length];
+        for (int i = 0; i < request.length; i++)
+        {
+            request[i] = (anArgumentList[i] == null) ? BerModule.NULL :
+                mString(anArgumentList[i]);
+        }
+        BerObject[] response = ((BerSequence) mConnection.handleRequest(
+            (MetaDataRequest) mDecode(MetaDataRequest.gIDENTIFIER, 
+            request))).toArray();
+        int count = ((BerInteger) response[0]).intValue();
+        int column = -1;
+        for (int i = 0; i < count; i++)
+        {
+            if (response[1 + i].toString().equals(aColumn))
+                column = i;
+        }
+        assertTrue(aColumn, column >= 0);
+        StringBuffer values = new StringBuffer();
+        for (int i = 1 + count + column; i < response.length; i += count)
+        {
+            if (values.length() > 0)
+                values.append(",");
+            values.append(response[i].toString());
+        }
+        return values.toString();
+    }
+
+    private int mFlush(String aTable) throws IOException
+    {
+        return ((BerInteger) mConnection.handleRequest(
+            (MetaDataFlushRequest) mDecode(new StringEncoder(
+            MetaDataFlushRequest.gIDENTIFIER, 
+            (aTable == null) ? "" : aTable, mEncoding)))).intValue();
+    }
+
+
+    public void testMetaData() throws Exception
+    {
+        assertEquals("CUSTOMER,ORDERS", mMetaData("TABLE_NAME", 
+            new String[] { "tables", null, null, "%", "TABLE" }));
+        assertEquals("ID,NAME", mMetaData("COLUMN_NAME", 
+            new String[] { "columns", null, null, "CUSTOMER", null }));
+        assertEquals("ID", mMetaData("COLUMN_NAME", 
+            new String[] { "primary_keys", null, null, "ORDERS" }));
+        assertEquals("CUSTOMER", mMetaData("FKCOLUMN_NAME", 
+            new String[] { "foreign_keys", null, null, "CUSTOMER", 
+                null, null, null }));
+        assertEquals("CUSTOMER", mMetaData("PKTABLE_NAME", 
+            new String[] { "foreign_keys", null, null, null, 
+                null, null, "ORDERS" }));
+        try
+        {
+            mMetaData("X", new String[] { "procedures" });
+            fail("Returned an unknown kind of meta data");
+        }
+        catch (DbdException expected)
+        {
+        }
+    }
+
+    public void testCache() throws Exception
+    {
+        String[] columns = { "columns", null, null, "CUSTOMER", null };
+        long misses = MetaDataCache.gGetMisses();
+        long hits = MetaDataCache.gGetHits();
+        assertEquals("ID,NAME", mMetaData("COLUMN_NAME", columns));
+        assertEquals(misses + 1, MetaDataCache.gGetMisses());
+
+        // The cached entry is returned, even though the table changed.
+        mUpdate("ALTER TABLE customer ADD COLUMN email VARCHAR(40)");
+        assertEquals("ID,NAME", mMetaData("COLUMN_NAME", columns));
+        assertEquals(hits + 1, MetaDataCache.gGetHits());
+
+        // Flushing another table leaves it in place.
+        assertEquals("ID", mMetaData("COLUMN_NAME", 
+            new String[] { "primary_keys", null, null, "ORDERS" }));
+        assertEquals(2, MetaDataCache.gGetEntryCount());
+        assertEquals(1, mFlush("orders"));
+        assertEquals(1, mFlush("customer"));
+        assertEquals("ID,NAME,EMAIL", mMetaData("COLUMN_NAME", columns));
+        assertEquals(1, mFlush(null));
+        assertEquals(0, MetaDataCache.gGetEntryCount());
+    }
+}
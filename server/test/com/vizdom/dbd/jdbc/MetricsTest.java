@@ -0,0 +1,131 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Unit testing for the server metrics.
+ */
+public class MetricsTest extends ProtocolTestCase
+{
+    /** An unused tag number, for recording latencies. */
+    private static final int sTAG = Metrics.sTAG_COUNT - 1;
+
+
+    public MetricsTest(String aName)
+    {
+        super(aName, "metrics");
+    }
+
+    public void testBuckets() throws Exception
+    {
+        for (long micros = 0; micros < 10000000; micros = micros * 5 / 4 + 1)
+        {
+            int bucket = Metrics.gBucket(micros);
+            assertTrue(String.valueOf(micros), 
+                micros < Metrics.gUpperBound(bucket));
+            if (bucket > 0)
+            {
+                assertTrue(String.valueOf(micros), 
+                    micros >= Metrics.gUpperBound(bucket - 1));
+            }
+        }
+    }
+
+    public void testPercentiles() throws Exception
+    {
+        for (int i = 0; i < 1000; i++)
+            Metrics.gRecord(sTAG, 1000000, false);
+        Metrics.gRecord(sTAG, 100000000, true);
+        assertEquals(1001, Metrics.gGetCount(sTAG));
+        assertEquals(1, Metrics.gGetErrorCount(sTAG));
+        double p50 = Metrics.gGetPercentileMillis(sTAG, 0.5);
+        assertTrue(String.valueOf(p50), p50 > 1.0 && p50 <= 1.25);
+        double p999 = Metrics.gGetPercentileMillis(sTAG, 0.999);
+        assertTrue(String.valueOf(p999), p999 > 1.0 && p999 <= 1.25);
+        assertEquals(100.0, Metrics.gGetMaxMillis(sTAG), 0.001);
+        assertEquals(100.0, Metrics.gGetPercentileMillis(sTAG, 1.0), 0.001);
+    }
+
+    public void testSession() throws Exception
+    {
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        new NullEncoder(PingRequest.gIDENTIFIER).writeTo(requests);
+        new SequenceEncoder(PrepareRequest.gIDENTIFIER, new BerObject[] {
+            mString("SELECT * FROM nowhere") }).writeTo(requests);
+        byte[] input = requests.toByteArray();
+
+        long pings = Metrics.gGetCount(BerDbdModule.gPING_REQUEST);
+        long errors = Metrics.gGetErrorCount(BerDbdModule.gPREPARE_REQUEST);
+        Metrics metrics = new Metrics();
+        long read = metrics.getBytesRead();
+        long written = metrics.getBytesWritten();
+        int sessions = metrics.getActiveSessions();
+        byte[] output = mRun(input);
+
+        assertEquals(pings + 1, 
+            Metrics.gGetCount(BerDbdModule.gPING_REQUEST));
+        assertEquals(errors + 1, 
+            Metrics.gGetErrorCount(BerDbdModule.gPREPARE_REQUEST));
+        assertEquals(read + input.length, metrics.getBytesRead());
+        assertEquals(written + output.length, metrics.getBytesWritten());
+        assertEquals(sessions, metrics.getActiveSessions());
+    }
+
+    public void testMBeans() throws Exception
+    {
+        Metrics.gRegister();
+        Metrics.gRecord(BerDbdModule.gFETCH_REQUEST, 2000000, false);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName fetch = 
+            new ObjectName("com.vizdom.dbd.jdbc:type=Request,name=FETCH");
+        assertEquals("FETCH", server.getAttribute(fetch, "RequestType"));
+        assertTrue(((Long) server.getAttribute(fetch, "Count")).longValue()
+            > 0);
+        ObjectName total = new ObjectName("com.vizdom.dbd.jdbc:type=Server");
+        String report = (String) server.getAttribute(total, "Report");
+        assertTrue(report, report.indexOf("FETCH") >= 0);
+    }
+
+    public void testInterval() throws Exception
+    {
+        // An explicit 0 turns the reports off.
+        try
+        {
+            System.setProperty("dbd.metricsinterval", "0");
+            assertEquals(0, Server.gGetMetricsInterval());
+            System.setProperty("dbd.metricsinterval", "-1");
+            Server.gGetMetricsInterval();
+            fail("Accepted a negative interval");
+        }
+        catch (FatalException expected)
+        {
+        }
+        finally
+        {
+            System.clearProperty("dbd.metricsinterval");
+        }
+    }
+}
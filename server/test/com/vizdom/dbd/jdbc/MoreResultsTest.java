@@ -0,0 +1,202 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Unit testing for statements with several results, against an 
+ * in-memory HSQLDB database. HSQLDB returns one result per statement,
+ * so the test wraps its statements in one that returns a result set,
+ * an update count, and another result set, as a stored procedure might.
+ */
+public class MoreResultsTest extends ProtocolTestCase
+{
+    /** 
+     * Forwards calls to an object, except for the methods that the
+     * subclass handles. 
+     */
+    private static abstract class Forwarder implements InvocationHandler
+    {
+        private final Object mTarget;
+
+        Forwarder(Object aTarget)
+        {
+            mTarget = aTarget;
+        }
+
+        abstract Object handle(Method aMethod, Object[] anArgumentList)
+            throws Exception;
+
+        public Object invoke(Object aProxy, Method aMethod, 
+            Object[] anArgumentList) throws Throwable
+        {
+            Object result = handle(aMethod, anArgumentList);
+            if (result != this)
+                return result;
+            try
+            {
+                return aMethod.invoke(mTarget, anArgumentList);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+
+    /** The statement's results: result sets and update counts. */
+    private Object[] mResults;
+    /** The index of the current result. */
+    private int mResultIndex;
+
+
+    public MoreResultsTest(String aName)
+    {
+        super(aName, "moreresults");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mUpdate("CREATE TABLE rows (id INTEGER, name VARCHAR(20))");
+        mUpdate("INSERT INTO rows VALUES (1, 'one')");
+        mUpdate("INSERT INTO rows VALUES (2, 'two')");
+        mConnection = mConnect(mProcedureConnection());
+    }
+
+    /**
+     * Returns a connection whose prepared statements return three
+     * results: the rows of the test table, an update count of 5, and
+     * the row with id 2.
+     */
+    private java.sql.Connection mProcedureConnection()
+    {
+        final java.sql.Connection connection = mJdbcConnection;
+        return (java.sql.Connection) Proxy.newProxyInstance(
+            getClass().getClassLoader(), 
+            new Class[] { java.sql.Connection.class }, 
+            new Forwarder(connection) {
+                Object handle(Method aMethod, Object[] anArgumentList)
+                    throws Exception
+                {
+                    if (!aMethod.getName().equals("prepareStatement"))
+                        return this;
+                    return mProcedureStatement(connection.prepareStatement(
+                        "SELECT id, name FROM rows ORDER BY id"));
+                }
+            });
+    }
+
+    private PreparedStatement mProcedureStatement(
+        final PreparedStatement aStatement)
+    {
+        return (PreparedStatement) Proxy.newProxyInstance(
+            getClass().getClassLoader(), 
+            new Class[] { PreparedStatement.class }, 
+            new Forwarder(aStatement) {
+                Object handle(Method aMethod, Object[] anArgumentList)
+                    throws Exception
+                {
+                    String name = aMethod.getName();
+                    if (name.equals("execute"))
+                    {
+                        Statement other = mJdbcConnection.createStatement();
+                        mResults = new Object[] { aStatement.executeQuery(),
+                            Integer.valueOf(5), other.executeQuery(
+                            "SELECT id, name FROM rows WHERE id = 2") };
+                        mResultIndex = 0;
+                        return Boolean.TRUE;
+                    }
+                    Object current = (mResultIndex < mResults.length) ? 
+                        mResults[mResultIndex] : null;
+                    if (name.equals("getResultSet"))
+                        return (current instanceof ResultSet) ? current : null;
+                    if (name.equals("getUpdateCount"))
+                        return (current instanceof Integer) ? current : 
+                            Integer.valueOf(-1);
+                    if (name.equals("getMoreResults"))
+                    {
+                        if (current instanceof ResultSet)
+                            ((ResultSet) current).close();
+                        mResultIndex++;
+                        return Boolean.valueOf(
+                            mResultIndex < mResults.length &&
+                            mResults[mResultIndex] instanceof ResultSet);
+                    }
+                    return this;
+                }
+            });
+    }
+
+    /**
+     * Returns the column count for a result set, or minus the row 
+     * count for an update count, from an execute response.
+     */
+    private int mResult(BerObject aResponse)
+    {
+        BerObject result = ((BerSequence) aResponse).toArray()[0];
+        if (result instanceof ExecuteResultSetResponse)
+            return ((BerInteger) result).intValue();
+        assertTrue(result instanceof ExecuteRowsResponse);
+        return -((BerInteger) result).intValue();
+    }
+
+    private int mMoreResults(int aHandle) throws IOException, SQLException
+    {
+        return mResult(mConnection.handleRequest((MoreResultsRequest) 
+            mDecode(new IntegerEncoder(MoreResultsRequest.gIDENTIFIER, 
+            aHandle))));
+    }
+
+
+
+    public void testMoreResults() throws Exception
+    {
+        int handle = mPrepare("CALL procedure()");
+        mSetReadProperties(handle);
+        assertEquals(2, mResult(mExecute(handle)));
+
+        assertEquals(1, mFetchId(handle));
+        assertEquals(-5, mMoreResults(handle));
+        try
+        {
+            mFetchId(handle);
+            fail("Fetched after an update count");
+        }
+        catch (DbdException expected)
+        {
+        }
+        assertEquals(2, mMoreResults(handle));
+        assertEquals(2, mFetchId(handle));
+        assertEquals(0, mFetchId(handle));
+        assertEquals(1, mMoreResults(handle));
+    }
+}
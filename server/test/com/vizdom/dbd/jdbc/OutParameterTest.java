@@ -0,0 +1,165 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Hashtable;
+
+/**
+ * Unit testing for OUT parameters. HSQLDB doesn't support OUT 
+ * parameters, so the test replaces its callable statements with one
+ * that doubles its IN parameter into its OUT parameter.
+ */
+public class OutParameterTest extends ProtocolTestCase
+{
+    /** The values set on the callable statement, keyed by index. */
+    private Hashtable<Integer, Object> mValues;
+    /** The types registered for OUT parameters, keyed by index. */
+    private Hashtable<Integer, Object> mOutTypes;
+
+
+    public OutParameterTest(String aName)
+    {
+        super(aName, "outparameter");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mValues = new Hashtable<Integer, Object>();
+        mOutTypes = new Hashtable<Integer, Object>();
+        mConnection = mConnect(mCallConnection());
+    }
+
+    /**
+     * Returns a connection whose callable statements are replaced by
+     * the doubling statement.
+     */
+    private java.sql.Connection mCallConnection()
+    {
+        final java.sql.Connection connection = mJdbcConnection;
+        return (java.sql.Connection) Proxy.newProxyInstance(
+            getClass().getClassLoader(), 
+            new Class[] { java.sql.Connection.class }, 
+            new InvocationHandler() {
+                public Object invoke(Object aProxy, Method aMethod, 
+                    Object[] anArgumentList) throws Throwable
+                {
+                    if (aMethod.getName().equals("prepareCall"))
+                        return mCallableStatement();
+                    try
+                    {
+                        return aMethod.invoke(connection, anArgumentList);
+                    }
+                    catch (java.lang.reflect.InvocationTargetException e)
+                    {
+                        throw e.getTargetException();
+                    }
+                }
+            });
+    }
+
+    private CallableStatement mCallableStatement()
+    {
+        return (CallableStatement) Proxy.newProxyInstance(
+            getClass().getClassLoader(), 
+            new Class[] { CallableStatement.class }, 
+            new InvocationHandler() {
+                public Object invoke(Object aProxy, Method aMethod, 
+                    Object[] anArgumentList) throws SQLException
+                {
+                    String name = aMethod.getName();
+                    if (name.equals("registerOutParameter"))
+                        mOutTypes.put((Integer) anArgumentList[0], 
+                            anArgumentList[1]);
+                    else if (name.startsWith("set"))
+                        mValues.put((Integer) anArgumentList[0], 
+                            (anArgumentList[1] == null) ? "NULL" : 
+                            anArgumentList[1]);
+                    else if (name.equals("execute"))
+                        return Boolean.FALSE;
+                    else if (name.equals("getUpdateCount"))
+                        return Integer.valueOf(0);
+                    else if (name.equals("getString"))
+                    {
+                        int value = ((Integer) mValues.get(
+                            Integer.valueOf(1))).intValue();
+                        return String.valueOf(2 * value);
+                    }
+                    else if (!name.equals("close"))
+                        throw new SQLException(name + " is not supported");
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Executes a statement with an INTEGER IN parameter and an 
+     * INTEGER OUT parameter.
+     */
+    private BerObject[] mExecute(int aHandle, String aValue)
+        throws IOException, SQLException
+    {
+        BerObject response = mConnection.handleRequest((ExecuteRequest) 
+            mDecode(ExecuteRequest.gIDENTIFIER, new BerObject[] { 
+                new BerInteger(aHandle), new BerInteger(2), 
+                mString(aValue), new BerInteger(Types.INTEGER), 
+                BerModule.NULL, new BerInteger(Types.INTEGER),
+                new BerInteger(2) }));
+        return ((BerSequence) response).toArray();
+    }
+
+
+    public void testOutParameter() throws Exception
+    {
+        int handle = mPrepare("{ call double_it(?, ?) }");
+        BerObject[] response = mExecute(handle, "21");
+        assertEquals(2, response.length);
+        assertTrue(response[0] instanceof ExecuteRowsResponse);
+        BerObject[] values = ((BerSequence) response[1]).toArray();
+        assertEquals(1, values.length);
+        assertEquals("42", mDecode(values[0]).toString());
+
+        assertEquals(Integer.valueOf(Types.INTEGER), 
+            mOutTypes.get(Integer.valueOf(2)));
+        assertEquals(Integer.valueOf(21), mValues.get(Integer.valueOf(1)));
+        assertNull(mValues.get(Integer.valueOf(2)));
+    }
+
+    public void testNotCallable() throws Exception
+    {
+        int handle = mPrepare("SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+        try
+        {
+            mExecute(handle, "21");
+            fail("Registered an OUT parameter for a prepared statement");
+        }
+        catch (DbdException expected)
+        {
+        }
+    }
+}
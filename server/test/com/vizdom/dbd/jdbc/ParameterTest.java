@@ -0,0 +1,120 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+
+import com.vizdom.ber.BerOctetString;
+import com.vizdom.util.CharacterCodec;
+import java.io.UnsupportedEncodingException;
+import java.sql.Types;
+import junit.framework.TestCase;
+
+/**
+ * Unit testing for parsing numeric parameter values.
+ */
+public class ParameterTest extends TestCase
+{
+    /** Values parsed with and without the ASCII fast path. */
+    private static final String[] sVALUES = { "0", "-0", "+7", "007",
+        "1729", "-1729", "32767", "-32768", "32768", "2147483647", 
+        "-2147483648", "2147483648", "123456789", "1234567890", 
+        "9223372036854775807", "-9223372036854775808", 
+        "9223372036854775808", "123456789012345678", "42.50", "-42.50", 
+        "1.", ".5", "-.5", "0.000", "-0.0", "3.141592653589793", 
+        "0.1", "1e10", "1E-3", "Infinity", "NaN", " 1", "1 ", "", "+", 
+        "-", ".", "1..2", "1.2.3", "--1", "0x10", "12a", "\u0661" };
+
+
+    /**
+     * Returns the result of an operation, or the exception it threw,
+     * as a string.
+     *
+     * @param aParameter the parameter
+     * @param anAsciiNumbers whether to use the ASCII fast path
+     * @param anOperation which value to return
+     * @return the value or exception
+     */
+    private static String gValue(Parameter aParameter, 
+        boolean anAsciiNumbers, int anOperation)
+    {
+        try
+        {
+            switch (anOperation)
+            {
+            case 0: return "" + aParameter.shortValue(anAsciiNumbers);
+            case 1: return "" + aParameter.intValue(anAsciiNumbers);
+            case 2: return "" + aParameter.longValue(anAsciiNumbers);
+            case 3: return "" + aParameter.doubleValue(anAsciiNumbers);
+            case 4: return "" + aParameter.bigDecimalValue(anAsciiNumbers);
+            default: return "" + aParameter.isOne(anAsciiNumbers);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            return e.toString();
+        }
+    }
+
+
+    /**
+     * Tests that the fast path returns the same values and throws the 
+     * same exceptions as the String path.
+     *
+     * @throws UnsupportedEncodingException if an encoding is not supported
+     */
+    public void testFastPath() throws UnsupportedEncodingException
+    {
+        for (int i = 0; i < sVALUES.length; i++)
+        {
+            Parameter p = new Parameter(
+                new BerOctetString(sVALUES[i], "UTF-8"), Types.VARCHAR);
+            for (int op = 0; op < 6; op++)
+            {
+                assertEquals(sVALUES[i] + ", " + op, gValue(p, false, op),
+                    gValue(p, true, op));
+            }
+        }
+        Parameter one = new Parameter(new BerOctetString("1", "UTF-8"),
+            Types.BIT);
+        assertTrue(one.isOne(true));
+        assertEquals(-0.0, new Parameter(new BerOctetString("-0", "UTF-8"), 
+            Types.DOUBLE).doubleValue(true), 0.0);
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(
+            new Parameter(new BerOctetString("-0.0", "UTF-8"), 
+            Types.DOUBLE).doubleValue(true)));
+    }
+
+
+    /**
+     * Tests which encodings use the fast path.
+     *
+     * @throws UnsupportedEncodingException if an encoding is not supported
+     */
+    public void testEncodesNumbersAsAscii() 
+        throws UnsupportedEncodingException
+    {
+        assertTrue(new CharacterCodec("ASCII").encodesNumbersAsAscii());
+        assertTrue(new CharacterCodec("ISO8859_1").encodesNumbersAsAscii());
+        assertTrue(new CharacterCodec("UTF-8").encodesNumbersAsAscii());
+        assertTrue(new CharacterCodec("Cp1252").encodesNumbersAsAscii());
+        assertFalse(new CharacterCodec("UTF-16BE").encodesNumbersAsAscii());
+        assertFalse(new CharacterCodec("Cp037").encodesNumbersAsAscii());
+    }
+}
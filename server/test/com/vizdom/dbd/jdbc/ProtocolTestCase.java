@@ -0,0 +1,377 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import junit.framework.TestCase;
+
+/**
+ * The base class of the tests that send protocol requests to a
+ * Connection, against an in-memory HSQLDB database. Each test gets
+ * its own database, a clone of the BER module with the client's 
+ * character encoding set, and a Connection whose requests are 
+ * passed to <code>handleRequest</code> directly. Requests are 
+ * encoded and decoded again, as the server would read them.
+ */
+abstract class ProtocolTestCase extends TestCase
+{
+    /** The default client character encoding. */
+    static final String sENCODING = "ISO8859_1";
+
+    /** 
+     * The statement properties which the driver sets after every
+     * prepare.
+     */
+    static final String[][] sREAD_PROPERTIES = { { "LongReadLen", "80" }, 
+        { "LongTruncOk", "0" }, { "ChopBlanks", "0" },
+        { "jdbc_longreadall", "1" } };
+
+    /** A sequence with a given identifier, for encoding requests. */
+    static class SequenceEncoder extends BerSequence
+    {
+        private final BerIdentifier mIdentifier;
+
+        SequenceEncoder(BerIdentifier anIdentifier, BerObject[] aSequence)
+        {
+            super(aSequence);
+            mIdentifier = anIdentifier;
+        }
+
+        public BerIdentifier getIdentifier()
+        {
+            return mIdentifier;
+        }
+    }
+
+
+    /** An integer with a given identifier, for encoding requests. */
+    static class IntegerEncoder extends BerInteger
+    {
+        private final BerIdentifier mIdentifier;
+
+        IntegerEncoder(BerIdentifier anIdentifier, int aValue)
+        {
+            super(aValue);
+            mIdentifier = anIdentifier;
+        }
+
+        public BerIdentifier getIdentifier()
+        {
+            return mIdentifier;
+        }
+    }
+
+
+    /** A string with a given identifier, for encoding requests. */
+    static class StringEncoder extends BerOctetString
+    {
+        private final BerIdentifier mIdentifier;
+
+        StringEncoder(BerIdentifier anIdentifier, String aValue,
+            String anEncoding) throws IOException
+        {
+            super(aValue, anEncoding);
+            mIdentifier = anIdentifier;
+        }
+
+        public BerIdentifier getIdentifier()
+        {
+            return mIdentifier;
+        }
+    }
+
+
+    /** A null with a given identifier, for encoding requests. */
+    static class NullEncoder extends BerNull
+    {
+        private final BerIdentifier mIdentifier;
+
+        NullEncoder(BerIdentifier anIdentifier)
+        {
+            mIdentifier = anIdentifier;
+        }
+
+        public BerIdentifier getIdentifier()
+        {
+            return mIdentifier;
+        }
+    }
+
+
+    /** The name of the in-memory database. */
+    private final String mDatabase;
+    /** The client's character encoding. */
+    final String mEncoding;
+
+    java.sql.Connection mJdbcConnection;
+    BerDbdModule mModule;
+    Connection mConnection;
+
+
+    /**
+     * Constructor - initializes fields.
+     *
+     * @param aName the test name
+     * @param aDatabase the name of the in-memory database
+     */
+    ProtocolTestCase(String aName, String aDatabase)
+    {
+        this(aName, aDatabase, sENCODING);
+    }
+
+    /**
+     * Constructor - initializes fields.
+     *
+     * @param aName the test name
+     * @param aDatabase the name of the in-memory database
+     * @param anEncoding the client's character encoding
+     */
+    ProtocolTestCase(String aName, String aDatabase, String anEncoding)
+    {
+        super(aName);
+        mDatabase = aDatabase;
+        mEncoding = anEncoding;
+    }
+
+    protected void setUp() throws Exception
+    {
+        Class.forName("org.hsqldb.jdbcDriver");
+        mJdbcConnection = DriverManager.getConnection(
+            "jdbc:hsqldb:mem:" + mDatabase, "sa", "");
+        mModule = (BerDbdModule) BerDbdModule.gBerModule.clone();
+        mModule.setCharacterEncoding(mEncoding);
+        mConnection = mConnect(mJdbcConnection);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        // A session closes the connection when it ends, but the 
+        // in-memory database lives until it is shut down.
+        if (mJdbcConnection.isClosed())
+        {
+            mJdbcConnection = DriverManager.getConnection(
+                "jdbc:hsqldb:mem:" + mDatabase, "sa", "");
+        }
+        mUpdate("SHUTDOWN");
+        mJdbcConnection.close();
+    }
+
+    /**
+     * Returns a socket which reads the given requests and writes 
+     * to the given stream.
+     */
+    static Socket gSocket(final byte[] anInput, final OutputStream anOutput)
+    {
+        return new Socket() {
+                public InputStream getInputStream()
+                {
+                    return new ByteArrayInputStream(anInput);
+                }
+
+                public OutputStream getOutputStream()
+                {
+                    return anOutput;
+                }
+            };
+    }
+
+    /**
+     * Returns a Connection using a JDBC connection, for passing 
+     * requests to directly.
+     */
+    Connection mConnect(java.sql.Connection aJdbcConnection)
+        throws IOException
+    {
+        return new Connection(gSocket(new byte[0], 
+            new ByteArrayOutputStream()), mModule, aJdbcConnection);
+    }
+
+    /**
+     * Runs a session which reads the given requests, until they run
+     * out, on a new Connection using the test database.
+     *
+     * @return the encoded responses
+     */
+    byte[] mRun(byte[] aRequestList) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BerDbdModule module = (BerDbdModule) BerDbdModule.gBerModule.clone();
+        module.setCharacterEncoding(mEncoding);
+        new Connection(gSocket(aRequestList, output), module, 
+            mJdbcConnection).run();
+        return output.toByteArray();
+    }
+
+    /**
+     * Executes a statement directly through JDBC.
+     */
+    void mUpdate(String aStatement) throws SQLException
+    {
+        Statement stmt = mJdbcConnection.createStatement();
+        stmt.execute(aStatement);
+        stmt.close();
+    }
+
+    /**
+     * Creates the table <code>rows</code>, with the columns 
+     * <code>id</code>, from 1 up, and <code>name</code>, 
+     * <code>"row "</code> and the id.
+     *
+     * @param aCount the number of rows
+     */
+    void mCreateRows(int aCount) throws SQLException
+    {
+        mUpdate("CREATE TABLE rows (id INTEGER, name VARCHAR(20))");
+        PreparedStatement insert = mJdbcConnection.prepareStatement(
+            "INSERT INTO rows VALUES (?, ?)");
+        for (int i = 1; i <= aCount; i++)
+        {
+            insert.setInt(1, i);
+            insert.setString(2, "row " + i);
+            insert.executeUpdate();
+        }
+        insert.close();
+    }
+
+    BerOctetString mString(String aString) throws IOException
+    {
+        return new BerOctetString(aString, mEncoding);
+    }
+
+    BerObject mDecode(BerObject aRequest) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        aRequest.writeTo(out);
+        return mModule.readFrom(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    BerObject mDecode(BerIdentifier anIdentifier, BerObject[] aSequence) 
+        throws IOException
+    {
+        return mDecode(new SequenceEncoder(anIdentifier, aSequence));
+    }
+
+    /**
+     * Prepares a statement.
+     *
+     * @return the statement handle
+     */
+    int mPrepare(String aStatement) throws IOException, SQLException
+    {
+        return mPrepare(new BerObject[] { mString(aStatement) });
+    }
+
+    /**
+     * Prepares a statement, given the prepare request's sequence.
+     *
+     * @return the statement handle
+     */
+    int mPrepare(BerObject[] aSequence) throws IOException, SQLException
+    {
+        BerObject prepared = mConnection.handleRequest((PrepareRequest)
+            mDecode(PrepareRequest.gIDENTIFIER, aSequence));
+        return ((BerInteger) prepared).intValue();
+    }
+
+    void mSetProperty(int aHandle, String aName, String aValue)
+        throws IOException, SQLException
+    {
+        mConnection.handleRequest((SetStatementPropertyRequest) mDecode(
+            SetStatementPropertyRequest.gIDENTIFIER, new BerObject[] { 
+                new BerInteger(aHandle), mString(aName), mString(aValue) }));
+    }
+
+    /**
+     * Sets the properties that the driver sets after every prepare.
+     */
+    void mSetReadProperties(int aHandle) throws IOException, SQLException
+    {
+        for (int i = 0; i < sREAD_PROPERTIES.length; i++)
+        {
+            mSetProperty(aHandle, sREAD_PROPERTIES[i][0], 
+                sREAD_PROPERTIES[i][1]);
+        }
+    }
+
+    /**
+     * Executes a statement.
+     *
+     * @param aParameterList each parameter's value and type, in turn
+     * @return the response
+     */
+    BerObject mExecute(int aHandle, BerObject[] aParameterList)
+        throws IOException, SQLException
+    {
+        BerObject[] request = new BerObject[2 + aParameterList.length];
+        request[0] = new BerInteger(aHandle);
+        request[1] = new BerInteger(aParameterList.length / 2);
+        System.arraycopy(aParameterList, 0, request, 2, 
+            aParameterList.length);
+        return mConnection.handleRequest((ExecuteRequest) 
+            mDecode(ExecuteRequest.gIDENTIFIER, request));
+    }
+
+    /**
+     * Executes a statement without parameters.
+     *
+     * @return the response
+     */
+    BerObject mExecute(int aHandle) throws IOException, SQLException
+    {
+        return mExecute(aHandle, new BerObject[0]);
+    }
+
+    BerObject mFetch(int aHandle) throws IOException, SQLException
+    {
+        return mConnection.handleRequest((FetchRequest) mDecode(
+            new IntegerEncoder(FetchRequest.gIDENTIFIER, aHandle)));
+    }
+
+    /**
+     * Returns the first column of a fetch response as an integer, or
+     * 0 if there is no row.
+     */
+    int mId(BerObject aResponse) throws IOException
+    {
+        BerObject[] sequence = ((BerSequence) aResponse).toArray();
+        if (((BerInteger) sequence[0]).intValue() == 0)
+            return 0;
+        return Integer.parseInt(mDecode(sequence[1]).toString());
+    }
+
+    /**
+     * Fetches a row, and returns its first column as an integer, or
+     * 0 if there is no row.
+     */
+    int mFetchId(int aHandle) throws IOException, SQLException
+    {
+        return mId(mFetch(aHandle));
+    }
+}
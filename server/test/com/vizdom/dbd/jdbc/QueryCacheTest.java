@@ -0,0 +1,211 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Vector;
+
+/**
+ * Unit testing for the query cache, against an in-memory HSQLDB 
+ * database.
+ */
+public class QueryCacheTest extends ProtocolTestCase
+{
+    /** The number of rows in the test table. */
+    private static final int sROWS = 50;
+
+    /** The test query. */
+    private static final String sQUERY = 
+        "SELECT id, name FROM rows WHERE id <= ? ORDER BY id";
+
+    /** Decodes fetch responses, which the server never reads. */
+    private static class FetchDecoder extends BerSequence
+    {
+        FetchDecoder()
+        {
+            super();
+        }
+
+        public BerIdentifier getIdentifier()
+        {
+            return FetchResponse.gIDENTIFIER;
+        }
+    }
+
+
+    private BerModule mResponseModule;
+
+
+    public QueryCacheTest(String aName)
+    {
+        super(aName, "querycache");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mCreateRows(sROWS);
+        mResponseModule = new BerModule();
+        mResponseModule.registerFactory(new BerObjectFactory() {
+                public boolean acceptsIdentifier(BerIdentifier anIdentifier)
+                {
+                    return anIdentifier.equals(FetchResponse.gIDENTIFIER);
+                }
+
+                public BerObject createBerObject()
+                {
+                    return new FetchDecoder();
+                }
+            }, FetchResponse.gIDENTIFIER);
+        QueryCache.gInvalidate(null);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        System.getProperties().remove("dbd.cachesize");
+        QueryCache.gInvalidate(null);
+        super.tearDown();
+    }
+
+    /**
+     * Prepares the test query with jdbc_cache set.
+     *
+     * @return the statement handle
+     */
+    private int mPrepare() throws IOException, SQLException
+    {
+        int handle = mPrepare(sQUERY);
+        mSetReadProperties(handle);
+        mSetProperty(handle, "jdbc_cache", "60");
+        return handle;
+    }
+
+    /**
+     * Executes the test query and fetches every row.
+     *
+     * @return the fetched names
+     */
+    private Vector<String> mQuery(int aHandle, int aMaxId) 
+        throws IOException, SQLException
+    {
+        mExecute(aHandle, new BerObject[] { mString(String.valueOf(aMaxId)),
+            new BerInteger(java.sql.Types.INTEGER) });
+        Vector<String> names = new Vector<String>();
+        while (true)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            mFetch(aHandle).writeTo(out);
+            BerObject[] sequence = ((BerSequence) mResponseModule.readFrom(
+                new ByteArrayInputStream(out.toByteArray()))).toArray();
+            if (((BerInteger) sequence[0]).intValue() == 0)
+                return names;
+            names.addElement(sequence[2].toString());
+        }
+    }
+
+    private int mInvalidate(String aMatch) throws IOException, SQLException
+    {
+        return ((BerInteger) mConnection.handleRequest(
+            (CacheInvalidateRequest) mDecode(new StringEncoder(
+            CacheInvalidateRequest.gIDENTIFIER, aMatch, mEncoding))))
+            .intValue();
+    }
+
+    private void mInsert(int anId) throws SQLException
+    {
+        mUpdate("INSERT INTO rows VALUES (" + anId + ", 'new')");
+    }
+
+    public void testHit() throws Exception
+    {
+        int handle = mPrepare();
+        Vector<String> names = mQuery(handle, 5);
+        assertEquals(5, names.size());
+        assertEquals("row 5", names.lastElement());
+        assertEquals(1, QueryCache.gGetEntryCount());
+
+        // A hit doesn't see the new row.
+        mInsert(0);
+        long hits = QueryCache.gGetHits();
+        assertEquals(names, mQuery(handle, 5));
+        assertEquals(hits + 1, QueryCache.gGetHits());
+        assertEquals(7, mQuery(handle, 6).size());
+
+        assertEquals(0, mInvalidate("no_such_table"));
+        assertEquals(2, mInvalidate("FROM ROWS"));
+        assertEquals(0, QueryCache.gGetEntryCount());
+        assertEquals(6, mQuery(handle, 5).size());
+    }
+
+    public void testUnfinished() throws Exception
+    {
+        int handle = mPrepare();
+        mExecute(handle, new BerObject[] { mString("5"), 
+            new BerInteger(java.sql.Types.INTEGER) });
+        mFetch(handle);
+
+        // Only results that were read to the end are cached.
+        assertEquals(0, QueryCache.gGetEntryCount());
+        assertEquals(5, mQuery(handle, 5).size());
+        assertEquals(1, QueryCache.gGetEntryCount());
+    }
+
+    public void testTransaction() throws Exception
+    {
+        // Uncommitted rows aren't cached, and a transaction doesn't
+        // read cached results.
+        int handle = mPrepare();
+        assertEquals(5, mQuery(handle, 5).size());
+        assertEquals(1, QueryCache.gGetEntryCount());
+        mJdbcConnection.setAutoCommit(false);
+        mInsert(0);
+        long hits = QueryCache.gGetHits();
+        assertEquals(6, mQuery(handle, 5).size());
+        assertEquals(7, mQuery(handle, 6).size());
+        assertEquals(hits, QueryCache.gGetHits());
+        assertEquals(1, QueryCache.gGetEntryCount());
+        mJdbcConnection.rollback();
+        mJdbcConnection.setAutoCommit(true);
+        assertEquals(5, mQuery(handle, 5).size());
+        assertEquals(hits + 1, QueryCache.gGetHits());
+    }
+
+    public void testEviction() throws Exception
+    {
+        System.setProperty("dbd.cachesize", "8192");
+        int handle = mPrepare();
+        for (int i = 1; i <= sROWS; i++)
+            assertEquals(i, mQuery(handle, i).size());
+        assertTrue(QueryCache.gGetSize() <= 8192);
+        assertTrue(QueryCache.gGetEntryCount() < sROWS);
+
+        // The most recent results are kept.
+        long hits = QueryCache.gGetHits();
+        mQuery(handle, sROWS);
+        assertEquals(hits + 1, QueryCache.gGetHits());
+        mQuery(handle, 1);
+        assertEquals(hits + 1, QueryCache.gGetHits());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Unit testing for result set spooling, against an in-memory HSQLDB
+ * database.
+ */
+public class ResultSpoolTest extends ProtocolTestCase
+{
+    /** The number of rows in the test table. */
+    private static final int sROWS = 100;
+
+
+    public ResultSpoolTest(String aName)
+    {
+        super(aName, "resultspool");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mCreateRows(sROWS);
+        mUpdate("UPDATE rows SET name = NULL WHERE MOD(id, 10) = 0");
+    }
+
+    protected void tearDown() throws Exception
+    {
+        System.getProperties().remove("dbd.spools");
+        System.getProperties().remove("dbd.spoolsize");
+        super.tearDown();
+    }
+
+    /**
+     * Prepares and executes the test query with jdbc_spool set.
+     *
+     * @return the statement handle
+     */
+    private int mExecute() throws IOException, SQLException
+    {
+        int handle = mPrepare("SELECT id, name FROM rows ORDER BY id");
+        mSetReadProperties(handle);
+        mSetProperty(handle, "jdbc_spool", "1");
+        mExecute(handle);
+        return handle;
+    }
+
+    /**
+     * Fetches a row and checks its values.
+     *
+     * @param aHandle the statement handle
+     * @param anId the expected id, or 0 if no row is expected
+     */
+    private void mAssertFetch(int aHandle, int anId) 
+        throws IOException, SQLException
+    {
+        BerObject[] sequence = ((BerSequence) mFetch(aHandle)).toArray();
+        if (anId == 0)
+        {
+            assertEquals(0, ((BerInteger) sequence[0]).intValue());
+            return;
+        }
+        assertEquals(1, ((BerInteger) sequence[0]).intValue());
+        assertEquals(String.valueOf(anId), mDecode(sequence[1]).toString());
+        BerObject name = mDecode(sequence[2]);
+        if (anId % 10 == 0)
+            assertFalse(name instanceof BerOctetString);
+        else
+            assertEquals("row " + anId, name.toString());
+    }
+
+
+    public void testSpool() throws Exception
+    {
+        int handle = mExecute();
+        assertEquals(1, ResultSpool.gGetOpenSpools());
+        for (int i = 1; i <= sROWS; i++)
+            mAssertFetch(handle, i);
+        mAssertFetch(handle, 0);
+        assertEquals(0, ResultSpool.gGetOpenSpools());
+        mAssertFetch(handle, 0);
+    }
+
+    public void testSizeLimit() throws Exception
+    {
+        System.setProperty("dbd.spoolsize", "200");
+        int handle = mExecute();
+        for (int i = 1; i <= sROWS; i++)
+            mAssertFetch(handle, i);
+        mAssertFetch(handle, 0);
+        assertEquals(0, ResultSpool.gGetOpenSpools());
+    }
+
+    public void testSpoolLimit() throws Exception
+    {
+        System.setProperty("dbd.spools", "1");
+        int first = mExecute();
+        int second = mExecute();
+        assertEquals(1, ResultSpool.gGetOpenSpools());
+        for (int i = 1; i <= sROWS; i++)
+        {
+            mAssertFetch(first, i);
+            mAssertFetch(second, i);
+        }
+        mAssertFetch(first, 0);
+        mAssertFetch(second, 0);
+        assertEquals(0, ResultSpool.gGetOpenSpools());
+    }
+
+    public void testCopyMetaData() throws Exception
+    {
+        Statement stmt = mJdbcConnection.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT id, name FROM rows");
+        ResultSetMetaData copy = ResultSpool.gCopyMetaData(rs.getMetaData());
+        rs.close();
+        stmt.close();
+        assertEquals(2, copy.getColumnCount());
+        assertEquals("ID", copy.getColumnName(1));
+        assertEquals(java.sql.Types.INTEGER, copy.getColumnType(1));
+        assertEquals("NAME", copy.getColumnName(2));
+        assertEquals(java.sql.Types.VARCHAR, copy.getColumnType(2));
+        try
+        {
+            copy.getColumnName(3);
+            fail("Read meta data for a missing column");
+        }
+        catch (SQLException expected)
+        {
+        }
+    }
+}
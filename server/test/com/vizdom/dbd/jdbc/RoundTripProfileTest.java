@@ -0,0 +1,157 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Unit testing for the round trip profile.
+ */
+public class RoundTripProfileTest extends ProtocolTestCase
+{
+    public RoundTripProfileTest(String aName)
+    {
+        super(aName, "roundtrip");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mUpdate("CREATE TABLE rows (id INTEGER)");
+        for (int i = 1; i <= 3; i++)
+            mUpdate("INSERT INTO rows VALUES (" + i + ")");
+        RoundTripProfile.gStart(3600);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        RoundTripProfile.gStop();
+        RoundTripProfile.gReset();
+        System.clearProperty("dbd.profileprepares");
+        super.tearDown();
+    }
+
+    public void testSession() throws Exception
+    {
+        // Execute a statement twice, fetching every row and reading
+        // NAME five times after each execution.
+        String sql = "SELECT id FROM rows";
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        new SequenceEncoder(PrepareRequest.gIDENTIFIER, new BerObject[] {
+            mString(sql) }).writeTo(requests);
+        for (int i = 0; i < sREAD_PROPERTIES.length; i++)
+        {
+            new SequenceEncoder(SetStatementPropertyRequest.gIDENTIFIER,
+                new BerObject[] { new BerInteger(1), 
+                mString(sREAD_PROPERTIES[i][0]), 
+                mString(sREAD_PROPERTIES[i][1]) }).writeTo(requests);
+        }
+        for (int i = 0; i < 2; i++)
+        {
+            new SequenceEncoder(ExecuteRequest.gIDENTIFIER, new BerObject[] {
+                new BerInteger(1), new BerInteger(0) }).writeTo(requests);
+            for (int j = 0; j < 4; j++)
+            {
+                new IntegerEncoder(FetchRequest.gIDENTIFIER, 1)
+                    .writeTo(requests);
+            }
+            for (int j = 0; j < 5; j++)
+            {
+                new SequenceEncoder(GetStatementPropertyRequest.gIDENTIFIER,
+                    new BerObject[] { new BerInteger(1), mString("NAME") })
+                    .writeTo(requests);
+            }
+        }
+        new IntegerEncoder(StatementDestroyRequest.gIDENTIFIER, 1)
+            .writeTo(requests);
+        mRun(requests.toByteArray());
+
+        RoundTripProfile.Entry entry = RoundTripProfile.gGetEntry(sql);
+        assertNotNull(entry);
+        assertEquals(26, entry.getRequestCount());
+        assertEquals(1, entry.getCount(BerDbdModule.gPREPARE_REQUEST));
+        assertEquals(2, entry.getExecutions());
+        assertEquals(8, entry.getFetches());
+        assertEquals(6, entry.getRowCount());
+        assertEquals(14, entry.getPropertyRequests());
+        assertEquals(1, 
+            entry.getCount(BerDbdModule.gSTATEMENT_DESTROY_REQUEST));
+        assertEquals("properties", entry.getFlags());
+        String report = RoundTripProfile.gGetReport();
+        assertTrue(report, report.indexOf("properties") > 0);
+        assertTrue(report, report.endsWith(sql));
+    }
+
+    public void testFlags() throws Exception
+    {
+        System.setProperty("dbd.profileprepares", "2");
+        for (int i = 0; i < 3; i++)
+        {
+            RoundTripProfile.gRecord("A", BerDbdModule.gPREPARE_REQUEST, 
+                false);
+            RoundTripProfile.gRecord("A", BerDbdModule.gEXECUTE_REQUEST, 
+                false);
+            RoundTripProfile.gRecord("A", 
+                BerDbdModule.gSTATEMENT_DESTROY_REQUEST, false);
+            RoundTripProfile.gRecord("B", BerDbdModule.gEXECUTE_REQUEST, 
+                false);
+            RoundTripProfile.gRecord("B", BerDbdModule.gFETCH_REQUEST, 
+                false);
+        }
+        RoundTripProfile.gRecord("C", BerDbdModule.gFETCH_REQUEST, true);
+        RoundTripProfile.gRecord("C", BerDbdModule.gFETCH_REQUEST, false);
+
+        RoundTripProfile.Entry[] top = RoundTripProfile.gGetTop(2);
+        assertEquals(2, top.length);
+        assertSame(RoundTripProfile.gGetEntry("A"), top[0]);
+        assertSame(RoundTripProfile.gGetEntry("B"), top[1]);
+        assertEquals("prepares", top[0].getFlags());
+        assertEquals("fetches", top[1].getFlags());
+        assertEquals("-", RoundTripProfile.gGetEntry("C").getFlags());
+
+        // Stopping turns profiling off, and resetting clears the counts.
+        RoundTripProfile.gStop();
+        assertFalse(RoundTripProfile.gIsEnabled());
+        RoundTripProfile.gReset();
+        assertNull(RoundTripProfile.gGetEntry("A"));
+    }
+
+    public void testInterval() throws Exception
+    {
+        // An explicit 0 turns the reports off.
+        try
+        {
+            System.setProperty("dbd.profileinterval", "0");
+            assertEquals(0, Server.gGetProfileInterval());
+            System.setProperty("dbd.profileinterval", "-1");
+            Server.gGetProfileInterval();
+            fail("Accepted a negative interval");
+        }
+        catch (FatalException expected)
+        {
+        }
+        finally
+        {
+            System.clearProperty("dbd.profileinterval");
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ * 
+ *  This program is free software; you can redistribute it and/or 
+ *  modify it under the same terms as the Perl Kit, namely, under 
+ *  the terms of either:
+ *
+ *      a) the GNU General Public License as published by the Free
+ *      Software Foundation; either version 1 of the License, or 
+ *      (at your option) any later version, or
+ *
+ *      b) the "Artistic License" that comes with the Perl Kit.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ *  the GNU General Public License or the Artistic License for more 
+ *  details. 
+ */
+
+package com.vizdom.dbd.jdbc;
+import com.vizdom.ber.*;
+import java.io.ByteArrayOutputStream;
+import java.util.Vector;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Unit testing for the slow statement log.
+ */
+public class SlowStatementTest extends ProtocolTestCase
+{
+    /** Collects the messages logged. */
+    private static class Collector extends AppenderSkeleton
+    {
+        final Vector<String> mMessages = new Vector<String>();
+
+        protected void append(LoggingEvent anEvent)
+        {
+            mMessages.addElement(anEvent.getRenderedMessage());
+        }
+
+        public boolean requiresLayout()
+        {
+            return false;
+        }
+
+        public void close()
+        {
+        }
+    }
+
+
+    private Collector mCollector;
+
+
+    public SlowStatementTest(String aName)
+    {
+        super(aName, "slowstatement");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        SlowStatementLog.gConfigure(5, 0);
+        mCollector = new Collector();
+        Logger.getLogger(SlowStatementLog.class).addAppender(mCollector);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        Logger.getLogger(SlowStatementLog.class).removeAppender(mCollector);
+        SlowStatementLog.gConfigure(0, 0);
+        System.clearProperty("dbd.slowstatement");
+        super.tearDown();
+    }
+
+    /**
+     * Waits for the writer thread to log a message.
+     *
+     * @return the message
+     */
+    private String mWaitForMessage() throws InterruptedException
+    {
+        for (int i = 0; i < 100 && mCollector.mMessages.isEmpty(); i++)
+            Thread.sleep(50);
+        assertEquals(1, mCollector.mMessages.size());
+        return mCollector.mMessages.elementAt(0);
+    }
+
+    private Parameter[] mParameters() throws Exception
+    {
+        return new Parameter[] { 
+            new Parameter(mString("abcdef"), 
+                java.sql.Types.VARCHAR),
+            new Parameter(null, java.sql.Types.VARCHAR) };
+    }
+
+
+    public void testThreshold() throws Exception
+    {
+        SlowStatementLog.Timing timing = new SlowStatementLog.Timing();
+        timing.record(BerDbdModule.gPREPARE_REQUEST, 1000000L, 10, false);
+        timing.start(mParameters());
+        assertTrue(timing.isExecuting());
+        timing.record(BerDbdModule.gEXECUTE_REQUEST, 2000000L, 10, false);
+        timing.record(BerDbdModule.gFETCH_REQUEST, 1000000L, 100, true);
+        timing.record(BerDbdModule.gFETCH_REQUEST, 1000000L, 10, false);
+        timing.finish("SELECT 1", sENCODING);
+        assertFalse(timing.isExecuting());
+
+        // The fetches are timed together.
+        timing.start(mParameters());
+        timing.record(BerDbdModule.gEXECUTE_REQUEST, 2000000L, 10, false);
+        timing.record(BerDbdModule.gFETCH_REQUEST, 3000000L, 100, true);
+        timing.record(BerDbdModule.gFETCH_REQUEST, 3000000L, 10, false);
+        timing.record(BerDbdModule.gSTATEMENT_DESTROY_REQUEST, 1000L, 10, 
+            false);
+        timing.finish("SELECT 2", sENCODING);
+
+        String message = mWaitForMessage();
+        assertEquals("Slow statement: prepare 0.000 ms, execute 2.000 ms, "
+            + "fetch 6.000 ms, other 0.001 ms; 1 rows, 130 bytes, "
+            + "4 requests: SELECT 2 [?, NULL]", message);
+    }
+
+    public void testParameters() throws Exception
+    {
+        SlowStatementLog.gConfigure(5, 3);
+        SlowStatementLog.Timing timing = new SlowStatementLog.Timing();
+        timing.start(mParameters());
+        timing.record(BerDbdModule.gEXECUTE_REQUEST, 6000000L, 10, false);
+        timing.finish("UPDATE t SET a = ? WHERE b = ?", sENCODING);
+        String message = mWaitForMessage();
+        assertTrue(message, message.endsWith(
+            "UPDATE t SET a = ? WHERE b = ? ['abc...', NULL]"));
+    }
+
+    public void testEncoding() throws Exception
+    {
+        // DEC_MCS is one of the server's own encodings, which the 
+        // JDK doesn't support.
+        SlowStatementLog.gConfigure(5, 10);
+        SlowStatementLog.Timing timing = new SlowStatementLog.Timing();
+        timing.start(new Parameter[] { new Parameter(
+            new BerOctetString("caf\u00e9", "DEC_MCS"), 
+            java.sql.Types.VARCHAR) });
+        timing.record(BerDbdModule.gEXECUTE_REQUEST, 6000000L, 10, false);
+        timing.finish("SELECT ?", "DEC_MCS");
+        String message = mWaitForMessage();
+        assertTrue(message, message.endsWith("SELECT ? ['caf\u00e9']"));
+    }
+
+    public void testDisabled() throws Exception
+    {
+        // An explicit 0 turns the log off.
+        System.setProperty("dbd.slowstatement", "0");
+        SlowStatementLog.gConfigure(Server.gGetSlowStatementThreshold(), 0);
+        SlowStatementLog.Timing timing = new SlowStatementLog.Timing();
+        timing.start(null);
+        timing.record(BerDbdModule.gEXECUTE_BATCH_REQUEST, 60000000000L, 10,
+            false);
+        timing.finish("INSERT INTO t VALUES (?)", sENCODING);
+        Thread.sleep(200);
+        assertEquals(0, mCollector.mMessages.size());
+    }
+
+    public void testSession() throws Exception
+    {
+        // A query which takes longer than a millisecond, prepared,
+        // executed and fetched in one session.
+        SlowStatementLog.gConfigure(1, 0);
+        String sql = "SELECT COUNT(*) FROM "
+            + "INFORMATION_SCHEMA.SYSTEM_COLUMNS a, "
+            + "INFORMATION_SCHEMA.SYSTEM_COLUMNS b";
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        new SequenceEncoder(PrepareRequest.gIDENTIFIER, new BerObject[] {
+            mString(sql) }).writeTo(requests);
+        for (int i = 0; i < sREAD_PROPERTIES.length; i++)
+        {
+            new SequenceEncoder(SetStatementPropertyRequest.gIDENTIFIER,
+                new BerObject[] { new BerInteger(1), 
+                mString(sREAD_PROPERTIES[i][0]), 
+                mString(sREAD_PROPERTIES[i][1]) }).writeTo(requests);
+        }
+        new SequenceEncoder(ExecuteRequest.gIDENTIFIER, new BerObject[] {
+            new BerInteger(1), new BerInteger(0) }).writeTo(requests);
+        new IntegerEncoder(FetchRequest.gIDENTIFIER, 1).writeTo(requests);
+        new IntegerEncoder(FetchRequest.gIDENTIFIER, 1).writeTo(requests);
+        mRun(requests.toByteArray());
+
+        String message = mWaitForMessage();
+        assertTrue(message, message.indexOf("; 1 rows, ") > 0);
+        assertTrue(message, message.endsWith(" bytes, 8 requests: " + sql));
+    }
+}
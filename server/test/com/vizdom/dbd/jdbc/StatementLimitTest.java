@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.dbd.jdbc;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Unit testing for the statement limit properties, against an 
+ * in-memory HSQLDB database.
+ */
+public class StatementLimitTest extends ProtocolTestCase
+{
+    /** The number of rows in the test table. */
+    private static final int sROWS = 100;
+
+
+    public StatementLimitTest(String aName)
+    {
+        super(aName, "statementlimit");
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        mCreateRows(sROWS);
+    }
+
+    /**
+     * Returns the number of rows fetched before the end of the 
+     * result set.
+     */
+    private int mCount(int aHandle) throws IOException, SQLException
+    {
+        int count = 0;
+        while (mFetchId(aHandle) != 0)
+            count++;
+        return count;
+    }
+
+    public void testMaxRows() throws Exception
+    {
+        int handle = mPrepare("SELECT id, name FROM rows ORDER BY id");
+        mSetReadProperties(handle);
+        mSetProperty(handle, "jdbc_max_rows", "3");
+        mExecute(handle);
+        assertEquals(3, mCount(handle));
+
+        // The limit holds for later executions.
+        mExecute(handle);
+        assertEquals(3, mCount(handle));
+
+        mSetProperty(handle, "jdbc_max_rows", "0");
+        mExecute(handle);
+        assertEquals(sROWS, mCount(handle));
+    }
+
+    public void testLimits() throws Exception
+    {
+        int handle = mPrepare("SELECT id, name FROM rows ORDER BY id");
+        mSetReadProperties(handle);
+        mSetProperty(handle, "jdbc_query_timeout", "30");
+        mSetProperty(handle, "jdbc_max_field_size", "256");
+        mExecute(handle);
+        assertEquals(sROWS, mCount(handle));
+        try
+        {
+            mSetProperty(handle, "jdbc_max_rows", "-1");
+            fail("Set a negative row limit");
+        }
+        catch (SQLException expected)
+        {
+        }
+    }
+}
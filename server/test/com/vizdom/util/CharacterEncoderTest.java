@@ -0,0 +1,157 @@
+/*
+ * Copyright 2009 Vizdom Software, Inc. All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the same terms as the Perl Kit, namely, under
+ * the terms of either:
+ *
+ *     a) the GNU General Public License as published by the Free
+ *     Software Foundation; either version 1 of the License, or
+ *     (at your option) any later version, or
+ *
+ *     b) the "Artistic License" that comes with the Perl Kit.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See either
+ * the GNU General Public License or the Artistic License for more
+ * details.
+ */
+
+package com.vizdom.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Unit testing for the custom character encodings.
+ */
+public class CharacterEncoderTest extends TestCase
+{
+    /** A small table in the text format read by CharacterEncoder.load. */
+    private static final String sTABLE =
+        "# A test encoding: ASCII, with a few changes.\n" +
+        "unknown 0x2E\n" +
+        "0x80 0x20AC  # EURO SIGN\n" +
+        "0x81 0x00E9\n" +
+        "0x82 0x00E9  # a second byte for the same character\n" +
+        "\n";
+
+
+    /**
+     * Returns the test encoding.
+     *
+     * @return the test encoding
+     * @throws IOException if an error occurs
+     */
+    private static CharacterEncoder gLoadTestEncoding() throws IOException
+    {
+        StringBuffer table = new StringBuffer(sTABLE);
+        for (int i = 0; i < 0x80; i++)
+            table.append("0x" + Integer.toHexString(i) + "\t0x" + 
+                Integer.toHexString(i) + "\n");
+        return CharacterEncoder.load(
+            new ByteArrayInputStream(table.toString().getBytes("ASCII")));
+    }
+
+
+    /**
+     * Tests loading and registering an encoding table.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testRegister() throws IOException
+    {
+        CharacterEncoder.register("X-Test", gLoadTestEncoding());
+
+        byte[] bytes = CharacterEncoder.toByteArray(
+            "\u20ac5, caf\u00e9 \u00fc", "X-Test");
+        assertTrue(Arrays.equals(new byte[] { (byte) 0x80, '5', ',', ' ', 
+            'c', 'a', 'f', (byte) 0x81, ' ', '.' }, bytes));
+        assertEquals("\u20ac5, caf\u00e9 .", 
+            CharacterEncoder.toString(bytes, "X-Test"));
+        assertEquals("\u00e9\ufffd", CharacterEncoder.toString(
+            new byte[] { (byte) 0x82, (byte) 0x83 }, "X-Test"));
+
+        CharacterEncodable encodable = 
+            CharacterEncoder.getCharacterEncodable("X-Test");
+        assertTrue(encodable.canEncode('\u20ac'));
+        assertTrue(encodable.canEncode('.'));
+        assertFalse(encodable.canEncode('\u00fc'));
+
+        // Codecs use the registered encoding.
+        CharacterCodec codec = new CharacterCodec("X-Test");
+        int offset = codec.encode("\u00e9t\u00e9");
+        assertEquals(3, codec.size() - offset);
+        assertEquals("\u00e9t\u00e9", 
+            codec.toString(codec.getBuffer(), offset, 3));
+    }
+
+
+    /**
+     * Tests invalid encoding tables.
+     */
+    public void testBadTable()
+    {
+        String[] tables = { "0x80\n", "0x100 0x41\n", "0x80 0x10000\n", 
+            "80 41\n", "0x80 0x41 0x42\n", "unknown\n" };
+        for (int i = 0; i < tables.length; i++)
+        {
+            try
+            {
+                CharacterEncoder.load(
+                    new ByteArrayInputStream(tables[i].getBytes()));
+                fail("Expected IOException for " + tables[i]);
+            }
+            catch (IOException e)
+            {
+                assertTrue(e.getMessage(), 
+                    e.getMessage().indexOf("line 1") != -1);
+            }
+        }
+    }
+
+
+    /**
+     * Tests the bulk conversions, and the Reader and Writer.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void testBulkConversion() throws IOException
+    {
+        CharacterEncoder enc = gLoadTestEncoding();
+        char[] chars = "xx\u20acabc\u00e9yy".toCharArray();
+        byte[] bytes = new byte[8];
+        enc.encode(chars, 2, 5, bytes, 1);
+        assertTrue(Arrays.equals(new byte[] { 0, (byte) 0x80, 'a', 'b', 'c', 
+            (byte) 0x81, 0, 0 }, bytes));
+        char[] decoded = new char[6];
+        enc.decode(bytes, 1, 5, decoded, 1);
+        assertEquals("\u20acabc\u00e9", new String(decoded, 1, 5));
+        try
+        {
+            enc.encode(chars, 5, 5, bytes, 0);
+            fail("Expected IndexOutOfBoundsException");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+        }
+
+        // The Writer and Reader go through the built-in encodings.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer writer = CharacterEncoder.toWriter(out, "HP_Roman8");
+        writer.write(chars, 2, 5);
+        writer.close();
+        Reader reader = CharacterEncoder.toReader(
+            new ByteArrayInputStream(out.toByteArray()), "HP_Roman8");
+        char[] buffer = new char[10];
+        assertEquals(5, reader.read(buffer, 1, 9));
+        assertEquals(".abc\u00e9", new String(buffer, 1, 5));
+        assertEquals(-1, reader.read(buffer, 0, 10));
+    }
+}